@@ -0,0 +1,863 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.sqs.AmazonSQSAsync;
+import com.amazonaws.services.sqs.model.AddPermissionRequest;
+import com.amazonaws.services.sqs.model.AddPermissionResult;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityResult;
+import com.amazonaws.services.sqs.model.CreateQueueRequest;
+import com.amazonaws.services.sqs.model.CreateQueueResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.DeleteMessageRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageResult;
+import com.amazonaws.services.sqs.model.DeleteQueueRequest;
+import com.amazonaws.services.sqs.model.DeleteQueueResult;
+import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.GetQueueAttributesResult;
+import com.amazonaws.services.sqs.model.GetQueueUrlRequest;
+import com.amazonaws.services.sqs.model.GetQueueUrlResult;
+import com.amazonaws.services.sqs.model.ListDeadLetterSourceQueuesRequest;
+import com.amazonaws.services.sqs.model.ListDeadLetterSourceQueuesResult;
+import com.amazonaws.services.sqs.model.ListQueueTagsRequest;
+import com.amazonaws.services.sqs.model.ListQueueTagsResult;
+import com.amazonaws.services.sqs.model.ListQueuesRequest;
+import com.amazonaws.services.sqs.model.ListQueuesResult;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.PurgeQueueRequest;
+import com.amazonaws.services.sqs.model.PurgeQueueResult;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.amazonaws.services.sqs.model.RemovePermissionRequest;
+import com.amazonaws.services.sqs.model.RemovePermissionResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+import com.amazonaws.services.sqs.model.SetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.SetQueueAttributesResult;
+import com.amazonaws.services.sqs.model.TagQueueRequest;
+import com.amazonaws.services.sqs.model.TagQueueResult;
+import com.amazonaws.services.sqs.model.UntagQueueRequest;
+import com.amazonaws.services.sqs.model.UntagQueueResult;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * Asynchronous variant of the Amazon SQS Extended Client.
+ *
+ * <p>
+ * Calls to Amazon SQS are made through the wrapped {@link AmazonSQSAsync}
+ * client and never block a thread while waiting for the service. Transfers
+ * of message payloads to and from Amazon S3 run as separate stages on the
+ * payload executor from {@link ExtendedClientConfiguration#getPayloadExecutor()}.
+ * When no payload executor is configured, the client creates its own and
+ * shuts it down in {@link #shutdown()}.
+ * </p>
+ *
+ * <p>
+ * Payloads are transferred with the blocking Amazon S3 client, so every
+ * transfer in progress holds a thread of the payload executor until its calls
+ * to Amazon S3 return. The executor created by the client has
+ * {@value #DEFAULT_PAYLOAD_THREADS} threads, which bounds the number of
+ * transfers running at once across all calls; configure a payload executor to
+ * run more. When {@link ExtendedClientConfiguration#getPayloadBatchTimeoutMillis()}
+ * is set, the future of a call fails once the payload transfers of its batch
+ * take longer, while transfers that already started still finish on their
+ * threads.
+ * </p>
+ *
+ * <p>
+ * All asynchronous methods return {@link CompletableFuture} instances. The
+ * blocking methods inherited from {@link AmazonSQSExtendedClient} remain
+ * available.
+ * </p>
+ */
+public class AmazonSQSAsyncExtendedClient extends AmazonSQSExtendedClient implements AmazonSQSAsync {
+    private static final Log LOG = LogFactory.getLog(AmazonSQSAsyncExtendedClient.class);
+
+    // Threads of the payload executor created by the client, each held by one blocking transfer at a time.
+    static final int DEFAULT_PAYLOAD_THREADS = 10;
+
+    private final AmazonSQSAsync amazonSqsAsyncToBeExtended;
+    private final ExecutorService payloadExecutor;
+    private final boolean ownsPayloadExecutor;
+    // Fails batches whose payload transfers exceed the timeout, or null if there is none.
+    private final ScheduledExecutorService timeoutScheduler;
+
+    /**
+     * Constructs a new asynchronous Amazon SQS extended client to invoke
+     * service methods on Amazon SQS with extended functionality using the
+     * specified asynchronous Amazon SQS client object.
+     *
+     * @param sqsAsyncClient
+     *            The asynchronous Amazon SQS client to use to connect to
+     *            Amazon SQS.
+     */
+    public AmazonSQSAsyncExtendedClient(AmazonSQSAsync sqsAsyncClient) {
+        this(sqsAsyncClient, new ExtendedClientConfiguration());
+    }
+
+    /**
+     * Constructs a new asynchronous Amazon SQS extended client to invoke
+     * service methods on Amazon SQS with extended functionality using the
+     * specified asynchronous Amazon SQS client object.
+     *
+     * @param sqsAsyncClient
+     *            The asynchronous Amazon SQS client to use to connect to
+     *            Amazon SQS.
+     * @param extendedClientConfig
+     *            The extended client configuration options controlling the
+     *            functionality of this client.
+     */
+    public AmazonSQSAsyncExtendedClient(AmazonSQSAsync sqsAsyncClient, ExtendedClientConfiguration extendedClientConfig) {
+        super(sqsAsyncClient, extendedClientConfig);
+        this.amazonSqsAsyncToBeExtended = sqsAsyncClient;
+        if (clientConfiguration.getPayloadExecutor() != null) {
+            this.payloadExecutor = clientConfiguration.getPayloadExecutor();
+            this.ownsPayloadExecutor = false;
+        } else {
+            this.payloadExecutor = Executors.newFixedThreadPool(DEFAULT_PAYLOAD_THREADS, new DaemonThreadFactory("sqs-extended-payload"));
+            this.ownsPayloadExecutor = true;
+        }
+        this.timeoutScheduler = clientConfiguration.getPayloadBatchTimeoutMillis() > 0
+                ? Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("sqs-extended-payload-timeout"))
+                : null;
+    }
+
+    /**
+     * Asynchronously delivers a message to the specified queue. The message
+     * payload is uploaded to Amazon S3 on the payload executor if necessary,
+     * before the message is sent to Amazon SQS.
+     *
+     * @see #sendMessage(SendMessageRequest)
+     */
+    public CompletableFuture<SendMessageResult> sendMessageAsync(SendMessageRequest sendMessageRequest,
+            AsyncHandler<SendMessageRequest, SendMessageResult> asyncHandler) {
+        CompletableFuture<SendMessageResult> future = CompletableFuture
+                .supplyAsync(() -> prepareSendMessageRequest(sendMessageRequest), payloadExecutor)
+                .thenCompose(request -> callAsync(request, amazonSqsAsyncToBeExtended::sendMessageAsync));
+        return withAsyncHandler(future, sendMessageRequest, asyncHandler);
+    }
+
+    /**
+     * Asynchronously delivers up to ten messages to the specified queue. The
+     * payloads of the entries are uploaded to Amazon S3 concurrently on the
+     * payload executor if necessary, before the batch is sent to Amazon SQS.
+     *
+     * @see #sendMessageBatch(SendMessageBatchRequest)
+     */
+    public CompletableFuture<SendMessageBatchResult> sendMessageBatchAsync(SendMessageBatchRequest sendMessageBatchRequest,
+            AsyncHandler<SendMessageBatchRequest, SendMessageBatchResult> asyncHandler) {
+        CompletableFuture<SendMessageBatchResult> future = CompletableFuture.completedFuture(sendMessageBatchRequest)
+                .thenCompose(this::storeBatchPayloadsAsync)
+                .thenCompose(request -> callAsync(request, amazonSqsAsyncToBeExtended::sendMessageBatchAsync));
+        return withAsyncHandler(future, sendMessageBatchRequest, asyncHandler);
+    }
+
+    /**
+     * Asynchronously retrieves up to ten messages from the specified queue.
+     * Once Amazon SQS returns the messages, their payloads are downloaded from
+     * Amazon S3 concurrently on the payload executor if necessary.
+     *
+     * @see #receiveMessage(ReceiveMessageRequest)
+     */
+    public CompletableFuture<ReceiveMessageResult> receiveMessageAsync(ReceiveMessageRequest receiveMessageRequest,
+            AsyncHandler<ReceiveMessageRequest, ReceiveMessageResult> asyncHandler) {
+        CompletableFuture<ReceiveMessageResult> future = CompletableFuture.completedFuture(receiveMessageRequest)
+                .thenApply(this::prepareReceiveMessageRequest)
+                .thenCompose(request -> AmazonSQSAsyncExtendedClient.<ReceiveMessageRequest, ReceiveMessageResult>callAsync(
+                        request, amazonSqsAsyncToBeExtended::receiveMessageAsync))
+                .thenCompose(this::retrieveOriginalPayloadsAsync);
+        return withAsyncHandler(future, receiveMessageRequest, asyncHandler);
+    }
+
+    /**
+     * Asynchronously deletes the specified message from the specified queue.
+     * Once the message is deleted, its payload is deleted from Amazon S3 on
+     * the payload executor if necessary.
+     *
+     * @see #deleteMessage(DeleteMessageRequest)
+     */
+    public CompletableFuture<DeleteMessageResult> deleteMessageAsync(DeleteMessageRequest deleteMessageRequest,
+            AsyncHandler<DeleteMessageRequest, DeleteMessageResult> asyncHandler) {
+        List<PayloadReceiptHandle> payloadReceiptHandles = new ArrayList<PayloadReceiptHandle>(1);
+        CompletableFuture<DeleteMessageResult> future = CompletableFuture
+                .completedFuture(deleteMessageRequest)
+                .thenApply(request -> prepareDeleteMessageRequest(request, payloadReceiptHandles))
+                .thenCompose(request -> AmazonSQSAsyncExtendedClient.<DeleteMessageRequest, DeleteMessageResult>callAsync(
+                        request, amazonSqsAsyncToBeExtended::deleteMessageAsync))
+                .thenApplyAsync(result -> {
+                    deleteMessagePayloads(payloadReceiptHandles);
+                    return result;
+                }, payloadExecutor);
+        return withAsyncHandler(future, deleteMessageRequest, asyncHandler);
+    }
+
+    /**
+     * Asynchronously deletes up to ten messages from the specified queue. The
+     * payloads of the deleted messages are deleted from Amazon S3 on the
+     * payload executor if necessary.
+     *
+     * @see #deleteMessageBatch(DeleteMessageBatchRequest)
+     */
+    public CompletableFuture<DeleteMessageBatchResult> deleteMessageBatchAsync(
+            DeleteMessageBatchRequest deleteMessageBatchRequest,
+            AsyncHandler<DeleteMessageBatchRequest, DeleteMessageBatchResult> asyncHandler) {
+        Map<String, PayloadReceiptHandle> payloadReceiptHandles = new HashMap<String, PayloadReceiptHandle>();
+        CompletableFuture<DeleteMessageBatchResult> future = CompletableFuture
+                .completedFuture(deleteMessageBatchRequest)
+                .thenApply(request -> prepareDeleteMessageBatchRequest(request, payloadReceiptHandles))
+                .thenCompose(request -> AmazonSQSAsyncExtendedClient.<DeleteMessageBatchRequest, DeleteMessageBatchResult>callAsync(
+                        request, amazonSqsAsyncToBeExtended::deleteMessageBatchAsync))
+                .thenApplyAsync(result -> {
+                    deleteMessagePayloads(result, payloadReceiptHandles);
+                    return result;
+                }, payloadExecutor);
+        return withAsyncHandler(future, deleteMessageBatchRequest, asyncHandler);
+    }
+
+    /**
+     * Asynchronously changes the visibility timeout of a specified message in
+     * a queue.
+     *
+     * @see #changeMessageVisibility(ChangeMessageVisibilityRequest)
+     */
+    public CompletableFuture<ChangeMessageVisibilityResult> changeMessageVisibilityAsync(
+            ChangeMessageVisibilityRequest changeMessageVisibilityRequest,
+            AsyncHandler<ChangeMessageVisibilityRequest, ChangeMessageVisibilityResult> asyncHandler) {
+        CompletableFuture<ChangeMessageVisibilityResult> future = CompletableFuture
+                .completedFuture(changeMessageVisibilityRequest)
+                .thenApply(this::prepareChangeMessageVisibilityRequest)
+                .thenCompose(request -> callAsync(request, amazonSqsAsyncToBeExtended::changeMessageVisibilityAsync));
+        return withAsyncHandler(future, changeMessageVisibilityRequest, asyncHandler);
+    }
+
+    /**
+     * Asynchronously changes the visibility timeout of multiple messages.
+     *
+     * @see #changeMessageVisibilityBatch(ChangeMessageVisibilityBatchRequest)
+     */
+    public CompletableFuture<ChangeMessageVisibilityBatchResult> changeMessageVisibilityBatchAsync(
+            ChangeMessageVisibilityBatchRequest changeMessageVisibilityBatchRequest,
+            AsyncHandler<ChangeMessageVisibilityBatchRequest, ChangeMessageVisibilityBatchResult> asyncHandler) {
+        CompletableFuture<ChangeMessageVisibilityBatchResult> future = CompletableFuture
+                .completedFuture(changeMessageVisibilityBatchRequest)
+                .thenApply(this::prepareChangeMessageVisibilityBatchRequest)
+                .thenCompose(request -> callAsync(request, amazonSqsAsyncToBeExtended::changeMessageVisibilityBatchAsync));
+        return withAsyncHandler(future, changeMessageVisibilityBatchRequest, asyncHandler);
+    }
+
+    /**
+     * Asynchronously deletes the messages in a queue. This does not delete the
+     * message payloads from Amazon S3.
+     *
+     * @see #purgeQueue(PurgeQueueRequest)
+     */
+    public CompletableFuture<PurgeQueueResult> purgeQueueAsync(PurgeQueueRequest purgeQueueRequest,
+            AsyncHandler<PurgeQueueRequest, PurgeQueueResult> asyncHandler) {
+        CompletableFuture<PurgeQueueResult> future = CompletableFuture.completedFuture(purgeQueueRequest)
+                .thenApply(this::preparePurgeQueueRequest)
+                .thenCompose(request -> callAsync(request, amazonSqsAsyncToBeExtended::purgeQueueAsync));
+        return withAsyncHandler(future, purgeQueueRequest, asyncHandler);
+    }
+
+    /**
+     * Shuts down the wrapped Amazon SQS client and the payload executor, if it
+     * was created by this client.
+     */
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        if (ownsPayloadExecutor) {
+            payloadExecutor.shutdown();
+        }
+        if (timeoutScheduler != null) {
+            timeoutScheduler.shutdown();
+        }
+    }
+
+    private CompletableFuture<SendMessageBatchRequest> storeBatchPayloadsAsync(SendMessageBatchRequest sendMessageBatchRequest) {
+        checkSendMessageBatchRequest(sendMessageBatchRequest);
+
+        if (!clientConfiguration.isPayloadSupportEnabled()) {
+            return CompletableFuture.completedFuture(sendMessageBatchRequest);
+        }
+
+        List<SendMessageBatchRequestEntry> batchEntries = sendMessageBatchRequest.getEntries();
+        List<SendMessageBatchRequestEntry> offloadedEntries = new ArrayList<SendMessageBatchRequestEntry>();
+        List<Runnable> payloadUploads = new ArrayList<Runnable>();
+        for (SendMessageBatchRequestEntry entry : batchEntries) {
+            if (requiresOffloading(entry)) {
+                offloadedEntries.add(entry);
+                payloadUploads.add(() -> offloadMessagePayload(entry));
+            }
+        }
+
+        // The size of an entry compressed inline is only known once it is
+        // compressed, so the rest of the batch is sized afterwards.
+        CompletableFuture<Void> uploads;
+        if (isInlineCompressionPossible() && !offloadedEntries.isEmpty()) {
+            uploads = runPayloadUploads(payloadUploads).thenCompose(v -> runPayloadUploads(
+                    getBatchSizeUploads(batchEntries, Collections.<SendMessageBatchRequestEntry>emptyList())));
+        } else {
+            payloadUploads.addAll(getBatchSizeUploads(batchEntries, offloadedEntries));
+            uploads = runPayloadUploads(payloadUploads);
+        }
+
+        // Entries are updated in place, so their order and IDs are preserved.
+        return withPayloadBatchTimeout(uploads).thenApply(v -> sendMessageBatchRequest);
+    }
+
+    private List<Runnable> getBatchSizeUploads(List<SendMessageBatchRequestEntry> batchEntries,
+            List<SendMessageBatchRequestEntry> offloadedEntries) {
+        List<Runnable> payloadUploads = new ArrayList<Runnable>();
+        for (SendMessageBatchRequestEntry entry : selectEntriesExceedingBatchSize(batchEntries, offloadedEntries)) {
+            payloadUploads.add(() -> storeMessageInS3(entry));
+        }
+        return payloadUploads;
+    }
+
+    private CompletableFuture<Void> runPayloadUploads(List<Runnable> payloadUploads) {
+        // Spread the uploads over a bounded number of sequential chains, so at
+        // most that many run at once without any thread waiting for another.
+        int maxConcurrency = clientConfiguration.getPayloadUploadConcurrency();
+        int chainCount = maxConcurrency > 0 ? Math.min(maxConcurrency, payloadUploads.size()) : payloadUploads.size();
+        List<CompletableFuture<Void>> chains = new ArrayList<CompletableFuture<Void>>(chainCount);
+        for (int i = 0; i < payloadUploads.size(); i++) {
+            Runnable payloadUpload = payloadUploads.get(i);
+            if (i < chainCount) {
+                chains.add(CompletableFuture.runAsync(payloadUpload, payloadExecutor));
+            } else {
+                int chain = i % chainCount;
+                chains.set(chain, chains.get(chain).thenRunAsync(payloadUpload, payloadExecutor));
+            }
+        }
+        return CompletableFuture.allOf(chains.toArray(new CompletableFuture<?>[0]));
+    }
+
+    private CompletableFuture<ReceiveMessageResult> retrieveOriginalPayloadsAsync(ReceiveMessageResult receiveMessageResult) {
+        if (!clientConfiguration.isPayloadSupportEnabled()) {
+            return CompletableFuture.completedFuture(receiveMessageResult);
+        }
+
+        List<CompletableFuture<Message>> retrievals = new ArrayList<CompletableFuture<Message>>();
+        for (final Message message : receiveMessageResult.getMessages()) {
+            if (isLargePayloadMessage(message)) {
+                retrievals.add(CompletableFuture.supplyAsync(() -> retrieveOriginalPayload(message), payloadExecutor));
+            } else if (isInlinePayloadMessage(message)) {
+                retrievals.add(CompletableFuture.supplyAsync(() -> decodeInlinePayload(message), payloadExecutor));
+            }
+        }
+        // Messages are updated in place, so the original order is preserved.
+        return withPayloadBatchTimeout(CompletableFuture.allOf(retrievals.toArray(new CompletableFuture<?>[0])))
+                .thenApply(v -> receiveMessageResult);
+    }
+
+    /**
+     * Fails the payload transfers of a batch once they take longer than the
+     * payload batch timeout, if one is set. Transfers that already started
+     * are not interrupted.
+     */
+    private CompletableFuture<Void> withPayloadBatchTimeout(CompletableFuture<Void> transfers) {
+        if (timeoutScheduler == null || transfers.isDone()) {
+            return transfers;
+        }
+        long timeoutMillis = clientConfiguration.getPayloadBatchTimeoutMillis();
+        CompletableFuture<Void> result = new CompletableFuture<Void>();
+        ScheduledFuture<?> timeout = timeoutScheduler.schedule(() -> {
+            String errorMessage = "Transferring message payloads did not complete within " + timeoutMillis + " ms.";
+            if (result.completeExceptionally(new AmazonClientException(errorMessage))) {
+                LOG.error(errorMessage);
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        transfers.whenComplete((v, exception) -> {
+            timeout.cancel(false);
+            if (exception != null) {
+                result.completeExceptionally(exception);
+            } else {
+                result.complete(null);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Calls the wrapped asynchronous client and adapts its callback to a
+     * {@link CompletableFuture}, so that no thread waits for the response.
+     */
+    private static <REQUEST extends AmazonWebServiceRequest, RESULT> CompletableFuture<RESULT> callAsync(
+            REQUEST request, BiFunction<REQUEST, AsyncHandler<REQUEST, RESULT>, Future<RESULT>> asyncCall) {
+        CompletableFuture<RESULT> future = new CompletableFuture<RESULT>();
+        try {
+            asyncCall.apply(request, new AsyncHandler<REQUEST, RESULT>() {
+                @Override
+                public void onError(Exception exception) {
+                    future.completeExceptionally(exception);
+                }
+
+                @Override
+                public void onSuccess(REQUEST request, RESULT result) {
+                    future.complete(result);
+                }
+            });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private static <REQUEST extends AmazonWebServiceRequest, RESULT> CompletableFuture<RESULT> withAsyncHandler(
+            CompletableFuture<RESULT> future, REQUEST request, AsyncHandler<REQUEST, RESULT> asyncHandler) {
+        if (asyncHandler == null) {
+            return future;
+        }
+        return future.whenComplete((result, throwable) -> {
+            if (throwable == null) {
+                asyncHandler.onSuccess(request, result);
+                return;
+            }
+            Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                    ? throwable.getCause() : throwable;
+            asyncHandler.onError(cause instanceof Exception ? (Exception) cause : new AmazonClientException(cause));
+        });
+    }
+
+    /** {@inheritDoc} */
+    public CompletableFuture<SendMessageResult> sendMessageAsync(SendMessageRequest sendMessageRequest) {
+        return sendMessageAsync(sendMessageRequest, null);
+    }
+
+    /** {@inheritDoc} */
+    public CompletableFuture<SendMessageResult> sendMessageAsync(String queueUrl, String messageBody) {
+        return sendMessageAsync(new SendMessageRequest(queueUrl, messageBody));
+    }
+
+    /** {@inheritDoc} */
+    public CompletableFuture<SendMessageResult> sendMessageAsync(String queueUrl, String messageBody,
+            AsyncHandler<SendMessageRequest, SendMessageResult> asyncHandler) {
+        return sendMessageAsync(new SendMessageRequest(queueUrl, messageBody), asyncHandler);
+    }
+
+    /** {@inheritDoc} */
+    public CompletableFuture<SendMessageBatchResult> sendMessageBatchAsync(SendMessageBatchRequest sendMessageBatchRequest) {
+        return sendMessageBatchAsync(sendMessageBatchRequest, null);
+    }
+
+    /** {@inheritDoc} */
+    public CompletableFuture<SendMessageBatchResult> sendMessageBatchAsync(String queueUrl,
+            List<SendMessageBatchRequestEntry> entries) {
+        return sendMessageBatchAsync(new SendMessageBatchRequest(queueUrl, entries));
+    }
+
+    /** {@inheritDoc} */
+    public CompletableFuture<SendMessageBatchResult> sendMessageBatchAsync(String queueUrl,
+            List<SendMessageBatchRequestEntry> entries,
+            AsyncHandler<SendMessageBatchRequest, SendMessageBatchResult> asyncHandler) {
+        return sendMessageBatchAsync(new SendMessageBatchRequest(queueUrl, entries), asyncHandler);
+    }
+
+    /** {@inheritDoc} */
+    public CompletableFuture<ReceiveMessageResult> receiveMessageAsync(ReceiveMessageRequest receiveMessageRequest) {
+        return receiveMessageAsync(receiveMessageRequest, null);
+    }
+
+    /** {@inheritDoc} */
+    public CompletableFuture<ReceiveMessageResult> receiveMessageAsync(String queueUrl) {
+        return receiveMessageAsync(new ReceiveMessageRequest(queueUrl));
+    }
+
+    /** {@inheritDoc} */
+    public CompletableFuture<ReceiveMessageResult> receiveMessageAsync(String queueUrl,
+            AsyncHandler<ReceiveMessageRequest, ReceiveMessageResult> asyncHandler) {
+        return receiveMessageAsync(new ReceiveMessageRequest(queueUrl), asyncHandler);
+    }
+
+    /** {@inheritDoc} */
+    public CompletableFuture<DeleteMessageResult> deleteMessageAsync(DeleteMessageRequest deleteMessageRequest) {
+        return deleteMessageAsync(deleteMessageRequest, null);
+    }
+
+    /** {@inheritDoc} */
+    public CompletableFuture<DeleteMessageResult> deleteMessageAsync(String queueUrl, String receiptHandle) {
+        return deleteMessageAsync(new DeleteMessageRequest(queueUrl, receiptHandle));
+    }
+
+    /** {@inheritDoc} */
+    public CompletableFuture<DeleteMessageResult> deleteMessageAsync(String queueUrl, String receiptHandle,
+            AsyncHandler<DeleteMessageRequest, DeleteMessageResult> asyncHandler) {
+        return deleteMessageAsync(new DeleteMessageRequest(queueUrl, receiptHandle), asyncHandler);
+    }
+
+    /** {@inheritDoc} */
+    public CompletableFuture<DeleteMessageBatchResult> deleteMessageBatchAsync(
+            DeleteMessageBatchRequest deleteMessageBatchRequest) {
+        return deleteMessageBatchAsync(deleteMessageBatchRequest, null);
+    }
+
+    /** {@inheritDoc} */
+    public CompletableFuture<DeleteMessageBatchResult> deleteMessageBatchAsync(String queueUrl,
+            List<DeleteMessageBatchRequestEntry> entries) {
+        return deleteMessageBatchAsync(new DeleteMessageBatchRequest(queueUrl, entries));
+    }
+
+    /** {@inheritDoc} */
+    public CompletableFuture<DeleteMessageBatchResult> deleteMessageBatchAsync(String queueUrl,
+            List<DeleteMessageBatchRequestEntry> entries,
+            AsyncHandler<DeleteMessageBatchRequest, DeleteMessageBatchResult> asyncHandler) {
+        return deleteMessageBatchAsync(new DeleteMessageBatchRequest(queueUrl, entries), asyncHandler);
+    }
+
+    /** {@inheritDoc} */
+    public CompletableFuture<ChangeMessageVisibilityResult> changeMessageVisibilityAsync(
+            ChangeMessageVisibilityRequest changeMessageVisibilityRequest) {
+        return changeMessageVisibilityAsync(changeMessageVisibilityRequest, null);
+    }
+
+    /** {@inheritDoc} */
+    public CompletableFuture<ChangeMessageVisibilityResult> changeMessageVisibilityAsync(String queueUrl,
+            String receiptHandle, Integer visibilityTimeout) {
+        return changeMessageVisibilityAsync(
+                new ChangeMessageVisibilityRequest(queueUrl, receiptHandle, visibilityTimeout));
+    }
+
+    /** {@inheritDoc} */
+    public CompletableFuture<ChangeMessageVisibilityResult> changeMessageVisibilityAsync(String queueUrl,
+            String receiptHandle, Integer visibilityTimeout,
+            AsyncHandler<ChangeMessageVisibilityRequest, ChangeMessageVisibilityResult> asyncHandler) {
+        return changeMessageVisibilityAsync(
+                new ChangeMessageVisibilityRequest(queueUrl, receiptHandle, visibilityTimeout), asyncHandler);
+    }
+
+    /** {@inheritDoc} */
+    public CompletableFuture<ChangeMessageVisibilityBatchResult> changeMessageVisibilityBatchAsync(
+            ChangeMessageVisibilityBatchRequest changeMessageVisibilityBatchRequest) {
+        return changeMessageVisibilityBatchAsync(changeMessageVisibilityBatchRequest, null);
+    }
+
+    /** {@inheritDoc} */
+    public CompletableFuture<ChangeMessageVisibilityBatchResult> changeMessageVisibilityBatchAsync(String queueUrl,
+            List<ChangeMessageVisibilityBatchRequestEntry> entries) {
+        return changeMessageVisibilityBatchAsync(new ChangeMessageVisibilityBatchRequest(queueUrl, entries));
+    }
+
+    /** {@inheritDoc} */
+    public CompletableFuture<ChangeMessageVisibilityBatchResult> changeMessageVisibilityBatchAsync(String queueUrl,
+            List<ChangeMessageVisibilityBatchRequestEntry> entries,
+            AsyncHandler<ChangeMessageVisibilityBatchRequest, ChangeMessageVisibilityBatchResult> asyncHandler) {
+        return changeMessageVisibilityBatchAsync(new ChangeMessageVisibilityBatchRequest(queueUrl, entries),
+                asyncHandler);
+    }
+
+    /** {@inheritDoc} */
+    public CompletableFuture<PurgeQueueResult> purgeQueueAsync(PurgeQueueRequest purgeQueueRequest) {
+        return purgeQueueAsync(purgeQueueRequest, null);
+    }
+
+    /** {@inheritDoc} */
+    public Future<AddPermissionResult> addPermissionAsync(AddPermissionRequest addPermissionRequest) {
+        return amazonSqsAsyncToBeExtended.addPermissionAsync(addPermissionRequest);
+    }
+
+    /** {@inheritDoc} */
+    public Future<AddPermissionResult> addPermissionAsync(AddPermissionRequest addPermissionRequest,
+            AsyncHandler<AddPermissionRequest, AddPermissionResult> asyncHandler) {
+        return amazonSqsAsyncToBeExtended.addPermissionAsync(addPermissionRequest, asyncHandler);
+    }
+
+    /** {@inheritDoc} */
+    public Future<AddPermissionResult> addPermissionAsync(String queueUrl, String label,
+            List<String> aWSAccountIds, List<String> actions) {
+        return amazonSqsAsyncToBeExtended.addPermissionAsync(queueUrl, label, aWSAccountIds, actions);
+    }
+
+    /** {@inheritDoc} */
+    public Future<AddPermissionResult> addPermissionAsync(String queueUrl, String label,
+            List<String> aWSAccountIds, List<String> actions,
+            AsyncHandler<AddPermissionRequest, AddPermissionResult> asyncHandler) {
+        return amazonSqsAsyncToBeExtended.addPermissionAsync(queueUrl, label, aWSAccountIds, actions, asyncHandler);
+    }
+
+    /** {@inheritDoc} */
+    public Future<CreateQueueResult> createQueueAsync(CreateQueueRequest createQueueRequest) {
+        return amazonSqsAsyncToBeExtended.createQueueAsync(createQueueRequest);
+    }
+
+    /** {@inheritDoc} */
+    public Future<CreateQueueResult> createQueueAsync(CreateQueueRequest createQueueRequest,
+            AsyncHandler<CreateQueueRequest, CreateQueueResult> asyncHandler) {
+        return amazonSqsAsyncToBeExtended.createQueueAsync(createQueueRequest, asyncHandler);
+    }
+
+    /** {@inheritDoc} */
+    public Future<CreateQueueResult> createQueueAsync(String queueName) {
+        return amazonSqsAsyncToBeExtended.createQueueAsync(queueName);
+    }
+
+    /** {@inheritDoc} */
+    public Future<CreateQueueResult> createQueueAsync(String queueName,
+            AsyncHandler<CreateQueueRequest, CreateQueueResult> asyncHandler) {
+        return amazonSqsAsyncToBeExtended.createQueueAsync(queueName, asyncHandler);
+    }
+
+    /** {@inheritDoc} */
+    public Future<DeleteQueueResult> deleteQueueAsync(DeleteQueueRequest deleteQueueRequest) {
+        return amazonSqsAsyncToBeExtended.deleteQueueAsync(deleteQueueRequest);
+    }
+
+    /** {@inheritDoc} */
+    public Future<DeleteQueueResult> deleteQueueAsync(DeleteQueueRequest deleteQueueRequest,
+            AsyncHandler<DeleteQueueRequest, DeleteQueueResult> asyncHandler) {
+        return amazonSqsAsyncToBeExtended.deleteQueueAsync(deleteQueueRequest, asyncHandler);
+    }
+
+    /** {@inheritDoc} */
+    public Future<DeleteQueueResult> deleteQueueAsync(String queueUrl) {
+        return amazonSqsAsyncToBeExtended.deleteQueueAsync(queueUrl);
+    }
+
+    /** {@inheritDoc} */
+    public Future<DeleteQueueResult> deleteQueueAsync(String queueUrl,
+            AsyncHandler<DeleteQueueRequest, DeleteQueueResult> asyncHandler) {
+        return amazonSqsAsyncToBeExtended.deleteQueueAsync(queueUrl, asyncHandler);
+    }
+
+    /** {@inheritDoc} */
+    public Future<GetQueueAttributesResult> getQueueAttributesAsync(GetQueueAttributesRequest getQueueAttributesRequest) {
+        return amazonSqsAsyncToBeExtended.getQueueAttributesAsync(getQueueAttributesRequest);
+    }
+
+    /** {@inheritDoc} */
+    public Future<GetQueueAttributesResult> getQueueAttributesAsync(GetQueueAttributesRequest getQueueAttributesRequest,
+            AsyncHandler<GetQueueAttributesRequest, GetQueueAttributesResult> asyncHandler) {
+        return amazonSqsAsyncToBeExtended.getQueueAttributesAsync(getQueueAttributesRequest, asyncHandler);
+    }
+
+    /** {@inheritDoc} */
+    public Future<GetQueueAttributesResult> getQueueAttributesAsync(String queueUrl, List<String> attributeNames) {
+        return amazonSqsAsyncToBeExtended.getQueueAttributesAsync(queueUrl, attributeNames);
+    }
+
+    /** {@inheritDoc} */
+    public Future<GetQueueAttributesResult> getQueueAttributesAsync(String queueUrl, List<String> attributeNames,
+            AsyncHandler<GetQueueAttributesRequest, GetQueueAttributesResult> asyncHandler) {
+        return amazonSqsAsyncToBeExtended.getQueueAttributesAsync(queueUrl, attributeNames, asyncHandler);
+    }
+
+    /** {@inheritDoc} */
+    public Future<GetQueueUrlResult> getQueueUrlAsync(GetQueueUrlRequest getQueueUrlRequest) {
+        return amazonSqsAsyncToBeExtended.getQueueUrlAsync(getQueueUrlRequest);
+    }
+
+    /** {@inheritDoc} */
+    public Future<GetQueueUrlResult> getQueueUrlAsync(GetQueueUrlRequest getQueueUrlRequest,
+            AsyncHandler<GetQueueUrlRequest, GetQueueUrlResult> asyncHandler) {
+        return amazonSqsAsyncToBeExtended.getQueueUrlAsync(getQueueUrlRequest, asyncHandler);
+    }
+
+    /** {@inheritDoc} */
+    public Future<GetQueueUrlResult> getQueueUrlAsync(String queueName) {
+        return amazonSqsAsyncToBeExtended.getQueueUrlAsync(queueName);
+    }
+
+    /** {@inheritDoc} */
+    public Future<GetQueueUrlResult> getQueueUrlAsync(String queueName,
+            AsyncHandler<GetQueueUrlRequest, GetQueueUrlResult> asyncHandler) {
+        return amazonSqsAsyncToBeExtended.getQueueUrlAsync(queueName, asyncHandler);
+    }
+
+    /** {@inheritDoc} */
+    public Future<ListDeadLetterSourceQueuesResult> listDeadLetterSourceQueuesAsync(
+            ListDeadLetterSourceQueuesRequest listDeadLetterSourceQueuesRequest) {
+        return amazonSqsAsyncToBeExtended.listDeadLetterSourceQueuesAsync(listDeadLetterSourceQueuesRequest);
+    }
+
+    /** {@inheritDoc} */
+    public Future<ListDeadLetterSourceQueuesResult> listDeadLetterSourceQueuesAsync(
+            ListDeadLetterSourceQueuesRequest listDeadLetterSourceQueuesRequest,
+            AsyncHandler<ListDeadLetterSourceQueuesRequest, ListDeadLetterSourceQueuesResult> asyncHandler) {
+        return amazonSqsAsyncToBeExtended.listDeadLetterSourceQueuesAsync(listDeadLetterSourceQueuesRequest,
+                asyncHandler);
+    }
+
+    /** {@inheritDoc} */
+    public Future<ListQueueTagsResult> listQueueTagsAsync(ListQueueTagsRequest listQueueTagsRequest) {
+        return amazonSqsAsyncToBeExtended.listQueueTagsAsync(listQueueTagsRequest);
+    }
+
+    /** {@inheritDoc} */
+    public Future<ListQueueTagsResult> listQueueTagsAsync(ListQueueTagsRequest listQueueTagsRequest,
+            AsyncHandler<ListQueueTagsRequest, ListQueueTagsResult> asyncHandler) {
+        return amazonSqsAsyncToBeExtended.listQueueTagsAsync(listQueueTagsRequest, asyncHandler);
+    }
+
+    /** {@inheritDoc} */
+    public Future<ListQueueTagsResult> listQueueTagsAsync(String queueUrl) {
+        return amazonSqsAsyncToBeExtended.listQueueTagsAsync(queueUrl);
+    }
+
+    /** {@inheritDoc} */
+    public Future<ListQueueTagsResult> listQueueTagsAsync(String queueUrl,
+            AsyncHandler<ListQueueTagsRequest, ListQueueTagsResult> asyncHandler) {
+        return amazonSqsAsyncToBeExtended.listQueueTagsAsync(queueUrl, asyncHandler);
+    }
+
+    /** {@inheritDoc} */
+    public Future<ListQueuesResult> listQueuesAsync(ListQueuesRequest listQueuesRequest) {
+        return amazonSqsAsyncToBeExtended.listQueuesAsync(listQueuesRequest);
+    }
+
+    /** {@inheritDoc} */
+    public Future<ListQueuesResult> listQueuesAsync(ListQueuesRequest listQueuesRequest,
+            AsyncHandler<ListQueuesRequest, ListQueuesResult> asyncHandler) {
+        return amazonSqsAsyncToBeExtended.listQueuesAsync(listQueuesRequest, asyncHandler);
+    }
+
+    /** {@inheritDoc} */
+    public Future<ListQueuesResult> listQueuesAsync() {
+        return amazonSqsAsyncToBeExtended.listQueuesAsync();
+    }
+
+    /** {@inheritDoc} */
+    public Future<ListQueuesResult> listQueuesAsync(AsyncHandler<ListQueuesRequest, ListQueuesResult> asyncHandler) {
+        return amazonSqsAsyncToBeExtended.listQueuesAsync(asyncHandler);
+    }
+
+    /** {@inheritDoc} */
+    public Future<ListQueuesResult> listQueuesAsync(String queueNamePrefix) {
+        return amazonSqsAsyncToBeExtended.listQueuesAsync(queueNamePrefix);
+    }
+
+    /** {@inheritDoc} */
+    public Future<ListQueuesResult> listQueuesAsync(String queueNamePrefix,
+            AsyncHandler<ListQueuesRequest, ListQueuesResult> asyncHandler) {
+        return amazonSqsAsyncToBeExtended.listQueuesAsync(queueNamePrefix, asyncHandler);
+    }
+
+    /** {@inheritDoc} */
+    public Future<RemovePermissionResult> removePermissionAsync(RemovePermissionRequest removePermissionRequest) {
+        return amazonSqsAsyncToBeExtended.removePermissionAsync(removePermissionRequest);
+    }
+
+    /** {@inheritDoc} */
+    public Future<RemovePermissionResult> removePermissionAsync(RemovePermissionRequest removePermissionRequest,
+            AsyncHandler<RemovePermissionRequest, RemovePermissionResult> asyncHandler) {
+        return amazonSqsAsyncToBeExtended.removePermissionAsync(removePermissionRequest, asyncHandler);
+    }
+
+    /** {@inheritDoc} */
+    public Future<RemovePermissionResult> removePermissionAsync(String queueUrl, String label) {
+        return amazonSqsAsyncToBeExtended.removePermissionAsync(queueUrl, label);
+    }
+
+    /** {@inheritDoc} */
+    public Future<RemovePermissionResult> removePermissionAsync(String queueUrl, String label,
+            AsyncHandler<RemovePermissionRequest, RemovePermissionResult> asyncHandler) {
+        return amazonSqsAsyncToBeExtended.removePermissionAsync(queueUrl, label, asyncHandler);
+    }
+
+    /** {@inheritDoc} */
+    public Future<SetQueueAttributesResult> setQueueAttributesAsync(SetQueueAttributesRequest setQueueAttributesRequest) {
+        return amazonSqsAsyncToBeExtended.setQueueAttributesAsync(setQueueAttributesRequest);
+    }
+
+    /** {@inheritDoc} */
+    public Future<SetQueueAttributesResult> setQueueAttributesAsync(SetQueueAttributesRequest setQueueAttributesRequest,
+            AsyncHandler<SetQueueAttributesRequest, SetQueueAttributesResult> asyncHandler) {
+        return amazonSqsAsyncToBeExtended.setQueueAttributesAsync(setQueueAttributesRequest, asyncHandler);
+    }
+
+    /** {@inheritDoc} */
+    public Future<SetQueueAttributesResult> setQueueAttributesAsync(String queueUrl, Map<String, String> attributes) {
+        return amazonSqsAsyncToBeExtended.setQueueAttributesAsync(queueUrl, attributes);
+    }
+
+    /** {@inheritDoc} */
+    public Future<SetQueueAttributesResult> setQueueAttributesAsync(String queueUrl, Map<String, String> attributes,
+            AsyncHandler<SetQueueAttributesRequest, SetQueueAttributesResult> asyncHandler) {
+        return amazonSqsAsyncToBeExtended.setQueueAttributesAsync(queueUrl, attributes, asyncHandler);
+    }
+
+    /** {@inheritDoc} */
+    public Future<TagQueueResult> tagQueueAsync(TagQueueRequest tagQueueRequest) {
+        return amazonSqsAsyncToBeExtended.tagQueueAsync(tagQueueRequest);
+    }
+
+    /** {@inheritDoc} */
+    public Future<TagQueueResult> tagQueueAsync(TagQueueRequest tagQueueRequest,
+            AsyncHandler<TagQueueRequest, TagQueueResult> asyncHandler) {
+        return amazonSqsAsyncToBeExtended.tagQueueAsync(tagQueueRequest, asyncHandler);
+    }
+
+    /** {@inheritDoc} */
+    public Future<TagQueueResult> tagQueueAsync(String queueUrl, Map<String, String> tags) {
+        return amazonSqsAsyncToBeExtended.tagQueueAsync(queueUrl, tags);
+    }
+
+    /** {@inheritDoc} */
+    public Future<TagQueueResult> tagQueueAsync(String queueUrl, Map<String, String> tags,
+            AsyncHandler<TagQueueRequest, TagQueueResult> asyncHandler) {
+        return amazonSqsAsyncToBeExtended.tagQueueAsync(queueUrl, tags, asyncHandler);
+    }
+
+    /** {@inheritDoc} */
+    public Future<UntagQueueResult> untagQueueAsync(UntagQueueRequest untagQueueRequest) {
+        return amazonSqsAsyncToBeExtended.untagQueueAsync(untagQueueRequest);
+    }
+
+    /** {@inheritDoc} */
+    public Future<UntagQueueResult> untagQueueAsync(UntagQueueRequest untagQueueRequest,
+            AsyncHandler<UntagQueueRequest, UntagQueueResult> asyncHandler) {
+        return amazonSqsAsyncToBeExtended.untagQueueAsync(untagQueueRequest, asyncHandler);
+    }
+
+    /** {@inheritDoc} */
+    public Future<UntagQueueResult> untagQueueAsync(String queueUrl, List<String> tagKeys) {
+        return amazonSqsAsyncToBeExtended.untagQueueAsync(queueUrl, tagKeys);
+    }
+
+    /** {@inheritDoc} */
+    public Future<UntagQueueResult> untagQueueAsync(String queueUrl, List<String> tagKeys,
+            AsyncHandler<UntagQueueRequest, UntagQueueResult> asyncHandler) {
+        return amazonSqsAsyncToBeExtended.untagQueueAsync(queueUrl, tagKeys, asyncHandler);
+    }
+}
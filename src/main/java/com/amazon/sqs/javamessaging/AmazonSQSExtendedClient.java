@@ -15,12 +15,26 @@
 
 package com.amazon.sqs.javamessaging;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.sqs.AmazonSQS;
 import com.amazonaws.services.sqs.model.BatchEntryIdsNotDistinctException;
 import com.amazonaws.services.sqs.model.BatchRequestTooLongException;
@@ -32,6 +46,7 @@ import com.amazonaws.services.sqs.model.ChangeMessageVisibilityResult;
 import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
 import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
 import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResultEntry;
 import com.amazonaws.services.sqs.model.DeleteMessageRequest;
 import com.amazonaws.services.sqs.model.DeleteMessageResult;
 import com.amazonaws.services.sqs.model.EmptyBatchRequestException;
@@ -83,9 +98,14 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
     private static final String USER_AGENT_HEADER = Util.getUserAgentHeader(AmazonSQSExtendedClient.class.getSimpleName());
     static final String LEGACY_RESERVED_ATTRIBUTE_NAME = "SQSLargePayloadSize";
     static final List<String> RESERVED_ATTRIBUTE_NAMES = Arrays.asList(LEGACY_RESERVED_ATTRIBUTE_NAME,
-            SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME);
-    private ExtendedClientConfiguration clientConfiguration;
-    private PayloadStore payloadStore;
+            SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME, SQSExtendedClientConstants.INLINE_ENCODING_ATTRIBUTE_NAME);
+    // Upper bound on the size of a pointer and its reserved attribute; S3
+    // keys are at most 1024 bytes and bucket names at most 63.
+    static final int MAX_POINTER_SIZE = 2048;
+    ExtendedClientConfiguration clientConfiguration;
+    private StreamingPayloadStore payloadStore;
+    private BackgroundPayloadDeleter payloadDeleter;
+    private ExecutorService transferExecutor;
 
     /**
      * Constructs a new Amazon SQS extended client to invoke service methods on
@@ -121,9 +141,146 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
     public AmazonSQSExtendedClient(AmazonSQS sqsClient, ExtendedClientConfiguration extendedClientConfig) {
         super(sqsClient);
         this.clientConfiguration = new ExtendedClientConfiguration(extendedClientConfig);
-        S3Dao s3Dao = new S3Dao(clientConfiguration.getAmazonS3Client());
-        this.payloadStore = new S3BackedPayloadStore(s3Dao, clientConfiguration.getS3BucketName(),
-                clientConfiguration.getSSEAwsKeyManagementParams());
+        this.payloadStore = clientConfiguration.getPayloadStore() != null
+                ? StreamingPayloadStoreAdapter.of(clientConfiguration.getPayloadStore())
+                : createS3PayloadStore();
+        if (clientConfiguration.isPayloadSupportEnabled() && clientConfiguration.getSharedMemoryPayloadDirectory() != null) {
+            this.payloadStore = new SharedMemoryPayloadStore(clientConfiguration.getSharedMemoryPayloadDirectory(),
+                    clientConfiguration.getSharedMemoryPayloadMaxSize(), clientConfiguration.getSharedMemoryPayloadMaxAgeMillis(),
+                    clientConfiguration.isSharedMemoryPayloadFallbackCopyEnabled(), payloadStore);
+        }
+        if (clientConfiguration.isPayloadSupportEnabled() && clientConfiguration.getPayloadCacheDirectory() != null) {
+            this.payloadStore = new DiskCachingPayloadStore(payloadStore, clientConfiguration.getPayloadCacheDirectory(),
+                    clientConfiguration.getPayloadCacheDirectoryMaxSize(), clientConfiguration.getPayloadStore() == null);
+        }
+        if (clientConfiguration.isPayloadSupportEnabled() && clientConfiguration.getPayloadCacheMaxSize() > 0) {
+            this.payloadStore = new CachingPayloadStore(payloadStore, clientConfiguration.getPayloadCacheMaxSize(),
+                    clientConfiguration.isPayloadCacheOffHeap(), clientConfiguration.getPayloadStore() == null);
+        }
+        if (clientConfiguration.isPayloadSupportEnabled() && clientConfiguration.doesCleanupS3Payload()
+                && clientConfiguration.isBackgroundPayloadDeletionEnabled()) {
+            this.payloadDeleter = new BackgroundPayloadDeleter(payloadStore,
+                    clientConfiguration.getBackgroundPayloadDeletionQueueSize(),
+                    clientConfiguration.getBackgroundPayloadDeletionMaxAttempts());
+        }
+    }
+
+    /**
+     * Creates the store of payloads in Amazon S3, routed by size band if any
+     * payload size bands are configured.
+     */
+    private StreamingPayloadStore createS3PayloadStore() {
+        StreamingPayloadStore defaultStore = createStripedS3PayloadStore();
+        List<PayloadSizeBand> payloadSizeBands = clientConfiguration.getPayloadSizeBands();
+        if (!clientConfiguration.isPayloadSupportEnabled() || payloadSizeBands.isEmpty()) {
+            return defaultStore;
+        }
+        NavigableMap<Long, StreamingPayloadStore> storesByMinSize = new TreeMap<Long, StreamingPayloadStore>();
+        Map<String, StreamingPayloadStore> storesByBucketName = new HashMap<String, StreamingPayloadStore>();
+        for (PayloadSizeBand band : payloadSizeBands) {
+            if (band.getMinPayloadSize() < 0 || storesByMinSize.containsKey(band.getMinPayloadSize())) {
+                String errorMessage = "Payload size bands must have distinct non-negative minimum sizes, but got "
+                        + band.getMinPayloadSize() + ".";
+                LOG.error(errorMessage);
+                throw new AmazonClientException(errorMessage);
+            }
+            boolean dedicatedBucket = band.getS3BucketName() != null;
+            if (dedicatedBucket && band.getAmazonS3Client() == null) {
+                String errorMessage = "The payload size band of bucket " + band.getS3BucketName()
+                        + " must have an Amazon S3 client.";
+                LOG.error(errorMessage);
+                throw new AmazonClientException(errorMessage);
+            }
+            PayloadKeyLayout keyLayout = new PayloadKeyLayout(
+                    band.getKeyPrefix() != null ? band.getKeyPrefix() : clientConfiguration.getPayloadKeyPrefix(),
+                    clientConfiguration.getPayloadKeyHashPrefixCount());
+            long multipartUploadThreshold = band.getMultipartUploadThreshold() != null
+                    ? band.getMultipartUploadThreshold() : clientConfiguration.getMultipartUploadThreshold();
+            StreamingPayloadStore bandStore = createS3PayloadStore(
+                    dedicatedBucket ? band.getAmazonS3Client() : clientConfiguration.getAmazonS3Client(),
+                    dedicatedBucket ? band.getS3BucketName() : clientConfiguration.getS3BucketName(),
+                    keyLayout, multipartUploadThreshold);
+            storesByMinSize.put(band.getMinPayloadSize(), bandStore);
+            if (dedicatedBucket) {
+                storesByBucketName.putIfAbsent(band.getS3BucketName(), bandStore);
+            }
+        }
+        return new SizeBandedPayloadStore(defaultStore, storesByMinSize, storesByBucketName);
+    }
+
+    /**
+     * Creates the store of payloads in the bucket of the client, striped with
+     * the additional payload buckets if there are any.
+     */
+    private StreamingPayloadStore createStripedS3PayloadStore() {
+        PayloadKeyLayout keyLayout = new PayloadKeyLayout(clientConfiguration.getPayloadKeyPrefix(),
+                clientConfiguration.getPayloadKeyHashPrefixCount());
+        S3StreamingPayloadStore s3PayloadStore = createS3PayloadStore(clientConfiguration.getAmazonS3Client(),
+                clientConfiguration.getS3BucketName(), keyLayout, clientConfiguration.getMultipartUploadThreshold());
+        Map<String, AmazonS3> additionalPayloadBuckets = clientConfiguration.getAdditionalPayloadBuckets();
+        if (clientConfiguration.isPayloadSupportEnabled() && !additionalPayloadBuckets.isEmpty()) {
+            if (additionalPayloadBuckets.containsKey(clientConfiguration.getS3BucketName())) {
+                String errorMessage = "The additional payload buckets must not include the bucket "
+                        + clientConfiguration.getS3BucketName() + " of the client.";
+                LOG.error(errorMessage);
+                throw new AmazonClientException(errorMessage);
+            }
+            Map<String, S3StreamingPayloadStore> s3PayloadStores = new LinkedHashMap<String, S3StreamingPayloadStore>();
+            s3PayloadStores.put(clientConfiguration.getS3BucketName(), s3PayloadStore);
+            for (Entry<String, AmazonS3> bucket : additionalPayloadBuckets.entrySet()) {
+                s3PayloadStores.put(bucket.getKey(), createS3PayloadStore(bucket.getValue(), bucket.getKey(), keyLayout,
+                        clientConfiguration.getMultipartUploadThreshold()));
+            }
+            return new StripedPayloadStore(s3PayloadStores, clientConfiguration.getPayloadBucketSelection());
+        }
+        return s3PayloadStore;
+    }
+
+    /**
+     * Creates the store of the payloads in one bucket, with its own uploader,
+     * downloader and deduplicator.
+     */
+    private S3StreamingPayloadStore createS3PayloadStore(AmazonS3 s3, String s3BucketName, PayloadKeyLayout keyLayout,
+            long multipartUploadThreshold) {
+        MultipartPayloadUploader multipartUploader = null;
+        if (multipartUploadThreshold > 0) {
+            multipartUploader = new MultipartPayloadUploader(s3,
+                    clientConfiguration.getMultipartUploadPartSize(), clientConfiguration.getMultipartUploadConcurrency(),
+                    clientConfiguration.getMultipartUploadPartRetries(), getTransferExecutor());
+        }
+        RangedPayloadDownloader rangedDownloader = null;
+        if (clientConfiguration.getRangedDownloadThreshold() > 0) {
+            rangedDownloader = new RangedPayloadDownloader(s3,
+                    clientConfiguration.getRangedDownloadPartSize(), clientConfiguration.getRangedDownloadConcurrency(),
+                    getTransferExecutor());
+        }
+        PayloadDeduplicator payloadDeduplicator = null;
+        if (clientConfiguration.isPayloadDeduplicationEnabled()) {
+            payloadDeduplicator = new PayloadDeduplicator(clientConfiguration.getPayloadDeduplicationMaxAgeMillis(),
+                    clientConfiguration.getPayloadDeduplicationCacheSize());
+        }
+        return new S3StreamingPayloadStore(s3, s3BucketName, clientConfiguration.getSSEAwsKeyManagementParams(),
+                multipartUploader, multipartUploadThreshold,
+                rangedDownloader, clientConfiguration.getRangedDownloadThreshold(),
+                clientConfiguration.getPayloadCodec(), payloadDeduplicator, keyLayout);
+    }
+
+    /**
+     * Gets the executor shared by the multipart uploads and ranged downloads
+     * of all buckets, creating it on first use. Its threads are bounded by the
+     * upload and download concurrency, so that concurrent transfers queue
+     * their parts instead of adding threads, and idle threads go away.
+     */
+    private ExecutorService getTransferExecutor() {
+        if (transferExecutor == null) {
+            int threads = Math.max(1, clientConfiguration.getMultipartUploadConcurrency())
+                    + Math.max(1, clientConfiguration.getRangedDownloadConcurrency());
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("sqs-extended-transfer"));
+            executor.allowCoreThreadTimeOut(true);
+            transferExecutor = executor;
+        }
+        return transferExecutor;
     }
 
     /**
@@ -161,6 +318,16 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
      *             side issue.
      */
     public SendMessageResult sendMessage(SendMessageRequest sendMessageRequest) {
+        return super.sendMessage(prepareSendMessageRequest(sendMessageRequest));
+    }
+
+    /**
+     * Validates the request and uploads the message payload to Amazon S3 if
+     * necessary.
+     *
+     * @return the request to send to Amazon SQS.
+     */
+    SendMessageRequest prepareSendMessageRequest(SendMessageRequest sendMessageRequest) {
         //TODO: Clone request since it's modified in this method and will cause issues if the client reuses request object.
         if (sendMessageRequest == null) {
             String errorMessage = "sendMessageRequest cannot be null.";
@@ -171,7 +338,7 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
         sendMessageRequest.getRequestClientOptions().appendUserAgent(USER_AGENT_HEADER);
 
         if (!clientConfiguration.isPayloadSupportEnabled()) {
-            return super.sendMessage(sendMessageRequest);
+            return sendMessageRequest;
         }
 
         if (sendMessageRequest.getMessageBody() == null || "".equals(sendMessageRequest.getMessageBody())) {
@@ -181,12 +348,14 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
         }
 
         //Check message attributes for ExtendedClient related constraints
-        checkMessageAttributes(sendMessageRequest.getMessageAttributes());
+        long msgAttributesSize = checkMessageAttributes(sendMessageRequest.getMessageAttributes());
 
-        if (clientConfiguration.isAlwaysThroughS3() || isLarge(sendMessageRequest)) {
+        if (clientConfiguration.isAlwaysThroughS3()) {
             sendMessageRequest = storeMessageInS3(sendMessageRequest);
+        } else if (isLarge(sendMessageRequest.getMessageBody(), msgAttributesSize)) {
+            sendMessageRequest = offloadMessagePayload(sendMessageRequest, msgAttributesSize);
         }
-        return super.sendMessage(sendMessageRequest);
+        return sendMessageRequest;
     }
 
     /**
@@ -228,6 +397,233 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
         return sendMessage(sendMessageRequest);
     }
 
+    /**
+     * <p>
+     * Delivers a message to the specified queue, uploading its payload from
+     * the stream straight to Amazon S3. The payload is never loaded into
+     * memory, and only the pointer to the Amazon S3 object is sent to Amazon
+     * SQS. The stream is read to its end but not closed.
+     * </p>
+     *
+     * <b>IMPORTANT:</b> The message body of the request is replaced by the
+     * pointer to the payload. </p>
+     *
+     * @param sendMessageRequest
+     *            Container for the parameters of the message, except its body.
+     * @param payload
+     *            The stream to read the message payload from.
+     * @param payloadLength
+     *            The number of bytes the stream provides.
+     *
+     * @return The response from the SendMessage service method, as returned by
+     *         AmazonSQS.
+     *
+     * @throws AmazonClientException
+     *             If payload support is disabled, or if any internal errors are
+     *             encountered inside the client while attempting to make the
+     *             request or handle the response.
+     * @throws AmazonServiceException
+     *             If an error response is returned by AmazonSQS or Amazon S3
+     *             indicating either a problem with the data in the request, or
+     *             a server side issue.
+     */
+    public SendMessageResult sendMessage(SendMessageRequest sendMessageRequest, InputStream payload, long payloadLength) {
+        if (sendMessageRequest == null) {
+            String errorMessage = "sendMessageRequest cannot be null.";
+            LOG.error(errorMessage);
+            throw new AmazonClientException(errorMessage);
+        }
+
+        if (payload == null || payloadLength <= 0) {
+            String errorMessage = "payload cannot be null or empty.";
+            LOG.error(errorMessage);
+            throw new AmazonClientException(errorMessage);
+        }
+
+        if (!clientConfiguration.isPayloadSupportEnabled()) {
+            String errorMessage = "Payload support must be enabled to send a message payload from a stream.";
+            LOG.error(errorMessage);
+            throw new AmazonClientException(errorMessage);
+        }
+
+        sendMessageRequest.getRequestClientOptions().appendUserAgent(USER_AGENT_HEADER);
+
+        //Check message attributes for ExtendedClient related constraints
+        checkMessageAttributes(sendMessageRequest.getMessageAttributes());
+
+        return super.sendMessage(storeMessageInS3(sendMessageRequest, payload, payloadLength));
+    }
+
+    /**
+     * <p>
+     * Delivers a message to the specified queue, uploading the content of the
+     * file straight to Amazon S3. The file is never loaded into memory, and
+     * only the pointer to the Amazon S3 object is sent to Amazon SQS.
+     * </p>
+     *
+     * <b>IMPORTANT:</b> The message body of the request is replaced by the
+     * pointer to the payload. </p>
+     *
+     * @param sendMessageRequest
+     *            Container for the parameters of the message, except its body.
+     * @param payload
+     *            The file to read the message payload from.
+     *
+     * @return The response from the SendMessage service method, as returned by
+     *         AmazonSQS.
+     *
+     * @throws AmazonClientException
+     *             If payload support is disabled, if the file cannot be read,
+     *             or if any internal errors are encountered inside the client
+     *             while attempting to make the request or handle the response.
+     * @throws AmazonServiceException
+     *             If an error response is returned by AmazonSQS or Amazon S3
+     *             indicating either a problem with the data in the request, or
+     *             a server side issue.
+     */
+    public SendMessageResult sendMessage(SendMessageRequest sendMessageRequest, Path payload) {
+        if (payload == null) {
+            String errorMessage = "payload cannot be null.";
+            LOG.error(errorMessage);
+            throw new AmazonClientException(errorMessage);
+        }
+
+        try (InputStream payloadStream = Files.newInputStream(payload)) {
+            return sendMessage(sendMessageRequest, payloadStream, Files.size(payload));
+        } catch (IOException e) {
+            String errorMessage = "Failed to read the message payload from " + payload + ".";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        }
+    }
+
+    /**
+     * <p>
+     * Delivers a message to the specified queue, uploading the content of the
+     * channel from its current position to its end straight to Amazon S3. The
+     * content is never loaded into memory, and only the pointer to the Amazon
+     * S3 object is sent to Amazon SQS. The channel is not closed.
+     * </p>
+     *
+     * <b>IMPORTANT:</b> The message body of the request is replaced by the
+     * pointer to the payload. </p>
+     *
+     * @param sendMessageRequest
+     *            Container for the parameters of the message, except its body.
+     * @param payload
+     *            The channel to read the message payload from.
+     *
+     * @return The response from the SendMessage service method, as returned by
+     *         AmazonSQS.
+     *
+     * @throws AmazonClientException
+     *             If payload support is disabled, if the channel cannot be
+     *             read, or if any internal errors are encountered inside the
+     *             client while attempting to make the request or handle the
+     *             response.
+     * @throws AmazonServiceException
+     *             If an error response is returned by AmazonSQS or Amazon S3
+     *             indicating either a problem with the data in the request, or
+     *             a server side issue.
+     */
+    public SendMessageResult sendMessage(SendMessageRequest sendMessageRequest, FileChannel payload) {
+        if (payload == null) {
+            String errorMessage = "payload cannot be null.";
+            LOG.error(errorMessage);
+            throw new AmazonClientException(errorMessage);
+        }
+
+        long payloadLength;
+        try {
+            payloadLength = payload.size() - payload.position();
+        } catch (IOException e) {
+            String errorMessage = "Failed to read the message payload from the channel.";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        }
+
+        // The stream is not closed here, since closing it would also close the channel.
+        return sendMessage(sendMessageRequest, Channels.newInputStream(payload), payloadLength);
+    }
+
+    /**
+     * <p>
+     * Delivers a message to the specified queue, storing the binary payload
+     * in Amazon S3 as raw bytes, without encoding it as text. Only the pointer
+     * to the Amazon S3 object is sent to Amazon SQS. Messages sent this way
+     * should be received with {@link #receivePayloadMessages}.
+     * </p>
+     *
+     * <b>IMPORTANT:</b> The message body of the request is replaced by the
+     * pointer to the payload. </p>
+     *
+     * @param sendMessageRequest
+     *            Container for the parameters of the message, except its body.
+     * @param payload
+     *            The message payload.
+     *
+     * @return The response from the SendMessage service method, as returned by
+     *         AmazonSQS.
+     *
+     * @throws AmazonClientException
+     *             If payload support is disabled, or if any internal errors are
+     *             encountered inside the client while attempting to make the
+     *             request or handle the response.
+     * @throws AmazonServiceException
+     *             If an error response is returned by AmazonSQS or Amazon S3
+     *             indicating either a problem with the data in the request, or
+     *             a server side issue.
+     */
+    public SendMessageResult sendMessage(SendMessageRequest sendMessageRequest, byte[] payload) {
+        if (payload == null) {
+            String errorMessage = "payload cannot be null.";
+            LOG.error(errorMessage);
+            throw new AmazonClientException(errorMessage);
+        }
+
+        return sendMessage(sendMessageRequest, new ByteArrayInputStream(payload), payload.length);
+    }
+
+    /**
+     * <p>
+     * Delivers a message to the specified queue, storing the remaining bytes
+     * of the buffer in Amazon S3 as raw bytes, without encoding them as text
+     * or copying them to the heap. Direct and read-only buffers are supported,
+     * and the position of the buffer is not changed. Only the pointer to the
+     * Amazon S3 object is sent to Amazon SQS. Messages sent this way should be
+     * received with {@link #receivePayloadMessages}.
+     * </p>
+     *
+     * <b>IMPORTANT:</b> The message body of the request is replaced by the
+     * pointer to the payload. </p>
+     *
+     * @param sendMessageRequest
+     *            Container for the parameters of the message, except its body.
+     * @param payload
+     *            The buffer holding the message payload.
+     *
+     * @return The response from the SendMessage service method, as returned by
+     *         AmazonSQS.
+     *
+     * @throws AmazonClientException
+     *             If payload support is disabled, or if any internal errors are
+     *             encountered inside the client while attempting to make the
+     *             request or handle the response.
+     * @throws AmazonServiceException
+     *             If an error response is returned by AmazonSQS or Amazon S3
+     *             indicating either a problem with the data in the request, or
+     *             a server side issue.
+     */
+    public SendMessageResult sendMessage(SendMessageRequest sendMessageRequest, ByteBuffer payload) {
+        if (payload == null) {
+            String errorMessage = "payload cannot be null.";
+            LOG.error(errorMessage);
+            throw new AmazonClientException(errorMessage);
+        }
+
+        return sendMessage(sendMessageRequest, new ByteBufferInputStream(payload), payload.remaining());
+    }
+
     /**
      * <p>
      * Retrieves one or more messages, with a maximum limit of 10 messages, from
@@ -329,46 +725,27 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
      *             side issue.
      */
     public ReceiveMessageResult receiveMessage(ReceiveMessageRequest receiveMessageRequest) {
-        //TODO: Clone request since it's modified in this method and will cause issues if the client reuses request object.
-        if (receiveMessageRequest == null) {
-            String errorMessage = "receiveMessageRequest cannot be null.";
-            LOG.error(errorMessage);
-            throw new AmazonClientException(errorMessage);
-        }
-
-        receiveMessageRequest.getRequestClientOptions().appendUserAgent(USER_AGENT_HEADER);
+        ReceiveMessageResult receiveMessageResult = super.receiveMessage(prepareReceiveMessageRequest(receiveMessageRequest));
 
         if (!clientConfiguration.isPayloadSupportEnabled()) {
-            return super.receiveMessage(receiveMessageRequest);
+            return receiveMessageResult;
         }
-        //Remove before adding to avoid any duplicates
-        receiveMessageRequest.getMessageAttributeNames().removeAll(RESERVED_ATTRIBUTE_NAMES);
-        receiveMessageRequest.getMessageAttributeNames().addAll(RESERVED_ATTRIBUTE_NAMES);
-
-        ReceiveMessageResult receiveMessageResult = super.receiveMessage(receiveMessageRequest);
 
         List<Message> messages = receiveMessageResult.getMessages();
-        for (Message message : messages) {
+        List<Callable<Message>> payloadRetrievals = new ArrayList<Callable<Message>>();
+        for (final Message message : messages) {
 
             // for each received message check if they are stored in S3.
-            Optional<String> largePayloadAttributeName = getReservedAttributeNameIfPresent(message.getMessageAttributes());
-            if (largePayloadAttributeName.isPresent()) {
-                String largeMessagePointer = message.getBody();
-
-                message.setBody(payloadStore.getOriginalPayload(largeMessagePointer));
-
-                // remove the additional attribute before returning the message
-                // to user.
-                message.getMessageAttributes().keySet().removeAll(RESERVED_ATTRIBUTE_NAMES);
-
-                // Embed s3 object pointer in the receipt handle.
-                String modifiedReceiptHandle = embedS3PointerInReceiptHandle(
-                        message.getReceiptHandle(),
-                        largeMessagePointer);
-
-                message.setReceiptHandle(modifiedReceiptHandle);
+            if (isLargePayloadMessage(message)) {
+                payloadRetrievals.add(() -> retrieveOriginalPayload(message));
+            } else if (isInlinePayloadMessage(message)) {
+                payloadRetrievals.add(() -> decodeInlinePayload(message));
             }
         }
+
+        // Messages are updated in place, so the original order is preserved.
+        PayloadTasks.invokeAll(clientConfiguration.getPayloadExecutor(), payloadRetrievals,
+                clientConfiguration.getPayloadBatchTimeoutMillis());
         return receiveMessageResult;
     }
 
@@ -476,6 +853,80 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
         return receiveMessage(receiveMessageRequest);
     }
 
+    /**
+     * <p>
+     * Retrieves one or more messages, with a maximum limit of 10 messages, from
+     * the specified queue without downloading their payloads from Amazon S3.
+     * </p>
+     * <p>
+     * The payloads of the returned messages are read only when
+     * {@link PayloadMessage#openPayloadStream()} or
+     * {@link PayloadMessage#openPayloadChannel()} is called, so payloads of any
+     * size can be processed in constant memory. The receipt handles of the
+     * returned messages can be used with {@link #deleteMessage} and
+     * {@link #changeMessageVisibility} as usual.
+     * </p>
+     *
+     * @param receiveMessageRequest
+     *            Container for the necessary parameters to execute the
+     *            ReceiveMessage service method on AmazonSQS.
+     *
+     * @return The received messages.
+     *
+     * @throws OverLimitException
+     *
+     * @throws AmazonClientException
+     *             If any internal errors are encountered inside the client
+     *             while attempting to make the request or handle the response.
+     *             For example if a network connection is not available.
+     * @throws AmazonServiceException
+     *             If an error response is returned by AmazonSQS indicating
+     *             either a problem with the data in the request, or a server
+     *             side issue.
+     */
+    public List<PayloadMessage> receivePayloadMessages(ReceiveMessageRequest receiveMessageRequest) {
+        ReceiveMessageResult receiveMessageResult = super.receiveMessage(prepareReceiveMessageRequest(receiveMessageRequest));
+
+        List<PayloadMessage> payloadMessages = new ArrayList<PayloadMessage>();
+        for (Message message : receiveMessageResult.getMessages()) {
+            if (clientConfiguration.isPayloadSupportEnabled() && isLargePayloadMessage(message)) {
+                long payloadSize = getPayloadSize(message);
+                String largeMessagePointer = detachPayloadPointer(message);
+                payloadMessages.add(new PayloadMessage(message, largeMessagePointer, payloadSize, payloadStore));
+            } else if (clientConfiguration.isPayloadSupportEnabled() && isInlinePayloadMessage(message)) {
+                payloadMessages.add(new PayloadMessage(decodeInlinePayload(message)));
+            } else {
+                payloadMessages.add(new PayloadMessage(message));
+            }
+        }
+        return payloadMessages;
+    }
+
+    /**
+     * Validates the request and asks Amazon SQS for the reserved attributes
+     * that mark messages with payloads stored in Amazon S3.
+     *
+     * @return the request to send to Amazon SQS.
+     */
+    ReceiveMessageRequest prepareReceiveMessageRequest(ReceiveMessageRequest receiveMessageRequest) {
+        //TODO: Clone request since it's modified in this method and will cause issues if the client reuses request object.
+        if (receiveMessageRequest == null) {
+            String errorMessage = "receiveMessageRequest cannot be null.";
+            LOG.error(errorMessage);
+            throw new AmazonClientException(errorMessage);
+        }
+
+        receiveMessageRequest.getRequestClientOptions().appendUserAgent(USER_AGENT_HEADER);
+
+        if (!clientConfiguration.isPayloadSupportEnabled()) {
+            return receiveMessageRequest;
+        }
+        //Remove before adding to avoid any duplicates
+        receiveMessageRequest.getMessageAttributeNames().removeAll(RESERVED_ATTRIBUTE_NAMES);
+        receiveMessageRequest.getMessageAttributeNames().addAll(RESERVED_ATTRIBUTE_NAMES);
+        return receiveMessageRequest;
+    }
+
     /**
      * <p>
      * Deletes the specified message from the specified queue and deletes the
@@ -525,6 +976,25 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
      *             side issue.
      */
     public DeleteMessageResult deleteMessage(DeleteMessageRequest deleteMessageRequest) {
+        List<PayloadReceiptHandle> payloadReceiptHandles = new ArrayList<PayloadReceiptHandle>(1);
+        DeleteMessageResult deleteMessageResult = super.deleteMessage(
+                prepareDeleteMessageRequest(deleteMessageRequest, payloadReceiptHandles));
+        deleteMessagePayloads(payloadReceiptHandles);
+        return deleteMessageResult;
+    }
+
+    /**
+     * Validates the request and restores the original receipt handle. The
+     * payload to delete from Amazon S3 is collected, to be deleted with
+     * {@link #deleteMessagePayloads(List)} once the message is deleted.
+     *
+     * @param payloadReceiptHandles
+     *            Receives the parsed receipt handle, which locates the payload
+     *            of the message, if payloads are cleaned up.
+     * @return the request to send to Amazon SQS.
+     */
+    DeleteMessageRequest prepareDeleteMessageRequest(DeleteMessageRequest deleteMessageRequest,
+            List<PayloadReceiptHandle> payloadReceiptHandles) {
 
         if (deleteMessageRequest == null) {
             String errorMessage = "deleteMessageRequest cannot be null.";
@@ -535,24 +1005,36 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
         deleteMessageRequest.getRequestClientOptions().appendUserAgent(USER_AGENT_HEADER);
 
         if (!clientConfiguration.isPayloadSupportEnabled()) {
-            return super.deleteMessage(deleteMessageRequest);
+            return deleteMessageRequest;
         }
 
-        String receiptHandle = deleteMessageRequest.getReceiptHandle();
-        String origReceiptHandle = receiptHandle;
-
         // Update original receipt handle if needed
-        if (isS3ReceiptHandle(receiptHandle)) {
-            origReceiptHandle = getOrigReceiptHandle(receiptHandle);
-            // Delete pay load from S3 if needed
+        PayloadReceiptHandle payloadReceiptHandle = PayloadReceiptHandle.parse(deleteMessageRequest.getReceiptHandle());
+        if (payloadReceiptHandle != null) {
+            deleteMessageRequest.setReceiptHandle(payloadReceiptHandle.getReceiptHandle());
+            // Delete pay load from S3 if needed, once the message is deleted
             if (clientConfiguration.doesCleanupS3Payload()) {
-                String messagePointer = getMessagePointerFromModifiedReceiptHandle(receiptHandle);
-                payloadStore.deleteOriginalPayload(messagePointer);
+                payloadReceiptHandles.add(payloadReceiptHandle);
             }
         }
+        return deleteMessageRequest;
+    }
 
-        deleteMessageRequest.setReceiptHandle(origReceiptHandle);
-        return super.deleteMessage(deleteMessageRequest);
+    /**
+     * Deletes the payloads of deleted messages, or queues them for the
+     * background deleter if it is enabled.
+     */
+    void deleteMessagePayloads(List<PayloadReceiptHandle> payloadReceiptHandles) {
+        if (payloadReceiptHandles.isEmpty()) {
+            return;
+        }
+        if (payloadDeleter != null) {
+            payloadDeleter.delete(payloadReceiptHandles);
+        } else if (payloadReceiptHandles.size() == 1) {
+            payloadReceiptHandles.get(0).deletePayload(payloadStore);
+        } else {
+            PayloadReceiptHandle.deletePayloads(payloadStore, payloadReceiptHandles);
+        }
     }
 
     /**
@@ -686,12 +1168,20 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
      */
     public ChangeMessageVisibilityResult changeMessageVisibility(ChangeMessageVisibilityRequest changeMessageVisibilityRequest)
             throws AmazonServiceException, AmazonClientException {
+        return amazonSqsToBeExtended.changeMessageVisibility(
+                prepareChangeMessageVisibilityRequest(changeMessageVisibilityRequest));
+    }
 
-        if (isS3ReceiptHandle(changeMessageVisibilityRequest.getReceiptHandle())) {
-            changeMessageVisibilityRequest.setReceiptHandle(
-                    getOrigReceiptHandle(changeMessageVisibilityRequest.getReceiptHandle()));
-        }
-        return amazonSqsToBeExtended.changeMessageVisibility(changeMessageVisibilityRequest);
+    /**
+     * Restores the original receipt handle of the request.
+     *
+     * @return the request to send to Amazon SQS.
+     */
+    ChangeMessageVisibilityRequest prepareChangeMessageVisibilityRequest(
+            ChangeMessageVisibilityRequest changeMessageVisibilityRequest) {
+        changeMessageVisibilityRequest.setReceiptHandle(
+                PayloadReceiptHandle.getOriginalReceiptHandle(changeMessageVisibilityRequest.getReceiptHandle()));
+        return changeMessageVisibilityRequest;
     }
 
     /**
@@ -755,6 +1245,56 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
      *             side issue.
      */
     public SendMessageBatchResult sendMessageBatch(SendMessageBatchRequest sendMessageBatchRequest) {
+        checkSendMessageBatchRequest(sendMessageBatchRequest);
+
+        if (!clientConfiguration.isPayloadSupportEnabled()) {
+            return super.sendMessageBatch(sendMessageBatchRequest);
+        }
+
+        List<SendMessageBatchRequestEntry> batchEntries = sendMessageBatchRequest.getEntries();
+        List<SendMessageBatchRequestEntry> offloadedEntries = new ArrayList<SendMessageBatchRequestEntry>();
+        List<Callable<SendMessageBatchRequestEntry>> payloadUploads = new ArrayList<Callable<SendMessageBatchRequestEntry>>();
+        for (final SendMessageBatchRequestEntry entry : batchEntries) {
+            if (requiresOffloading(entry)) {
+                offloadedEntries.add(entry);
+                payloadUploads.add(() -> offloadMessagePayload(entry));
+            }
+        }
+
+        // The size of an entry compressed inline is only known once it is
+        // compressed, so the rest of the batch is sized afterwards.
+        boolean sizeAfterOffloading = isInlineCompressionPossible() && !offloadedEntries.isEmpty();
+        if (!sizeAfterOffloading) {
+            payloadUploads.addAll(getBatchSizeUploads(batchEntries, offloadedEntries));
+        }
+
+        // Entries are updated in place, so their order and IDs are preserved.
+        invokePayloadUploads(payloadUploads);
+        if (sizeAfterOffloading) {
+            invokePayloadUploads(getBatchSizeUploads(batchEntries, Collections.<SendMessageBatchRequestEntry>emptyList()));
+        }
+
+        return super.sendMessageBatch(sendMessageBatchRequest);
+    }
+
+    private void invokePayloadUploads(List<Callable<SendMessageBatchRequestEntry>> payloadUploads) {
+        PayloadTasks.invokeAll(clientConfiguration.getPayloadExecutor(), payloadUploads,
+                clientConfiguration.getPayloadBatchTimeoutMillis(), clientConfiguration.getPayloadUploadConcurrency());
+    }
+
+    private List<Callable<SendMessageBatchRequestEntry>> getBatchSizeUploads(List<SendMessageBatchRequestEntry> batchEntries,
+            List<SendMessageBatchRequestEntry> offloadedEntries) {
+        List<Callable<SendMessageBatchRequestEntry>> payloadUploads = new ArrayList<Callable<SendMessageBatchRequestEntry>>();
+        for (final SendMessageBatchRequestEntry entry : selectEntriesExceedingBatchSize(batchEntries, offloadedEntries)) {
+            payloadUploads.add(() -> storeMessageInS3(entry));
+        }
+        return payloadUploads;
+    }
+
+    /**
+     * Validates the request and the message attributes of its entries.
+     */
+    void checkSendMessageBatchRequest(SendMessageBatchRequest sendMessageBatchRequest) {
 
         if (sendMessageBatchRequest == null) {
             String errorMessage = "sendMessageBatchRequest cannot be null.";
@@ -765,23 +1305,13 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
         sendMessageBatchRequest.getRequestClientOptions().appendUserAgent(USER_AGENT_HEADER);
 
         if (!clientConfiguration.isPayloadSupportEnabled()) {
-            return super.sendMessageBatch(sendMessageBatchRequest);
+            return;
         }
 
-        List<SendMessageBatchRequestEntry> batchEntries = sendMessageBatchRequest.getEntries();
-
-        int index = 0;
-        for (SendMessageBatchRequestEntry entry : batchEntries) {
+        for (SendMessageBatchRequestEntry entry : sendMessageBatchRequest.getEntries()) {
             //Check message attributes for ExtendedClient related constraints
             checkMessageAttributes(entry.getMessageAttributes());
-
-            if (clientConfiguration.isAlwaysThroughS3() || isLarge(entry)) {
-                batchEntries.set(index, storeMessageInS3(entry));
-            }
-            ++index;
         }
-
-        return super.sendMessageBatch(sendMessageBatchRequest);
     }
 
     /**
@@ -854,7 +1384,8 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
      * Deletes up to ten messages from the specified queue. This is a batch
      * version of DeleteMessage. The result of the delete action on each message
      * is reported individually in the response. Also deletes the message
-     * payloads from Amazon S3 when necessary.
+     * payloads from Amazon S3 when necessary, once their messages are deleted,
+     * with one request per bucket.
      * </p>
      * <p>
      * <b>IMPORTANT:</b> Because the batch request can result in a combination
@@ -895,6 +1426,27 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
      *             side issue.
      */
     public DeleteMessageBatchResult deleteMessageBatch(DeleteMessageBatchRequest deleteMessageBatchRequest) {
+        Map<String, PayloadReceiptHandle> payloadReceiptHandles = new HashMap<String, PayloadReceiptHandle>();
+        DeleteMessageBatchResult deleteMessageBatchResult = super.deleteMessageBatch(
+                prepareDeleteMessageBatchRequest(deleteMessageBatchRequest, payloadReceiptHandles));
+        deleteMessagePayloads(deleteMessageBatchResult, payloadReceiptHandles);
+        return deleteMessageBatchResult;
+    }
+
+    /**
+     * Validates the request and restores the original receipt handles. The
+     * payloads to delete from Amazon S3 are collected by entry ID, to be
+     * deleted with {@link #deleteMessagePayloads(DeleteMessageBatchResult, Map)}
+     * once the messages are deleted.
+     *
+     * @param payloadReceiptHandles
+     *            Receives the parsed receipt handles of the entries, which
+     *            locate their payloads, by entry ID, if payloads are cleaned
+     *            up.
+     * @return the request to send to Amazon SQS.
+     */
+    DeleteMessageBatchRequest prepareDeleteMessageBatchRequest(DeleteMessageBatchRequest deleteMessageBatchRequest,
+            Map<String, PayloadReceiptHandle> payloadReceiptHandles) {
 
         if (deleteMessageBatchRequest == null) {
             String errorMessage = "deleteMessageBatchRequest cannot be null.";
@@ -905,26 +1457,57 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
         deleteMessageBatchRequest.getRequestClientOptions().appendUserAgent(USER_AGENT_HEADER);
 
         if (!clientConfiguration.isPayloadSupportEnabled()) {
-            return super.deleteMessageBatch(deleteMessageBatchRequest);
+            return deleteMessageBatchRequest;
         }
 
         for (DeleteMessageBatchRequestEntry entry : deleteMessageBatchRequest.getEntries()) {
-            String receiptHandle = entry.getReceiptHandle();
-            String origReceiptHandle = receiptHandle;
-
             // Update original receipt handle if needed
-            if (isS3ReceiptHandle(receiptHandle)) {
-                origReceiptHandle = getOrigReceiptHandle(receiptHandle);
-                // Delete s3 payload if needed
+            PayloadReceiptHandle payloadReceiptHandle = PayloadReceiptHandle.parse(entry.getReceiptHandle());
+            if (payloadReceiptHandle != null) {
+                entry.setReceiptHandle(payloadReceiptHandle.getReceiptHandle());
+                // Delete s3 payload if needed, once the message is deleted
                 if (clientConfiguration.doesCleanupS3Payload()) {
-                    String messagePointer = getMessagePointerFromModifiedReceiptHandle(receiptHandle);
-                    payloadStore.deleteOriginalPayload(messagePointer);
+                    payloadReceiptHandles.put(entry.getId(), payloadReceiptHandle);
                 }
             }
+        }
+        return deleteMessageBatchRequest;
+    }
+
+    /**
+     * Deletes the payloads of the entries that were deleted from the queue.
+     * Payloads of entries that failed are kept, so the messages can still be
+     * received and deleted again.
+     */
+    void deleteMessagePayloads(DeleteMessageBatchResult deleteMessageBatchResult,
+            Map<String, PayloadReceiptHandle> payloadReceiptHandles) {
+        if (payloadReceiptHandles.isEmpty()) {
+            return;
+        }
+        List<PayloadReceiptHandle> deletedPayloads = new ArrayList<PayloadReceiptHandle>(payloadReceiptHandles.size());
+        for (DeleteMessageBatchResultEntry resultEntry : deleteMessageBatchResult.getSuccessful()) {
+            PayloadReceiptHandle payloadReceiptHandle = payloadReceiptHandles.get(resultEntry.getId());
+            if (payloadReceiptHandle != null) {
+                deletedPayloads.add(payloadReceiptHandle);
+            }
+        }
+        deleteMessagePayloads(deletedPayloads);
+    }
 
-            entry.setReceiptHandle(origReceiptHandle);
+    /**
+     * Deletes the payloads queued for the background deleter, if it is
+     * enabled, stops the threads of multipart uploads and ranged downloads,
+     * and shuts down the wrapped Amazon SQS client.
+     */
+    @Override
+    public void shutdown() {
+        if (payloadDeleter != null) {
+            payloadDeleter.shutdown();
         }
-        return super.deleteMessageBatch(deleteMessageBatchRequest);
+        if (transferExecutor != null) {
+            transferExecutor.shutdown();
+        }
+        super.shutdown();
     }
 
     /**
@@ -932,7 +1515,8 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
      * Deletes up to ten messages from the specified queue. This is a batch
      * version of DeleteMessage. The result of the delete action on each message
      * is reported individually in the response. Also deletes the message
-     * payloads from Amazon S3 when necessary.
+     * payloads from Amazon S3 when necessary, once their messages are deleted,
+     * with one request per bucket.
      * </p>
      * <p>
      * <b>IMPORTANT:</b> Because the batch request can result in a combination
@@ -1041,14 +1625,22 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
     public ChangeMessageVisibilityBatchResult changeMessageVisibilityBatch(
             ChangeMessageVisibilityBatchRequest changeMessageVisibilityBatchRequest) throws AmazonServiceException,
             AmazonClientException {
+        return amazonSqsToBeExtended.changeMessageVisibilityBatch(
+                prepareChangeMessageVisibilityBatchRequest(changeMessageVisibilityBatchRequest));
+    }
+
+    /**
+     * Restores the original receipt handles of the request entries.
+     *
+     * @return the request to send to Amazon SQS.
+     */
+    ChangeMessageVisibilityBatchRequest prepareChangeMessageVisibilityBatchRequest(
+            ChangeMessageVisibilityBatchRequest changeMessageVisibilityBatchRequest) {
 
         for (ChangeMessageVisibilityBatchRequestEntry entry : changeMessageVisibilityBatchRequest.getEntries()) {
-            if (isS3ReceiptHandle(entry.getReceiptHandle())) {
-                entry.setReceiptHandle(getOrigReceiptHandle(entry.getReceiptHandle()));
-            }
+            entry.setReceiptHandle(PayloadReceiptHandle.getOriginalReceiptHandle(entry.getReceiptHandle()));
         }
-
-        return amazonSqsToBeExtended.changeMessageVisibilityBatch(changeMessageVisibilityBatchRequest);
+        return changeMessageVisibilityBatchRequest;
     }
 
     /**
@@ -1088,6 +1680,15 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
      */
     public PurgeQueueResult purgeQueue(PurgeQueueRequest purgeQueueRequest)
             throws AmazonServiceException, AmazonClientException {
+        return super.purgeQueue(preparePurgeQueueRequest(purgeQueueRequest));
+    }
+
+    /**
+     * Validates the request.
+     *
+     * @return the request to send to Amazon SQS.
+     */
+    PurgeQueueRequest preparePurgeQueueRequest(PurgeQueueRequest purgeQueueRequest) {
         LOG.warn("Calling purgeQueue deletes SQS messages without deleting their payload from S3.");
 
         if (purgeQueueRequest == null) {
@@ -1098,11 +1699,16 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
 
         purgeQueueRequest.getRequestClientOptions().appendUserAgent(USER_AGENT_HEADER);
 
-        return super.purgeQueue(purgeQueueRequest);
+        return purgeQueueRequest;
     }
 
-    private void checkMessageAttributes(Map<String, MessageAttributeValue> messageAttributes) {
-        int msgAttributesSize = getMsgAttributesSize(messageAttributes);
+    /**
+     * Checks the message attributes for the constraints of the extended client.
+     *
+     * @return The size of the message attributes.
+     */
+    private long checkMessageAttributes(Map<String, MessageAttributeValue> messageAttributes) {
+        long msgAttributesSize = getMsgAttributesSize(messageAttributes);
         if (msgAttributesSize > clientConfiguration.getPayloadSizeThreshold()) {
             String errorMessage = "Total size of Message attributes is " + msgAttributesSize
                     + " bytes which is larger than the threshold of " + clientConfiguration.getPayloadSizeThreshold()
@@ -1120,6 +1726,10 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
             throw new AmazonClientException(errorMessage);
         }
         Optional<String> largePayloadAttributeName = getReservedAttributeNameIfPresent(messageAttributes);
+        if (!largePayloadAttributeName.isPresent()
+                && messageAttributes.containsKey(SQSExtendedClientConstants.INLINE_ENCODING_ATTRIBUTE_NAME)) {
+            largePayloadAttributeName = Optional.of(SQSExtendedClientConstants.INLINE_ENCODING_ATTRIBUTE_NAME);
+        }
 
         if (largePayloadAttributeName.isPresent()) {
             String errorMessage = "Message attribute name " + largePayloadAttributeName.get()
@@ -1127,60 +1737,274 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
             LOG.error(errorMessage);
             throw new AmazonClientException(errorMessage);
         }
+        return msgAttributesSize;
     }
 
     /**
-     * TODO: Wrap the message pointer as-is to the receiptHandle so that it can be generic
-     * and does not use any LargeMessageStore implementation specific details.
+     * Checks whether the message payload is stored in Amazon S3.
      */
-    private String embedS3PointerInReceiptHandle(String receiptHandle, String pointer) {
-        PayloadS3Pointer s3Pointer = PayloadS3Pointer.fromJson(pointer);
-        String s3MsgBucketName = s3Pointer.getS3BucketName();
-        String s3MsgKey = s3Pointer.getS3Key();
+    boolean isLargePayloadMessage(Message message) {
+        return getReservedAttributeNameIfPresent(message.getMessageAttributes()).isPresent();
+    }
 
-        String modifiedReceiptHandle = SQSExtendedClientConstants.S3_BUCKET_NAME_MARKER + s3MsgBucketName
-                + SQSExtendedClientConstants.S3_BUCKET_NAME_MARKER + SQSExtendedClientConstants.S3_KEY_MARKER
-                + s3MsgKey + SQSExtendedClientConstants.S3_KEY_MARKER + receiptHandle;
-        return modifiedReceiptHandle;
+    /**
+     * Replaces the body of the message with its payload downloaded from Amazon
+     * S3 and embeds the payload pointer in the receipt handle.
+     */
+    Message retrieveOriginalPayload(Message message) {
+        String largeMessagePointer = message.getBody();
+
+        long rangedDownloadThreshold = clientConfiguration.getRangedDownloadThreshold();
+        long payloadSize = rangedDownloadThreshold > 0 ? getPayloadSize(message) : -1L;
+        if (rangedDownloadThreshold > 0 && payloadSize >= rangedDownloadThreshold) {
+            byte[] payload = payloadStore.getOriginalPayloadBytes(largeMessagePointer, payloadSize);
+            message.setBody(new String(payload, StandardCharsets.UTF_8));
+        } else {
+            message.setBody(payloadStore.getOriginalPayload(largeMessagePointer));
+        }
+        detachPayloadPointer(message, largeMessagePointer);
+        return message;
     }
 
-    private String getOrigReceiptHandle(String receiptHandle) {
-        int secondOccurence = receiptHandle.indexOf(SQSExtendedClientConstants.S3_KEY_MARKER,
-                receiptHandle.indexOf(SQSExtendedClientConstants.S3_KEY_MARKER) + 1);
-        return receiptHandle.substring(secondOccurence + SQSExtendedClientConstants.S3_KEY_MARKER.length());
+    /**
+     * Checks whether the message body was compressed inline.
+     */
+    boolean isInlinePayloadMessage(Message message) {
+        return message.getMessageAttributes().containsKey(SQSExtendedClientConstants.INLINE_ENCODING_ATTRIBUTE_NAME);
     }
 
-    private String getFromReceiptHandleByMarker(String receiptHandle, String marker) {
-        int firstOccurence = receiptHandle.indexOf(marker);
-        int secondOccurence = receiptHandle.indexOf(marker, firstOccurence + 1);
-        return receiptHandle.substring(firstOccurence + marker.length(), secondOccurence);
+    /**
+     * Replaces the inline compressed body of the message with the original
+     * body and removes the attribute that marked it.
+     */
+    Message decodeInlinePayload(Message message) {
+        MessageAttributeValue encodingAttribute = message.getMessageAttributes()
+                .remove(SQSExtendedClientConstants.INLINE_ENCODING_ATTRIBUTE_NAME);
+        String codecName = encodingAttribute.getStringValue();
+        PayloadCodec codec = PayloadCodecs.forName(codecName, clientConfiguration.getPayloadCodec());
+        if (codec == null) {
+            String errorMessage = "Message " + message.getMessageId() + " is encoded with the unknown codec "
+                    + codecName + ".";
+            LOG.error(errorMessage);
+            throw new AmazonClientException(errorMessage);
+        }
+        message.setBody(InlinePayloads.decode(message.getBody(), codec));
+        return message;
     }
 
-    private boolean isS3ReceiptHandle(String receiptHandle) {
-        return receiptHandle.contains(SQSExtendedClientConstants.S3_BUCKET_NAME_MARKER)
-                && receiptHandle.contains(SQSExtendedClientConstants.S3_KEY_MARKER);
+    private String detachPayloadPointer(Message message) {
+        String largeMessagePointer = message.getBody();
+        detachPayloadPointer(message, largeMessagePointer);
+        return largeMessagePointer;
     }
 
-    private String getMessagePointerFromModifiedReceiptHandle(String receiptHandle) {
-        String s3MsgBucketName = getFromReceiptHandleByMarker(receiptHandle, SQSExtendedClientConstants.S3_BUCKET_NAME_MARKER);
-        String s3MsgKey = getFromReceiptHandleByMarker(receiptHandle, SQSExtendedClientConstants.S3_KEY_MARKER);
+    private void detachPayloadPointer(Message message, String largeMessagePointer) {
+        // remove the additional attribute before returning the message
+        // to user.
+        message.getMessageAttributes().keySet().removeAll(RESERVED_ATTRIBUTE_NAMES);
+
+        // Embed the payload pointer in the receipt handle.
+        if (clientConfiguration.getPayloadStore() != null
+                || SharedMemoryPayloadStore.isSharedMemoryPointer(largeMessagePointer)) {
+            message.setReceiptHandle(PayloadReceiptHandle.embedPointer(message.getReceiptHandle(), largeMessagePointer));
+            return;
+        }
+        PayloadS3Pointer s3Pointer = PayloadS3Pointer.fromJson(largeMessagePointer);
+        message.setReceiptHandle(PayloadReceiptHandle.embed(
+                message.getReceiptHandle(), s3Pointer.getS3BucketName(), s3Pointer.getS3Key()));
+    }
 
-        PayloadS3Pointer payloadS3Pointer = new PayloadS3Pointer(s3MsgBucketName, s3MsgKey);
-        return payloadS3Pointer.toJson();
+    private long getPayloadSize(Message message) {
+        String reservedAttributeName = getReservedAttributeNameIfPresent(message.getMessageAttributes()).get();
+        String payloadSize = message.getMessageAttributes().get(reservedAttributeName).getStringValue();
+        try {
+            return Long.parseLong(payloadSize);
+        } catch (NumberFormatException e) {
+            LOG.warn("Message " + message.getMessageId() + " has an invalid payload size: " + payloadSize);
+            return -1L;
+        }
     }
 
-    private boolean isLarge(SendMessageRequest sendMessageRequest) {
-        int msgAttributesSize = getMsgAttributesSize(sendMessageRequest.getMessageAttributes());
-        long msgBodySize = Util.getStringSizeInBytes(sendMessageRequest.getMessageBody());
-        long totalMsgSize = msgAttributesSize + msgBodySize;
+    private boolean isLarge(String messageBody, long msgAttributesSize) {
+        long totalMsgSize = msgAttributesSize + Utf8.encodedLength(messageBody);
         return (totalMsgSize > clientConfiguration.getPayloadSizeThreshold());
     }
 
+    /**
+     * Checks whether the payload of the batch entry cannot be sent as it is,
+     * and has to be compressed inline or stored in Amazon S3.
+     */
+    boolean requiresOffloading(SendMessageBatchRequestEntry batchEntry) {
+        return clientConfiguration.isAlwaysThroughS3() || isLarge(batchEntry);
+    }
+
+    /**
+     * Compresses the payload of the batch entry inline if that is enabled and
+     * the result fits, and stores it in Amazon S3 otherwise.
+     */
+    SendMessageBatchRequestEntry offloadMessagePayload(SendMessageBatchRequestEntry batchEntry) {
+        if (clientConfiguration.isAlwaysThroughS3()) {
+            return storeMessageInS3(batchEntry);
+        }
+        // The body is encoded once, for both the compressed body and the upload.
+        byte[] messageContent = batchEntry.getMessageBody().getBytes(StandardCharsets.UTF_8);
+        String encodedBody = encodeInline(messageContent, getMsgAttributesSize(batchEntry.getMessageAttributes()));
+        if (encodedBody != null) {
+            batchEntry.addMessageAttributesEntry(SQSExtendedClientConstants.INLINE_ENCODING_ATTRIBUTE_NAME,
+                    newInlineEncodingAttribute());
+            batchEntry.setMessageBody(encodedBody);
+            return batchEntry;
+        }
+        return storeMessageInS3(batchEntry, messageContent);
+    }
+
+    private SendMessageRequest offloadMessagePayload(SendMessageRequest sendMessageRequest, long msgAttributesSize) {
+        // The body is encoded once, for both the compressed body and the upload.
+        byte[] messageContent = sendMessageRequest.getMessageBody().getBytes(StandardCharsets.UTF_8);
+        String encodedBody = encodeInline(messageContent, msgAttributesSize);
+        if (encodedBody != null) {
+            sendMessageRequest.addMessageAttributesEntry(SQSExtendedClientConstants.INLINE_ENCODING_ATTRIBUTE_NAME,
+                    newInlineEncodingAttribute());
+            sendMessageRequest.setMessageBody(encodedBody);
+            return sendMessageRequest;
+        }
+        return storeMessageInS3(sendMessageRequest, new ByteArrayInputStream(messageContent), messageContent.length);
+    }
+
+    /**
+     * Checks whether payloads that require offloading may be compressed inline
+     * instead of being stored in Amazon S3.
+     */
+    boolean isInlineCompressionPossible() {
+        return clientConfiguration.isInlineCompressionEnabled() && !clientConfiguration.isAlwaysThroughS3();
+    }
+
+    /**
+     * Selects the entries that have to be stored in Amazon S3, in addition to
+     * the offloaded entries, for the total size of the batch to stay within
+     * the Amazon SQS limit. The largest entries are selected first, so as few
+     * payloads as possible are uploaded.
+     *
+     * @param batchEntries
+     *            All entries of the batch.
+     * @param offloadedEntries
+     *            Entries that are stored in Amazon S3 but not yet replaced by
+     *            their pointers. They are counted at the largest size of a
+     *            pointer.
+     * @return The selected entries, largest first.
+     */
+    List<SendMessageBatchRequestEntry> selectEntriesExceedingBatchSize(List<SendMessageBatchRequestEntry> batchEntries,
+            Collection<SendMessageBatchRequestEntry> offloadedEntries) {
+        Set<SendMessageBatchRequestEntry> offloaded = Collections.newSetFromMap(
+                new IdentityHashMap<SendMessageBatchRequestEntry, Boolean>());
+        offloaded.addAll(offloadedEntries);
+        long batchSize = 0;
+        List<SendMessageBatchRequestEntry> candidates = new ArrayList<SendMessageBatchRequestEntry>();
+        final Map<SendMessageBatchRequestEntry, Long> entrySizes = new IdentityHashMap<SendMessageBatchRequestEntry, Long>();
+        for (SendMessageBatchRequestEntry entry : batchEntries) {
+            if (offloaded.contains(entry)) {
+                batchSize += getMsgAttributesSize(entry.getMessageAttributes()) + MAX_POINTER_SIZE;
+                continue;
+            }
+            long entrySize = getMessageSize(entry);
+            batchSize += entrySize;
+            if (!isPayloadPointer(entry)) {
+                candidates.add(entry);
+                entrySizes.put(entry, entrySize);
+            }
+        }
+
+        List<SendMessageBatchRequestEntry> selectedEntries = new ArrayList<SendMessageBatchRequestEntry>();
+        if (batchSize <= SQSExtendedClientConstants.MAX_BATCH_SIZE_IN_BYTES) {
+            return selectedEntries;
+        }
+        candidates.sort((first, second) -> Long.compare(entrySizes.get(second), entrySizes.get(first)));
+        for (SendMessageBatchRequestEntry entry : candidates) {
+            if (batchSize <= SQSExtendedClientConstants.MAX_BATCH_SIZE_IN_BYTES) {
+                break;
+            }
+            long entrySize = entrySizes.get(entry);
+            long pointerSize = getMsgAttributesSize(entry.getMessageAttributes()) + MAX_POINTER_SIZE;
+            if (entrySize > pointerSize) {
+                selectedEntries.add(entry);
+                batchSize -= entrySize - pointerSize;
+            }
+        }
+        return selectedEntries;
+    }
+
+    /**
+     * Checks whether the body of the entry is already a pointer or an inline
+     * encoded payload, which must not be stored in Amazon S3 again.
+     */
+    private boolean isPayloadPointer(SendMessageBatchRequestEntry batchEntry) {
+        Map<String, MessageAttributeValue> messageAttributes = batchEntry.getMessageAttributes();
+        return getReservedAttributeNameIfPresent(messageAttributes).isPresent()
+                || messageAttributes.containsKey(SQSExtendedClientConstants.INLINE_ENCODING_ATTRIBUTE_NAME);
+    }
+
+    /**
+     * Validates the message attributes of the batch entry and offloads its
+     * payload when necessary, so the entry can be sent with
+     * {@link #sendPreparedMessageBatch}.
+     */
+    SendMessageBatchRequestEntry prepareSendMessageBatchRequestEntry(SendMessageBatchRequestEntry batchEntry) {
+        if (!clientConfiguration.isPayloadSupportEnabled()) {
+            return batchEntry;
+        }
+        checkMessageAttributes(batchEntry.getMessageAttributes());
+        if (requiresOffloading(batchEntry)) {
+            offloadMessagePayload(batchEntry);
+        }
+        return batchEntry;
+    }
+
+    /**
+     * Sends a batch whose entries were prepared with
+     * {@link #prepareSendMessageBatchRequestEntry}.
+     */
+    SendMessageBatchResult sendPreparedMessageBatch(SendMessageBatchRequest sendMessageBatchRequest) {
+        sendMessageBatchRequest.getRequestClientOptions().appendUserAgent(USER_AGENT_HEADER);
+        return super.sendMessageBatch(sendMessageBatchRequest);
+    }
+
+    /**
+     * Returns the size of the body and the message attributes of the batch
+     * entry, as counted against the Amazon SQS message size limit.
+     */
+    long getMessageSize(SendMessageBatchRequestEntry batchEntry) {
+        return getMsgAttributesSize(batchEntry.getMessageAttributes()) + Utf8.encodedLength(batchEntry.getMessageBody());
+    }
+
+    /**
+     * Compresses and encodes the message body if inline compression is
+     * enabled and the result, together with the message attributes, fits under
+     * the payload size threshold.
+     *
+     * @return The encoded body, or null if it has to be stored in Amazon S3.
+     */
+    private String encodeInline(byte[] messageContent, long msgAttributesSize) {
+        if (!clientConfiguration.isInlineCompressionEnabled()) {
+            return null;
+        }
+        Map<String, MessageAttributeValue> encodingAttribute = Collections.singletonMap(
+                SQSExtendedClientConstants.INLINE_ENCODING_ATTRIBUTE_NAME, newInlineEncodingAttribute());
+        long maxEncodedLength = clientConfiguration.getPayloadSizeThreshold()
+                - msgAttributesSize - getMsgAttributesSize(encodingAttribute);
+        return InlinePayloads.encode(messageContent, getInlineCodec(), maxEncodedLength);
+    }
+
+    private MessageAttributeValue newInlineEncodingAttribute() {
+        return new MessageAttributeValue().withDataType("String").withStringValue(getInlineCodec().getName());
+    }
+
+    private PayloadCodec getInlineCodec() {
+        PayloadCodec payloadCodec = clientConfiguration.getPayloadCodec();
+        return payloadCodec != null ? payloadCodec : PayloadCodecs.GZIP;
+    }
+
     private boolean isLarge(SendMessageBatchRequestEntry batchEntry) {
-        int msgAttributesSize = getMsgAttributesSize(batchEntry.getMessageAttributes());
-        long msgBodySize = Util.getStringSizeInBytes(batchEntry.getMessageBody());
-        long totalMsgSize = msgAttributesSize + msgBodySize;
-        return (totalMsgSize > clientConfiguration.getPayloadSizeThreshold());
+        return (getMessageSize(batchEntry) > clientConfiguration.getPayloadSizeThreshold());
     }
 
     private Optional<String> getReservedAttributeNameIfPresent(Map<String, MessageAttributeValue> msgAttributes) {
@@ -1193,40 +2017,39 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
         return Optional.ofNullable(reservedAttributeName);
     }
 
-    private int getMsgAttributesSize(Map<String, MessageAttributeValue> msgAttributes) {
-        int totalMsgAttributesSize = 0;
+    private long getMsgAttributesSize(Map<String, MessageAttributeValue> msgAttributes) {
+        long totalMsgAttributesSize = 0;
         for (Entry<String, MessageAttributeValue> entry : msgAttributes.entrySet()) {
-            totalMsgAttributesSize += Util.getStringSizeInBytes(entry.getKey());
+            totalMsgAttributesSize += Utf8.encodedLength(entry.getKey());
 
             MessageAttributeValue entryVal = entry.getValue();
             if (entryVal.getDataType() != null) {
-                totalMsgAttributesSize += Util.getStringSizeInBytes(entryVal.getDataType());
+                totalMsgAttributesSize += Utf8.encodedLength(entryVal.getDataType());
             }
 
             String stringVal = entryVal.getStringValue();
             if (stringVal != null) {
-                totalMsgAttributesSize += Util.getStringSizeInBytes(entryVal.getStringValue());
+                totalMsgAttributesSize += Utf8.encodedLength(stringVal);
             }
 
             ByteBuffer binaryVal = entryVal.getBinaryValue();
             if (binaryVal != null) {
-                totalMsgAttributesSize += binaryVal.array().length;
+                totalMsgAttributesSize += binaryVal.remaining();
             }
         }
         return totalMsgAttributesSize;
     }
 
-    private SendMessageBatchRequestEntry storeMessageInS3(SendMessageBatchRequestEntry batchEntry) {
-
-        // Read the content of the message from message body
-        String messageContentStr = batchEntry.getMessageBody();
+    SendMessageBatchRequestEntry storeMessageInS3(SendMessageBatchRequestEntry batchEntry) {
+        return storeMessageInS3(batchEntry, batchEntry.getMessageBody().getBytes(StandardCharsets.UTF_8));
+    }
 
-        Long messageContentSize = Util.getStringSizeInBytes(messageContentStr);
+    private SendMessageBatchRequestEntry storeMessageInS3(SendMessageBatchRequestEntry batchEntry, byte[] messageContent) {
 
         // Add a new message attribute as a flag
         MessageAttributeValue messageAttributeValue = new MessageAttributeValue();
         messageAttributeValue.setDataType("Number");
-        messageAttributeValue.setStringValue(messageContentSize.toString());
+        messageAttributeValue.setStringValue(Integer.toString(messageContent.length));
 
         if (!clientConfiguration.usesLegacyReservedAttributeName()) {
             batchEntry.addMessageAttributesEntry(SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME,
@@ -1236,25 +2059,21 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
                     messageAttributeValue);
         }
 
-        // Store the message content in S3.
-        String largeMessagePointer = payloadStore.storeOriginalPayload(messageContentStr,
-                messageContentSize);
+        // Store the encoded message content in S3.
+        String largeMessagePointer = payloadStore.storeOriginalPayload(new ByteArrayInputStream(messageContent),
+                messageContent.length);
         batchEntry.setMessageBody(largeMessagePointer);
 
         return batchEntry;
     }
 
-    private SendMessageRequest storeMessageInS3(SendMessageRequest sendMessageRequest) {
-
-        // Read the content of the message from message body
-        String messageContentStr = sendMessageRequest.getMessageBody();
-
-        Long messageContentSize = Util.getStringSizeInBytes(messageContentStr);
+    private SendMessageRequest storeMessageInS3(SendMessageRequest sendMessageRequest, InputStream payload,
+            long payloadLength) {
 
         // Add a new message attribute as a flag
         MessageAttributeValue messageAttributeValue = new MessageAttributeValue();
         messageAttributeValue.setDataType("Number");
-        messageAttributeValue.setStringValue(messageContentSize.toString());
+        messageAttributeValue.setStringValue(Long.toString(payloadLength));
 
         if (!clientConfiguration.usesLegacyReservedAttributeName()) {
             sendMessageRequest.addMessageAttributesEntry(SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME,
@@ -1264,12 +2083,16 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
                     messageAttributeValue);
         }
 
-        // Store the message content in S3.
-        String largeMessagePointer = payloadStore.storeOriginalPayload(messageContentStr,
-                messageContentSize);
+        // Stream the message content to S3.
+        String largeMessagePointer = payloadStore.storeOriginalPayload(payload, payloadLength);
         sendMessageRequest.setMessageBody(largeMessagePointer);
 
         return sendMessageRequest;
     }
 
+    private SendMessageRequest storeMessageInS3(SendMessageRequest sendMessageRequest) {
+        byte[] messageContent = sendMessageRequest.getMessageBody().getBytes(StandardCharsets.UTF_8);
+        return storeMessageInS3(sendMessageRequest, new ByteArrayInputStream(messageContent), messageContent.length);
+    }
+
 }
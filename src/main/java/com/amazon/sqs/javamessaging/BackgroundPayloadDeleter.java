@@ -0,0 +1,160 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Deletes message payloads on a background thread, so deleting a message does
+ * not wait for its payload to be deleted.
+ *
+ * <p>
+ * Payloads are queued and deleted in bulk, with every payload queued since the
+ * previous delete going into the next one. A failed bulk delete is retried
+ * with exponential backoff, and given up with an error once all attempts
+ * failed, leaving the payloads to the lifecycle rules of the bucket. The queue
+ * is bounded: when it is full, the payload is deleted on the calling thread
+ * instead.
+ * </p>
+ */
+class BackgroundPayloadDeleter {
+    private static final Log LOG = LogFactory.getLog(BackgroundPayloadDeleter.class);
+
+    static final long INITIAL_RETRY_BACKOFF_MILLIS = 100;
+    static final long MAX_RETRY_BACKOFF_MILLIS = 10000;
+    private static final long POLL_INTERVAL_MILLIS = 200;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 60000;
+
+    private final StreamingPayloadStore payloadStore;
+    private final int maxAttempts;
+    private final BlockingQueue<PayloadReceiptHandle> queuedPayloads;
+    private final Thread deleterThread;
+    private volatile boolean shutdown;
+
+    /**
+     * @param maxQueuedPayloads
+     *            Maximum number of payloads waiting to be deleted.
+     * @param maxAttempts
+     *            Number of times a bulk delete is tried before it is given up.
+     */
+    BackgroundPayloadDeleter(StreamingPayloadStore payloadStore, int maxQueuedPayloads, int maxAttempts) {
+        this.payloadStore = payloadStore;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.queuedPayloads = new LinkedBlockingQueue<PayloadReceiptHandle>(maxQueuedPayloads);
+        this.deleterThread = new DaemonThreadFactory("sqs-extended-payload-deleter").newThread(this::run);
+        this.deleterThread.start();
+    }
+
+    /**
+     * Queues the payload for deletion, or deletes it right away if the queue
+     * is full or the deleter is shut down.
+     */
+    void delete(PayloadReceiptHandle payloadReceiptHandle) {
+        delete(Collections.singletonList(payloadReceiptHandle));
+    }
+
+    /**
+     * Queues the payloads for deletion. Payloads that do not fit into the
+     * queue, or all of them if the deleter is shut down, are deleted right
+     * away.
+     */
+    void delete(Collection<PayloadReceiptHandle> payloadReceiptHandles) {
+        List<PayloadReceiptHandle> overflow = new ArrayList<PayloadReceiptHandle>();
+        for (PayloadReceiptHandle payloadReceiptHandle : payloadReceiptHandles) {
+            if (shutdown || !queuedPayloads.offer(payloadReceiptHandle)) {
+                overflow.add(payloadReceiptHandle);
+            }
+        }
+        if (shutdown) {
+            // The background thread may have found the queue empty and stopped before these payloads were queued.
+            queuedPayloads.drainTo(overflow);
+        }
+        if (!overflow.isEmpty()) {
+            PayloadReceiptHandle.deletePayloads(payloadStore, overflow);
+        }
+    }
+
+    /**
+     * Stops the background thread once the queued payloads are deleted.
+     * Payloads passed to {@link #delete} afterwards are deleted right away.
+     */
+    void shutdown() {
+        shutdown = true;
+        try {
+            deleterThread.join(SHUTDOWN_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (deleterThread.isAlive()) {
+            LOG.warn("Payload deletions did not complete within " + SHUTDOWN_TIMEOUT_MILLIS + " ms of shutdown.");
+        }
+    }
+
+    private void run() {
+        List<PayloadReceiptHandle> payloadReceiptHandles = new ArrayList<PayloadReceiptHandle>();
+        while (!shutdown || !queuedPayloads.isEmpty()) {
+            try {
+                PayloadReceiptHandle payloadReceiptHandle = queuedPayloads.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (payloadReceiptHandle == null) {
+                    continue;
+                }
+                payloadReceiptHandles.add(payloadReceiptHandle);
+            } catch (InterruptedException e) {
+                LOG.warn("Payload deleter interrupted, " + queuedPayloads.size() + " payloads are not deleted.");
+                return;
+            }
+            queuedPayloads.drainTo(payloadReceiptHandles, S3StreamingPayloadStore.MAX_KEYS_PER_DELETE - 1);
+            deleteWithRetries(payloadReceiptHandles);
+            payloadReceiptHandles.clear();
+        }
+    }
+
+    private void deleteWithRetries(List<PayloadReceiptHandle> payloadReceiptHandles) {
+        long backoffMillis = INITIAL_RETRY_BACKOFF_MILLIS;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                PayloadReceiptHandle.deletePayloads(payloadStore, payloadReceiptHandles);
+                return;
+            } catch (RuntimeException e) {
+                if (attempt >= maxAttempts) {
+                    LOG.error("Failed to delete " + payloadReceiptHandles.size() + " message payloads after " + attempt
+                            + " attempts; they are left to the bucket lifecycle rules.", e);
+                    return;
+                }
+                LOG.warn("Failed to delete " + payloadReceiptHandles.size() + " message payloads, retrying in "
+                        + backoffMillis + " ms.", e);
+            }
+            try {
+                Thread.sleep(backoffMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOG.error("Payload deleter interrupted, " + payloadReceiptHandles.size() + " payloads are not deleted.");
+                return;
+            }
+            backoffMillis = Math.min(backoffMillis * 2, MAX_RETRY_BACKOFF_MILLIS);
+        }
+    }
+}
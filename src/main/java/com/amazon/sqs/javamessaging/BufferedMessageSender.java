@@ -0,0 +1,413 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Buffers individual sends to an Amazon SQS extended client and delivers them
+ * as SendMessageBatch calls.
+ *
+ * <p>
+ * Messages sent to the same queue are collected for a short linger period, or
+ * until a full batch of ten is collected, and then sent together. Payloads that
+ * have to be offloaded are uploaded to Amazon S3 as soon as their message is
+ * buffered, in parallel with each other and with the linger period, so a batch
+ * is sent as soon as its last upload is done. Each caller gets a future that
+ * completes with the result of its own message, or fails with the error
+ * reported for its own entry.
+ * </p>
+ *
+ * <p>
+ * Batches that carry message group IDs are sent to their queue one after the
+ * other, in the order they were collected, so that a batch whose uploads finish
+ * first cannot overtake an earlier batch of the same FIFO queue. Once a message
+ * of a group fails, the messages of the group buffered after it fail with the
+ * same cause instead of being sent out of order, up to the last ordered batch
+ * that was waiting for it.
+ * </p>
+ *
+ * <p>
+ * Uploads and batch sends run on the payload executor from
+ * {@link ExtendedClientConfiguration#getPayloadExecutor()}. When no payload
+ * executor is configured, the sender creates its own and shuts it down in
+ * {@link #shutdown()}.
+ * </p>
+ */
+public class BufferedMessageSender {
+    private static final Log LOG = LogFactory.getLog(BufferedMessageSender.class);
+
+    /** Largest number of entries Amazon SQS accepts in one batch. */
+    static final int MAX_BATCH_SIZE = 10;
+
+    private final AmazonSQSExtendedClient sqsClient;
+    private final long lingerMillis;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final ScheduledExecutorService lingerScheduler;
+    private final Map<String, QueueBuffer> queueBuffers = new HashMap<String, QueueBuffer>();
+    // Send of the last ordered batch of each queue, which the next ordered batch waits for.
+    private final Map<String, CompletableFuture<Map<String, Throwable>>> orderedSends
+            = new HashMap<String, CompletableFuture<Map<String, Throwable>>>();
+    private boolean shutdown;
+
+    /**
+     * Constructs a sender that buffers messages for the given client.
+     *
+     * @param sqsClient
+     *            The extended client that offloads payloads and sends the
+     *            batches.
+     * @param lingerMillis
+     *            How long the first message of a batch waits for more
+     *            messages to the same queue before the batch is sent.
+     */
+    public BufferedMessageSender(AmazonSQSExtendedClient sqsClient, long lingerMillis) {
+        this.sqsClient = sqsClient;
+        this.lingerMillis = Math.max(0, lingerMillis);
+        ExecutorService payloadExecutor = sqsClient.clientConfiguration.getPayloadExecutor();
+        if (payloadExecutor != null) {
+            this.executor = payloadExecutor;
+            this.ownsExecutor = false;
+        } else {
+            this.executor = Executors.newFixedThreadPool(AmazonSQSAsyncExtendedClient.DEFAULT_PAYLOAD_THREADS,
+                    new DaemonThreadFactory("sqs-extended-send-buffer"));
+            this.ownsExecutor = true;
+        }
+        this.lingerScheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("sqs-extended-linger"));
+    }
+
+    /**
+     * <p>
+     * Buffers a message for delivery in a batch and starts uploading its
+     * payload to Amazon S3 if necessary.
+     * </p>
+     *
+     * @param sendMessageRequest
+     *            Container for the parameters of the message. The request is
+     *            not modified.
+     * @return A future that completes with the result of the message once its
+     *         batch is sent, or fails if the message cannot be sent.
+     *
+     * @throws AmazonClientException
+     *             If the request is null or the sender is shut down.
+     */
+    public CompletableFuture<SendMessageResult> sendMessage(SendMessageRequest sendMessageRequest) {
+        if (sendMessageRequest == null) {
+            String errorMessage = "sendMessageRequest cannot be null.";
+            LOG.error(errorMessage);
+            throw new AmazonClientException(errorMessage);
+        }
+
+        SendMessageBatchRequestEntry entry = new SendMessageBatchRequestEntry()
+                .withMessageBody(sendMessageRequest.getMessageBody())
+                .withMessageAttributes(new HashMap<>(sendMessageRequest.getMessageAttributes()))
+                .withDelaySeconds(sendMessageRequest.getDelaySeconds())
+                .withMessageDeduplicationId(sendMessageRequest.getMessageDeduplicationId())
+                .withMessageGroupId(sendMessageRequest.getMessageGroupId());
+        String queueUrl = sendMessageRequest.getQueueUrl();
+
+        Batch fullBatch = null;
+        PendingMessage pendingMessage;
+        synchronized (this) {
+            if (shutdown) {
+                String errorMessage = "The buffered message sender is shut down.";
+                LOG.error(errorMessage);
+                throw new AmazonClientException(errorMessage);
+            }
+            pendingMessage = new PendingMessage(CompletableFuture.supplyAsync(
+                    () -> sqsClient.prepareSendMessageBatchRequestEntry(entry), executor),
+                    entry.getMessageGroupId());
+
+            QueueBuffer queueBuffer = queueBuffers.computeIfAbsent(queueUrl, url -> new QueueBuffer());
+            queueBuffer.pendingMessages.add(pendingMessage);
+            if (queueBuffer.pendingMessages.size() >= MAX_BATCH_SIZE) {
+                fullBatch = takeQueueBuffer(queueUrl);
+            } else if (queueBuffer.lingerTimer == null) {
+                queueBuffer.lingerTimer = lingerScheduler.schedule(() -> flush(queueUrl), lingerMillis,
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (fullBatch != null) {
+            sendBatch(queueUrl, fullBatch);
+        }
+        return pendingMessage.result;
+    }
+
+    /**
+     * Sends all buffered messages without waiting for their linger period to
+     * end, and waits until they are sent.
+     */
+    public void flush() {
+        Map<String, Batch> batches = new LinkedHashMap<String, Batch>();
+        synchronized (this) {
+            for (String queueUrl : new ArrayList<String>(queueBuffers.keySet())) {
+                batches.put(queueUrl, takeQueueBuffer(queueUrl));
+            }
+        }
+
+        List<CompletableFuture<?>> sends = new ArrayList<CompletableFuture<?>>();
+        for (Map.Entry<String, Batch> batch : batches.entrySet()) {
+            sends.add(sendBatch(batch.getKey(), batch.getValue()));
+        }
+        CompletableFuture.allOf(sends.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    /**
+     * Sends all buffered messages and stops accepting new ones. Executors
+     * created by the sender are shut down; the extended client is not.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+        }
+        try {
+            flush();
+        } finally {
+            lingerScheduler.shutdown();
+            if (ownsExecutor) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    private void flush(String queueUrl) {
+        Batch batch;
+        synchronized (this) {
+            batch = takeQueueBuffer(queueUrl);
+        }
+        if (batch != null) {
+            sendBatch(queueUrl, batch);
+        }
+    }
+
+    /**
+     * Removes the buffer of the queue and cancels its linger timer. A batch
+     * that carries message group IDs is ordered after the last ordered batch
+     * of the queue, which is why the order is taken while the buffer is.
+     *
+     * @return The buffered messages, or null if none are buffered.
+     */
+    private Batch takeQueueBuffer(String queueUrl) {
+        QueueBuffer queueBuffer = queueBuffers.remove(queueUrl);
+        if (queueBuffer == null) {
+            return null;
+        }
+        if (queueBuffer.lingerTimer != null) {
+            queueBuffer.lingerTimer.cancel(false);
+        }
+        Batch batch = new Batch(queueBuffer.pendingMessages);
+        for (PendingMessage pendingMessage : batch.pendingMessages) {
+            if (pendingMessage.messageGroupId != null) {
+                batch.previousSend = orderedSends.put(queueUrl, batch.sent);
+                break;
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Sends the messages once all of their payloads are prepared and the
+     * previous ordered batch of the queue is sent, without blocking a thread
+     * while the uploads run. The returned future completes once every message
+     * of the batch has its result, with the causes of the message groups that
+     * failed so far, and never completes exceptionally.
+     */
+    private CompletableFuture<Map<String, Throwable>> sendBatch(String queueUrl, Batch batch) {
+        Map<String, Throwable> failedGroups = new HashMap<String, Throwable>();
+        List<CompletableFuture<?>> preconditions = new ArrayList<CompletableFuture<?>>(batch.pendingMessages.size() + 1);
+        for (PendingMessage pendingMessage : batch.pendingMessages) {
+            preconditions.add(pendingMessage.preparedEntry);
+        }
+        if (batch.previousSend != null) {
+            preconditions.add(batch.previousSend);
+        }
+        CompletableFuture.allOf(preconditions.toArray(new CompletableFuture<?>[0]))
+                .handle((result, exception) -> null)
+                .thenRunAsync(() -> {
+                    if (batch.previousSend != null) {
+                        failedGroups.putAll(batch.previousSend.join());
+                    }
+                    sendPrepared(queueUrl, batch.pendingMessages, failedGroups);
+                }, executor)
+                .whenComplete((result, exception) -> {
+                    if (exception != null) {
+                        // Messages that were not sent before the failure would otherwise never complete.
+                        Throwable cause = exception instanceof CompletionException && exception.getCause() != null
+                                ? exception.getCause() : exception;
+                        LOG.error("Failed to send a batch of buffered messages.", cause);
+                        for (PendingMessage pendingMessage : batch.pendingMessages) {
+                            fail(pendingMessage, cause, failedGroups);
+                        }
+                    }
+                    synchronized (this) {
+                        orderedSends.remove(queueUrl, batch.sent);
+                    }
+                    batch.sent.complete(failedGroups);
+                });
+        return batch.sent;
+    }
+
+    /**
+     * @param failedGroups
+     *            Causes of the message groups that failed, whose messages fail
+     *            with the same cause, by message group ID. Groups that fail
+     *            while the messages are sent are added.
+     */
+    private void sendPrepared(String queueUrl, List<PendingMessage> pendingMessages, Map<String, Throwable> failedGroups) {
+        // Messages whose payload could not be prepared fail on their own, along with the later messages of their group.
+        List<PendingMessage> batch = new ArrayList<PendingMessage>();
+        long batchPayloadSize = 0;
+        for (PendingMessage pendingMessage : pendingMessages) {
+            Throwable groupFailure = pendingMessage.messageGroupId != null
+                    ? failedGroups.get(pendingMessage.messageGroupId) : null;
+            if (groupFailure != null) {
+                pendingMessage.result.completeExceptionally(groupFailure);
+                continue;
+            }
+            SendMessageBatchRequestEntry entry;
+            try {
+                entry = pendingMessage.preparedEntry.join();
+            } catch (CompletionException e) {
+                fail(pendingMessage, e.getCause(), failedGroups);
+                continue;
+            }
+
+            long entryPayloadSize = sqsClient.getMessageSize(entry);
+            if (!batch.isEmpty() && batchPayloadSize + entryPayloadSize > SQSExtendedClientConstants.MAX_BATCH_SIZE_IN_BYTES) {
+                sendPreparedBatch(queueUrl, batch, failedGroups);
+                batch = new ArrayList<PendingMessage>();
+                batchPayloadSize = 0;
+            }
+            batch.add(pendingMessage);
+            batchPayloadSize += entryPayloadSize;
+        }
+        if (!batch.isEmpty()) {
+            sendPreparedBatch(queueUrl, batch, failedGroups);
+        }
+    }
+
+    private void sendPreparedBatch(String queueUrl, List<PendingMessage> batch, Map<String, Throwable> failedGroups) {
+        SendMessageBatchRequest sendMessageBatchRequest = new SendMessageBatchRequest().withQueueUrl(queueUrl);
+        Map<String, PendingMessage> pendingMessagesById = new HashMap<String, PendingMessage>();
+        for (PendingMessage pendingMessage : batch) {
+            String id = Integer.toString(pendingMessagesById.size());
+            sendMessageBatchRequest.getEntries().add(pendingMessage.preparedEntry.join().withId(id));
+            pendingMessagesById.put(id, pendingMessage);
+        }
+
+        SendMessageBatchResult sendMessageBatchResult;
+        try {
+            sendMessageBatchResult = sqsClient.sendPreparedMessageBatch(sendMessageBatchRequest);
+        } catch (RuntimeException e) {
+            for (PendingMessage pendingMessage : batch) {
+                fail(pendingMessage, e, failedGroups);
+            }
+            return;
+        }
+
+        for (SendMessageBatchResultEntry resultEntry : sendMessageBatchResult.getSuccessful()) {
+            PendingMessage pendingMessage = pendingMessagesById.remove(resultEntry.getId());
+            if (pendingMessage == null) {
+                LOG.warn("Amazon SQS reported a result for the unknown batch entry " + resultEntry.getId() + ".");
+                continue;
+            }
+            pendingMessage.result.complete(new SendMessageResult()
+                    .withMessageId(resultEntry.getMessageId())
+                    .withMD5OfMessageBody(resultEntry.getMD5OfMessageBody())
+                    .withMD5OfMessageAttributes(resultEntry.getMD5OfMessageAttributes())
+                    .withSequenceNumber(resultEntry.getSequenceNumber()));
+        }
+        for (BatchResultErrorEntry errorEntry : sendMessageBatchResult.getFailed()) {
+            AmazonServiceException exception = new AmazonServiceException(errorEntry.getMessage());
+            exception.setErrorCode(errorEntry.getCode());
+            exception.setErrorType(Boolean.TRUE.equals(errorEntry.getSenderFault())
+                    ? AmazonServiceException.ErrorType.Client : AmazonServiceException.ErrorType.Service);
+            exception.setServiceName("AmazonSQS");
+            PendingMessage pendingMessage = pendingMessagesById.remove(errorEntry.getId());
+            if (pendingMessage == null) {
+                LOG.warn("Amazon SQS reported an error for the unknown batch entry " + errorEntry.getId() + ".");
+                continue;
+            }
+            fail(pendingMessage, exception, failedGroups);
+        }
+        for (PendingMessage pendingMessage : pendingMessagesById.values()) {
+            fail(pendingMessage, new AmazonClientException("Amazon SQS reported no result for the message."), failedGroups);
+        }
+    }
+
+    /**
+     * Fails the message, unless it already has its result, and records the
+     * cause for its message group.
+     */
+    private static void fail(PendingMessage pendingMessage, Throwable cause, Map<String, Throwable> failedGroups) {
+        if (pendingMessage.result.completeExceptionally(cause) && pendingMessage.messageGroupId != null) {
+            failedGroups.putIfAbsent(pendingMessage.messageGroupId, cause);
+        }
+    }
+
+    private static class QueueBuffer {
+        final List<PendingMessage> pendingMessages = new ArrayList<PendingMessage>(MAX_BATCH_SIZE);
+        ScheduledFuture<?> lingerTimer;
+    }
+
+    private static class PendingMessage {
+        final CompletableFuture<SendMessageBatchRequestEntry> preparedEntry;
+        final CompletableFuture<SendMessageResult> result = new CompletableFuture<SendMessageResult>();
+        // Message group ID, or null; batches with message group IDs keep their place in the queue.
+        final String messageGroupId;
+
+        PendingMessage(CompletableFuture<SendMessageBatchRequestEntry> preparedEntry, String messageGroupId) {
+            this.preparedEntry = preparedEntry;
+            this.messageGroupId = messageGroupId;
+        }
+    }
+
+    private static class Batch {
+        final List<PendingMessage> pendingMessages;
+        // Completes with the causes of the failed message groups once the batch is sent.
+        final CompletableFuture<Map<String, Throwable>> sent = new CompletableFuture<Map<String, Throwable>>();
+        CompletableFuture<Map<String, Throwable>> previousSend;
+
+        Batch(List<PendingMessage> pendingMessages) {
+            this.pendingMessages = pendingMessages;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.amazonaws.AmazonClientException;
+import software.amazon.payloadoffloading.PayloadS3Pointer;
+
+/**
+ * Payload store that keeps recently retrieved payloads in memory, so that
+ * messages redelivered after a failed or slow consumer do not download the
+ * same payload again.
+ *
+ * <p>
+ * The cache is bounded by the total size of the cached payloads and evicts the
+ * least recently used payloads first. Payloads can be kept off the heap in
+ * direct buffers, so that a large cache does not add to garbage collection
+ * work. Concurrent retrievals of a payload that is not cached are collapsed
+ * into a single retrieval from the underlying store. Deleting a payload
+ * removes it from the cache. Payloads are cached as they are retrieved, not as
+ * they are stored, and payloads retrieved as streams or into files bypass the
+ * cache unless they are already cached. Payloads in shared memory are read
+ * from their mapping and are never cached. Amazon S3 payloads are cached by
+ * their bucket and key rather than by the text of their pointer, so that the
+ * pointer read from a message and the pointer rebuilt from its receipt handle
+ * refer to the same entry.
+ * </p>
+ */
+class CachingPayloadStore implements StreamingPayloadStore, S3KeyedPayloadStore {
+    private final StreamingPayloadStore payloadStore;
+    private final long maxSize;
+    private final boolean offHeap;
+    private final boolean s3Pointers;
+    private final Map<String, ByteBuffer> cachedPayloads = new LinkedHashMap<String, ByteBuffer>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<byte[]>> pendingRetrievals = new ConcurrentHashMap<String, CompletableFuture<byte[]>>();
+    private long size;
+
+    /**
+     * @param payloadStore
+     *            Store the payloads are retrieved from.
+     * @param maxSize
+     *            Maximum total size in bytes of the cached payloads.
+     * @param offHeap
+     *            Whether the cached payloads are kept in direct buffers.
+     * @param s3Pointers
+     *            Whether the payloads are referenced by Amazon S3 pointers,
+     *            rather than by pointers of a custom payload store.
+     */
+    CachingPayloadStore(StreamingPayloadStore payloadStore, long maxSize, boolean offHeap, boolean s3Pointers) {
+        this.payloadStore = payloadStore;
+        this.maxSize = maxSize;
+        this.offHeap = offHeap;
+        this.s3Pointers = s3Pointers;
+    }
+
+    @Override
+    public String storeOriginalPayload(String payload, Long payloadContentSize) {
+        return payloadStore.storeOriginalPayload(payload, payloadContentSize);
+    }
+
+    @Override
+    public String storeOriginalPayload(InputStream payload, long payloadContentSize) {
+        return payloadStore.storeOriginalPayload(payload, payloadContentSize);
+    }
+
+    @Override
+    public String getOriginalPayload(String payloadPointer) {
+        return new String(getOriginalPayloadBytes(payloadPointer, -1), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public InputStream getOriginalPayloadStream(String payloadPointer) {
+        if (SharedMemoryPayloadStore.isSharedMemoryPointer(payloadPointer)) {
+            return payloadStore.getOriginalPayloadStream(payloadPointer);
+        }
+        ByteBuffer payload = getCachedPayload(getCacheKey(payloadPointer, s3Pointers));
+        return payload != null ? new ByteBufferInputStream(payload) : payloadStore.getOriginalPayloadStream(payloadPointer);
+    }
+
+    @Override
+    public byte[] getOriginalPayloadBytes(String payloadPointer, long payloadContentSize) {
+        if (SharedMemoryPayloadStore.isSharedMemoryPointer(payloadPointer)) {
+            return payloadStore.getOriginalPayloadBytes(payloadPointer, payloadContentSize);
+        }
+        String cacheKey = getCacheKey(payloadPointer, s3Pointers);
+        ByteBuffer cachedPayload = getCachedPayload(cacheKey);
+        if (cachedPayload != null) {
+            byte[] payload = new byte[cachedPayload.remaining()];
+            cachedPayload.get(payload);
+            return payload;
+        }
+
+        CompletableFuture<byte[]> retrieval = new CompletableFuture<byte[]>();
+        CompletableFuture<byte[]> pendingRetrieval = pendingRetrievals.putIfAbsent(cacheKey, retrieval);
+        if (pendingRetrieval != null) {
+            return awaitRetrieval(pendingRetrieval).clone();
+        }
+        try {
+            byte[] payload = payloadStore.getOriginalPayloadBytes(payloadPointer, payloadContentSize);
+            cachePayload(cacheKey, retrieval, payload);
+            retrieval.complete(payload);
+            return payload.clone();
+        } catch (RuntimeException e) {
+            retrieval.completeExceptionally(e);
+            throw e;
+        } finally {
+            pendingRetrievals.remove(cacheKey, retrieval);
+        }
+    }
+
+    @Override
+    public void getOriginalPayload(String payloadPointer, long payloadContentSize, Path target) {
+        payloadStore.getOriginalPayload(payloadPointer, payloadContentSize, target);
+    }
+
+    @Override
+    public void deleteOriginalPayload(String payloadPointer) {
+        invalidate(payloadPointer);
+        payloadStore.deleteOriginalPayload(payloadPointer);
+    }
+
+    @Override
+    public void deleteOriginalPayloads(Collection<String> payloadPointers) {
+        for (String payloadPointer : payloadPointers) {
+            invalidate(payloadPointer);
+        }
+        payloadStore.deleteOriginalPayloads(payloadPointers);
+    }
+
+    @Override
+    public void deleteOriginalPayload(String s3BucketName, String s3Key) {
+        if (!s3Pointers) {
+            deleteOriginalPayload(new PayloadS3Pointer(s3BucketName, s3Key).toJson());
+            return;
+        }
+        invalidateCacheKey(getCacheKey(s3BucketName, s3Key));
+        S3KeyedPayloadStore.deleteOriginalPayload(payloadStore, s3BucketName, s3Key);
+    }
+
+    @Override
+    public void deleteOriginalPayloads(Map<String, List<String>> s3KeysByBucketName) {
+        if (!s3Pointers) {
+            deleteOriginalPayloads(S3KeyedPayloadStore.toPayloadPointers(s3KeysByBucketName));
+            return;
+        }
+        for (Map.Entry<String, List<String>> bucketKeys : s3KeysByBucketName.entrySet()) {
+            for (String s3Key : bucketKeys.getValue()) {
+                invalidateCacheKey(getCacheKey(bucketKeys.getKey(), s3Key));
+            }
+        }
+        S3KeyedPayloadStore.deleteOriginalPayloads(payloadStore, s3KeysByBucketName);
+    }
+
+    /**
+     * Gets the total size in bytes of the cached payloads.
+     */
+    synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Gets a read-only view of the cached payload, or null if it is not
+     * cached.
+     */
+    private synchronized ByteBuffer getCachedPayload(String cacheKey) {
+        ByteBuffer payload = cachedPayloads.get(cacheKey);
+        return payload != null ? payload.asReadOnlyBuffer() : null;
+    }
+
+    /**
+     * Caches the retrieved payload, unless it was deleted while it was being
+     * retrieved, and evicts the least recently used payloads beyond the
+     * maximum size.
+     */
+    private void cachePayload(String cacheKey, CompletableFuture<byte[]> retrieval, byte[] payload) {
+        if (payload.length > maxSize) {
+            return;
+        }
+        ByteBuffer cachedPayload;
+        if (offHeap) {
+            cachedPayload = ByteBuffer.allocateDirect(payload.length);
+            cachedPayload.put(payload).flip();
+        } else {
+            cachedPayload = ByteBuffer.wrap(payload.clone());
+        }
+        synchronized (this) {
+            if (pendingRetrievals.get(cacheKey) != retrieval) {
+                return;
+            }
+            ByteBuffer replacedPayload = cachedPayloads.put(cacheKey, cachedPayload);
+            size += payload.length - (replacedPayload != null ? replacedPayload.capacity() : 0);
+            Iterator<ByteBuffer> leastRecentlyUsed = cachedPayloads.values().iterator();
+            while (size > maxSize) {
+                size -= leastRecentlyUsed.next().capacity();
+                leastRecentlyUsed.remove();
+            }
+        }
+    }
+
+    private void invalidate(String payloadPointer) {
+        invalidateCacheKey(getCacheKey(payloadPointer, s3Pointers));
+    }
+
+    private void invalidateCacheKey(String cacheKey) {
+        synchronized (this) {
+            pendingRetrievals.remove(cacheKey);
+            ByteBuffer payload = cachedPayloads.remove(cacheKey);
+            if (payload != null) {
+                size -= payload.capacity();
+            }
+        }
+    }
+
+    /**
+     * Gets the key a payload is cached under. Amazon S3 pointers are keyed by
+     * their bucket and key, whatever the layout of their JSON, while other
+     * pointers are keyed as they are.
+     */
+    static String getCacheKey(String payloadPointer, boolean s3Pointers) {
+        if (!s3Pointers || SharedMemoryPayloadStore.isSharedMemoryPointer(payloadPointer)) {
+            return payloadPointer;
+        }
+        PayloadS3Pointer s3Pointer = PayloadS3Pointer.fromJson(payloadPointer);
+        return getCacheKey(s3Pointer.getS3BucketName(), s3Pointer.getS3Key());
+    }
+
+    /**
+     * Gets the key a payload stored in Amazon S3 is cached under.
+     */
+    static String getCacheKey(String s3BucketName, String s3Key) {
+        // Bucket names cannot contain slashes, so the bucket name ends at the first one.
+        return s3BucketName + "/" + s3Key;
+    }
+
+    private static byte[] awaitRetrieval(CompletableFuture<byte[]> retrieval) {
+        try {
+            return retrieval.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new AmazonClientException(e.getCause());
+        }
+    }
+}
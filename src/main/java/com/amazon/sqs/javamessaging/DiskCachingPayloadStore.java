@@ -0,0 +1,421 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import com.amazonaws.AmazonClientException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import software.amazon.payloadoffloading.PayloadS3Pointer;
+
+/**
+ * Payload store that keeps retrieved payloads in a cache directory shared by
+ * the consumer processes of a host, so that a message redelivered to another
+ * process does not download the same payload again.
+ *
+ * <p>
+ * Each payload is cached in a file named after a hash of its pointer, or of
+ * the bucket and key of an Amazon S3 pointer, with a
+ * header holding its length and CRC32 checksum. Files are written under a
+ * temporary name and moved into place atomically, so processes never see
+ * partial files, and are verified against their header whenever they are read,
+ * through a read-only mapping. Files that fail verification are deleted and
+ * the payload is retrieved from the underlying store again.
+ * </p>
+ *
+ * <p>
+ * Reading a cached file renews its modification time. Each store estimates the
+ * size of the directory from its last scan and the files it wrote since, and
+ * scans the directory again once the estimate exceeds the maximum size or the
+ * last scan is a minute old. A scan that finds the cached files beyond the
+ * maximum size deletes the least recently read files until they fit in 90% of
+ * it. The scan takes an exclusive
+ * lock on the directory, and processes that find the lock taken leave the
+ * eviction to its holder.
+ * Deleting a payload deletes its cached file for every process, and a file
+ * written by a retrieval of this store that overlapped the deletion is deleted
+ * again once it is in place. Errors of the
+ * cache are logged and fall back to the underlying store. Payloads in shared
+ * memory are already shared by the processes of the host and are never cached.
+ * </p>
+ */
+class DiskCachingPayloadStore implements StreamingPayloadStore, S3KeyedPayloadStore {
+    private static final Log LOG = LogFactory.getLog(DiskCachingPayloadStore.class);
+
+    private static final String CACHE_FILE_SUFFIX = ".payload";
+    private static final String TEMPORARY_FILE_SUFFIX = ".tmp";
+    private static final String LOCK_FILE_NAME = "eviction.lock";
+    private static final int MAGIC = 0x53515043;
+    private static final int HEADER_SIZE = 16;
+    // Age after which a temporary file is considered left behind by a failed process.
+    private static final long STALE_TEMPORARY_FILE_MILLIS = 10L * 60 * 1000;
+    // Interval after which the directory is scanned again, to account for files written by other processes.
+    private static final long SCAN_INTERVAL_MILLIS = 60L * 1000;
+
+    private final StreamingPayloadStore payloadStore;
+    private final Path directory;
+    private final long maxSize;
+    private final boolean s3Pointers;
+    private final long lowWaterMark;
+    private final AtomicLong estimatedSize = new AtomicLong();
+    private final AtomicLong nextScanMillis = new AtomicLong();
+    private final Map<Path, Object> pendingRetrievals = new ConcurrentHashMap<Path, Object>();
+
+    /**
+     * @param payloadStore
+     *            Store the payloads are retrieved from.
+     * @param directory
+     *            Cache directory shared by the processes of the host. It is
+     *            created if it does not exist.
+     * @param maxSize
+     *            Maximum total size in bytes of the cached files.
+     * @param s3Pointers
+     *            Whether the payloads are referenced by Amazon S3 pointers,
+     *            rather than by pointers of a custom payload store.
+     */
+    DiskCachingPayloadStore(StreamingPayloadStore payloadStore, Path directory, long maxSize, boolean s3Pointers) {
+        this.payloadStore = payloadStore;
+        this.maxSize = maxSize;
+        this.s3Pointers = s3Pointers;
+        // Eviction frees a tenth of the maximum size, so that the next scans are some writes away.
+        this.lowWaterMark = maxSize - maxSize / 10;
+        try {
+            this.directory = Files.createDirectories(directory);
+        } catch (IOException e) {
+            String errorMessage = "Failed to open the payload cache directory " + directory + ".";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        }
+    }
+
+    @Override
+    public String storeOriginalPayload(String payload, Long payloadContentSize) {
+        return payloadStore.storeOriginalPayload(payload, payloadContentSize);
+    }
+
+    @Override
+    public String storeOriginalPayload(InputStream payload, long payloadContentSize) {
+        return payloadStore.storeOriginalPayload(payload, payloadContentSize);
+    }
+
+    @Override
+    public String getOriginalPayload(String payloadPointer) {
+        return new String(getOriginalPayloadBytes(payloadPointer, -1), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public InputStream getOriginalPayloadStream(String payloadPointer) {
+        if (SharedMemoryPayloadStore.isSharedMemoryPointer(payloadPointer)) {
+            return payloadStore.getOriginalPayloadStream(payloadPointer);
+        }
+        ByteBuffer cachedPayload = readCachedPayload(getCacheFile(payloadPointer));
+        return cachedPayload != null ? new ByteBufferInputStream(cachedPayload)
+                : payloadStore.getOriginalPayloadStream(payloadPointer);
+    }
+
+    @Override
+    public byte[] getOriginalPayloadBytes(String payloadPointer, long payloadContentSize) {
+        if (SharedMemoryPayloadStore.isSharedMemoryPointer(payloadPointer)) {
+            return payloadStore.getOriginalPayloadBytes(payloadPointer, payloadContentSize);
+        }
+        Path cacheFile = getCacheFile(payloadPointer);
+        ByteBuffer cachedPayload = readCachedPayload(cacheFile);
+        if (cachedPayload != null) {
+            byte[] payload = new byte[cachedPayload.remaining()];
+            cachedPayload.get(payload);
+            return payload;
+        }
+
+        // Only the first of concurrent retrievals of a payload caches it, and a deletion removes its entry.
+        Object retrieval = new Object();
+        if (pendingRetrievals.putIfAbsent(cacheFile, retrieval) != null) {
+            return payloadStore.getOriginalPayloadBytes(payloadPointer, payloadContentSize);
+        }
+        try {
+            byte[] payload = payloadStore.getOriginalPayloadBytes(payloadPointer, payloadContentSize);
+            if (payload.length + HEADER_SIZE <= maxSize && writeCachedPayload(cacheFile, payload)) {
+                cachePayload(cacheFile, retrieval, payload.length + HEADER_SIZE);
+            }
+            return payload;
+        } finally {
+            pendingRetrievals.remove(cacheFile, retrieval);
+        }
+    }
+
+    /**
+     * Accounts for the file just moved into place, unless the payload was
+     * deleted while it was being retrieved, in which case the deletion may have
+     * run before the move and the file is deleted again.
+     */
+    private void cachePayload(Path cacheFile, Object retrieval, long fileSize) {
+        if (pendingRetrievals.get(cacheFile) != retrieval) {
+            deleteCacheFile(cacheFile);
+            return;
+        }
+        long size = estimatedSize.addAndGet(fileSize);
+        if (size > maxSize || System.currentTimeMillis() >= nextScanMillis.get()) {
+            evictIfFull();
+        }
+    }
+
+    @Override
+    public void getOriginalPayload(String payloadPointer, long payloadContentSize, Path target) {
+        payloadStore.getOriginalPayload(payloadPointer, payloadContentSize, target);
+    }
+
+    @Override
+    public void deleteOriginalPayload(String payloadPointer) {
+        invalidate(payloadPointer);
+        payloadStore.deleteOriginalPayload(payloadPointer);
+    }
+
+    @Override
+    public void deleteOriginalPayloads(Collection<String> payloadPointers) {
+        for (String payloadPointer : payloadPointers) {
+            invalidate(payloadPointer);
+        }
+        payloadStore.deleteOriginalPayloads(payloadPointers);
+    }
+
+    @Override
+    public void deleteOriginalPayload(String s3BucketName, String s3Key) {
+        if (!s3Pointers) {
+            deleteOriginalPayload(new PayloadS3Pointer(s3BucketName, s3Key).toJson());
+            return;
+        }
+        invalidateCacheFile(getCacheFileOfKey(CachingPayloadStore.getCacheKey(s3BucketName, s3Key)));
+        S3KeyedPayloadStore.deleteOriginalPayload(payloadStore, s3BucketName, s3Key);
+    }
+
+    @Override
+    public void deleteOriginalPayloads(Map<String, List<String>> s3KeysByBucketName) {
+        if (!s3Pointers) {
+            deleteOriginalPayloads(S3KeyedPayloadStore.toPayloadPointers(s3KeysByBucketName));
+            return;
+        }
+        for (Map.Entry<String, List<String>> bucketKeys : s3KeysByBucketName.entrySet()) {
+            for (String s3Key : bucketKeys.getValue()) {
+                invalidateCacheFile(getCacheFileOfKey(CachingPayloadStore.getCacheKey(bucketKeys.getKey(), s3Key)));
+            }
+        }
+        S3KeyedPayloadStore.deleteOriginalPayloads(payloadStore, s3KeysByBucketName);
+    }
+
+    private void invalidate(String payloadPointer) {
+        if (SharedMemoryPayloadStore.isSharedMemoryPointer(payloadPointer)) {
+            return;
+        }
+        invalidateCacheFile(getCacheFile(payloadPointer));
+    }
+
+    private void invalidateCacheFile(Path cacheFile) {
+        pendingRetrievals.remove(cacheFile);
+        deleteCacheFile(cacheFile);
+    }
+
+    private static void deleteCacheFile(Path cacheFile) {
+        try {
+            Files.deleteIfExists(cacheFile);
+        } catch (IOException e) {
+            LOG.warn("Failed to delete the cached payload file " + cacheFile + ".", e);
+        }
+    }
+
+    /**
+     * Maps and verifies the cached file, returning the payload it holds or
+     * null if it is not cached or fails verification.
+     */
+    private ByteBuffer readCachedPayload(Path cacheFile) {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed and after the file is evicted.
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            LOG.warn("Failed to read the cached payload file " + cacheFile + ".", e);
+            return null;
+        }
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt(0) != MAGIC
+                || buffer.getLong(8) != buffer.remaining() - HEADER_SIZE) {
+            return discard(cacheFile);
+        }
+        buffer.position(HEADER_SIZE);
+        ByteBuffer payload = buffer.slice();
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != buffer.getInt(4)) {
+            return discard(cacheFile);
+        }
+        try {
+            Files.setLastModifiedTime(cacheFile, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // The file was evicted after it was mapped, which does not affect the mapping.
+        }
+        return payload;
+    }
+
+    private static ByteBuffer discard(Path cacheFile) {
+        LOG.warn("The cached payload file " + cacheFile + " is corrupt and is deleted.");
+        try {
+            Files.deleteIfExists(cacheFile);
+        } catch (IOException e) {
+            LOG.warn("Failed to delete the cached payload file " + cacheFile + ".", e);
+        }
+        return null;
+    }
+
+    private boolean writeCachedPayload(Path cacheFile, byte[] payload) {
+        Path temporaryFile = directory.resolve(cacheFile.getFileName() + "." + UUID.randomUUID() + TEMPORARY_FILE_SUFFIX);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt((int) crc.getValue()).putLong(payload.length).flip();
+        try {
+            try (FileChannel channel = FileChannel.open(temporaryFile,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                ByteBuffer[] buffers = { header, ByteBuffer.wrap(payload) };
+                while (buffers[1].hasRemaining()) {
+                    channel.write(buffers);
+                }
+            }
+            Files.move(temporaryFile, cacheFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Failed to cache the payload in " + cacheFile + ".", e);
+            try {
+                Files.deleteIfExists(temporaryFile);
+            } catch (IOException deleteException) {
+                LOG.warn("Failed to delete the temporary payload file " + temporaryFile + ".", deleteException);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Scans the directory and, if the cached files exceed the maximum size,
+     * deletes the least recently read files down to the low-water mark,
+     * unless another process or thread is already evicting.
+     */
+    private void evictIfFull() {
+        try (FileChannel lockChannel = FileChannel.open(directory.resolve(LOCK_FILE_NAME),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock;
+            try {
+                lock = lockChannel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                return;
+            }
+            if (lock == null) {
+                return;
+            }
+            try {
+                evict();
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to evict payloads from the cache directory " + directory + ".", e);
+        }
+    }
+
+    private void evict() throws IOException {
+        long now = System.currentTimeMillis();
+        List<CachedFile> cachedFiles = new ArrayList<CachedFile>();
+        long size = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    continue;
+                }
+                long lastModifiedMillis = attributes.lastModifiedTime().toMillis();
+                if (fileName.endsWith(CACHE_FILE_SUFFIX)) {
+                    cachedFiles.add(new CachedFile(file, attributes.size(), lastModifiedMillis));
+                    size += attributes.size();
+                } else if (fileName.endsWith(TEMPORARY_FILE_SUFFIX) && now - lastModifiedMillis > STALE_TEMPORARY_FILE_MILLIS) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        if (size > maxSize) {
+            cachedFiles.sort(Comparator.comparingLong(cachedFile -> cachedFile.lastModifiedMillis));
+            for (CachedFile cachedFile : cachedFiles) {
+                if (size <= lowWaterMark) {
+                    break;
+                }
+                Files.deleteIfExists(cachedFile.path);
+                size -= cachedFile.size;
+            }
+        }
+        estimatedSize.set(size);
+        nextScanMillis.set(now + SCAN_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Resolves the cached file of a payload, named after the SHA-256 hash of
+     * its cache key, since pointers arrive in messages.
+     */
+    private Path getCacheFile(String payloadPointer) {
+        return getCacheFileOfKey(CachingPayloadStore.getCacheKey(payloadPointer, s3Pointers));
+    }
+
+    private Path getCacheFileOfKey(String cacheKey) {
+        byte[] hash = Sha256.newDigest().digest(cacheKey.getBytes(StandardCharsets.UTF_8));
+        return directory.resolve(Sha256.toHex(hash) + CACHE_FILE_SUFFIX);
+    }
+
+    private static final class CachedFile {
+        final Path path;
+        final long size;
+        final long lastModifiedMillis;
+
+        CachedFile(Path path, long size, long lastModifiedMillis) {
+            this.path = path;
+            this.size = size;
+            this.lastModifiedMillis = lastModifiedMillis;
+        }
+    }
+}
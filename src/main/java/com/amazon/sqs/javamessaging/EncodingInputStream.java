@@ -0,0 +1,98 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Input stream that returns the encoded form of another stream, encoding it
+ * chunk by chunk as it is read, so that a payload can be compressed while it
+ * is uploaded without holding it in memory or handing it to another thread.
+ */
+class EncodingInputStream extends InputStream {
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final InputStream source;
+    private final EncodedBuffer encoded = new EncodedBuffer();
+    private final OutputStream encoder;
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private int position;
+    private boolean finished;
+
+    EncodingInputStream(InputStream source, PayloadCodec codec) throws IOException {
+        this.source = source;
+        this.encoder = codec.encode(encoded);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (position == encoded.size()) {
+            if (finished) {
+                return -1;
+            }
+            encoded.reset();
+            position = 0;
+            int count = source.read(chunk);
+            if (count < 0) {
+                // Closing the encoder flushes what it still holds, including any trailer.
+                encoder.close();
+                finished = true;
+            } else {
+                encoder.write(chunk, 0, count);
+            }
+        }
+        int count = Math.min(len, encoded.size() - position);
+        System.arraycopy(encoded.buffer(), position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return encoded.size() - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            source.close();
+        } finally {
+            if (!finished) {
+                finished = true;
+                encoder.close();
+            }
+        }
+    }
+
+    private static class EncodedBuffer extends ByteArrayOutputStream {
+        byte[] buffer() {
+            return buf;
+        }
+    }
+}
@@ -15,10 +15,22 @@
 
 package com.amazon.sqs.javamessaging;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.SSEAwsKeyManagementParams;
 import com.amazonaws.annotation.NotThreadSafe;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import software.amazon.payloadoffloading.PayloadStorageConfiguration;
+import software.amazon.payloadoffloading.PayloadStore;
 
 
 /**
@@ -27,9 +39,58 @@ import software.amazon.payloadoffloading.PayloadStorageConfiguration;
  */
 @NotThreadSafe
 public class ExtendedClientConfiguration extends PayloadStorageConfiguration {
+    private static final Log LOG = LogFactory.getLog(ExtendedClientConfiguration.class);
+
+    static final long DEFAULT_MULTIPART_UPLOAD_THRESHOLD = 64L * 1024 * 1024;
+    static final long DEFAULT_MULTIPART_UPLOAD_PART_SIZE = 16L * 1024 * 1024;
+    static final int DEFAULT_MULTIPART_UPLOAD_CONCURRENCY = 4;
+    static final int DEFAULT_MULTIPART_UPLOAD_PART_RETRIES = 3;
+    static final long DEFAULT_RANGED_DOWNLOAD_THRESHOLD = 64L * 1024 * 1024;
+    static final long DEFAULT_RANGED_DOWNLOAD_PART_SIZE = 16L * 1024 * 1024;
+    static final int DEFAULT_RANGED_DOWNLOAD_CONCURRENCY = 4;
+    static final long DEFAULT_PAYLOAD_DEDUPLICATION_MAX_AGE_MILLIS = 24L * 60 * 60 * 1000;
+    static final int DEFAULT_PAYLOAD_DEDUPLICATION_CACHE_SIZE = 10000;
+    static final int DEFAULT_BACKGROUND_PAYLOAD_DELETION_QUEUE_SIZE = 10000;
+    static final int DEFAULT_BACKGROUND_PAYLOAD_DELETION_MAX_ATTEMPTS = 5;
+    static final long DEFAULT_SHARED_MEMORY_PAYLOAD_MAX_SIZE = 64L * 1024 * 1024;
+    // The longest message retention period of Amazon SQS.
+    static final long DEFAULT_SHARED_MEMORY_PAYLOAD_MAX_AGE_MILLIS = 14L * 24 * 60 * 60 * 1000;
+    static final long DEFAULT_PAYLOAD_CACHE_DIRECTORY_MAX_SIZE = 1024L * 1024 * 1024;
 
+    private PayloadStore payloadStore;
     private boolean cleanupS3Payload = true;
     private boolean useLegacyReservedAttributeName = true;
+    private ExecutorService payloadExecutor;
+    private long payloadBatchTimeoutMillis = 0;
+    private int payloadUploadConcurrency = 0;
+    private long multipartUploadThreshold = DEFAULT_MULTIPART_UPLOAD_THRESHOLD;
+    private long multipartUploadPartSize = DEFAULT_MULTIPART_UPLOAD_PART_SIZE;
+    private int multipartUploadConcurrency = DEFAULT_MULTIPART_UPLOAD_CONCURRENCY;
+    private int multipartUploadPartRetries = DEFAULT_MULTIPART_UPLOAD_PART_RETRIES;
+    private long rangedDownloadThreshold = DEFAULT_RANGED_DOWNLOAD_THRESHOLD;
+    private long rangedDownloadPartSize = DEFAULT_RANGED_DOWNLOAD_PART_SIZE;
+    private int rangedDownloadConcurrency = DEFAULT_RANGED_DOWNLOAD_CONCURRENCY;
+    private PayloadCodec payloadCodec;
+    private boolean inlineCompressionEnabled = false;
+    private boolean payloadDeduplicationEnabled = false;
+    private long payloadDeduplicationMaxAgeMillis = DEFAULT_PAYLOAD_DEDUPLICATION_MAX_AGE_MILLIS;
+    private int payloadDeduplicationCacheSize = DEFAULT_PAYLOAD_DEDUPLICATION_CACHE_SIZE;
+    private boolean backgroundPayloadDeletionEnabled = false;
+    private int backgroundPayloadDeletionQueueSize = DEFAULT_BACKGROUND_PAYLOAD_DELETION_QUEUE_SIZE;
+    private int backgroundPayloadDeletionMaxAttempts = DEFAULT_BACKGROUND_PAYLOAD_DELETION_MAX_ATTEMPTS;
+    private String payloadKeyPrefix = "";
+    private int payloadKeyHashPrefixCount = 0;
+    private Map<String, AmazonS3> additionalPayloadBuckets = Collections.emptyMap();
+    private PayloadBucketSelection payloadBucketSelection = PayloadBucketSelection.ROUND_ROBIN;
+    private List<PayloadSizeBand> payloadSizeBands = Collections.emptyList();
+    private Path sharedMemoryPayloadDirectory;
+    private long sharedMemoryPayloadMaxSize = DEFAULT_SHARED_MEMORY_PAYLOAD_MAX_SIZE;
+    private boolean sharedMemoryPayloadFallbackCopyEnabled = true;
+    private long sharedMemoryPayloadMaxAgeMillis = DEFAULT_SHARED_MEMORY_PAYLOAD_MAX_AGE_MILLIS;
+    private long payloadCacheMaxSize;
+    private boolean payloadCacheOffHeap;
+    private Path payloadCacheDirectory;
+    private long payloadCacheDirectoryMaxSize = DEFAULT_PAYLOAD_CACHE_DIRECTORY_MAX_SIZE;
 
     public ExtendedClientConfiguration() {
         super();
@@ -38,8 +99,40 @@ public class ExtendedClientConfiguration extends PayloadStorageConfiguration {
 
     public ExtendedClientConfiguration(ExtendedClientConfiguration other) {
         super(other);
+        this.payloadStore = other.getPayloadStore();
         this.cleanupS3Payload = other.doesCleanupS3Payload();
         this.useLegacyReservedAttributeName = other.usesLegacyReservedAttributeName();
+        this.payloadExecutor = other.getPayloadExecutor();
+        this.payloadBatchTimeoutMillis = other.getPayloadBatchTimeoutMillis();
+        this.payloadUploadConcurrency = other.getPayloadUploadConcurrency();
+        this.multipartUploadThreshold = other.getMultipartUploadThreshold();
+        this.multipartUploadPartSize = other.getMultipartUploadPartSize();
+        this.multipartUploadConcurrency = other.getMultipartUploadConcurrency();
+        this.multipartUploadPartRetries = other.getMultipartUploadPartRetries();
+        this.rangedDownloadThreshold = other.getRangedDownloadThreshold();
+        this.rangedDownloadPartSize = other.getRangedDownloadPartSize();
+        this.rangedDownloadConcurrency = other.getRangedDownloadConcurrency();
+        this.payloadCodec = other.getPayloadCodec();
+        this.inlineCompressionEnabled = other.isInlineCompressionEnabled();
+        this.payloadDeduplicationEnabled = other.isPayloadDeduplicationEnabled();
+        this.payloadDeduplicationMaxAgeMillis = other.getPayloadDeduplicationMaxAgeMillis();
+        this.payloadDeduplicationCacheSize = other.getPayloadDeduplicationCacheSize();
+        this.backgroundPayloadDeletionEnabled = other.isBackgroundPayloadDeletionEnabled();
+        this.backgroundPayloadDeletionQueueSize = other.getBackgroundPayloadDeletionQueueSize();
+        this.backgroundPayloadDeletionMaxAttempts = other.getBackgroundPayloadDeletionMaxAttempts();
+        this.payloadKeyPrefix = other.getPayloadKeyPrefix();
+        this.payloadKeyHashPrefixCount = other.getPayloadKeyHashPrefixCount();
+        this.additionalPayloadBuckets = other.getAdditionalPayloadBuckets();
+        this.payloadBucketSelection = other.getPayloadBucketSelection();
+        this.payloadSizeBands = other.getPayloadSizeBands();
+        this.sharedMemoryPayloadDirectory = other.getSharedMemoryPayloadDirectory();
+        this.sharedMemoryPayloadMaxSize = other.getSharedMemoryPayloadMaxSize();
+        this.sharedMemoryPayloadFallbackCopyEnabled = other.isSharedMemoryPayloadFallbackCopyEnabled();
+        this.sharedMemoryPayloadMaxAgeMillis = other.getSharedMemoryPayloadMaxAgeMillis();
+        this.payloadCacheMaxSize = other.getPayloadCacheMaxSize();
+        this.payloadCacheOffHeap = other.isPayloadCacheOffHeap();
+        this.payloadCacheDirectory = other.getPayloadCacheDirectory();
+        this.payloadCacheDirectoryMaxSize = other.getPayloadCacheDirectoryMaxSize();
     }
 
     /**
@@ -84,6 +177,60 @@ public class ExtendedClientConfiguration extends PayloadStorageConfiguration {
         return this;
     }
 
+    /**
+     * Enables support for payload messages, stored in the given payload store
+     * instead of Amazon S3. Payloads are handed to the store as streams if it
+     * implements {@link StreamingPayloadStore}, and as UTF-8 strings
+     * otherwise. The store takes precedence over any Amazon S3 client and
+     * bucket, and the settings specific to Amazon S3 do not apply to it.
+     *
+     * @param payloadStore
+     *            Store which is going to be used for storing payload
+     *            messages, such as {@link InMemoryPayloadStore} or
+     *            {@link FileSystemPayloadStore}.
+     */
+    public void setPayloadSupportEnabled(PayloadStore payloadStore) {
+        this.payloadStore = payloadStore;
+    }
+
+    /**
+     * Enables support for payload messages, stored in the given payload store
+     * instead of Amazon S3. Payloads are handed to the store as streams if it
+     * implements {@link StreamingPayloadStore}, and as UTF-8 strings
+     * otherwise. The store takes precedence over any Amazon S3 client and
+     * bucket, and the settings specific to Amazon S3 do not apply to it.
+     *
+     * @param payloadStore
+     *            Store which is going to be used for storing payload
+     *            messages, such as {@link InMemoryPayloadStore} or
+     *            {@link FileSystemPayloadStore}.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withPayloadSupportEnabled(PayloadStore payloadStore) {
+        setPayloadSupportEnabled(payloadStore);
+        return this;
+    }
+
+    /**
+     * Gets the store of payload messages set instead of Amazon S3.
+     *
+     * @return The payload store, or null if payloads are stored in Amazon S3.
+     */
+    public PayloadStore getPayloadStore() {
+        return payloadStore;
+    }
+
+    @Override
+    public boolean isPayloadSupportEnabled() {
+        return payloadStore != null || super.isPayloadSupportEnabled();
+    }
+
+    @Override
+    public void setPayloadSupportDisabled() {
+        super.setPayloadSupportDisabled();
+        this.payloadStore = null;
+    }
+
     /**
      * Disables the utilization legacy payload attribute name when sending messages.
      */
@@ -120,6 +267,1277 @@ public class ExtendedClientConfiguration extends PayloadStorageConfiguration {
         return useLegacyReservedAttributeName;
     }
 
+    /**
+     * Sets the executor used to transfer the payloads of a single batch
+     * concurrently, for example the payloads returned by one receive call.
+     * The executor is owned by the caller and is not shut down by the client.
+     *
+     * @param payloadExecutor
+     *            Executor used for concurrent payload transfers. If null,
+     *            payloads are transferred one at a time on the calling thread.
+     *            Default: null.
+     */
+    public void setPayloadExecutor(ExecutorService payloadExecutor) {
+        this.payloadExecutor = payloadExecutor;
+    }
+
+    /**
+     * Sets the executor used to transfer the payloads of a single batch
+     * concurrently, for example the payloads returned by one receive call.
+     * The executor is owned by the caller and is not shut down by the client.
+     *
+     * @param payloadExecutor
+     *            Executor used for concurrent payload transfers. If null,
+     *            payloads are transferred one at a time on the calling thread.
+     *            Default: null.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withPayloadExecutor(ExecutorService payloadExecutor) {
+        setPayloadExecutor(payloadExecutor);
+        return this;
+    }
+
+    /**
+     * Gets the executor used to transfer the payloads of a single batch
+     * concurrently.
+     *
+     * @return the payload executor, or null if payloads are transferred
+     *         sequentially. Default: null.
+     */
+    public ExecutorService getPayloadExecutor() {
+        return payloadExecutor;
+    }
+
+    /**
+     * Sets the maximum time to wait for all payload transfers of a single
+     * batch when they run on the payload executor.
+     *
+     * @param payloadBatchTimeoutMillis
+     *            Timeout in milliseconds. Zero or less waits without a limit.
+     *            Default: 0.
+     */
+    public void setPayloadBatchTimeoutMillis(long payloadBatchTimeoutMillis) {
+        this.payloadBatchTimeoutMillis = payloadBatchTimeoutMillis;
+    }
+
+    /**
+     * Sets the maximum time to wait for all payload transfers of a single
+     * batch when they run on the payload executor.
+     *
+     * @param payloadBatchTimeoutMillis
+     *            Timeout in milliseconds. Zero or less waits without a limit.
+     *            Default: 0.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withPayloadBatchTimeoutMillis(long payloadBatchTimeoutMillis) {
+        setPayloadBatchTimeoutMillis(payloadBatchTimeoutMillis);
+        return this;
+    }
+
+    /**
+     * Gets the maximum time to wait for all payload transfers of a single
+     * batch when they run on the payload executor.
+     *
+     * @return Timeout in milliseconds. Zero or less waits without a limit.
+     *         Default: 0.
+     */
+    public long getPayloadBatchTimeoutMillis() {
+        return payloadBatchTimeoutMillis;
+    }
+
+    /**
+     * Sets the maximum number of payload uploads of a single batch that run
+     * at the same time on the payload executor. Without a payload executor
+     * the uploads run one after another.
+     *
+     * @param payloadUploadConcurrency
+     *            Maximum number of concurrent uploads per batch. Zero or less
+     *            uploads all payloads of the batch at the same time.
+     *            Default: 0.
+     */
+    public void setPayloadUploadConcurrency(int payloadUploadConcurrency) {
+        this.payloadUploadConcurrency = payloadUploadConcurrency;
+    }
+
+    /**
+     * Sets the maximum number of payload uploads of a single batch that run
+     * at the same time on the payload executor. Without a payload executor
+     * the uploads run one after another.
+     *
+     * @param payloadUploadConcurrency
+     *            Maximum number of concurrent uploads per batch. Zero or less
+     *            uploads all payloads of the batch at the same time.
+     *            Default: 0.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withPayloadUploadConcurrency(int payloadUploadConcurrency) {
+        setPayloadUploadConcurrency(payloadUploadConcurrency);
+        return this;
+    }
+
+    /**
+     * Gets the maximum number of payload uploads of a single batch that run
+     * at the same time on the payload executor.
+     *
+     * @return Maximum number of concurrent uploads per batch. Zero or less
+     *         uploads all payloads of the batch at the same time. Default: 0.
+     */
+    public int getPayloadUploadConcurrency() {
+        return payloadUploadConcurrency;
+    }
+
+    /**
+     * Sets the payload size from which payloads are uploaded to Amazon S3 as
+     * multipart uploads, with parts uploaded concurrently and retried
+     * individually.
+     *
+     * @param multipartUploadThreshold
+     *            Size in bytes. Zero or less disables multipart uploads.
+     *            Default: 64 MB.
+     */
+    public void setMultipartUploadThreshold(long multipartUploadThreshold) {
+        this.multipartUploadThreshold = multipartUploadThreshold;
+    }
+
+    /**
+     * Sets the payload size from which payloads are uploaded to Amazon S3 as
+     * multipart uploads, with parts uploaded concurrently and retried
+     * individually.
+     *
+     * @param multipartUploadThreshold
+     *            Size in bytes. Zero or less disables multipart uploads.
+     *            Default: 64 MB.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withMultipartUploadThreshold(long multipartUploadThreshold) {
+        setMultipartUploadThreshold(multipartUploadThreshold);
+        return this;
+    }
+
+    /**
+     * Gets the payload size from which payloads are uploaded to Amazon S3 as
+     * multipart uploads.
+     *
+     * @return Size in bytes. Zero or less disables multipart uploads.
+     *         Default: 64 MB.
+     */
+    public long getMultipartUploadThreshold() {
+        return multipartUploadThreshold;
+    }
+
+    /**
+     * Sets the size of the parts of multipart uploads. Each part being
+     * uploaded is held in memory.
+     *
+     * @param multipartUploadPartSize
+     *            Size in bytes, at least the Amazon S3 minimum of 5 MB.
+     *            Default: 16 MB.
+     * @throws AmazonClientException
+     *             If the size is below 5 MB.
+     */
+    public void setMultipartUploadPartSize(long multipartUploadPartSize) {
+        if (multipartUploadPartSize < MultipartPayloadUploader.MIN_PART_SIZE) {
+            String errorMessage = "The multipart upload part size must be at least "
+                    + MultipartPayloadUploader.MIN_PART_SIZE + " bytes.";
+            LOG.error(errorMessage);
+            throw new AmazonClientException(errorMessage);
+        }
+        this.multipartUploadPartSize = multipartUploadPartSize;
+    }
+
+    /**
+     * Sets the size of the parts of multipart uploads. Each part being
+     * uploaded is held in memory.
+     *
+     * @param multipartUploadPartSize
+     *            Size in bytes, at least the Amazon S3 minimum of 5 MB.
+     *            Default: 16 MB.
+     * @return the updated ExtendedClientConfiguration object.
+     * @throws AmazonClientException
+     *             If the size is below 5 MB.
+     */
+    public ExtendedClientConfiguration withMultipartUploadPartSize(long multipartUploadPartSize) {
+        setMultipartUploadPartSize(multipartUploadPartSize);
+        return this;
+    }
+
+    /**
+     * Gets the size of the parts of multipart uploads.
+     *
+     * @return Size in bytes. Default: 16 MB.
+     */
+    public long getMultipartUploadPartSize() {
+        return multipartUploadPartSize;
+    }
+
+    /**
+     * Sets the maximum number of parts of one multipart upload that are
+     * uploaded at the same time.
+     *
+     * @param multipartUploadConcurrency
+     *            Maximum number of concurrent part uploads, at least 1.
+     *            Default: 4.
+     * @throws AmazonClientException
+     *             If the number is less than 1.
+     */
+    public void setMultipartUploadConcurrency(int multipartUploadConcurrency) {
+        if (multipartUploadConcurrency <= 0) {
+            String errorMessage = "The multipart upload concurrency must be at least 1.";
+            LOG.error(errorMessage);
+            throw new AmazonClientException(errorMessage);
+        }
+        this.multipartUploadConcurrency = multipartUploadConcurrency;
+    }
+
+    /**
+     * Sets the maximum number of parts of one multipart upload that are
+     * uploaded at the same time.
+     *
+     * @param multipartUploadConcurrency
+     *            Maximum number of concurrent part uploads, at least 1.
+     *            Default: 4.
+     * @return the updated ExtendedClientConfiguration object.
+     * @throws AmazonClientException
+     *             If the number is less than 1.
+     */
+    public ExtendedClientConfiguration withMultipartUploadConcurrency(int multipartUploadConcurrency) {
+        setMultipartUploadConcurrency(multipartUploadConcurrency);
+        return this;
+    }
+
+    /**
+     * Gets the maximum number of parts of one multipart upload that are
+     * uploaded at the same time.
+     *
+     * @return Maximum number of concurrent part uploads. Default: 4.
+     */
+    public int getMultipartUploadConcurrency() {
+        return multipartUploadConcurrency;
+    }
+
+    /**
+     * Sets how many times a failed part of a multipart upload is retried
+     * before the whole upload is aborted.
+     *
+     * @param multipartUploadPartRetries
+     *            Number of retries per part, zero or more. Default: 3.
+     * @throws AmazonClientException
+     *             If the number is negative.
+     */
+    public void setMultipartUploadPartRetries(int multipartUploadPartRetries) {
+        if (multipartUploadPartRetries < 0) {
+            String errorMessage = "The number of multipart upload part retries cannot be negative.";
+            LOG.error(errorMessage);
+            throw new AmazonClientException(errorMessage);
+        }
+        this.multipartUploadPartRetries = multipartUploadPartRetries;
+    }
+
+    /**
+     * Sets how many times a failed part of a multipart upload is retried
+     * before the whole upload is aborted.
+     *
+     * @param multipartUploadPartRetries
+     *            Number of retries per part, zero or more. Default: 3.
+     * @return the updated ExtendedClientConfiguration object.
+     * @throws AmazonClientException
+     *             If the number is negative.
+     */
+    public ExtendedClientConfiguration withMultipartUploadPartRetries(int multipartUploadPartRetries) {
+        setMultipartUploadPartRetries(multipartUploadPartRetries);
+        return this;
+    }
+
+    /**
+     * Gets how many times a failed part of a multipart upload is retried
+     * before the whole upload is aborted.
+     *
+     * @return Number of retries per part. Default: 3.
+     */
+    public int getMultipartUploadPartRetries() {
+        return multipartUploadPartRetries;
+    }
+
+    /**
+     * Sets the payload size from which payloads are downloaded from Amazon S3
+     * as concurrent byte-range requests. The size is taken from the reserved
+     * message attribute recorded when the payload was stored.
+     *
+     * @param rangedDownloadThreshold
+     *            Size in bytes. Zero or less disables ranged downloads.
+     *            Default: 64 MB.
+     */
+    public void setRangedDownloadThreshold(long rangedDownloadThreshold) {
+        this.rangedDownloadThreshold = rangedDownloadThreshold;
+    }
+
+    /**
+     * Sets the payload size from which payloads are downloaded from Amazon S3
+     * as concurrent byte-range requests. The size is taken from the reserved
+     * message attribute recorded when the payload was stored.
+     *
+     * @param rangedDownloadThreshold
+     *            Size in bytes. Zero or less disables ranged downloads.
+     *            Default: 64 MB.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withRangedDownloadThreshold(long rangedDownloadThreshold) {
+        setRangedDownloadThreshold(rangedDownloadThreshold);
+        return this;
+    }
+
+    /**
+     * Gets the payload size from which payloads are downloaded from Amazon S3
+     * as concurrent byte-range requests.
+     *
+     * @return Size in bytes. Zero or less disables ranged downloads.
+     *         Default: 64 MB.
+     */
+    public long getRangedDownloadThreshold() {
+        return rangedDownloadThreshold;
+    }
+
+    /**
+     * Sets the size of the byte ranges of ranged downloads.
+     *
+     * @param rangedDownloadPartSize
+     *            Size in bytes, at least 1. Default: 16 MB.
+     * @throws AmazonClientException
+     *             If the size is less than 1.
+     */
+    public void setRangedDownloadPartSize(long rangedDownloadPartSize) {
+        if (rangedDownloadPartSize <= 0) {
+            String errorMessage = "The ranged download part size must be at least 1 byte.";
+            LOG.error(errorMessage);
+            throw new AmazonClientException(errorMessage);
+        }
+        this.rangedDownloadPartSize = rangedDownloadPartSize;
+    }
+
+    /**
+     * Sets the size of the byte ranges of ranged downloads.
+     *
+     * @param rangedDownloadPartSize
+     *            Size in bytes, at least 1. Default: 16 MB.
+     * @return the updated ExtendedClientConfiguration object.
+     * @throws AmazonClientException
+     *             If the size is less than 1.
+     */
+    public ExtendedClientConfiguration withRangedDownloadPartSize(long rangedDownloadPartSize) {
+        setRangedDownloadPartSize(rangedDownloadPartSize);
+        return this;
+    }
+
+    /**
+     * Gets the size of the byte ranges of ranged downloads.
+     *
+     * @return Size in bytes. Default: 16 MB.
+     */
+    public long getRangedDownloadPartSize() {
+        return rangedDownloadPartSize;
+    }
+
+    /**
+     * Sets the maximum number of byte ranges of one payload that are
+     * downloaded at the same time.
+     *
+     * @param rangedDownloadConcurrency
+     *            Maximum number of concurrent range downloads, at least 1.
+     *            Default: 4.
+     * @throws AmazonClientException
+     *             If the number is less than 1.
+     */
+    public void setRangedDownloadConcurrency(int rangedDownloadConcurrency) {
+        if (rangedDownloadConcurrency <= 0) {
+            String errorMessage = "The ranged download concurrency must be at least 1.";
+            LOG.error(errorMessage);
+            throw new AmazonClientException(errorMessage);
+        }
+        this.rangedDownloadConcurrency = rangedDownloadConcurrency;
+    }
+
+    /**
+     * Sets the maximum number of byte ranges of one payload that are
+     * downloaded at the same time.
+     *
+     * @param rangedDownloadConcurrency
+     *            Maximum number of concurrent range downloads, at least 1.
+     *            Default: 4.
+     * @return the updated ExtendedClientConfiguration object.
+     * @throws AmazonClientException
+     *             If the number is less than 1.
+     */
+    public ExtendedClientConfiguration withRangedDownloadConcurrency(int rangedDownloadConcurrency) {
+        setRangedDownloadConcurrency(rangedDownloadConcurrency);
+        return this;
+    }
+
+    /**
+     * Gets the maximum number of byte ranges of one payload that are
+     * downloaded at the same time.
+     *
+     * @return Maximum number of concurrent range downloads. Default: 4.
+     */
+    public int getRangedDownloadConcurrency() {
+        return rangedDownloadConcurrency;
+    }
+
+    /**
+     * Sets the codec that compresses payloads while they are stored in Amazon
+     * S3. The codec is recorded as the Content-Encoding of the S3 object, and
+     * payloads are decoded transparently on receipt with the built-in gzip and
+     * deflate codecs or with this codec. Payloads that already start like a
+     * compressed format are stored as they are. Receivers must be able to
+     * decode the codec before senders start using it.
+     *
+     * @param payloadCodec
+     *            Codec such as {@link PayloadCodecs#GZIP}, or null to store
+     *            payloads uncompressed. Default: null.
+     */
+    public void setPayloadCodec(PayloadCodec payloadCodec) {
+        this.payloadCodec = payloadCodec;
+    }
+
+    /**
+     * Sets the codec that compresses payloads while they are stored in Amazon
+     * S3. The codec is recorded as the Content-Encoding of the S3 object, and
+     * payloads are decoded transparently on receipt with the built-in gzip and
+     * deflate codecs or with this codec. Payloads that already start like a
+     * compressed format are stored as they are. Receivers must be able to
+     * decode the codec before senders start using it.
+     *
+     * @param payloadCodec
+     *            Codec such as {@link PayloadCodecs#GZIP}, or null to store
+     *            payloads uncompressed. Default: null.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withPayloadCodec(PayloadCodec payloadCodec) {
+        setPayloadCodec(payloadCodec);
+        return this;
+    }
+
+    /**
+     * Gets the codec that compresses payloads while they are stored in Amazon
+     * S3.
+     *
+     * @return Codec, or null if payloads are stored uncompressed.
+     *         Default: null.
+     */
+    public PayloadCodec getPayloadCodec() {
+        return payloadCodec;
+    }
+
+    /**
+     * Sets whether message bodies over the payload size threshold are first
+     * compressed and Base64 encoded, and sent inline in Amazon SQS whenever the
+     * result fits under the threshold. Such messages carry the
+     * {@link SQSExtendedClientConstants#INLINE_ENCODING_ATTRIBUTE_NAME}
+     * attribute and are decoded transparently on receipt. Bodies that do not
+     * fit are stored in Amazon S3 as before. The payload codec is used, or
+     * gzip if none is set. Requires payload support to be enabled.
+     *
+     * @param inlineCompressionEnabled
+     *            Whether to compress bodies inline. Default: false.
+     */
+    public void setInlineCompressionEnabled(boolean inlineCompressionEnabled) {
+        this.inlineCompressionEnabled = inlineCompressionEnabled;
+    }
+
+    /**
+     * Sets whether message bodies over the payload size threshold are first
+     * compressed and Base64 encoded, and sent inline in Amazon SQS whenever the
+     * result fits under the threshold. Such messages carry the
+     * {@link SQSExtendedClientConstants#INLINE_ENCODING_ATTRIBUTE_NAME}
+     * attribute and are decoded transparently on receipt. Bodies that do not
+     * fit are stored in Amazon S3 as before. The payload codec is used, or
+     * gzip if none is set. Requires payload support to be enabled.
+     *
+     * @param inlineCompressionEnabled
+     *            Whether to compress bodies inline. Default: false.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withInlineCompressionEnabled(boolean inlineCompressionEnabled) {
+        setInlineCompressionEnabled(inlineCompressionEnabled);
+        return this;
+    }
+
+    /**
+     * Checks whether message bodies over the payload size threshold are
+     * compressed and sent inline when they fit.
+     *
+     * @return True if bodies are compressed inline. Default: false.
+     */
+    public boolean isInlineCompressionEnabled() {
+        return inlineCompressionEnabled;
+    }
+
+    /**
+     * Sets whether payloads stored in Amazon S3 are keyed by the SHA-256 hash
+     * of their content, so that a payload sent again reuses the existing object
+     * instead of being uploaded again. Applies to payloads that can be read
+     * twice, which are message bodies and byte array and byte buffer payloads.
+     * <p>
+     * Content-addressed objects are shared between messages and are never
+     * deleted with a message, so the bucket needs a lifecycle rule that expires
+     * them. The expiration must be longer than the maximum age of reused
+     * objects plus the message retention period of the queue.
+     * </p>
+     *
+     * @param payloadDeduplicationEnabled
+     *            Whether to key payloads by their content. Default: false.
+     */
+    public void setPayloadDeduplicationEnabled(boolean payloadDeduplicationEnabled) {
+        this.payloadDeduplicationEnabled = payloadDeduplicationEnabled;
+    }
+
+    /**
+     * Sets whether payloads stored in Amazon S3 are keyed by the SHA-256 hash
+     * of their content, so that a payload sent again reuses the existing object
+     * instead of being uploaded again. Applies to payloads that can be read
+     * twice, which are message bodies and byte array and byte buffer payloads.
+     * <p>
+     * Content-addressed objects are shared between messages and are never
+     * deleted with a message, so the bucket needs a lifecycle rule that expires
+     * them. The expiration must be longer than the maximum age of reused
+     * objects plus the message retention period of the queue.
+     * </p>
+     *
+     * @param payloadDeduplicationEnabled
+     *            Whether to key payloads by their content. Default: false.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withPayloadDeduplicationEnabled(boolean payloadDeduplicationEnabled) {
+        setPayloadDeduplicationEnabled(payloadDeduplicationEnabled);
+        return this;
+    }
+
+    /**
+     * Checks whether payloads stored in Amazon S3 are keyed by the hash of
+     * their content.
+     *
+     * @return True if payloads are keyed by their content. Default: false.
+     */
+    public boolean isPayloadDeduplicationEnabled() {
+        return payloadDeduplicationEnabled;
+    }
+
+    /**
+     * Sets the age after which a content-addressed object is no longer reused
+     * but uploaded again, which renews it. This keeps shared objects from
+     * expiring through the bucket lifecycle while messages still point to
+     * them.
+     *
+     * @param payloadDeduplicationMaxAgeMillis
+     *            Age in milliseconds. Default: 24 hours.
+     */
+    public void setPayloadDeduplicationMaxAgeMillis(long payloadDeduplicationMaxAgeMillis) {
+        this.payloadDeduplicationMaxAgeMillis = payloadDeduplicationMaxAgeMillis;
+    }
+
+    /**
+     * Sets the age after which a content-addressed object is no longer reused
+     * but uploaded again, which renews it. This keeps shared objects from
+     * expiring through the bucket lifecycle while messages still point to
+     * them.
+     *
+     * @param payloadDeduplicationMaxAgeMillis
+     *            Age in milliseconds. Default: 24 hours.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withPayloadDeduplicationMaxAgeMillis(long payloadDeduplicationMaxAgeMillis) {
+        setPayloadDeduplicationMaxAgeMillis(payloadDeduplicationMaxAgeMillis);
+        return this;
+    }
+
+    /**
+     * Gets the age after which a content-addressed object is no longer reused.
+     *
+     * @return Age in milliseconds. Default: 24 hours.
+     */
+    public long getPayloadDeduplicationMaxAgeMillis() {
+        return payloadDeduplicationMaxAgeMillis;
+    }
+
+    /**
+     * Sets the maximum number of content-addressed keys remembered as existing
+     * in Amazon S3. Known keys are reused without looking the object up.
+     *
+     * @param payloadDeduplicationCacheSize
+     *            Number of keys. Default: 10000.
+     */
+    public void setPayloadDeduplicationCacheSize(int payloadDeduplicationCacheSize) {
+        this.payloadDeduplicationCacheSize = payloadDeduplicationCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of content-addressed keys remembered as existing
+     * in Amazon S3. Known keys are reused without looking the object up.
+     *
+     * @param payloadDeduplicationCacheSize
+     *            Number of keys. Default: 10000.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withPayloadDeduplicationCacheSize(int payloadDeduplicationCacheSize) {
+        setPayloadDeduplicationCacheSize(payloadDeduplicationCacheSize);
+        return this;
+    }
+
+    /**
+     * Gets the maximum number of content-addressed keys remembered as existing
+     * in Amazon S3.
+     *
+     * @return Number of keys. Default: 10000.
+     */
+    public int getPayloadDeduplicationCacheSize() {
+        return payloadDeduplicationCacheSize;
+    }
+
+    /**
+     * Sets whether message payloads are deleted from Amazon S3 on a background
+     * thread owned by the client, instead of while deleting the message.
+     * Deleting a message then returns once Amazon SQS deleted it, and the
+     * payloads are deleted in bulk shortly after. Queued payloads are deleted
+     * before {@link AmazonSQSExtendedClient#shutdown()} returns. Only applies
+     * if payloads are cleaned up.
+     *
+     * @param backgroundPayloadDeletionEnabled
+     *            Whether to delete payloads in the background. Default: false.
+     */
+    public void setBackgroundPayloadDeletionEnabled(boolean backgroundPayloadDeletionEnabled) {
+        this.backgroundPayloadDeletionEnabled = backgroundPayloadDeletionEnabled;
+    }
+
+    /**
+     * Sets whether message payloads are deleted from Amazon S3 on a background
+     * thread owned by the client, instead of while deleting the message.
+     * Deleting a message then returns once Amazon SQS deleted it, and the
+     * payloads are deleted in bulk shortly after. Queued payloads are deleted
+     * before {@link AmazonSQSExtendedClient#shutdown()} returns. Only applies
+     * if payloads are cleaned up.
+     *
+     * @param backgroundPayloadDeletionEnabled
+     *            Whether to delete payloads in the background. Default: false.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withBackgroundPayloadDeletionEnabled(boolean backgroundPayloadDeletionEnabled) {
+        setBackgroundPayloadDeletionEnabled(backgroundPayloadDeletionEnabled);
+        return this;
+    }
+
+    /**
+     * Checks whether message payloads are deleted from Amazon S3 on a
+     * background thread.
+     *
+     * @return True if payloads are deleted in the background. Default: false.
+     */
+    public boolean isBackgroundPayloadDeletionEnabled() {
+        return backgroundPayloadDeletionEnabled;
+    }
+
+    /**
+     * Sets the maximum number of payloads waiting to be deleted in the
+     * background. When the queue is full, payloads are deleted while deleting
+     * their messages.
+     *
+     * @param backgroundPayloadDeletionQueueSize
+     *            Number of payloads. Default: 10000.
+     */
+    public void setBackgroundPayloadDeletionQueueSize(int backgroundPayloadDeletionQueueSize) {
+        this.backgroundPayloadDeletionQueueSize = backgroundPayloadDeletionQueueSize;
+    }
+
+    /**
+     * Sets the maximum number of payloads waiting to be deleted in the
+     * background. When the queue is full, payloads are deleted while deleting
+     * their messages.
+     *
+     * @param backgroundPayloadDeletionQueueSize
+     *            Number of payloads. Default: 10000.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withBackgroundPayloadDeletionQueueSize(int backgroundPayloadDeletionQueueSize) {
+        setBackgroundPayloadDeletionQueueSize(backgroundPayloadDeletionQueueSize);
+        return this;
+    }
+
+    /**
+     * Gets the maximum number of payloads waiting to be deleted in the
+     * background.
+     *
+     * @return Number of payloads. Default: 10000.
+     */
+    public int getBackgroundPayloadDeletionQueueSize() {
+        return backgroundPayloadDeletionQueueSize;
+    }
+
+    /**
+     * Sets how many times a background bulk delete is tried, with exponential
+     * backoff, before its payloads are left to the lifecycle rules of the
+     * bucket.
+     *
+     * @param backgroundPayloadDeletionMaxAttempts
+     *            Number of attempts. Default: 5.
+     */
+    public void setBackgroundPayloadDeletionMaxAttempts(int backgroundPayloadDeletionMaxAttempts) {
+        this.backgroundPayloadDeletionMaxAttempts = backgroundPayloadDeletionMaxAttempts;
+    }
+
+    /**
+     * Sets how many times a background bulk delete is tried, with exponential
+     * backoff, before its payloads are left to the lifecycle rules of the
+     * bucket.
+     *
+     * @param backgroundPayloadDeletionMaxAttempts
+     *            Number of attempts. Default: 5.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withBackgroundPayloadDeletionMaxAttempts(int backgroundPayloadDeletionMaxAttempts) {
+        setBackgroundPayloadDeletionMaxAttempts(backgroundPayloadDeletionMaxAttempts);
+        return this;
+    }
+
+    /**
+     * Gets how many times a background bulk delete is tried.
+     *
+     * @return Number of attempts. Default: 5.
+     */
+    public int getBackgroundPayloadDeletionMaxAttempts() {
+        return backgroundPayloadDeletionMaxAttempts;
+    }
+
+    /**
+     * Sets a static prefix of the keys of payload objects, such as the name of
+     * the application or the queue followed by a slash. A static prefix lets
+     * lifecycle rules and permissions of the bucket apply to the payloads of
+     * one client only.
+     *
+     * @param payloadKeyPrefix
+     *            Prefix of at most 512 bytes whose last segment does not start
+     *            with {@code sha256-}. Default: no prefix.
+     */
+    public void setPayloadKeyPrefix(String payloadKeyPrefix) {
+        this.payloadKeyPrefix = payloadKeyPrefix;
+    }
+
+    /**
+     * Sets a static prefix of the keys of payload objects, such as the name of
+     * the application or the queue followed by a slash. A static prefix lets
+     * lifecycle rules and permissions of the bucket apply to the payloads of
+     * one client only.
+     *
+     * @param payloadKeyPrefix
+     *            Prefix of at most 512 bytes whose last segment does not start
+     *            with {@code sha256-}. Default: no prefix.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withPayloadKeyPrefix(String payloadKeyPrefix) {
+        setPayloadKeyPrefix(payloadKeyPrefix);
+        return this;
+    }
+
+    /**
+     * Gets the static prefix of the keys of payload objects.
+     *
+     * @return Prefix of the keys. Default: no prefix.
+     */
+    public String getPayloadKeyPrefix() {
+        return payloadKeyPrefix;
+    }
+
+    /**
+     * Sets the number of hashed prefixes that payload objects are spread
+     * across, after the static prefix. Amazon S3 scales its request rate per
+     * prefix, so spreading the objects raises the rate at which payloads can
+     * be stored and retrieved. The prefixes are hexadecimal numbers followed
+     * by a slash. Payloads are retrieved and deleted by the key recorded in
+     * their message, so the number can be changed at any time.
+     *
+     * @param payloadKeyHashPrefixCount
+     *            Number of prefixes, at most 65536, or 0 to store payloads
+     *            directly under the static prefix. Default: 0.
+     */
+    public void setPayloadKeyHashPrefixCount(int payloadKeyHashPrefixCount) {
+        this.payloadKeyHashPrefixCount = payloadKeyHashPrefixCount;
+    }
+
+    /**
+     * Sets the number of hashed prefixes that payload objects are spread
+     * across, after the static prefix. Amazon S3 scales its request rate per
+     * prefix, so spreading the objects raises the rate at which payloads can
+     * be stored and retrieved. The prefixes are hexadecimal numbers followed
+     * by a slash. Payloads are retrieved and deleted by the key recorded in
+     * their message, so the number can be changed at any time.
+     *
+     * @param payloadKeyHashPrefixCount
+     *            Number of prefixes, at most 65536, or 0 to store payloads
+     *            directly under the static prefix. Default: 0.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withPayloadKeyHashPrefixCount(int payloadKeyHashPrefixCount) {
+        setPayloadKeyHashPrefixCount(payloadKeyHashPrefixCount);
+        return this;
+    }
+
+    /**
+     * Gets the number of hashed prefixes that payload objects are spread
+     * across.
+     *
+     * @return Number of prefixes. Default: 0.
+     */
+    public int getPayloadKeyHashPrefixCount() {
+        return payloadKeyHashPrefixCount;
+    }
+
+    /**
+     * Sets further buckets to store payloads in, besides the bucket given when
+     * enabling payload support, so that payload traffic is spread across the
+     * request rates of several buckets. Each bucket is accessed through its
+     * own Amazon S3 client, so buckets may be in different regions or
+     * accounts. Payloads are retrieved and deleted from the bucket recorded in
+     * their message.
+     *
+     * @param additionalPayloadBuckets
+     *            Amazon S3 clients by the name of their bucket. The buckets
+     *            must be already created. Default: none.
+     */
+    public void setAdditionalPayloadBuckets(Map<String, AmazonS3> additionalPayloadBuckets) {
+        this.additionalPayloadBuckets = Collections.unmodifiableMap(
+                new LinkedHashMap<String, AmazonS3>(additionalPayloadBuckets));
+    }
+
+    /**
+     * Sets further buckets to store payloads in, besides the bucket given when
+     * enabling payload support, so that payload traffic is spread across the
+     * request rates of several buckets. Each bucket is accessed through its
+     * own Amazon S3 client, so buckets may be in different regions or
+     * accounts. Payloads are retrieved and deleted from the bucket recorded in
+     * their message.
+     *
+     * @param additionalPayloadBuckets
+     *            Amazon S3 clients by the name of their bucket. The buckets
+     *            must be already created. Default: none.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withAdditionalPayloadBuckets(Map<String, AmazonS3> additionalPayloadBuckets) {
+        setAdditionalPayloadBuckets(additionalPayloadBuckets);
+        return this;
+    }
+
+    /**
+     * Gets the further buckets payloads are stored in.
+     *
+     * @return Amazon S3 clients by the name of their bucket. Default: none.
+     */
+    public Map<String, AmazonS3> getAdditionalPayloadBuckets() {
+        return additionalPayloadBuckets;
+    }
+
+    /**
+     * Sets how payloads are distributed across buckets when additional
+     * payload buckets are set.
+     *
+     * @param payloadBucketSelection
+     *            Distribution of payloads. Default: ROUND_ROBIN.
+     */
+    public void setPayloadBucketSelection(PayloadBucketSelection payloadBucketSelection) {
+        this.payloadBucketSelection = payloadBucketSelection;
+    }
+
+    /**
+     * Sets how payloads are distributed across buckets when additional
+     * payload buckets are set.
+     *
+     * @param payloadBucketSelection
+     *            Distribution of payloads. Default: ROUND_ROBIN.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withPayloadBucketSelection(PayloadBucketSelection payloadBucketSelection) {
+        setPayloadBucketSelection(payloadBucketSelection);
+        return this;
+    }
+
+    /**
+     * Gets how payloads are distributed across buckets.
+     *
+     * @return Distribution of payloads. Default: ROUND_ROBIN.
+     */
+    public PayloadBucketSelection getPayloadBucketSelection() {
+        return payloadBucketSelection;
+    }
+
+    /**
+     * Sets size bands of payloads that are stored in their own bucket or
+     * under their own key prefix, and with their own upload strategy, so that
+     * for example small payloads go to a hot prefix with single PUT uploads
+     * and huge payloads to a dedicated bucket with multipart uploads. Payloads
+     * smaller than every band are stored as configured for the client.
+     * Payloads are retrieved and deleted from the bucket recorded in their
+     * message. Size bands apply to payloads stored in Amazon S3 only.
+     *
+     * @param payloadSizeBands
+     *            Bands with distinct minimum sizes, in any order. Default:
+     *            none.
+     */
+    public void setPayloadSizeBands(List<PayloadSizeBand> payloadSizeBands) {
+        this.payloadSizeBands = Collections.unmodifiableList(new ArrayList<PayloadSizeBand>(payloadSizeBands));
+    }
+
+    /**
+     * Sets size bands of payloads that are stored in their own bucket or
+     * under their own key prefix, and with their own upload strategy, so that
+     * for example small payloads go to a hot prefix with single PUT uploads
+     * and huge payloads to a dedicated bucket with multipart uploads. Payloads
+     * smaller than every band are stored as configured for the client.
+     * Payloads are retrieved and deleted from the bucket recorded in their
+     * message. Size bands apply to payloads stored in Amazon S3 only.
+     *
+     * @param payloadSizeBands
+     *            Bands with distinct minimum sizes, in any order. Default:
+     *            none.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withPayloadSizeBands(List<PayloadSizeBand> payloadSizeBands) {
+        setPayloadSizeBands(payloadSizeBands);
+        return this;
+    }
+
+    /**
+     * Gets the size bands of payloads that are stored in their own bucket or
+     * under their own key prefix.
+     *
+     * @return Bands of payload sizes. Default: none.
+     */
+    public List<PayloadSizeBand> getPayloadSizeBands() {
+        return payloadSizeBands;
+    }
+
+    /**
+     * Sets a directory shared with the consumers on the same host, such as a
+     * directory on tmpfs, through which payloads are handed over as
+     * memory-mapped files. Payloads that cannot be mapped, and payloads
+     * received from producers on other hosts, still go through Amazon S3 or
+     * the payload store of the client. Unless fallback copies are disabled,
+     * mapped payloads are also stored there, so that consumers that do not
+     * share the directory can still read them. Files are deleted with their
+     * message, and files left behind by messages that expire, are purged or
+     * are deleted without their payload are swept once they are older than
+     * the shared memory payload maximum age.
+     *
+     * @param sharedMemoryPayloadDirectory
+     *            The shared directory, or null to not share payloads through
+     *            memory. Default: null.
+     */
+    public void setSharedMemoryPayloadDirectory(Path sharedMemoryPayloadDirectory) {
+        this.sharedMemoryPayloadDirectory = sharedMemoryPayloadDirectory;
+    }
+
+    /**
+     * Sets a directory shared with the consumers on the same host, such as a
+     * directory on tmpfs, through which payloads are handed over as
+     * memory-mapped files. Payloads that cannot be mapped, and payloads
+     * received from producers on other hosts, still go through Amazon S3 or
+     * the payload store of the client. Unless fallback copies are disabled,
+     * mapped payloads are also stored there, so that consumers that do not
+     * share the directory can still read them. Files are deleted with their
+     * message, and files left behind by messages that expire, are purged or
+     * are deleted without their payload are swept once they are older than
+     * the shared memory payload maximum age.
+     *
+     * @param sharedMemoryPayloadDirectory
+     *            The shared directory, or null to not share payloads through
+     *            memory. Default: null.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withSharedMemoryPayloadDirectory(Path sharedMemoryPayloadDirectory) {
+        setSharedMemoryPayloadDirectory(sharedMemoryPayloadDirectory);
+        return this;
+    }
+
+    /**
+     * Gets the directory through which payloads are shared with consumers on
+     * the same host.
+     *
+     * @return The shared directory, or null if payloads are not shared
+     *         through memory. Default: null.
+     */
+    public Path getSharedMemoryPayloadDirectory() {
+        return sharedMemoryPayloadDirectory;
+    }
+
+    /**
+     * Sets the size of the largest payload shared through memory. Larger
+     * payloads are stored in Amazon S3 or the payload store of the client.
+     *
+     * @param sharedMemoryPayloadMaxSize
+     *            Size in bytes, at most 2147483647. Default: 64 MiB.
+     */
+    public void setSharedMemoryPayloadMaxSize(long sharedMemoryPayloadMaxSize) {
+        this.sharedMemoryPayloadMaxSize = sharedMemoryPayloadMaxSize;
+    }
+
+    /**
+     * Sets the size of the largest payload shared through memory. Larger
+     * payloads are stored in Amazon S3 or the payload store of the client.
+     *
+     * @param sharedMemoryPayloadMaxSize
+     *            Size in bytes, at most 2147483647. Default: 64 MiB.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withSharedMemoryPayloadMaxSize(long sharedMemoryPayloadMaxSize) {
+        setSharedMemoryPayloadMaxSize(sharedMemoryPayloadMaxSize);
+        return this;
+    }
+
+    /**
+     * Gets the size of the largest payload shared through memory.
+     *
+     * @return Size in bytes. Default: 64 MiB.
+     */
+    public long getSharedMemoryPayloadMaxSize() {
+        return sharedMemoryPayloadMaxSize;
+    }
+
+    /**
+     * Sets the age after which files in the shared memory payload directory
+     * are swept, so that payloads of messages that expire, are purged, move to
+     * a dead-letter queue or are deleted without their payload do not hold
+     * memory forever. It must be at least the message retention period of the
+     * queues, since payloads of messages still in a queue are swept too.
+     * Temporary files left by failed writers are swept after an hour.
+     *
+     * @param sharedMemoryPayloadMaxAgeMillis
+     *            Age in milliseconds. Default: 14 days, the longest message
+     *            retention period.
+     */
+    public void setSharedMemoryPayloadMaxAgeMillis(long sharedMemoryPayloadMaxAgeMillis) {
+        this.sharedMemoryPayloadMaxAgeMillis = sharedMemoryPayloadMaxAgeMillis;
+    }
+
+    /**
+     * Sets the age after which files in the shared memory payload directory
+     * are swept, so that payloads of messages that expire, are purged, move to
+     * a dead-letter queue or are deleted without their payload do not hold
+     * memory forever. It must be at least the message retention period of the
+     * queues, since payloads of messages still in a queue are swept too.
+     * Temporary files left by failed writers are swept after an hour.
+     *
+     * @param sharedMemoryPayloadMaxAgeMillis
+     *            Age in milliseconds. Default: 14 days, the longest message
+     *            retention period.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withSharedMemoryPayloadMaxAgeMillis(long sharedMemoryPayloadMaxAgeMillis) {
+        setSharedMemoryPayloadMaxAgeMillis(sharedMemoryPayloadMaxAgeMillis);
+        return this;
+    }
+
+    /**
+     * Gets the age after which files in the shared memory payload directory
+     * are swept.
+     *
+     * @return Age in milliseconds. Default: 14 days.
+     */
+    public long getSharedMemoryPayloadMaxAgeMillis() {
+        return sharedMemoryPayloadMaxAgeMillis;
+    }
+
+    /**
+     * Sets whether payloads shared through memory are also stored in Amazon S3
+     * or the payload store of the client, so that consumers that do not share
+     * the directory, or that find the file gone, read that copy instead.
+     * Without fallback copies, only set the shared memory payload directory
+     * on producers whose consumers all share it.
+     *
+     * @param sharedMemoryPayloadFallbackCopyEnabled
+     *            Whether mapped payloads are also stored in Amazon S3 or the
+     *            payload store of the client. Default: true.
+     */
+    public void setSharedMemoryPayloadFallbackCopyEnabled(boolean sharedMemoryPayloadFallbackCopyEnabled) {
+        this.sharedMemoryPayloadFallbackCopyEnabled = sharedMemoryPayloadFallbackCopyEnabled;
+    }
+
+    /**
+     * Sets whether payloads shared through memory are also stored in Amazon S3
+     * or the payload store of the client, so that consumers that do not share
+     * the directory, or that find the file gone, read that copy instead.
+     * Without fallback copies, only set the shared memory payload directory
+     * on producers whose consumers all share it.
+     *
+     * @param sharedMemoryPayloadFallbackCopyEnabled
+     *            Whether mapped payloads are also stored in Amazon S3 or the
+     *            payload store of the client. Default: true.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withSharedMemoryPayloadFallbackCopyEnabled(
+            boolean sharedMemoryPayloadFallbackCopyEnabled) {
+        setSharedMemoryPayloadFallbackCopyEnabled(sharedMemoryPayloadFallbackCopyEnabled);
+        return this;
+    }
+
+    /**
+     * Checks whether payloads shared through memory are also stored in Amazon
+     * S3 or the payload store of the client.
+     *
+     * @return True if mapped payloads have a fallback copy. Default: true.
+     */
+    public boolean isSharedMemoryPayloadFallbackCopyEnabled() {
+        return sharedMemoryPayloadFallbackCopyEnabled;
+    }
+
+    /**
+     * Sets the maximum total size of the payloads kept in memory after they
+     * are retrieved, so that redelivered messages do not download the same
+     * payload again. The least recently used payloads are evicted first, and
+     * payloads are evicted when their message is deleted.
+     *
+     * @param payloadCacheMaxSize
+     *            Size in bytes, or 0 to disable the cache. Default: 0.
+     */
+    public void setPayloadCacheMaxSize(long payloadCacheMaxSize) {
+        this.payloadCacheMaxSize = payloadCacheMaxSize;
+    }
+
+    /**
+     * Sets the maximum total size of the payloads kept in memory after they
+     * are retrieved, so that redelivered messages do not download the same
+     * payload again. The least recently used payloads are evicted first, and
+     * payloads are evicted when their message is deleted.
+     *
+     * @param payloadCacheMaxSize
+     *            Size in bytes, or 0 to disable the cache. Default: 0.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withPayloadCacheMaxSize(long payloadCacheMaxSize) {
+        setPayloadCacheMaxSize(payloadCacheMaxSize);
+        return this;
+    }
+
+    /**
+     * Gets the maximum total size of the payloads kept in memory after they
+     * are retrieved.
+     *
+     * @return Size in bytes, or 0 if the cache is disabled. Default: 0.
+     */
+    public long getPayloadCacheMaxSize() {
+        return payloadCacheMaxSize;
+    }
+
+    /**
+     * Sets whether the payloads cached in memory are kept off the heap, in
+     * direct buffers, so that a large cache does not add to garbage collection
+     * work. Direct buffer memory is limited by -XX:MaxDirectMemorySize.
+     *
+     * @param payloadCacheOffHeap
+     *            Whether cached payloads are kept off the heap. Default:
+     *            false.
+     */
+    public void setPayloadCacheOffHeap(boolean payloadCacheOffHeap) {
+        this.payloadCacheOffHeap = payloadCacheOffHeap;
+    }
+
+    /**
+     * Sets whether the payloads cached in memory are kept off the heap, in
+     * direct buffers, so that a large cache does not add to garbage collection
+     * work. Direct buffer memory is limited by -XX:MaxDirectMemorySize.
+     *
+     * @param payloadCacheOffHeap
+     *            Whether cached payloads are kept off the heap. Default:
+     *            false.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withPayloadCacheOffHeap(boolean payloadCacheOffHeap) {
+        setPayloadCacheOffHeap(payloadCacheOffHeap);
+        return this;
+    }
+
+    /**
+     * Checks whether the payloads cached in memory are kept off the heap.
+     *
+     * @return True if cached payloads are kept in direct buffers. Default:
+     *         false.
+     */
+    public boolean isPayloadCacheOffHeap() {
+        return payloadCacheOffHeap;
+    }
+
+    /**
+     * Sets a directory in which retrieved payloads are cached for all the
+     * consumer processes of the host, so that a message redelivered to
+     * another process does not download the same payload again. Cached
+     * payloads are verified against a checksum whenever they are read, and are
+     * deleted when their message is deleted.
+     *
+     * @param payloadCacheDirectory
+     *            Directory shared by the consumer processes, or null to
+     *            disable the cache. It is created if it does not exist.
+     *            Default: null.
+     */
+    public void setPayloadCacheDirectory(Path payloadCacheDirectory) {
+        this.payloadCacheDirectory = payloadCacheDirectory;
+    }
+
+    /**
+     * Sets a directory in which retrieved payloads are cached for all the
+     * consumer processes of the host, so that a message redelivered to
+     * another process does not download the same payload again. Cached
+     * payloads are verified against a checksum whenever they are read, and are
+     * deleted when their message is deleted.
+     *
+     * @param payloadCacheDirectory
+     *            Directory shared by the consumer processes, or null to
+     *            disable the cache. It is created if it does not exist.
+     *            Default: null.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withPayloadCacheDirectory(Path payloadCacheDirectory) {
+        setPayloadCacheDirectory(payloadCacheDirectory);
+        return this;
+    }
+
+    /**
+     * Gets the directory in which retrieved payloads are cached for all the
+     * consumer processes of the host.
+     *
+     * @return The directory, or null if the cache is disabled. Default: null.
+     */
+    public Path getPayloadCacheDirectory() {
+        return payloadCacheDirectory;
+    }
+
+    /**
+     * Sets the maximum total size of the payloads cached in the payload cache
+     * directory. The least recently read payloads are evicted first.
+     *
+     * @param payloadCacheDirectoryMaxSize
+     *            Size in bytes. Default: 1 GiB.
+     */
+    public void setPayloadCacheDirectoryMaxSize(long payloadCacheDirectoryMaxSize) {
+        this.payloadCacheDirectoryMaxSize = payloadCacheDirectoryMaxSize;
+    }
+
+    /**
+     * Sets the maximum total size of the payloads cached in the payload cache
+     * directory. The least recently read payloads are evicted first.
+     *
+     * @param payloadCacheDirectoryMaxSize
+     *            Size in bytes. Default: 1 GiB.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withPayloadCacheDirectoryMaxSize(long payloadCacheDirectoryMaxSize) {
+        setPayloadCacheDirectoryMaxSize(payloadCacheDirectoryMaxSize);
+        return this;
+    }
+
+    /**
+     * Gets the maximum total size of the payloads cached in the payload cache
+     * directory.
+     *
+     * @return Size in bytes. Default: 1 GiB.
+     */
+    public long getPayloadCacheDirectoryMaxSize() {
+        return payloadCacheDirectoryMaxSize;
+    }
+
     @Override
     public ExtendedClientConfiguration withAlwaysThroughS3(boolean alwaysThroughS3) {
         setAlwaysThroughS3(alwaysThroughS3);
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.UUID;
+
+import com.amazonaws.AmazonClientException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Payload store that keeps each payload in a file of a local directory.
+ *
+ * <p>
+ * The pointer to a payload is the name of its file, so any process that sees
+ * the same directory, such as a producer and a consumer on one host, can
+ * retrieve and delete the payload. Payloads are written to a temporary file
+ * that is renamed once complete, so a payload is never read partially
+ * written.
+ * </p>
+ */
+public class FileSystemPayloadStore implements StreamingPayloadStore {
+    private static final Log LOG = LogFactory.getLog(FileSystemPayloadStore.class);
+
+    private static final String TEMPORARY_FILE_SUFFIX = ".tmp";
+
+    private final Path directory;
+
+    /**
+     * @param directory
+     *            Directory to keep the payload files in. It is created if it
+     *            does not exist.
+     */
+    public FileSystemPayloadStore(Path directory) {
+        try {
+            this.directory = Files.createDirectories(directory);
+        } catch (IOException e) {
+            String errorMessage = "Failed to create the payload directory " + directory + ".";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        }
+    }
+
+    @Override
+    public String storeOriginalPayload(String payload, Long payloadContentSize) {
+        return storeOriginalPayload(new ByteArrayInputStream(payload.getBytes(StandardCharsets.UTF_8)),
+                payloadContentSize);
+    }
+
+    @Override
+    public String storeOriginalPayload(InputStream payload, long payloadContentSize) {
+        String payloadPointer = UUID.randomUUID().toString();
+        Path payloadFile = directory.resolve(payloadPointer);
+        Path temporaryFile = directory.resolve(payloadPointer + TEMPORARY_FILE_SUFFIX);
+        try {
+            Files.copy(payload, temporaryFile);
+            Files.move(temporaryFile, payloadFile, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            deleteQuietly(temporaryFile);
+            String errorMessage = "Failed to write the message payload to " + payloadFile + ".";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        }
+        return payloadPointer;
+    }
+
+    @Override
+    public String getOriginalPayload(String payloadPointer) {
+        return new String(getOriginalPayloadBytes(payloadPointer, -1), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public InputStream getOriginalPayloadStream(String payloadPointer) {
+        Path payloadFile = getPayloadFile(payloadPointer);
+        try {
+            return Files.newInputStream(payloadFile);
+        } catch (IOException e) {
+            throw readFailed(payloadFile, e);
+        }
+    }
+
+    @Override
+    public byte[] getOriginalPayloadBytes(String payloadPointer, long payloadContentSize) {
+        Path payloadFile = getPayloadFile(payloadPointer);
+        try {
+            return Files.readAllBytes(payloadFile);
+        } catch (IOException e) {
+            throw readFailed(payloadFile, e);
+        }
+    }
+
+    @Override
+    public void getOriginalPayload(String payloadPointer, long payloadContentSize, Path target) {
+        Path payloadFile = getPayloadFile(payloadPointer);
+        try {
+            Files.copy(payloadFile, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (NoSuchFileException e) {
+            throw readFailed(payloadFile, e);
+        } catch (IOException e) {
+            String errorMessage = "Failed to write the message payload to " + target + ".";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        }
+    }
+
+    @Override
+    public void deleteOriginalPayload(String payloadPointer) {
+        Path payloadFile = getPayloadFile(payloadPointer);
+        try {
+            Files.deleteIfExists(payloadFile);
+        } catch (IOException e) {
+            String errorMessage = "Failed to delete the payload file " + payloadFile + ".";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        }
+    }
+
+    @Override
+    public void deleteOriginalPayloads(Collection<String> payloadPointers) {
+        for (String payloadPointer : payloadPointers) {
+            deleteOriginalPayload(payloadPointer);
+        }
+    }
+
+    /**
+     * Resolves the file of the payload, rejecting pointers that could name a
+     * file outside of the directory, since pointers arrive in messages.
+     */
+    private Path getPayloadFile(String payloadPointer) {
+        if (!isValidPointer(payloadPointer)) {
+            String errorMessage = "Invalid payload pointer " + payloadPointer + ".";
+            LOG.error(errorMessage);
+            throw new AmazonClientException(errorMessage);
+        }
+        return directory.resolve(payloadPointer);
+    }
+
+    private static boolean isValidPointer(String payloadPointer) {
+        if (payloadPointer.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < payloadPointer.length(); i++) {
+            char c = payloadPointer.charAt(i);
+            if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '-')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static AmazonClientException readFailed(Path payloadFile, IOException e) {
+        String errorMessage = "Failed to read the payload file " + payloadFile + ".";
+        LOG.error(errorMessage, e);
+        return new AmazonClientException(errorMessage, e);
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOG.warn("Failed to delete the temporary payload file " + file + ".", e);
+        }
+    }
+}
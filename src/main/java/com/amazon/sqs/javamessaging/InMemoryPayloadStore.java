@@ -0,0 +1,130 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.util.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Payload store that keeps payloads in the memory of the process.
+ *
+ * <p>
+ * Payloads can only be retrieved by clients that share the store instance, so
+ * this store suits tests, benchmarks and pipelines whose producers and
+ * consumers run in one process. Payloads are held until they are deleted with
+ * their messages, so messages that are never deleted keep their payloads in
+ * memory.
+ * </p>
+ */
+public class InMemoryPayloadStore implements StreamingPayloadStore {
+    private static final Log LOG = LogFactory.getLog(InMemoryPayloadStore.class);
+
+    private final Map<String, byte[]> payloads = new ConcurrentHashMap<String, byte[]>();
+
+    @Override
+    public String storeOriginalPayload(String payload, Long payloadContentSize) {
+        return store(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public String storeOriginalPayload(InputStream payload, long payloadContentSize) {
+        try {
+            return store(IOUtils.toByteArray(payload));
+        } catch (IOException e) {
+            String errorMessage = "Failed to read the message payload.";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        }
+    }
+
+    private String store(byte[] payloadBytes) {
+        String payloadPointer = UUID.randomUUID().toString();
+        payloads.put(payloadPointer, payloadBytes);
+        return payloadPointer;
+    }
+
+    @Override
+    public String getOriginalPayload(String payloadPointer) {
+        return new String(getPayload(payloadPointer), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public InputStream getOriginalPayloadStream(String payloadPointer) {
+        return new ByteArrayInputStream(getPayload(payloadPointer));
+    }
+
+    @Override
+    public byte[] getOriginalPayloadBytes(String payloadPointer, long payloadContentSize) {
+        return getPayload(payloadPointer).clone();
+    }
+
+    @Override
+    public void getOriginalPayload(String payloadPointer, long payloadContentSize, Path target) {
+        byte[] payloadBytes = getPayload(payloadPointer);
+        try {
+            Files.write(target, payloadBytes);
+        } catch (IOException e) {
+            String errorMessage = "Failed to write the message payload to " + target + ".";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        }
+    }
+
+    private byte[] getPayload(String payloadPointer) {
+        byte[] payloadBytes = payloads.get(payloadPointer);
+        if (payloadBytes == null) {
+            String errorMessage = "No payload is stored for the pointer " + payloadPointer + ".";
+            LOG.error(errorMessage);
+            throw new AmazonClientException(errorMessage);
+        }
+        return payloadBytes;
+    }
+
+    @Override
+    public void deleteOriginalPayload(String payloadPointer) {
+        payloads.remove(payloadPointer);
+    }
+
+    @Override
+    public void deleteOriginalPayloads(Collection<String> payloadPointers) {
+        for (String payloadPointer : payloadPointers) {
+            payloads.remove(payloadPointer);
+        }
+    }
+
+    /**
+     * Gets the number of payloads held by the store.
+     *
+     * @return Number of payloads.
+     */
+    public int getPayloadCount() {
+        return payloads.size();
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.util.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Encodes message bodies that are compressed and Base64 encoded so that they
+ * fit into the Amazon SQS message body, and decodes them again.
+ */
+final class InlinePayloads {
+    private static final Log LOG = LogFactory.getLog(InlinePayloads.class);
+
+    private InlinePayloads() {
+    }
+
+    /**
+     * Compresses and Base64 encodes a UTF-8 encoded message body, giving up as soon as the
+     * result is known to exceed the given length.
+     *
+     * @return The encoded body, or null if it would be longer than
+     *         maxEncodedLength.
+     */
+    static String encode(byte[] messageContent, PayloadCodec codec, long maxEncodedLength) {
+        // Every 3 compressed bytes take 4 characters once Base64 encoded.
+        long maxCompressedLength = maxEncodedLength / 4 * 3;
+        if (maxCompressedLength <= 0) {
+            return null;
+        }
+
+        BoundedOutputStream compressed = new BoundedOutputStream(maxCompressedLength);
+        try (OutputStream encoder = codec.encode(compressed)) {
+            encoder.write(messageContent);
+        } catch (BoundExceededException e) {
+            return null;
+        } catch (IOException e) {
+            String errorMessage = "Failed to compress the message body.";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        }
+        return Base64.getEncoder().encodeToString(compressed.toByteArray());
+    }
+
+    /**
+     * Decodes a message body encoded by {@link #encode}.
+     */
+    static String decode(String encodedBody, PayloadCodec codec) {
+        try (InputStream decoded = codec.decode(new ByteArrayInputStream(Base64.getDecoder().decode(encodedBody)))) {
+            return new String(IOUtils.toByteArray(decoded), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException | IOException e) {
+            String errorMessage = "Failed to decode the compressed message body.";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        }
+    }
+
+    /**
+     * Collects bytes up to a bound and fails as soon as more are written, so a
+     * body that cannot fit is not compressed to its end. Bytes written after
+     * that, while the codec is closed, are discarded.
+     */
+    private static class BoundedOutputStream extends ByteArrayOutputStream {
+        private final long bound;
+        private boolean exceeded;
+
+        BoundedOutputStream(long bound) {
+            this.bound = bound;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            if (accept(1)) {
+                super.write(b);
+            }
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            if (accept(len)) {
+                super.write(b, off, len);
+            }
+        }
+
+        private boolean accept(int length) {
+            if (exceeded) {
+                return false;
+            }
+            if (count + (long) length > bound) {
+                exceeded = true;
+                throw new BoundExceededException();
+            }
+            return true;
+        }
+    }
+
+    private static class BoundExceededException extends RuntimeException {
+        BoundExceededException() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.SSEAwsKeyManagementParams;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Uploads a payload to Amazon S3 as a multipart upload.
+ *
+ * <p>
+ * The payload is read sequentially, one part at a time, and up to
+ * {@code concurrency} parts are uploaded at the same time, so at most that many
+ * parts are held in memory. A failed part is retried on its own. If the upload
+ * cannot be completed, it is aborted so that no orphaned parts are left in the
+ * bucket. Payloads of unknown size, such as payloads compressed on the fly,
+ * are read until they end.
+ * </p>
+ */
+class MultipartPayloadUploader {
+    private static final Log LOG = LogFactory.getLog(MultipartPayloadUploader.class);
+
+    /** Smallest part size Amazon S3 accepts for all but the last part. */
+    static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    private static final long RETRY_BACKOFF_MILLIS = 100;
+
+    private final AmazonS3 s3;
+    private final int partSize;
+    private final int concurrency;
+    private final int maxPartRetries;
+    private final ExecutorService partExecutor;
+
+    /**
+     * @param partExecutor
+     *            Executor the parts are uploaded on. It must not run the
+     *            callers of {@link #upload}, which wait for their parts.
+     */
+    MultipartPayloadUploader(AmazonS3 s3, long partSize, int concurrency, int maxPartRetries,
+            ExecutorService partExecutor) {
+        this.s3 = s3;
+        this.partSize = (int) Math.min(Integer.MAX_VALUE, Math.max(MIN_PART_SIZE, partSize));
+        this.concurrency = Math.max(1, concurrency);
+        this.maxPartRetries = Math.max(0, maxPartRetries);
+        this.partExecutor = partExecutor;
+    }
+
+    /**
+     * @param payloadContentSize
+     *            Size of the payload in bytes, or a negative number if it is
+     *            not known in advance.
+     * @param objectMetadata
+     *            Metadata of the S3 object to create.
+     */
+    void upload(String s3BucketName, String s3Key, InputStream payload, long payloadContentSize,
+            ObjectMetadata objectMetadata, SSEAwsKeyManagementParams sseAwsKeyManagementParams) {
+        InitiateMultipartUploadRequest initiateRequest = new InitiateMultipartUploadRequest(s3BucketName, s3Key,
+                objectMetadata);
+        if (sseAwsKeyManagementParams != null) {
+            initiateRequest.setSSEAwsKeyManagementParams(sseAwsKeyManagementParams);
+        }
+        String uploadId = s3.initiateMultipartUpload(initiateRequest).getUploadId();
+
+        Deque<Future<PartETag>> uploadingParts = new ArrayDeque<Future<PartETag>>();
+        try {
+            List<PartETag> partETags = new ArrayList<PartETag>();
+            long remaining = payloadContentSize;
+            int partNumber = 1;
+            boolean lastPart = false;
+            while (!lastPart) {
+                byte[] part;
+                if (payloadContentSize < 0) {
+                    part = readPart(payload, partSize, false);
+                    lastPart = part.length < partSize;
+                    if (part.length == 0 && partNumber > 1) {
+                        break;
+                    }
+                } else {
+                    part = readPart(payload, (int) Math.min(partSize, remaining), true);
+                    remaining -= part.length;
+                    lastPart = remaining == 0;
+                }
+                UploadPartRequest uploadPartRequest = new UploadPartRequest()
+                        .withBucketName(s3BucketName)
+                        .withKey(s3Key)
+                        .withUploadId(uploadId)
+                        .withPartNumber(partNumber++)
+                        .withPartSize(part.length)
+                        .withLastPart(lastPart);
+                uploadingParts.add(partExecutor.submit(() -> uploadPart(uploadPartRequest, part)));
+
+                if (uploadingParts.size() >= concurrency) {
+                    partETags.add(await(uploadingParts.poll()));
+                }
+            }
+            while (!uploadingParts.isEmpty()) {
+                partETags.add(await(uploadingParts.poll()));
+            }
+
+            s3.completeMultipartUpload(new CompleteMultipartUploadRequest(s3BucketName, s3Key, uploadId, partETags));
+        } catch (RuntimeException e) {
+            for (Future<PartETag> uploadingPart : uploadingParts) {
+                uploadingPart.cancel(true);
+            }
+            abort(s3BucketName, s3Key, uploadId);
+            throw e;
+        }
+    }
+
+    private PartETag uploadPart(UploadPartRequest uploadPartRequest, byte[] part) throws InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return s3.uploadPart(uploadPartRequest.withInputStream(new ByteArrayInputStream(part))).getPartETag();
+            } catch (AmazonClientException e) {
+                if (attempt >= maxPartRetries) {
+                    throw e;
+                }
+                LOG.warn("Failed to upload part " + uploadPartRequest.getPartNumber() + ", retrying.", e);
+                Thread.sleep(RETRY_BACKOFF_MILLIS << attempt);
+            }
+        }
+    }
+
+    /**
+     * Reads the next part of the payload. If the part does not have to be
+     * complete, a shorter part is returned when the payload ends.
+     */
+    private static byte[] readPart(InputStream payload, int length, boolean complete) {
+        byte[] part = new byte[length];
+        int offset = 0;
+        try {
+            while (offset < length) {
+                int count = payload.read(part, offset, length - offset);
+                if (count < 0 && !complete) {
+                    return Arrays.copyOf(part, offset);
+                }
+                if (count < 0) {
+                    String errorMessage = "The payload ended before its declared size was read.";
+                    LOG.error(errorMessage);
+                    throw new AmazonClientException(errorMessage);
+                }
+                offset += count;
+            }
+        } catch (IOException e) {
+            String errorMessage = "Failed to read the message payload.";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        }
+        return part;
+    }
+
+    private static PartETag await(Future<PartETag> uploadingPart) {
+        try {
+            return uploadingPart.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            String errorMessage = "Interrupted while uploading the message payload.";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            String errorMessage = "Failed to upload the message payload.";
+            LOG.error(errorMessage, cause);
+            throw new AmazonClientException(errorMessage, cause);
+        }
+    }
+
+    private void abort(String s3BucketName, String s3Key, String uploadId) {
+        try {
+            s3.abortMultipartUpload(new AbortMultipartUploadRequest(s3BucketName, s3Key, uploadId));
+        } catch (AmazonClientException e) {
+            LOG.error("Failed to abort the multipart upload " + uploadId + " of " + s3Key + ".", e);
+        }
+    }
+}
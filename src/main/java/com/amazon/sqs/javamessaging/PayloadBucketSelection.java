@@ -0,0 +1,39 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+/**
+ * How payloads are distributed across the buckets of a client that stores
+ * them in more than one bucket.
+ *
+ * @see ExtendedClientConfiguration#setAdditionalPayloadBuckets(java.util.Map)
+ */
+public enum PayloadBucketSelection {
+
+    /**
+     * Each payload is stored in the bucket after the one the previous payload
+     * was stored in.
+     */
+    ROUND_ROBIN,
+
+    /**
+     * Each payload is stored in a bucket picked at random, with a probability
+     * inversely proportional to the recent upload latency of the bucket, so
+     * that slow or throttled buckets receive less traffic.
+     */
+    LATENCY_WEIGHTED
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Compression codec for payloads stored in Amazon S3.
+ *
+ * <p>
+ * Payloads are encoded while they are streamed to Amazon S3, and the codec
+ * name is recorded as the Content-Encoding of the S3 object so that the
+ * receiving client can pick the matching codec to decode it. Codecs for
+ * formats such as LZ4 or Zstandard can be plugged in by implementing this
+ * interface on top of the compression library of choice.
+ * </p>
+ *
+ * @see PayloadCodecs
+ */
+public interface PayloadCodec {
+
+    /**
+     * Gets the name of the codec, recorded as the Content-Encoding of the S3
+     * objects it encodes. Names are compared case-insensitively.
+     *
+     * @return The codec name, for example "gzip".
+     */
+    String getName();
+
+    /**
+     * Wraps a stream so that everything written to it is encoded into the
+     * given stream. Closing the returned stream finishes the encoding and
+     * closes the given stream.
+     *
+     * @param out
+     *            Stream that receives the encoded bytes.
+     * @return Stream that accepts the payload bytes.
+     */
+    OutputStream encode(OutputStream out) throws IOException;
+
+    /**
+     * Wraps a stream of encoded bytes so that reading from it returns the
+     * decoded payload. Closing the returned stream closes the given stream.
+     *
+     * @param in
+     *            Stream of encoded bytes.
+     * @return Stream of payload bytes.
+     */
+    InputStream decode(InputStream in) throws IOException;
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Payload codecs built on the compression support of the JDK.
+ */
+public final class PayloadCodecs {
+
+    /** Codec for the gzip format, recorded as the "gzip" content encoding. */
+    public static final PayloadCodec GZIP = new PayloadCodec() {
+        @Override
+        public String getName() {
+            return "gzip";
+        }
+
+        @Override
+        public OutputStream encode(OutputStream out) throws IOException {
+            return new GZIPOutputStream(out, BUFFER_SIZE);
+        }
+
+        @Override
+        public InputStream decode(InputStream in) throws IOException {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+    };
+
+    /** Codec for the zlib format, recorded as the "deflate" content encoding. */
+    public static final PayloadCodec DEFLATE = new PayloadCodec() {
+        @Override
+        public String getName() {
+            return "deflate";
+        }
+
+        @Override
+        public OutputStream encode(OutputStream out) {
+            Deflater deflater = new Deflater();
+            return new DeflaterOutputStream(out, deflater, BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        deflater.end();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public InputStream decode(InputStream in) {
+            Inflater inflater = new Inflater();
+            return new InflaterInputStream(in, inflater, BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inflater.end();
+                    }
+                }
+            };
+        }
+    };
+
+    /** Number of leading bytes {@link #isCompressed(byte[], int)} looks at. */
+    static final int MAGIC_BYTES_LENGTH = 6;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final byte[][] COMPRESSED_MAGIC_BYTES = {
+            { (byte) 0x1f, (byte) 0x8b },                                     // gzip
+            { (byte) 0x28, (byte) 0xb5, (byte) 0x2f, (byte) 0xfd },           // Zstandard
+            { (byte) 0x04, (byte) 0x22, (byte) 0x4d, (byte) 0x18 },           // LZ4 frame
+            { (byte) 0xfd, '7', 'z', 'X', 'Z', (byte) 0x00 },                 // xz
+            { '7', 'z', (byte) 0xbc, (byte) 0xaf, (byte) 0x27, (byte) 0x1c }, // 7z
+            { 'P', 'K', (byte) 0x03, (byte) 0x04 },                           // zip
+            { (byte) 0x89, 'P', 'N', 'G' },                                   // PNG
+            { (byte) 0xff, (byte) 0xd8, (byte) 0xff },                        // JPEG
+    };
+
+    private PayloadCodecs() {
+    }
+
+    /**
+     * Finds the codec with the given name among the built-in codecs and the
+     * configured codec.
+     *
+     * @param name
+     *            Codec name, compared case-insensitively.
+     * @param configuredCodec
+     *            Codec set in the client configuration, or null.
+     * @return The codec, or null if none has that name.
+     */
+    static PayloadCodec forName(String name, PayloadCodec configuredCodec) {
+        if (configuredCodec != null && configuredCodec.getName().equalsIgnoreCase(name)) {
+            return configuredCodec;
+        }
+        for (PayloadCodec builtInCodec : Arrays.asList(GZIP, DEFLATE)) {
+            if (builtInCodec.getName().equalsIgnoreCase(name)) {
+                return builtInCodec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Tells whether a payload starts like a compressed format, in which case
+     * compressing it again would only cost time.
+     *
+     * @param head
+     *            Leading bytes of the payload.
+     * @param length
+     *            Number of valid bytes in head.
+     */
+    static boolean isCompressed(byte[] head, int length) {
+        for (byte[] magicBytes : COMPRESSED_MAGIC_BYTES) {
+            if (startsWith(head, length, magicBytes)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(byte[] head, int length, byte[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (head[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
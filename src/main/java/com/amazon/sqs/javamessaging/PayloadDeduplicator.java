@@ -0,0 +1,119 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Derives content-addressed S3 keys from payloads and remembers the keys that
+ * are known to exist in Amazon S3, so that a payload sent again is neither
+ * uploaded again nor looked up.
+ *
+ * <p>
+ * Objects under content-addressed keys are shared by every message with the
+ * same payload, so they are never deleted with a message. They must expire
+ * through a bucket lifecycle rule instead. To keep shared objects from
+ * expiring while messages still point to them, an object is only reused while
+ * it is younger than the maximum age, and is uploaded again, which renews it,
+ * once it is older.
+ * </p>
+ */
+class PayloadDeduplicator {
+
+    /** Prefix of the last segment of content-addressed keys. */
+    static final String CONTENT_ADDRESSED_KEY_PREFIX = "sha256-";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final long maxAgeMillis;
+    private final Map<String, Long> knownKeys;
+
+    /**
+     * @param maxAgeMillis
+     *            Age after which an object is no longer reused.
+     * @param cacheSize
+     *            Maximum number of known keys remembered.
+     */
+    PayloadDeduplicator(long maxAgeMillis, int cacheSize) {
+        this.maxAgeMillis = maxAgeMillis;
+        this.knownKeys = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Checks whether a key is the content-addressed key of a payload.
+     */
+    static boolean isContentAddressedKey(String s3Key) {
+        return s3Key.startsWith(CONTENT_ADDRESSED_KEY_PREFIX, s3Key.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Computes the content-addressed key of the payload. The stream is read to
+     * its end and then reset, so it must support mark and reset.
+     */
+    String getKey(InputStream payload) throws IOException {
+        MessageDigest digest = Sha256.newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        payload.mark(Integer.MAX_VALUE);
+        int count;
+        while ((count = payload.read(buffer)) >= 0) {
+            digest.update(buffer, 0, count);
+        }
+        payload.reset();
+
+        return CONTENT_ADDRESSED_KEY_PREFIX + Sha256.toHex(digest.digest());
+    }
+
+    /**
+     * Checks whether the object was recently seen in Amazon S3 and is still
+     * young enough to be reused without looking it up.
+     */
+    synchronized boolean isKnown(String s3Key) {
+        Long lastModifiedMillis = knownKeys.get(s3Key);
+        if (lastModifiedMillis == null) {
+            return false;
+        }
+        if (!isReusable(lastModifiedMillis)) {
+            knownKeys.remove(s3Key);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether an object last written at the given time may still be
+     * reused.
+     */
+    boolean isReusable(long lastModifiedMillis) {
+        return System.currentTimeMillis() - lastModifiedMillis < maxAgeMillis;
+    }
+
+    /**
+     * Remembers that the object exists and was last written at the given time.
+     */
+    synchronized void remember(String s3Key, long lastModifiedMillis) {
+        knownKeys.put(s3Key, lastModifiedMillis);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import com.amazonaws.AmazonClientException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Lays out the keys of payload objects in the bucket.
+ *
+ * <p>
+ * Amazon S3 scales its request rate per key prefix, so storing every payload
+ * under the bucket root limits the rate at which payloads can be written and
+ * read. With hashed prefixes, each key is placed under one of a fixed number
+ * of prefixes chosen from a hash of the key, which spreads the requests
+ * evenly. For example, with 16 hashed prefixes and the static prefix
+ * {@code orders/}, keys look like {@code orders/7/<uuid>}. The full key is
+ * recorded in the payload pointer, so reading and deleting payloads does not
+ * depend on the layout they were stored with.
+ * </p>
+ */
+final class PayloadKeyLayout {
+    private static final Log LOG = LogFactory.getLog(PayloadKeyLayout.class);
+
+    /** Largest number of hashed prefixes. */
+    static final int MAX_HASH_PREFIX_COUNT = 65536;
+
+    /** Largest size of the static prefix, in bytes, leaving room in the 1024 byte S3 key for the rest. */
+    static final int MAX_KEY_PREFIX_SIZE = 512;
+
+    /** Layout that stores every payload directly under the bucket root. */
+    static final PayloadKeyLayout FLAT = new PayloadKeyLayout("", 0);
+
+    private final String keyPrefix;
+    private final int hashPrefixCount;
+    private final int hashPrefixDigits;
+
+    /**
+     * @param keyPrefix
+     *            Static prefix of every key, or an empty string for none. Its
+     *            last segment cannot start with the prefix of
+     *            content-addressed keys, which would make every key look like
+     *            the key of a deduplicated payload.
+     * @param hashPrefixCount
+     *            Number of hashed prefixes, or 0 to store every payload
+     *            directly under the static prefix.
+     */
+    PayloadKeyLayout(String keyPrefix, int hashPrefixCount) {
+        if (keyPrefix == null || Utf8.encodedLength(keyPrefix) > MAX_KEY_PREFIX_SIZE) {
+            String errorMessage = "The payload key prefix must be a string of at most " + MAX_KEY_PREFIX_SIZE
+                    + " bytes.";
+            LOG.error(errorMessage);
+            throw new AmazonClientException(errorMessage);
+        }
+        if (PayloadDeduplicator.isContentAddressedKey(keyPrefix)) {
+            String errorMessage = "The last segment of the payload key prefix cannot start with "
+                    + PayloadDeduplicator.CONTENT_ADDRESSED_KEY_PREFIX
+                    + ", which marks the keys of deduplicated payloads.";
+            LOG.error(errorMessage);
+            throw new AmazonClientException(errorMessage);
+        }
+        if (hashPrefixCount < 0 || hashPrefixCount > MAX_HASH_PREFIX_COUNT) {
+            String errorMessage = "The number of hashed payload key prefixes must be between 0 and "
+                    + MAX_HASH_PREFIX_COUNT + ".";
+            LOG.error(errorMessage);
+            throw new AmazonClientException(errorMessage);
+        }
+        this.keyPrefix = keyPrefix;
+        this.hashPrefixCount = hashPrefixCount;
+        int digits = 1;
+        for (int count = hashPrefixCount - 1; count > 0xf; count >>>= 4) {
+            digits++;
+        }
+        this.hashPrefixDigits = digits;
+    }
+
+    /**
+     * Returns the key of the object named by the given name, such as a random
+     * UUID or a content-addressed name.
+     */
+    String getKey(String name) {
+        if (hashPrefixCount == 0) {
+            return keyPrefix.isEmpty() ? name : keyPrefix + name;
+        }
+        int hashPrefix = Math.floorMod(mix(name.hashCode()), hashPrefixCount);
+        StringBuilder key = new StringBuilder(keyPrefix.length() + hashPrefixDigits + 1 + name.length())
+                .append(keyPrefix);
+        for (int shift = (hashPrefixDigits - 1) * 4; shift >= 0; shift -= 4) {
+            key.append(Sha256.HEX_DIGITS[(hashPrefix >>> shift) & 0xf]);
+        }
+        return key.append('/').append(name).toString();
+    }
+
+    /**
+     * Spreads the bits of a string hash code, whose low bits alone are poorly
+     * distributed for short strings.
+     */
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.sqs.model.Message;
+
+/**
+ * A message received from Amazon SQS whose payload is not loaded into memory.
+ *
+ * <p>
+ * If the payload is stored in Amazon S3, the body of the wrapped message still
+ * holds the payload pointer, and the payload is only read from Amazon S3 when
+ * {@link #openPayloadStream()} or {@link #openPayloadChannel()} is called.
+ * Otherwise the payload is the body of the message. The receipt handle of the
+ * wrapped message can be used to delete the message and its payload as usual.
+ * </p>
+ */
+public class PayloadMessage {
+    private final Message message;
+    private final String payloadPointer;
+    private final long payloadSize;
+    private final StreamingPayloadStore payloadStore;
+
+    PayloadMessage(Message message) {
+        this(message, null, -1L, null);
+    }
+
+    PayloadMessage(Message message, String payloadPointer, long payloadSize, StreamingPayloadStore payloadStore) {
+        this.message = message;
+        this.payloadPointer = payloadPointer;
+        this.payloadSize = payloadSize;
+        this.payloadStore = payloadStore;
+    }
+
+    /**
+     * Gets the received message. If the payload is stored in Amazon S3, the
+     * body of the message is the payload pointer.
+     *
+     * @return The received message.
+     */
+    public Message getMessage() {
+        return message;
+    }
+
+    /**
+     * Checks whether the payload of the message is stored in Amazon S3.
+     *
+     * @return true if the payload is stored in Amazon S3.
+     */
+    public boolean isPayloadOffloaded() {
+        return payloadPointer != null;
+    }
+
+    /**
+     * Gets the size of the payload in bytes.
+     *
+     * @return The size of the payload, or -1 if the size recorded with a
+     *         payload stored in Amazon S3 cannot be read.
+     */
+    public long getPayloadSize() {
+        if (!isPayloadOffloaded()) {
+            return message.getBody() == null ? 0 : message.getBody().getBytes(StandardCharsets.UTF_8).length;
+        }
+        return payloadSize;
+    }
+
+    /**
+     * Opens a stream over the payload. For payloads stored in Amazon S3, every
+     * call starts a new download. The caller is responsible for closing the
+     * stream.
+     *
+     * @return A stream over the payload. Text payloads are UTF-8 encoded.
+     */
+    public InputStream openPayloadStream() {
+        if (!isPayloadOffloaded()) {
+            String body = message.getBody() == null ? "" : message.getBody();
+            return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return payloadStore.getOriginalPayloadStream(payloadPointer);
+    }
+
+    /**
+     * Reads the whole payload into a new array. For payloads stored in Amazon
+     * S3, every call starts a new download, which is split into concurrent
+     * byte-range requests for large payloads.
+     *
+     * @return The payload bytes.
+     */
+    public byte[] readPayloadBytes() {
+        if (!isPayloadOffloaded()) {
+            return message.getBody() == null ? new byte[0] : message.getBody().getBytes(StandardCharsets.UTF_8);
+        }
+        return payloadStore.getOriginalPayloadBytes(payloadPointer, payloadSize);
+    }
+
+    /**
+     * Writes the whole payload to the file, replacing any existing content.
+     * For payloads stored in Amazon S3, every call starts a new download.
+     *
+     * @param target
+     *            The file to write the payload to.
+     */
+    public void readPayloadTo(Path target) {
+        if (isPayloadOffloaded()) {
+            payloadStore.getOriginalPayload(payloadPointer, payloadSize, target);
+            return;
+        }
+        try {
+            Files.write(target, readPayloadBytes());
+        } catch (IOException e) {
+            throw new AmazonClientException("Failed to write the message payload to " + target + ".", e);
+        }
+    }
+
+    /**
+     * Reads the payload into the buffer, starting at its position, until the
+     * buffer is full or the payload ends. Direct buffers are supported. For
+     * payloads stored in Amazon S3, every call starts a new download.
+     *
+     * @param destination
+     *            The buffer to read the payload into.
+     * @return The number of bytes read.
+     */
+    public int readPayload(ByteBuffer destination) {
+        int start = destination.position();
+        try (ReadableByteChannel payloadChannel = openPayloadChannel()) {
+            while (destination.hasRemaining() && payloadChannel.read(destination) >= 0) {
+                // keep reading until the buffer is full or the payload ends
+            }
+        } catch (IOException e) {
+            throw new AmazonClientException("Failed to read the message payload.", e);
+        }
+        return destination.position() - start;
+    }
+
+    /**
+     * Opens a channel over the payload. For payloads stored in Amazon S3, every
+     * call starts a new download. The caller is responsible for closing the
+     * channel.
+     *
+     * @return A channel over the payload. Text payloads are UTF-8 encoded.
+     */
+    public ReadableByteChannel openPayloadChannel() {
+        return Channels.newChannel(openPayloadStream());
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.AmazonClientException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A receipt handle of a message whose payload is stored outside of the
+ * message, which carries the location of the payload along with the original
+ * receipt handle.
+ *
+ * <p>
+ * Handles are written in a compact format: a version prefix, then the bucket
+ * name and the object key, each preceded by its length and a colon, then the
+ * original receipt handle. For example, bucket {@code b} and key {@code k1}
+ * give {@code -..s3v2..-1:b2:k1} followed by the original handle. The
+ * lengths allow the handle to be parsed in a single pass, without searching
+ * for markers. Handles in the legacy format, which encloses the bucket name
+ * and the key in {@link SQSExtendedClientConstants#S3_BUCKET_NAME_MARKER} and
+ * {@link SQSExtendedClientConstants#S3_KEY_MARKER}, are still read.
+ * </p>
+ *
+ * <p>
+ * Payloads kept in other payload stores are referenced by pointers that only
+ * their store understands. Such handles carry the whole pointer, preceded by
+ * its length, after a prefix of their own.
+ * </p>
+ */
+final class PayloadReceiptHandle {
+    private static final Log LOG = LogFactory.getLog(PayloadReceiptHandle.class);
+
+    static final String PREFIX = "-..s3v2..-";
+    static final String POINTER_PREFIX = "-..ptrv2..-";
+
+    private final String s3BucketName;
+    private final String s3Key;
+    private final String payloadPointer;
+    private final String receiptHandle;
+
+    private PayloadReceiptHandle(String s3BucketName, String s3Key, String payloadPointer, String receiptHandle) {
+        this.s3BucketName = s3BucketName;
+        this.s3Key = s3Key;
+        this.payloadPointer = payloadPointer;
+        this.receiptHandle = receiptHandle;
+    }
+
+    /**
+     * Embeds the location of the payload in the receipt handle.
+     */
+    static String embed(String receiptHandle, String s3BucketName, String s3Key) {
+        return new StringBuilder(PREFIX.length() + s3BucketName.length() + s3Key.length() + receiptHandle.length() + 12)
+                .append(PREFIX)
+                .append(s3BucketName.length()).append(':').append(s3BucketName)
+                .append(s3Key.length()).append(':').append(s3Key)
+                .append(receiptHandle)
+                .toString();
+    }
+
+    /**
+     * Embeds the pointer to a payload in a store other than Amazon S3 in the
+     * receipt handle.
+     */
+    static String embedPointer(String receiptHandle, String payloadPointer) {
+        return new StringBuilder(POINTER_PREFIX.length() + payloadPointer.length() + receiptHandle.length() + 6)
+                .append(POINTER_PREFIX)
+                .append(payloadPointer.length()).append(':').append(payloadPointer)
+                .append(receiptHandle)
+                .toString();
+    }
+
+    /**
+     * Checks whether the receipt handle carries the location of a payload, in
+     * any format.
+     */
+    static boolean isPayloadReceiptHandle(String receiptHandle) {
+        return receiptHandle != null
+                && (receiptHandle.startsWith(PREFIX) || receiptHandle.startsWith(POINTER_PREFIX)
+                        || receiptHandle.startsWith(SQSExtendedClientConstants.S3_BUCKET_NAME_MARKER));
+    }
+
+    /**
+     * Returns the original receipt handle, or the receipt handle itself if it
+     * does not carry the location of a payload.
+     */
+    static String getOriginalReceiptHandle(String receiptHandle) {
+        if (receiptHandle == null) {
+            return null;
+        }
+        if (receiptHandle.startsWith(PREFIX)) {
+            FieldReader fields = new FieldReader(receiptHandle, PREFIX.length());
+            fields.skip();
+            fields.skip();
+            return fields.rest();
+        }
+        if (receiptHandle.startsWith(POINTER_PREFIX)) {
+            FieldReader fields = new FieldReader(receiptHandle, POINTER_PREFIX.length());
+            fields.skip();
+            return fields.rest();
+        }
+        if (receiptHandle.startsWith(SQSExtendedClientConstants.S3_BUCKET_NAME_MARKER)) {
+            return parseLegacy(receiptHandle).receiptHandle;
+        }
+        return receiptHandle;
+    }
+
+    /**
+     * Parses a receipt handle in any format.
+     *
+     * @return The parsed handle, or null if the receipt handle does not carry
+     *         the location of a payload.
+     */
+    static PayloadReceiptHandle parse(String receiptHandle) {
+        if (receiptHandle == null) {
+            return null;
+        }
+        if (receiptHandle.startsWith(PREFIX)) {
+            FieldReader fields = new FieldReader(receiptHandle, PREFIX.length());
+            String s3BucketName = fields.next();
+            String s3Key = fields.next();
+            return new PayloadReceiptHandle(s3BucketName, s3Key, null, fields.rest());
+        }
+        if (receiptHandle.startsWith(POINTER_PREFIX)) {
+            FieldReader fields = new FieldReader(receiptHandle, POINTER_PREFIX.length());
+            String payloadPointer = fields.next();
+            return new PayloadReceiptHandle(null, null, payloadPointer, fields.rest());
+        }
+        if (receiptHandle.startsWith(SQSExtendedClientConstants.S3_BUCKET_NAME_MARKER)) {
+            return parseLegacy(receiptHandle);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the bucket of the payload, or null if the payload is not stored
+     * in Amazon S3.
+     */
+    String getS3BucketName() {
+        return s3BucketName;
+    }
+
+    /**
+     * Returns the key of the payload, or null if the payload is not stored in
+     * Amazon S3.
+     */
+    String getS3Key() {
+        return s3Key;
+    }
+
+    String getReceiptHandle() {
+        return receiptHandle;
+    }
+
+    /**
+     * Returns the pointer to the payload, or null if the payload is stored in
+     * Amazon S3 and located by its bucket and key instead.
+     */
+    String getPayloadPointer() {
+        return payloadPointer;
+    }
+
+    /**
+     * Deletes the payload from the store, by its bucket and key if it is
+     * stored in Amazon S3.
+     */
+    void deletePayload(StreamingPayloadStore payloadStore) {
+        if (payloadPointer != null) {
+            payloadStore.deleteOriginalPayload(payloadPointer);
+        } else {
+            S3KeyedPayloadStore.deleteOriginalPayload(payloadStore, s3BucketName, s3Key);
+        }
+    }
+
+    /**
+     * Deletes the payloads of the receipt handles from the store in bulk,
+     * those stored in Amazon S3 by their bucket and key.
+     */
+    static void deletePayloads(StreamingPayloadStore payloadStore, Collection<PayloadReceiptHandle> payloadReceiptHandles) {
+        List<String> payloadPointers = new ArrayList<String>();
+        Map<String, List<String>> s3KeysByBucketName = new LinkedHashMap<String, List<String>>();
+        for (PayloadReceiptHandle payloadReceiptHandle : payloadReceiptHandles) {
+            if (payloadReceiptHandle.payloadPointer != null) {
+                payloadPointers.add(payloadReceiptHandle.payloadPointer);
+            } else {
+                s3KeysByBucketName.computeIfAbsent(payloadReceiptHandle.s3BucketName, bucket -> new ArrayList<String>())
+                        .add(payloadReceiptHandle.s3Key);
+            }
+        }
+        if (!payloadPointers.isEmpty()) {
+            payloadStore.deleteOriginalPayloads(payloadPointers);
+        }
+        if (!s3KeysByBucketName.isEmpty()) {
+            S3KeyedPayloadStore.deleteOriginalPayloads(payloadStore, s3KeysByBucketName);
+        }
+    }
+
+    private static PayloadReceiptHandle parseLegacy(String receiptHandle) {
+        String bucketMarker = SQSExtendedClientConstants.S3_BUCKET_NAME_MARKER;
+        String keyMarker = SQSExtendedClientConstants.S3_KEY_MARKER;
+        int bucketEnd = receiptHandle.indexOf(bucketMarker, bucketMarker.length());
+        int keyStart = bucketEnd + bucketMarker.length() + keyMarker.length();
+        int keyEnd = bucketEnd < 0 ? -1 : receiptHandle.indexOf(keyMarker, keyStart);
+        if (keyEnd < 0 || !receiptHandle.startsWith(keyMarker, bucketEnd + bucketMarker.length())) {
+            throw invalid(receiptHandle);
+        }
+        return new PayloadReceiptHandle(receiptHandle.substring(bucketMarker.length(), bucketEnd),
+                receiptHandle.substring(keyStart, keyEnd), null, receiptHandle.substring(keyEnd + keyMarker.length()));
+    }
+
+    private static AmazonClientException invalid(String receiptHandle) {
+        String errorMessage = "Invalid receipt handle of a message with an offloaded payload: " + receiptHandle;
+        LOG.error(errorMessage);
+        return new AmazonClientException(errorMessage);
+    }
+
+    /**
+     * Reads the length-prefixed fields of a receipt handle in a single pass.
+     */
+    private static final class FieldReader {
+        private final String receiptHandle;
+        private int position;
+
+        FieldReader(String receiptHandle, int position) {
+            this.receiptHandle = receiptHandle;
+            this.position = position;
+        }
+
+        /**
+         * Returns the field at the position and moves past it.
+         */
+        String next() {
+            int start = skip();
+            return receiptHandle.substring(start, position);
+        }
+
+        /**
+         * Moves past the field at the position, checking that the receipt
+         * handle holds it, and returns where the field starts.
+         */
+        int skip() {
+            int length = 0;
+            int digit = position;
+            for (char c; digit < receiptHandle.length() && (c = receiptHandle.charAt(digit)) != ':'; digit++) {
+                if (c < '0' || c > '9' || length > (Integer.MAX_VALUE - 9) / 10) {
+                    throw invalid(receiptHandle);
+                }
+                length = length * 10 + (c - '0');
+            }
+            int start = digit + 1;
+            if (digit == position || start > receiptHandle.length() || length > receiptHandle.length() - start) {
+                throw invalid(receiptHandle);
+            }
+            position = start + length;
+            return start;
+        }
+
+        /**
+         * Returns the rest of the receipt handle after the fields read.
+         */
+        String rest() {
+            return receiptHandle.substring(position);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import com.amazonaws.services.s3.AmazonS3;
+
+/**
+ * A band of payload sizes that is routed to its own Amazon S3 location and
+ * upload strategy.
+ *
+ * <p>
+ * A band covers the payloads of at least its minimum size, up to the minimum
+ * size of the next larger band. Payloads smaller than every band are stored
+ * as configured for the client. For example, a band from 1 GiB with a
+ * dedicated bucket and a band from 0 with a hot prefix and single PUT uploads
+ * keep huge payloads from competing with small ones:
+ * </p>
+ *
+ * <pre>
+ * new PayloadSizeBand(0).withKeyPrefix("hot/").withMultipartUploadThreshold(0)
+ * new PayloadSizeBand(1L &lt;&lt; 30).withS3Bucket(s3, "huge-payloads").withMultipartUploadThreshold(64L &lt;&lt; 20)
+ * </pre>
+ *
+ * @see ExtendedClientConfiguration#setPayloadSizeBands(java.util.List)
+ */
+public class PayloadSizeBand {
+    private final long minPayloadSize;
+    private AmazonS3 s3;
+    private String s3BucketName;
+    private String keyPrefix;
+    private Long multipartUploadThreshold;
+
+    /**
+     * @param minPayloadSize
+     *            Size in bytes of the smallest payload in the band.
+     */
+    public PayloadSizeBand(long minPayloadSize) {
+        this.minPayloadSize = minPayloadSize;
+    }
+
+    /**
+     * Gets the size of the smallest payload in the band.
+     *
+     * @return Size in bytes.
+     */
+    public long getMinPayloadSize() {
+        return minPayloadSize;
+    }
+
+    /**
+     * Sets the bucket the payloads of the band are stored in, accessed through
+     * its own Amazon S3 client.
+     *
+     * @param s3
+     *            Amazon S3 client of the bucket.
+     * @param s3BucketName
+     *            Name of the bucket, which must be already created. Default:
+     *            the bucket of the client.
+     * @return the updated PayloadSizeBand object.
+     */
+    public PayloadSizeBand withS3Bucket(AmazonS3 s3, String s3BucketName) {
+        this.s3 = s3;
+        this.s3BucketName = s3BucketName;
+        return this;
+    }
+
+    /**
+     * Gets the Amazon S3 client of the bucket of the band.
+     *
+     * @return The Amazon S3 client, or null if the band uses the bucket of the
+     *         client.
+     */
+    public AmazonS3 getAmazonS3Client() {
+        return s3;
+    }
+
+    /**
+     * Gets the bucket of the band.
+     *
+     * @return The name of the bucket, or null if the band uses the bucket of
+     *         the client.
+     */
+    public String getS3BucketName() {
+        return s3BucketName;
+    }
+
+    /**
+     * Sets the static prefix of the keys of the payloads of the band, which
+     * replaces the payload key prefix of the client.
+     *
+     * @param keyPrefix
+     *            Prefix of at most 512 bytes. Default: the payload key prefix
+     *            of the client.
+     * @return the updated PayloadSizeBand object.
+     */
+    public PayloadSizeBand withKeyPrefix(String keyPrefix) {
+        this.keyPrefix = keyPrefix;
+        return this;
+    }
+
+    /**
+     * Gets the static prefix of the keys of the payloads of the band.
+     *
+     * @return The prefix, or null if the band uses the payload key prefix of
+     *         the client.
+     */
+    public String getKeyPrefix() {
+        return keyPrefix;
+    }
+
+    /**
+     * Sets the size from which payloads of the band are uploaded as multipart
+     * uploads.
+     *
+     * @param multipartUploadThreshold
+     *            Size in bytes, or 0 to always upload with a single PUT.
+     *            Default: the multipart upload threshold of the client.
+     * @return the updated PayloadSizeBand object.
+     */
+    public PayloadSizeBand withMultipartUploadThreshold(long multipartUploadThreshold) {
+        this.multipartUploadThreshold = multipartUploadThreshold;
+        return this;
+    }
+
+    /**
+     * Gets the size from which payloads of the band are uploaded as multipart
+     * uploads.
+     *
+     * @return Size in bytes, or null if the band uses the multipart upload
+     *         threshold of the client.
+     */
+    public Long getMultipartUploadThreshold() {
+        return multipartUploadThreshold;
+    }
+}
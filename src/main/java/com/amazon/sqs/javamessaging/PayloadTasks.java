@@ -0,0 +1,194 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.AmazonClientException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Runs the payload transfers of a single batch, either on the calling thread
+ * or concurrently on a caller supplied executor.
+ */
+final class PayloadTasks {
+    private static final Log LOG = LogFactory.getLog(PayloadTasks.class);
+
+    private PayloadTasks() {
+    }
+
+    /**
+     * Runs all tasks and returns their results in the order of the tasks.
+     *
+     * @param executor
+     *            Executor to run the tasks on. When null, or when there is only
+     *            one task, the tasks run sequentially on the calling thread.
+     * @param tasks
+     *            Tasks to run.
+     * @param timeoutMillis
+     *            Maximum time to wait for the whole batch when running on the
+     *            executor. Zero or less waits without a limit.
+     * @return The task results, in the order of the tasks.
+     */
+    static <T> List<T> invokeAll(ExecutorService executor, List<? extends Callable<T>> tasks, long timeoutMillis) {
+        return invokeAll(executor, tasks, timeoutMillis, 0);
+    }
+
+    /**
+     * Runs all tasks, with at most the given number of them running at the
+     * same time, and returns their results in the order of the tasks.
+     *
+     * @param executor
+     *            Executor to run the tasks on. When null, or when there is only
+     *            one task, the tasks run sequentially on the calling thread.
+     * @param tasks
+     *            Tasks to run.
+     * @param timeoutMillis
+     *            Maximum time to wait for the whole batch when running on the
+     *            executor. Zero or less waits without a limit.
+     * @param maxConcurrency
+     *            Maximum number of tasks running at the same time. Zero or
+     *            less runs all tasks at the same time.
+     * @return The task results, in the order of the tasks.
+     */
+    static <T> List<T> invokeAll(ExecutorService executor, List<? extends Callable<T>> tasks, long timeoutMillis,
+            int maxConcurrency) {
+        List<T> results = new ArrayList<T>(tasks.size());
+        if (executor == null || tasks.size() <= 1 || maxConcurrency == 1) {
+            for (Callable<T> task : tasks) {
+                results.add(call(task));
+            }
+            return results;
+        }
+
+        if (maxConcurrency > 0 && maxConcurrency < tasks.size()) {
+            return invokeBounded(executor, tasks, timeoutMillis, maxConcurrency);
+        }
+
+        List<Future<T>> futures;
+        try {
+            if (timeoutMillis > 0) {
+                futures = executor.invokeAll(tasks, timeoutMillis, TimeUnit.MILLISECONDS);
+            } else {
+                futures = executor.invokeAll(tasks);
+            }
+        } catch (InterruptedException e) {
+            throw interrupted(e);
+        }
+
+        for (Future<T> future : futures) {
+            results.add(getResult(future, timeoutMillis));
+        }
+        return results;
+    }
+
+    /**
+     * Keeps at most maxConcurrency tasks in flight, submitting the next task
+     * whenever one completes.
+     */
+    private static <T> List<T> invokeBounded(ExecutorService executor, List<? extends Callable<T>> tasks,
+            long timeoutMillis, int maxConcurrency) {
+        CompletionService<T> completionService = new ExecutorCompletionService<T>(executor);
+        Map<Future<T>, Integer> running = new HashMap<Future<T>, Integer>();
+        List<T> results = new ArrayList<T>(Collections.<T>nCopies(tasks.size(), null));
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        int next = 0;
+        try {
+            for (; next < maxConcurrency; next++) {
+                running.put(completionService.submit(tasks.get(next)), next);
+            }
+            for (int completed = 0; completed < tasks.size(); completed++) {
+                Future<T> future;
+                if (timeoutMillis > 0) {
+                    future = completionService.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (future == null) {
+                        String errorMessage = "Transferring message payloads did not complete within " + timeoutMillis + " ms.";
+                        LOG.error(errorMessage);
+                        throw new AmazonClientException(errorMessage);
+                    }
+                } else {
+                    future = completionService.take();
+                }
+                results.set(running.remove(future), getResult(future, timeoutMillis));
+                if (next < tasks.size()) {
+                    running.put(completionService.submit(tasks.get(next)), next);
+                    next++;
+                }
+            }
+        } catch (InterruptedException e) {
+            throw interrupted(e);
+        } finally {
+            // Only left over when a task failed or the batch timed out.
+            for (Future<T> future : running.keySet()) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    private static AmazonClientException interrupted(InterruptedException e) {
+        Thread.currentThread().interrupt();
+        String errorMessage = "Interrupted while transferring message payloads.";
+        LOG.error(errorMessage, e);
+        return new AmazonClientException(errorMessage, e);
+    }
+
+    private static <T> T call(Callable<T> task) {
+        try {
+            return task.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            String errorMessage = "Failed to transfer message payload.";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        }
+    }
+
+    private static <T> T getResult(Future<T> future, long timeoutMillis) {
+        try {
+            return future.get();
+        } catch (CancellationException e) {
+            String errorMessage = "Transferring message payloads did not complete within " + timeoutMillis + " ms.";
+            LOG.error(errorMessage);
+            throw new AmazonClientException(errorMessage, e);
+        } catch (InterruptedException e) {
+            throw interrupted(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            String errorMessage = "Failed to transfer message payload.";
+            LOG.error(errorMessage, cause);
+            throw new AmazonClientException(errorMessage, cause);
+        }
+    }
+}
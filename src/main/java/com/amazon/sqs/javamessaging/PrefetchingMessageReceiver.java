@@ -0,0 +1,342 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.QueueAttributeName;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Receives messages from a queue ahead of their consumption, so that long
+ * polls and payload downloads are off the path between consecutive messages.
+ *
+ * <p>
+ * Background pollers keep a bounded buffer filled with messages received
+ * through an Amazon SQS extended client, whose payloads are therefore already
+ * downloaded when they are buffered. Pollers only ask for as many messages as
+ * the buffer has room for, so the buffer never holds more messages than its
+ * capacity.
+ * </p>
+ *
+ * <p>
+ * A buffered message is only handed out while enough of its visibility
+ * timeout remains for it to be processed: the smaller of five seconds and
+ * half of the visibility timeout. Messages that are buffered for longer are
+ * released by setting their visibility timeout to zero, so that they are
+ * redelivered to any consumer right away instead of being handed out after
+ * another consumer may already have received them. Messages still buffered
+ * when the receiver is shut down are released the same way. Consumers delete
+ * handed out messages through the extended client as usual.
+ * </p>
+ */
+public class PrefetchingMessageReceiver {
+    private static final Log LOG = LogFactory.getLog(PrefetchingMessageReceiver.class);
+
+    /** Largest number of messages Amazon SQS returns or accepts in one batch. */
+    static final int MAX_BATCH_SIZE = 10;
+
+    static final int DEFAULT_WAIT_TIME_SECONDS = 20;
+    static final long MAX_VISIBILITY_MARGIN_MILLIS = 5000;
+    private static final long POLL_ERROR_BACKOFF_MILLIS = 1000;
+
+    private final AmazonSQSExtendedClient sqsClient;
+    private final String queueUrl;
+    private final List<String> attributeNames;
+    private final List<String> messageAttributeNames;
+    private final Integer requestVisibilityTimeout;
+    private final int waitTimeSeconds;
+    private final long visibilityTimeoutMillis;
+    private final long visibilityMarginMillis;
+    private final BlockingQueue<BufferedMessage> buffer = new LinkedBlockingQueue<BufferedMessage>();
+    private final Semaphore capacity;
+    private final ExecutorService pollers;
+    private final ScheduledExecutorService sweeper;
+    private final LongSupplier nanoClock;
+    private volatile boolean shutdown;
+
+    /**
+     * Constructs a receiver and starts its pollers.
+     *
+     * @param sqsClient
+     *            The extended client that receives the messages and downloads
+     *            their payloads.
+     * @param receiveMessageRequest
+     *            Template of the requests of the pollers, giving the queue and
+     *            optionally the visibility timeout, wait time and attributes to
+     *            receive. The number of messages is set by the pollers, and
+     *            the wait time defaults to 20 seconds. The request is not
+     *            modified.
+     * @param bufferSize
+     *            Maximum number of buffered messages.
+     * @param pollerCount
+     *            Number of pollers receiving messages concurrently.
+     *
+     * @throws AmazonClientException
+     *             If the visibility timeout of the queue cannot be read.
+     */
+    public PrefetchingMessageReceiver(AmazonSQSExtendedClient sqsClient, ReceiveMessageRequest receiveMessageRequest,
+            int bufferSize, int pollerCount) {
+        this(sqsClient, receiveMessageRequest, bufferSize, pollerCount, System::nanoTime);
+    }
+
+    /**
+     * @param nanoClock
+     *            Clock in nanoseconds that tells when buffered messages become
+     *            stale.
+     */
+    PrefetchingMessageReceiver(AmazonSQSExtendedClient sqsClient, ReceiveMessageRequest receiveMessageRequest,
+            int bufferSize, int pollerCount, LongSupplier nanoClock) {
+        if (bufferSize < 1 || pollerCount < 1) {
+            String errorMessage = "The buffer size and the number of pollers must be at least 1.";
+            LOG.error(errorMessage);
+            throw new AmazonClientException(errorMessage);
+        }
+        this.sqsClient = sqsClient;
+        this.nanoClock = nanoClock;
+        this.queueUrl = receiveMessageRequest.getQueueUrl();
+        this.attributeNames = new ArrayList<String>(receiveMessageRequest.getAttributeNames());
+        this.messageAttributeNames = new ArrayList<String>(receiveMessageRequest.getMessageAttributeNames());
+        this.requestVisibilityTimeout = receiveMessageRequest.getVisibilityTimeout();
+        this.waitTimeSeconds = receiveMessageRequest.getWaitTimeSeconds() != null
+                ? receiveMessageRequest.getWaitTimeSeconds() : DEFAULT_WAIT_TIME_SECONDS;
+        this.visibilityTimeoutMillis = TimeUnit.SECONDS.toMillis(getVisibilityTimeoutSeconds());
+        this.visibilityMarginMillis = Math.min(MAX_VISIBILITY_MARGIN_MILLIS, visibilityTimeoutMillis / 2);
+        this.capacity = new Semaphore(bufferSize);
+
+        this.pollers = Executors.newFixedThreadPool(pollerCount, new DaemonThreadFactory("sqs-extended-prefetch"));
+        for (int i = 0; i < pollerCount; i++) {
+            pollers.execute(this::poll);
+        }
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("sqs-extended-prefetch-sweeper"));
+        long sweepPeriodMillis = Math.max(1, Math.min(1000, visibilityMarginMillis / 2));
+        sweeper.scheduleWithFixedDelay(this::releaseStaleMessages, sweepPeriodMillis, sweepPeriodMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Takes the next buffered message, waiting for one to be received if the
+     * buffer is empty.
+     *
+     * @param timeout
+     *            How long to wait for a message.
+     * @param unit
+     *            The unit of the timeout.
+     * @return The message with its payload, or null if no message was received
+     *         in time.
+     *
+     * @throws InterruptedException
+     *             If the thread is interrupted while waiting.
+     * @throws AmazonClientException
+     *             If the receiver is shut down.
+     */
+    public Message receiveMessage(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            if (shutdown) {
+                String errorMessage = "The prefetching message receiver is shut down.";
+                LOG.error(errorMessage);
+                throw new AmazonClientException(errorMessage);
+            }
+            BufferedMessage bufferedMessage = buffer.poll(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (bufferedMessage == null) {
+                return null;
+            }
+            capacity.release();
+            if (!isStale(bufferedMessage)) {
+                return bufferedMessage.message;
+            }
+            release(Collections.singletonList(bufferedMessage));
+        }
+    }
+
+    /**
+     * Gets the number of buffered messages.
+     */
+    public int getBufferedMessageCount() {
+        return buffer.size();
+    }
+
+    /**
+     * Stops the pollers and releases the buffered messages. Messages received
+     * by polls still running are released when the polls complete. The
+     * extended client is not shut down.
+     */
+    public void shutdown() {
+        shutdown = true;
+        pollers.shutdownNow();
+        sweeper.shutdownNow();
+        List<BufferedMessage> bufferedMessages = new ArrayList<BufferedMessage>();
+        buffer.drainTo(bufferedMessages);
+        release(bufferedMessages);
+    }
+
+    private int getVisibilityTimeoutSeconds() {
+        if (requestVisibilityTimeout != null) {
+            return requestVisibilityTimeout;
+        }
+        String visibilityTimeout = sqsClient.getQueueAttributes(new GetQueueAttributesRequest(queueUrl)
+                .withAttributeNames(QueueAttributeName.VisibilityTimeout))
+                .getAttributes().get(QueueAttributeName.VisibilityTimeout.toString());
+        try {
+            return Integer.parseInt(visibilityTimeout);
+        } catch (NumberFormatException e) {
+            String errorMessage = "Failed to read the visibility timeout of queue " + queueUrl + ".";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        }
+    }
+
+    /**
+     * Receives messages into the buffer whenever it has room, until the
+     * receiver is shut down.
+     */
+    private void poll() {
+        while (!shutdown) {
+            try {
+                capacity.acquire();
+            } catch (InterruptedException e) {
+                return;
+            }
+            int permits = 1;
+            while (permits < MAX_BATCH_SIZE && capacity.tryAcquire()) {
+                permits++;
+            }
+
+            // Visibility timeouts start when Amazon SQS returns the messages, so count from before the call.
+            long receivedNanos = nanoClock.getAsLong();
+            List<Message> messages;
+            try {
+                messages = sqsClient.receiveMessage(newReceiveMessageRequest(permits)).getMessages();
+            } catch (RuntimeException e) {
+                capacity.release(permits);
+                if (shutdown) {
+                    return;
+                }
+                LOG.warn("Failed to receive messages from queue " + queueUrl + ".", e);
+                try {
+                    Thread.sleep(POLL_ERROR_BACKOFF_MILLIS);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                continue;
+            }
+
+            long staleNanos = receivedNanos + TimeUnit.MILLISECONDS.toNanos(visibilityTimeoutMillis - visibilityMarginMillis);
+            List<BufferedMessage> bufferedMessages = new ArrayList<BufferedMessage>(messages.size());
+            for (Message message : messages) {
+                bufferedMessages.add(new BufferedMessage(message, staleNanos));
+            }
+            capacity.release(permits - Math.min(permits, messages.size()));
+            if (shutdown) {
+                release(bufferedMessages);
+                return;
+            }
+            buffer.addAll(bufferedMessages);
+            if (shutdown) {
+                // The buffer may have been drained by shutdown before the messages were added.
+                List<BufferedMessage> lateMessages = new ArrayList<BufferedMessage>();
+                buffer.drainTo(lateMessages);
+                release(lateMessages);
+            }
+        }
+    }
+
+    /**
+     * Creates the request of a poll. Each poll gets its own copy of the
+     * attribute names, since the extended client adds to them.
+     */
+    private ReceiveMessageRequest newReceiveMessageRequest(int maxNumberOfMessages) {
+        return new ReceiveMessageRequest(queueUrl)
+                .withAttributeNames(new ArrayList<String>(attributeNames))
+                .withMessageAttributeNames(new ArrayList<String>(messageAttributeNames))
+                .withVisibilityTimeout(requestVisibilityTimeout)
+                .withWaitTimeSeconds(waitTimeSeconds)
+                .withMaxNumberOfMessages(maxNumberOfMessages);
+    }
+
+    /**
+     * Releases the buffered messages that became stale. Runs periodically on
+     * the sweeper.
+     */
+    void releaseStaleMessages() {
+        List<BufferedMessage> staleMessages = new ArrayList<BufferedMessage>();
+        for (BufferedMessage bufferedMessage : buffer) {
+            // Removal fails if a consumer took the message first.
+            if (isStale(bufferedMessage) && buffer.remove(bufferedMessage)) {
+                capacity.release();
+                staleMessages.add(bufferedMessage);
+            }
+        }
+        release(staleMessages);
+    }
+
+    private boolean isStale(BufferedMessage bufferedMessage) {
+        return nanoClock.getAsLong() - bufferedMessage.staleNanos >= 0;
+    }
+
+    /**
+     * Makes the messages visible again right away, so that they are
+     * redelivered instead of waiting for their visibility timeout to expire.
+     */
+    private void release(List<BufferedMessage> bufferedMessages) {
+        for (int start = 0; start < bufferedMessages.size(); start += MAX_BATCH_SIZE) {
+            ChangeMessageVisibilityBatchRequest changeMessageVisibilityBatchRequest = new ChangeMessageVisibilityBatchRequest()
+                    .withQueueUrl(queueUrl);
+            for (BufferedMessage bufferedMessage : bufferedMessages.subList(start,
+                    Math.min(start + MAX_BATCH_SIZE, bufferedMessages.size()))) {
+                changeMessageVisibilityBatchRequest.getEntries().add(new ChangeMessageVisibilityBatchRequestEntry()
+                        .withId(Integer.toString(changeMessageVisibilityBatchRequest.getEntries().size()))
+                        .withReceiptHandle(bufferedMessage.message.getReceiptHandle())
+                        .withVisibilityTimeout(0));
+            }
+            try {
+                sqsClient.changeMessageVisibilityBatch(changeMessageVisibilityBatchRequest);
+            } catch (RuntimeException e) {
+                // The messages become visible again when their visibility timeout expires.
+                LOG.warn("Failed to release buffered messages of queue " + queueUrl + ".", e);
+            }
+        }
+    }
+
+    private static class BufferedMessage {
+        final Message message;
+        final long staleNanos;
+
+        BufferedMessage(Message message, long staleNanos) {
+            this.message = message;
+            this.staleNanos = staleNanos;
+        }
+    }
+}
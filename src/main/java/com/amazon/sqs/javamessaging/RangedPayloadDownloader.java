@@ -0,0 +1,196 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.util.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Downloads an Amazon S3 object as concurrent byte-range GET requests, writing
+ * every range straight to its place in a preallocated array or file. The
+ * first range also tells the size and metadata of the object, so the object
+ * does not need to be looked up first. Later ranges are only read if the
+ * object still has the ETag of the first range, so an object overwritten
+ * during the download fails it rather than mixing the bytes of two versions.
+ */
+class RangedPayloadDownloader {
+    private static final Log LOG = LogFactory.getLog(RangedPayloadDownloader.class);
+
+    /** Largest array the JVM reliably allocates. */
+    static final long MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private final AmazonS3 s3;
+    private final long partSize;
+    private final int concurrency;
+    private final ExecutorService rangeExecutor;
+
+    /**
+     * @param rangeExecutor
+     *            Executor the ranges are downloaded on. It must not run the
+     *            callers of the downloads, which wait for their ranges.
+     */
+    RangedPayloadDownloader(AmazonS3 s3, long partSize, int concurrency, ExecutorService rangeExecutor) {
+        this.s3 = s3;
+        this.partSize = Math.max(1, partSize);
+        this.concurrency = Math.max(1, concurrency);
+        this.rangeExecutor = rangeExecutor;
+    }
+
+    ArrayDownload downloadToArray(String s3BucketName, String s3Key) {
+        S3Object firstRange = getRange(s3BucketName, s3Key, 0, partSize, null);
+        ObjectMetadata objectMetadata = firstRange.getObjectMetadata();
+        long objectSize = objectMetadata.getInstanceLength();
+        if (objectSize > MAX_ARRAY_SIZE) {
+            IOUtils.closeQuietly(firstRange, LOG);
+            String errorMessage = "The payload of " + objectSize + " bytes does not fit into an array.";
+            LOG.error(errorMessage);
+            throw new AmazonClientException(errorMessage);
+        }
+
+        byte[] payload = new byte[(int) objectSize];
+        download(s3BucketName, s3Key, firstRange, objectSize, (start, length, range) -> {
+            int offset = (int) start;
+            int end = (int) (start + length);
+            while (offset < end) {
+                int count = range.read(payload, offset, end - offset);
+                if (count < 0) {
+                    throw new IOException("The range ended after " + (offset - start) + " of " + length + " bytes.");
+                }
+                offset += count;
+            }
+        });
+        return new ArrayDownload(payload, objectMetadata);
+    }
+
+    /**
+     * @return The metadata of the downloaded object.
+     */
+    ObjectMetadata downloadToFile(String s3BucketName, String s3Key, Path target) {
+        S3Object firstRange = getRange(s3BucketName, s3Key, 0, partSize, null);
+        ObjectMetadata objectMetadata = firstRange.getObjectMetadata();
+        long objectSize = objectMetadata.getInstanceLength();
+        try (FileChannel file = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            // Preallocate the file, since positional transfers cannot write past its end.
+            if (objectSize > 0) {
+                file.write(ByteBuffer.wrap(new byte[1]), objectSize - 1);
+            }
+            download(s3BucketName, s3Key, firstRange, objectSize, (start, length, range) -> {
+                ReadableByteChannel rangeChannel = Channels.newChannel(range);
+                long written = 0;
+                while (written < length) {
+                    // Positional transfers leave the file position alone, so ranges can be written concurrently.
+                    long count = file.transferFrom(rangeChannel, start + written, length - written);
+                    if (count <= 0) {
+                        throw new IOException("The range ended after " + written + " of " + length + " bytes.");
+                    }
+                    written += count;
+                }
+            });
+        } catch (IOException e) {
+            IOUtils.closeQuietly(firstRange, LOG);
+            String errorMessage = "Failed to write the message payload to " + target + ".";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        }
+        return objectMetadata;
+    }
+
+    private void download(String s3BucketName, String s3Key, S3Object firstRange, long objectSize,
+            RangeWriter rangeWriter) {
+        String eTag = firstRange.getObjectMetadata().getETag();
+        writeRange(firstRange, 0, Math.min(partSize, objectSize), rangeWriter);
+
+        List<Callable<Void>> rangeDownloads = new ArrayList<Callable<Void>>();
+        for (long start = partSize; start < objectSize; start += partSize) {
+            final long rangeStart = start;
+            final long rangeLength = Math.min(partSize, objectSize - start);
+            rangeDownloads.add(() -> {
+                writeRange(getRange(s3BucketName, s3Key, rangeStart, rangeLength, eTag), rangeStart, rangeLength,
+                        rangeWriter);
+                return null;
+            });
+        }
+        PayloadTasks.invokeAll(rangeExecutor, rangeDownloads, 0, concurrency);
+    }
+
+    /**
+     * @param eTag
+     *            ETag the object must still have, or null to read any version.
+     */
+    private S3Object getRange(String s3BucketName, String s3Key, long start, long length, String eTag) {
+        GetObjectRequest getObjectRequest = new GetObjectRequest(s3BucketName, s3Key).withRange(start, start + length - 1);
+        if (eTag != null) {
+            getObjectRequest.withMatchingETagConstraint(eTag);
+        }
+        S3Object range = s3.getObject(getObjectRequest);
+        if (range == null) {
+            // Amazon S3 answers 412 Precondition Failed, which the client reports as a null object.
+            String errorMessage = "S3 object " + s3Key + " in bucket " + s3BucketName
+                    + " was replaced while its payload was downloaded.";
+            LOG.error(errorMessage);
+            throw new AmazonClientException(errorMessage);
+        }
+        return range;
+    }
+
+    private static void writeRange(S3Object s3Object, long start, long length, RangeWriter rangeWriter) {
+        try (S3Object rangeObject = s3Object;
+             InputStream range = rangeObject.getObjectContent()) {
+            rangeWriter.write(start, length, range);
+        } catch (IOException e) {
+            String errorMessage = "Failed to read bytes " + start + " to " + (start + length - 1) + " of the payload.";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        }
+    }
+
+    private interface RangeWriter {
+        void write(long start, long length, InputStream range) throws IOException;
+    }
+
+    /**
+     * An object downloaded into an array, with its metadata.
+     */
+    static final class ArrayDownload {
+        final byte[] payload;
+        final ObjectMetadata objectMetadata;
+
+        ArrayDownload(byte[] payload, ObjectMetadata objectMetadata) {
+            this.payload = payload;
+            this.objectMetadata = objectMetadata;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import software.amazon.payloadoffloading.PayloadS3Pointer;
+
+/**
+ * A payload store that deletes payloads stored in Amazon S3 by their bucket
+ * and key, so that deleting the payload of a message does not build a pointer
+ * only to parse it again.
+ */
+interface S3KeyedPayloadStore {
+
+    /**
+     * Deletes the payload stored under the key.
+     */
+    void deleteOriginalPayload(String s3BucketName, String s3Key);
+
+    /**
+     * Deletes the payloads stored under the keys, with as few requests to
+     * Amazon S3 as possible.
+     *
+     * @param s3KeysByBucketName
+     *            Keys of the payloads by the name of their bucket.
+     */
+    void deleteOriginalPayloads(Map<String, List<String>> s3KeysByBucketName);
+
+    /**
+     * Deletes the payload stored under the key from the store, through a
+     * pointer if the store does not delete by key.
+     */
+    static void deleteOriginalPayload(StreamingPayloadStore payloadStore, String s3BucketName, String s3Key) {
+        if (payloadStore instanceof S3KeyedPayloadStore) {
+            ((S3KeyedPayloadStore) payloadStore).deleteOriginalPayload(s3BucketName, s3Key);
+        } else {
+            payloadStore.deleteOriginalPayload(new PayloadS3Pointer(s3BucketName, s3Key).toJson());
+        }
+    }
+
+    /**
+     * Deletes the payloads stored under the keys from the store, through
+     * pointers if the store does not delete by key.
+     */
+    static void deleteOriginalPayloads(StreamingPayloadStore payloadStore, Map<String, List<String>> s3KeysByBucketName) {
+        if (payloadStore instanceof S3KeyedPayloadStore) {
+            ((S3KeyedPayloadStore) payloadStore).deleteOriginalPayloads(s3KeysByBucketName);
+        } else {
+            payloadStore.deleteOriginalPayloads(toPayloadPointers(s3KeysByBucketName));
+        }
+    }
+
+    static List<String> toPayloadPointers(Map<String, List<String>> s3KeysByBucketName) {
+        List<String> payloadPointers = new ArrayList<String>();
+        for (Map.Entry<String, List<String>> bucketKeys : s3KeysByBucketName.entrySet()) {
+            for (String s3Key : bucketKeys.getValue()) {
+                payloadPointers.add(new PayloadS3Pointer(bucketKeys.getKey(), s3Key).toJson());
+            }
+        }
+        return payloadPointers;
+    }
+}
@@ -0,0 +1,502 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.SSEAwsKeyManagementParams;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.util.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import software.amazon.payloadoffloading.PayloadS3Pointer;
+import software.amazon.payloadoffloading.S3BackedPayloadStore;
+import software.amazon.payloadoffloading.S3Dao;
+
+/**
+ * Amazon S3 backed payload store that, in addition to the operations of
+ * {@link S3BackedPayloadStore}, streams payloads directly from and to their
+ * Amazon S3 objects. Payloads above the multipart upload threshold are
+ * uploaded as multipart uploads, and payloads of known size above the ranged
+ * download threshold are downloaded as concurrent byte-range requests.
+ *
+ * <p>
+ * If a payload codec is set, payloads are compressed while they are uploaded
+ * and the codec is recorded as the Content-Encoding of the S3 object.
+ * Payloads are decoded on retrieval according to the Content-Encoding of their
+ * object, so payloads stored with or without compression can be read alike.
+ * </p>
+ *
+ * <p>
+ * If a payload deduplicator is set, payloads that can be read twice are stored
+ * under a key derived from their content, and a payload already stored under
+ * its key is not uploaded again. Such objects are shared between messages and
+ * are never deleted with a message.
+ * </p>
+ *
+ * <p>
+ * Keys are laid out by a {@link PayloadKeyLayout}, which may place them under
+ * a static prefix and spread them across hashed prefixes.
+ * </p>
+ */
+class S3StreamingPayloadStore implements StreamingPayloadStore, S3KeyedPayloadStore {
+    private static final Log LOG = LogFactory.getLog(S3StreamingPayloadStore.class);
+
+    // Largest number of keys a single DeleteObjects request accepts.
+    static final int MAX_KEYS_PER_DELETE = 1000;
+
+    private final AmazonS3 s3;
+    private final String s3BucketName;
+    private final SSEAwsKeyManagementParams sseAwsKeyManagementParams;
+    private final S3Dao s3Dao;
+    private final MultipartPayloadUploader multipartUploader;
+    private final long multipartUploadThreshold;
+    private final RangedPayloadDownloader rangedDownloader;
+    private final long rangedDownloadThreshold;
+    private final PayloadCodec payloadCodec;
+    private final PayloadDeduplicator payloadDeduplicator;
+    private final PayloadKeyLayout keyLayout;
+
+    S3StreamingPayloadStore(AmazonS3 s3, String s3BucketName, SSEAwsKeyManagementParams sseAwsKeyManagementParams) {
+        this(s3, s3BucketName, sseAwsKeyManagementParams, null, 0, null, 0, null, null, PayloadKeyLayout.FLAT);
+    }
+
+    /**
+     * @param multipartUploader
+     *            Uploader for payloads of at least multipartUploadThreshold
+     *            bytes, or null to always upload with a single request.
+     * @param rangedDownloader
+     *            Downloader for payloads of at least rangedDownloadThreshold
+     *            bytes, or null to always download with a single request.
+     * @param payloadCodec
+     *            Codec that compresses stored payloads, or null to store them
+     *            as they are.
+     * @param payloadDeduplicator
+     *            Deduplicator that assigns content-addressed keys, or null to
+     *            store every payload under a random key.
+     * @param keyLayout
+     *            Layout of the keys of stored payloads.
+     */
+    S3StreamingPayloadStore(AmazonS3 s3, String s3BucketName, SSEAwsKeyManagementParams sseAwsKeyManagementParams,
+            MultipartPayloadUploader multipartUploader, long multipartUploadThreshold,
+            RangedPayloadDownloader rangedDownloader, long rangedDownloadThreshold, PayloadCodec payloadCodec,
+            PayloadDeduplicator payloadDeduplicator, PayloadKeyLayout keyLayout) {
+        this.s3 = s3;
+        this.s3BucketName = s3BucketName;
+        this.sseAwsKeyManagementParams = sseAwsKeyManagementParams;
+        this.s3Dao = new S3Dao(s3);
+        this.multipartUploader = multipartUploader;
+        this.multipartUploadThreshold = multipartUploadThreshold;
+        this.rangedDownloader = rangedDownloader;
+        this.rangedDownloadThreshold = rangedDownloadThreshold;
+        this.payloadCodec = payloadCodec;
+        this.payloadDeduplicator = payloadDeduplicator;
+        this.keyLayout = keyLayout;
+    }
+
+    @Override
+    public String storeOriginalPayload(String payload, Long payloadContentSize) {
+        byte[] payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+        return storeOriginalPayload(new ByteArrayInputStream(payloadBytes), payloadBytes.length);
+    }
+
+    @Override
+    public String storeOriginalPayload(InputStream payload, long payloadContentSize) {
+        String s3Key = keyLayout.getKey(UUID.randomUUID().toString());
+        boolean contentAddressed = payloadDeduplicator != null && payload.markSupported();
+
+        try {
+            if (contentAddressed) {
+                s3Key = keyLayout.getKey(payloadDeduplicator.getKey(payload));
+                if (isStoredForReuse(s3Key)) {
+                    LOG.debug("S3 object reused, Bucket name: " + s3BucketName + ", Object key: " + s3Key + ".");
+                    return new PayloadS3Pointer(s3BucketName, s3Key).toJson();
+                }
+            }
+            if (payloadCodec == null) {
+                storeObject(s3Key, payload, payloadContentSize, new ObjectMetadata());
+            } else {
+                PushbackInputStream peekablePayload = new PushbackInputStream(payload, PayloadCodecs.MAGIC_BYTES_LENGTH);
+                if (startsCompressed(peekablePayload)) {
+                    storeObject(s3Key, peekablePayload, payloadContentSize, new ObjectMetadata());
+                } else {
+                    storeEncodedObject(s3Key, peekablePayload, payloadContentSize);
+                }
+            }
+        } catch (AmazonServiceException e) {
+            String errorMessage = "Failed to store the message content in an S3 object.";
+            LOG.error(errorMessage, e);
+            throw new AmazonServiceException(errorMessage, e);
+        } catch (AmazonClientException e) {
+            String errorMessage = "Failed to store the message content in an S3 object.";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        } catch (IOException e) {
+            String errorMessage = "Failed to read the message payload.";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        }
+
+        if (contentAddressed) {
+            payloadDeduplicator.remember(s3Key, System.currentTimeMillis());
+        }
+        LOG.info("S3 object created, Bucket name: " + s3BucketName + ", Object key: " + s3Key + ".");
+        return new PayloadS3Pointer(s3BucketName, s3Key).toJson();
+    }
+
+    /**
+     * Checks whether the object with the content-addressed key exists and is
+     * young enough to be reused. Objects seen recently are not looked up
+     * again.
+     */
+    private boolean isStoredForReuse(String s3Key) {
+        if (payloadDeduplicator.isKnown(s3Key)) {
+            return true;
+        }
+        ObjectMetadata objectMetadata;
+        try {
+            objectMetadata = s3.getObjectMetadata(s3BucketName, s3Key);
+        } catch (AmazonServiceException e) {
+            if (e.getStatusCode() != 404) {
+                LOG.warn("Failed to look up the S3 object " + s3Key + ", uploading the payload again.", e);
+            }
+            return false;
+        }
+        Date lastModified = objectMetadata.getLastModified();
+        if (lastModified == null || !payloadDeduplicator.isReusable(lastModified.getTime())) {
+            return false;
+        }
+        payloadDeduplicator.remember(s3Key, lastModified.getTime());
+        return true;
+    }
+
+    private static boolean startsCompressed(PushbackInputStream payload) throws IOException {
+        byte[] head = new byte[PayloadCodecs.MAGIC_BYTES_LENGTH];
+        int length = 0;
+        while (length < head.length) {
+            int count = payload.read(head, length, head.length - length);
+            if (count < 0) {
+                break;
+            }
+            length += count;
+        }
+        payload.unread(head, 0, length);
+        return PayloadCodecs.isCompressed(head, length);
+    }
+
+    private void storeObject(String s3Key, InputStream payload, long payloadContentSize, ObjectMetadata objectMetadata) {
+        if (usesMultipartUpload(payloadContentSize)) {
+            multipartUploader.upload(s3BucketName, s3Key, payload, payloadContentSize, objectMetadata,
+                    sseAwsKeyManagementParams);
+        } else {
+            objectMetadata.setContentLength(payloadContentSize);
+            putObject(s3Key, payload, objectMetadata);
+        }
+    }
+
+    private void storeEncodedObject(String s3Key, InputStream payload, long payloadContentSize) throws IOException {
+        ObjectMetadata objectMetadata = new ObjectMetadata();
+        objectMetadata.setContentEncoding(payloadCodec.getName());
+        InputStream encodedPayload = new EncodingInputStream(payload, payloadCodec);
+        if (usesMultipartUpload(payloadContentSize)) {
+            // The encoded size is not known up front, so the parts are read until the payload ends.
+            multipartUploader.upload(s3BucketName, s3Key, encodedPayload, -1, objectMetadata,
+                    sseAwsKeyManagementParams);
+        } else {
+            // A single request needs the content length, which is only known once the payload is encoded,
+            // so the encoded payload is spooled to a temporary file rather than held on the heap.
+            Path encodedFile = Files.createTempFile("sqs-payload", ".encoded");
+            try {
+                Files.copy(encodedPayload, encodedFile, StandardCopyOption.REPLACE_EXISTING);
+                objectMetadata.setContentLength(Files.size(encodedFile));
+                try (InputStream encodedFileStream = Files.newInputStream(encodedFile)) {
+                    putObject(s3Key, encodedFileStream, objectMetadata);
+                }
+            } finally {
+                deleteTemporaryFile(encodedFile);
+            }
+        }
+    }
+
+    private static void deleteTemporaryFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOG.warn("Failed to delete " + file + ".", e);
+        }
+    }
+
+    private void putObject(String s3Key, InputStream payload, ObjectMetadata objectMetadata) {
+        PutObjectRequest putObjectRequest = new PutObjectRequest(s3BucketName, s3Key, payload, objectMetadata);
+        if (sseAwsKeyManagementParams != null) {
+            putObjectRequest.setSSEAwsKeyManagementParams(sseAwsKeyManagementParams);
+        }
+        s3.putObject(putObjectRequest);
+    }
+
+    private boolean usesMultipartUpload(long payloadContentSize) {
+        return multipartUploader != null && multipartUploadThreshold > 0 && payloadContentSize >= multipartUploadThreshold;
+    }
+
+    @Override
+    public String getOriginalPayload(String payloadPointer) {
+        return new String(getOriginalPayloadBytes(payloadPointer, -1), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public InputStream getOriginalPayloadStream(String payloadPointer) {
+        PayloadS3Pointer s3Pointer = PayloadS3Pointer.fromJson(payloadPointer);
+        S3Object s3Object;
+        try {
+            s3Object = s3.getObject(new GetObjectRequest(s3Pointer.getS3BucketName(), s3Pointer.getS3Key()));
+        } catch (AmazonServiceException e) {
+            String errorMessage = "Failed to get the S3 object which contains the payload.";
+            LOG.error(errorMessage, e);
+            throw new AmazonServiceException(errorMessage, e);
+        } catch (AmazonClientException e) {
+            String errorMessage = "Failed to get the S3 object which contains the payload.";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        }
+        return decode(s3Object.getObjectContent(), s3Object.getObjectMetadata());
+    }
+
+    @Override
+    public byte[] getOriginalPayloadBytes(String payloadPointer, long payloadContentSize) {
+        if (!usesRangedDownload(payloadContentSize)) {
+            return readPayload(getOriginalPayloadStream(payloadPointer), payloadContentSize);
+        }
+
+        PayloadS3Pointer s3Pointer = PayloadS3Pointer.fromJson(payloadPointer);
+        RangedPayloadDownloader.ArrayDownload download;
+        try {
+            download = rangedDownloader.downloadToArray(s3Pointer.getS3BucketName(), s3Pointer.getS3Key());
+        } catch (AmazonServiceException e) {
+            String errorMessage = "Failed to get the S3 object which contains the payload.";
+            LOG.error(errorMessage, e);
+            throw new AmazonServiceException(errorMessage, e);
+        }
+        if (getPayloadDecoder(download.objectMetadata) == null) {
+            return download.payload;
+        }
+        return readPayload(decode(new ByteArrayInputStream(download.payload), download.objectMetadata),
+                payloadContentSize);
+    }
+
+    private static byte[] readPayload(InputStream payload, long payloadContentSize) {
+        try (InputStream in = payload) {
+            if (payloadContentSize < 0 || payloadContentSize > RangedPayloadDownloader.MAX_ARRAY_SIZE) {
+                return IOUtils.toByteArray(in);
+            }
+            // The size is known, so read straight into an array of that size.
+            byte[] payloadBytes = new byte[(int) payloadContentSize];
+            int offset = 0;
+            while (offset < payloadBytes.length) {
+                int count = in.read(payloadBytes, offset, payloadBytes.length - offset);
+                if (count < 0) {
+                    throw new IOException("The payload ended after " + offset + " of " + payloadContentSize + " bytes.");
+                }
+                offset += count;
+            }
+            return payloadBytes;
+        } catch (IOException e) {
+            String errorMessage = "Failed to read the S3 object which contains the payload.";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        }
+    }
+
+    @Override
+    public void getOriginalPayload(String payloadPointer, long payloadContentSize, Path target) {
+        if (!usesRangedDownload(payloadContentSize)) {
+            copyPayload(getOriginalPayloadStream(payloadPointer), target);
+            return;
+        }
+
+        PayloadS3Pointer s3Pointer = PayloadS3Pointer.fromJson(payloadPointer);
+        ObjectMetadata objectMetadata;
+        try {
+            objectMetadata = rangedDownloader.downloadToFile(s3Pointer.getS3BucketName(), s3Pointer.getS3Key(), target);
+        } catch (AmazonServiceException e) {
+            String errorMessage = "Failed to get the S3 object which contains the payload.";
+            LOG.error(errorMessage, e);
+            throw new AmazonServiceException(errorMessage, e);
+        }
+        if (getPayloadDecoder(objectMetadata) == null) {
+            return;
+        }
+
+        // The ranges hold the encoded payload, so decode the downloaded file into the target.
+        Path encodedFile = null;
+        try {
+            Path directory = target.toAbsolutePath().getParent();
+            encodedFile = Files.createTempFile(directory, target.getFileName().toString(), ".encoded");
+            Files.move(target, encodedFile, StandardCopyOption.REPLACE_EXISTING);
+            copyPayload(decode(Files.newInputStream(encodedFile), objectMetadata), target);
+        } catch (IOException e) {
+            String errorMessage = "Failed to write the message payload to " + target + ".";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        } finally {
+            if (encodedFile != null) {
+                deleteTemporaryFile(encodedFile);
+            }
+        }
+    }
+
+    private static void copyPayload(InputStream payload, Path target) {
+        try (InputStream in = payload) {
+            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            String errorMessage = "Failed to write the message payload to " + target + ".";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        }
+    }
+
+    private boolean usesRangedDownload(long payloadContentSize) {
+        return rangedDownloader != null && rangedDownloadThreshold > 0 && payloadContentSize >= rangedDownloadThreshold;
+    }
+
+    /**
+     * Gets the codec the object was encoded with, or null if it is stored as
+     * it is.
+     */
+    private PayloadCodec getPayloadDecoder(ObjectMetadata objectMetadata) {
+        String contentEncoding = objectMetadata == null ? null : objectMetadata.getContentEncoding();
+        if (contentEncoding == null || contentEncoding.isEmpty() || "identity".equalsIgnoreCase(contentEncoding)) {
+            return null;
+        }
+        PayloadCodec payloadDecoder = PayloadCodecs.forName(contentEncoding, payloadCodec);
+        if (payloadDecoder == null) {
+            String errorMessage = "The payload is encoded with the unknown codec " + contentEncoding + ".";
+            LOG.error(errorMessage);
+            throw new AmazonClientException(errorMessage);
+        }
+        return payloadDecoder;
+    }
+
+    private InputStream decode(InputStream payload, ObjectMetadata objectMetadata) {
+        PayloadCodec payloadDecoder;
+        try {
+            payloadDecoder = getPayloadDecoder(objectMetadata);
+        } catch (AmazonClientException e) {
+            IOUtils.closeQuietly(payload, LOG);
+            throw e;
+        }
+        if (payloadDecoder == null) {
+            return payload;
+        }
+        try {
+            return payloadDecoder.decode(payload);
+        } catch (IOException e) {
+            IOUtils.closeQuietly(payload, LOG);
+            String errorMessage = "Failed to decode the S3 object which contains the payload.";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        }
+    }
+
+    @Override
+    public void deleteOriginalPayload(String payloadPointer) {
+        PayloadS3Pointer s3Pointer = PayloadS3Pointer.fromJson(payloadPointer);
+        deleteOriginalPayload(s3Pointer.getS3BucketName(), s3Pointer.getS3Key());
+    }
+
+    @Override
+    public void deleteOriginalPayload(String s3BucketName, String s3Key) {
+        if (PayloadDeduplicator.isContentAddressedKey(s3Key)) {
+            // Other messages may share the object, so it is left to expire through the bucket lifecycle.
+            LOG.debug("S3 object " + s3Key + " is content-addressed and is not deleted with the message.");
+            return;
+        }
+        s3Dao.deletePayloadFromS3(s3BucketName, s3Key);
+    }
+
+    @Override
+    public void deleteOriginalPayloads(Collection<String> payloadPointers) {
+        Map<String, List<String>> s3KeysByBucketName = new LinkedHashMap<String, List<String>>();
+        for (String payloadPointer : payloadPointers) {
+            PayloadS3Pointer s3Pointer = PayloadS3Pointer.fromJson(payloadPointer);
+            s3KeysByBucketName.computeIfAbsent(s3Pointer.getS3BucketName(), bucket -> new ArrayList<String>())
+                    .add(s3Pointer.getS3Key());
+        }
+        deleteOriginalPayloads(s3KeysByBucketName);
+    }
+
+    @Override
+    public void deleteOriginalPayloads(Map<String, List<String>> s3KeysByBucketName) {
+        for (Map.Entry<String, List<String>> bucketKeys : s3KeysByBucketName.entrySet()) {
+            List<KeyVersion> keys = new ArrayList<KeyVersion>(bucketKeys.getValue().size());
+            for (String s3Key : bucketKeys.getValue()) {
+                if (PayloadDeduplicator.isContentAddressedKey(s3Key)) {
+                    LOG.debug("S3 object " + s3Key + " is content-addressed and is not deleted with the message.");
+                    continue;
+                }
+                keys.add(new KeyVersion(s3Key));
+            }
+            for (int from = 0; from < keys.size(); from += MAX_KEYS_PER_DELETE) {
+                deleteObjects(bucketKeys.getKey(), keys.subList(from, Math.min(from + MAX_KEYS_PER_DELETE, keys.size())));
+            }
+        }
+    }
+
+    private void deleteObjects(String bucketName, List<KeyVersion> keys) {
+        DeleteObjectsRequest deleteObjectsRequest = new DeleteObjectsRequest(bucketName)
+                .withKeys(new ArrayList<KeyVersion>(keys))
+                .withQuiet(true);
+        try {
+            s3.deleteObjects(deleteObjectsRequest);
+        } catch (MultiObjectDeleteException e) {
+            String errorMessage = "Failed to delete " + e.getErrors().size() + " of " + keys.size()
+                    + " S3 objects from bucket " + bucketName + ".";
+            LOG.error(errorMessage, e);
+            throw new AmazonServiceException(errorMessage, e);
+        } catch (AmazonServiceException e) {
+            String errorMessage = "Failed to delete the S3 objects which contain the payloads.";
+            LOG.error(errorMessage, e);
+            throw new AmazonServiceException(errorMessage, e);
+        } catch (AmazonClientException e) {
+            String errorMessage = "Failed to delete the S3 objects which contain the payloads.";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        }
+        LOG.info("S3 objects deleted, Bucket name: " + bucketName + ", Object count: " + keys.size() + ".");
+    }
+}
@@ -29,6 +29,12 @@ public class SQSExtendedClientConstants {
     // SNS team should be notified of any changes made to this
     public static final int DEFAULT_MESSAGE_SIZE_THRESHOLD = 262144;
 
+    // Maximum total size of the entries of a SendMessageBatch request
+    public static final int MAX_BATCH_SIZE_IN_BYTES = 262144;
+
+    // Marks message bodies that are compressed inline and names their codec
+    public static final String INLINE_ENCODING_ATTRIBUTE_NAME = "ExtendedPayloadEncoding";
+
     public static final String S3_BUCKET_NAME_MARKER = "-..s3BucketName..-";
     public static final String S3_KEY_MARKER = "-..s3Key..-";
 }
@@ -0,0 +1,493 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazonaws.AmazonClientException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Payload store that hands payloads to consumers on the same host through
+ * memory-mapped files in a shared directory, such as a directory on tmpfs
+ * mounted by a producer and a consumer sidecar.
+ *
+ * <p>
+ * Payloads are written into a mapped file and referenced by a pointer of the
+ * form {@code shm:<directory id>/<file name>}, which consumers map again to
+ * read the payload without copying it through a socket. The directory id is
+ * created by the first store that opens the directory and identifies the
+ * directory across processes, so a consumer can tell whether a pointer refers
+ * to its own directory.
+ * </p>
+ *
+ * <p>
+ * With fallback copies enabled, each mapped payload is also stored in the
+ * fallback store, from the mapping, and the pointer carries both locations as
+ * {@code shm:<directory id>/<file name>|<fallback pointer>}. Consumers that do
+ * not share the directory, or whose file is gone, read the fallback copy
+ * instead, and deleting the payload deletes both. Without fallback copies,
+ * payloads in the directory of another host cannot be read, so producers must
+ * only use this store for queues whose consumers share their directory.
+ * </p>
+ *
+ * <p>
+ * Payloads of unknown size, payloads larger than the maximum size, and
+ * payloads that would leave too little free space in the directory are stored
+ * in the fallback store only. Pointers of the fallback store are read and
+ * deleted through it, so consumers with this store can receive messages from
+ * producers on any host.
+ * </p>
+ *
+ * <p>
+ * Files are deleted with their message, but messages can also expire, be
+ * purged, move to a dead-letter queue or be deleted without their payload, and
+ * writers can fail before they move a file into place. So that such files do
+ * not hold memory forever, payload files older than the maximum age, and
+ * temporary files older than an hour or the maximum age, are swept when the
+ * store is opened and, at most once a minute, when payloads are stored.
+ * </p>
+ */
+class SharedMemoryPayloadStore implements StreamingPayloadStore, S3KeyedPayloadStore {
+    private static final Log LOG = LogFactory.getLog(SharedMemoryPayloadStore.class);
+
+    static final String POINTER_PREFIX = "shm:";
+    static final char FALLBACK_POINTER_SEPARATOR = '|';
+
+    // Space left free in the directory, so that other users of a shared tmpfs are not starved.
+    static final long MIN_FREE_SPACE = 64L * 1024 * 1024;
+
+    private static final String DIRECTORY_ID_FILE_NAME = "directory-id";
+    private static final String TEMPORARY_FILE_SUFFIX = ".tmp";
+    private static final int DIRECTORY_ID_LENGTH = 36;
+    private static final int DIRECTORY_ID_READ_ATTEMPTS = 50;
+    private static final long DIRECTORY_ID_READ_BACKOFF_MILLIS = 10;
+    private static final long SWEEP_INTERVAL_MILLIS = 60L * 1000;
+    // Age after which a temporary file is considered left behind by a failed writer.
+    private static final long MAX_TEMPORARY_FILE_AGE_MILLIS = 60L * 60 * 1000;
+
+    private final Path directory;
+    private final long maxPayloadSize;
+    private final long maxAgeMillis;
+    private final boolean fallbackCopyEnabled;
+    private final StreamingPayloadStore fallbackStore;
+    private final String directoryId;
+    private final AtomicLong nextSweepMillis = new AtomicLong();
+
+    /**
+     * @param directory
+     *            Directory shared with the consumers. It is created if it does
+     *            not exist.
+     * @param maxPayloadSize
+     *            Size in bytes of the largest payload mapped, at most
+     *            {@link Integer#MAX_VALUE}.
+     * @param maxAgeMillis
+     *            Age after which payload files are swept.
+     * @param fallbackCopyEnabled
+     *            Whether mapped payloads are also stored in the fallback store.
+     * @param fallbackStore
+     *            Store of the payloads that are not mapped, and of the copies
+     *            of the mapped payloads.
+     */
+    SharedMemoryPayloadStore(Path directory, long maxPayloadSize, long maxAgeMillis, boolean fallbackCopyEnabled,
+            StreamingPayloadStore fallbackStore) {
+        if (maxPayloadSize < 0 || maxPayloadSize > Integer.MAX_VALUE) {
+            String errorMessage = "The maximum size of shared memory payloads must be between 0 and "
+                    + Integer.MAX_VALUE + " bytes.";
+            LOG.error(errorMessage);
+            throw new AmazonClientException(errorMessage);
+        }
+        this.maxPayloadSize = maxPayloadSize;
+        this.maxAgeMillis = maxAgeMillis;
+        this.fallbackCopyEnabled = fallbackCopyEnabled;
+        this.fallbackStore = fallbackStore;
+        try {
+            this.directory = Files.createDirectories(directory);
+            this.directoryId = getDirectoryId(this.directory);
+        } catch (IOException e) {
+            String errorMessage = "Failed to open the shared memory payload directory " + directory + ".";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        }
+        sweepIfDue();
+    }
+
+    /**
+     * Checks whether the pointer refers to a payload in a shared memory
+     * directory.
+     */
+    static boolean isSharedMemoryPointer(String payloadPointer) {
+        return payloadPointer.startsWith(POINTER_PREFIX);
+    }
+
+    @Override
+    public String storeOriginalPayload(String payload, Long payloadContentSize) {
+        byte[] payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+        if (!fitsInDirectory(payloadBytes.length)) {
+            return fallbackStore.storeOriginalPayload(payload, payloadContentSize);
+        }
+        return storeMappedPayload(new ByteArrayInputStream(payloadBytes), payloadBytes.length);
+    }
+
+    @Override
+    public String storeOriginalPayload(InputStream payload, long payloadContentSize) {
+        if (!fitsInDirectory(payloadContentSize)) {
+            return fallbackStore.storeOriginalPayload(payload, payloadContentSize);
+        }
+        return storeMappedPayload(payload, payloadContentSize);
+    }
+
+    private boolean fitsInDirectory(long payloadContentSize) {
+        sweepIfDue();
+        if (payloadContentSize < 0 || payloadContentSize > maxPayloadSize) {
+            return false;
+        }
+        try {
+            return Files.getFileStore(directory).getUsableSpace() - payloadContentSize >= MIN_FREE_SPACE;
+        } catch (IOException e) {
+            LOG.warn("Failed to get the free space of " + directory + ", storing the payload in the fallback store.", e);
+            return false;
+        }
+    }
+
+    private String storeMappedPayload(InputStream payload, long payloadContentSize) {
+        String fileName = UUID.randomUUID().toString();
+        Path payloadFile = directory.resolve(fileName);
+        Path temporaryFile = directory.resolve(fileName + TEMPORARY_FILE_SUFFIX);
+        MappedByteBuffer buffer;
+        try {
+            try (FileChannel channel = FileChannel.open(temporaryFile,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, payloadContentSize);
+                byte[] chunk = new byte[(int) Math.min(payloadContentSize, 64 * 1024) + 1];
+                int count;
+                while ((count = payload.read(chunk, 0, Math.min(chunk.length, buffer.remaining() + 1))) > 0) {
+                    if (count > buffer.remaining()) {
+                        throw new IOException("The payload is longer than " + payloadContentSize + " bytes.");
+                    }
+                    buffer.put(chunk, 0, count);
+                }
+                if (buffer.hasRemaining()) {
+                    throw new IOException("The payload ended after " + buffer.position() + " of "
+                            + payloadContentSize + " bytes.");
+                }
+            }
+        } catch (IOException e) {
+            deleteQuietly(temporaryFile);
+            String errorMessage = "Failed to write the message payload to " + payloadFile + ".";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        }
+
+        String fallbackPointer = null;
+        if (fallbackCopyEnabled) {
+            ByteBuffer mappedPayload = buffer.duplicate();
+            mappedPayload.flip();
+            try {
+                fallbackPointer = fallbackStore.storeOriginalPayload(new ByteBufferInputStream(mappedPayload),
+                        payloadContentSize);
+            } catch (RuntimeException e) {
+                deleteQuietly(temporaryFile);
+                throw e;
+            }
+        }
+        try {
+            Files.move(temporaryFile, payloadFile, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            deleteQuietly(temporaryFile);
+            if (fallbackPointer != null) {
+                LOG.warn("Failed to write the message payload to " + payloadFile + ", using its fallback copy only.", e);
+                return fallbackPointer;
+            }
+            String errorMessage = "Failed to write the message payload to " + payloadFile + ".";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        }
+        String payloadPointer = POINTER_PREFIX + directoryId + '/' + fileName;
+        return fallbackPointer != null ? payloadPointer + FALLBACK_POINTER_SEPARATOR + fallbackPointer : payloadPointer;
+    }
+
+    @Override
+    public String getOriginalPayload(String payloadPointer) {
+        if (!isSharedMemoryPointer(payloadPointer)) {
+            return fallbackStore.getOriginalPayload(payloadPointer);
+        }
+        return new String(getOriginalPayloadBytes(payloadPointer, -1), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public InputStream getOriginalPayloadStream(String payloadPointer) {
+        MappedByteBuffer buffer = isSharedMemoryPointer(payloadPointer) ? map(payloadPointer) : null;
+        if (buffer == null) {
+            return fallbackStore.getOriginalPayloadStream(getFallbackPointer(payloadPointer));
+        }
+        return new ByteBufferInputStream(buffer);
+    }
+
+    @Override
+    public byte[] getOriginalPayloadBytes(String payloadPointer, long payloadContentSize) {
+        MappedByteBuffer buffer = isSharedMemoryPointer(payloadPointer) ? map(payloadPointer) : null;
+        if (buffer == null) {
+            return fallbackStore.getOriginalPayloadBytes(getFallbackPointer(payloadPointer), payloadContentSize);
+        }
+        byte[] payloadBytes = new byte[buffer.remaining()];
+        buffer.get(payloadBytes);
+        return payloadBytes;
+    }
+
+    @Override
+    public void getOriginalPayload(String payloadPointer, long payloadContentSize, Path target) {
+        MappedByteBuffer buffer = isSharedMemoryPointer(payloadPointer) ? map(payloadPointer) : null;
+        if (buffer == null) {
+            fallbackStore.getOriginalPayload(getFallbackPointer(payloadPointer), payloadContentSize, target);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            String errorMessage = "Failed to write the message payload to " + target + ".";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        }
+    }
+
+    /**
+     * Maps the file of a payload in the directory.
+     *
+     * @return The mapped payload, or null if the pointer carries a fallback
+     *         copy to read instead because the file is in the directory of
+     *         another host or cannot be read.
+     */
+    private MappedByteBuffer map(String payloadPointer) {
+        boolean hasFallbackCopy = payloadPointer.indexOf(FALLBACK_POINTER_SEPARATOR) >= 0;
+        if (hasFallbackCopy && !isInDirectory(payloadPointer)) {
+            return null;
+        }
+        Path payloadFile = getPayloadFile(payloadPointer);
+        try (FileChannel channel = FileChannel.open(payloadFile, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed and after the file is deleted.
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            if (hasFallbackCopy) {
+                LOG.warn("Failed to read the payload file " + payloadFile + ", reading its fallback copy.", e);
+                return null;
+            }
+            throw readFailed(payloadFile, e);
+        }
+    }
+
+    /**
+     * Gets the pointer of the payload in the fallback store.
+     */
+    private static String getFallbackPointer(String payloadPointer) {
+        if (!isSharedMemoryPointer(payloadPointer)) {
+            return payloadPointer;
+        }
+        return payloadPointer.substring(payloadPointer.indexOf(FALLBACK_POINTER_SEPARATOR) + 1);
+    }
+
+    @Override
+    public void deleteOriginalPayload(String payloadPointer) {
+        deleteOriginalPayloads(Collections.singletonList(payloadPointer));
+    }
+
+    @Override
+    public void deleteOriginalPayloads(Collection<String> payloadPointers) {
+        List<String> fallbackPointers = new ArrayList<String>();
+        for (String payloadPointer : payloadPointers) {
+            if (!isSharedMemoryPointer(payloadPointer)) {
+                fallbackPointers.add(payloadPointer);
+                continue;
+            }
+            boolean hasFallbackCopy = payloadPointer.indexOf(FALLBACK_POINTER_SEPARATOR) >= 0;
+            if (hasFallbackCopy) {
+                fallbackPointers.add(getFallbackPointer(payloadPointer));
+            }
+            if (isInDirectory(payloadPointer)) {
+                deletePayloadFile(getPayloadFile(payloadPointer));
+            } else if (!hasFallbackCopy) {
+                LOG.warn("Payload " + payloadPointer + " is in the shared memory directory of another host and is not deleted.");
+            }
+        }
+        if (fallbackPointers.size() == 1) {
+            fallbackStore.deleteOriginalPayload(fallbackPointers.get(0));
+        } else if (!fallbackPointers.isEmpty()) {
+            fallbackStore.deleteOriginalPayloads(fallbackPointers);
+        }
+    }
+
+    @Override
+    public void deleteOriginalPayload(String s3BucketName, String s3Key) {
+        S3KeyedPayloadStore.deleteOriginalPayload(fallbackStore, s3BucketName, s3Key);
+    }
+
+    @Override
+    public void deleteOriginalPayloads(Map<String, List<String>> s3KeysByBucketName) {
+        S3KeyedPayloadStore.deleteOriginalPayloads(fallbackStore, s3KeysByBucketName);
+    }
+
+    private static void deletePayloadFile(Path payloadFile) {
+        try {
+            Files.deleteIfExists(payloadFile);
+        } catch (IOException e) {
+            String errorMessage = "Failed to delete the payload file " + payloadFile + ".";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        }
+    }
+
+    /**
+     * Sweeps the directory unless it was swept within the sweep interval by
+     * this store. Only one thread sweeps at a time.
+     */
+    private void sweepIfDue() {
+        long now = System.currentTimeMillis();
+        long nextSweep = nextSweepMillis.get();
+        if (now < nextSweep || !nextSweepMillis.compareAndSet(nextSweep, now + SWEEP_INTERVAL_MILLIS)) {
+            return;
+        }
+        long maxTemporaryFileAgeMillis = Math.min(maxAgeMillis, MAX_TEMPORARY_FILE_AGE_MILLIS);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                long maxFileAgeMillis;
+                if (fileName.endsWith(TEMPORARY_FILE_SUFFIX)) {
+                    maxFileAgeMillis = maxTemporaryFileAgeMillis;
+                } else if (isValidName(fileName)) {
+                    maxFileAgeMillis = maxAgeMillis;
+                } else {
+                    continue;
+                }
+                try {
+                    if (now - Files.getLastModifiedTime(file).toMillis() > maxFileAgeMillis) {
+                        Files.deleteIfExists(file);
+                    }
+                } catch (NoSuchFileException e) {
+                    // Deleted with its message while the directory was swept.
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to sweep expired payloads from " + directory + ".", e);
+        }
+    }
+
+    private boolean isInDirectory(String payloadPointer) {
+        return payloadPointer.startsWith(directoryId, POINTER_PREFIX.length())
+                && payloadPointer.startsWith("/", POINTER_PREFIX.length() + DIRECTORY_ID_LENGTH);
+    }
+
+    /**
+     * Resolves the file of a payload in the directory, rejecting pointers to
+     * other directories and pointers that could name a file outside of the
+     * directory, since pointers arrive in messages.
+     */
+    private Path getPayloadFile(String payloadPointer) {
+        if (!isInDirectory(payloadPointer)) {
+            String errorMessage = "Payload " + payloadPointer + " is in the shared memory directory of another host.";
+            LOG.error(errorMessage);
+            throw new AmazonClientException(errorMessage);
+        }
+        int fallbackPointerStart = payloadPointer.indexOf(FALLBACK_POINTER_SEPARATOR);
+        String fileName = payloadPointer.substring(POINTER_PREFIX.length() + DIRECTORY_ID_LENGTH + 1,
+                fallbackPointerStart >= 0 ? fallbackPointerStart : payloadPointer.length());
+        if (!isValidName(fileName)) {
+            String errorMessage = "Invalid payload pointer " + payloadPointer + ".";
+            LOG.error(errorMessage);
+            throw new AmazonClientException(errorMessage);
+        }
+        return directory.resolve(fileName);
+    }
+
+    private static boolean isValidName(String name) {
+        if (name.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f' || c == '-')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the id of the directory, creating it if this is the first store
+     * to open the directory.
+     */
+    private static String getDirectoryId(Path directory) throws IOException {
+        Path idFile = directory.resolve(DIRECTORY_ID_FILE_NAME);
+        try {
+            String directoryId = UUID.randomUUID().toString();
+            Files.write(idFile, directoryId.getBytes(StandardCharsets.US_ASCII), StandardOpenOption.CREATE_NEW);
+            return directoryId;
+        } catch (FileAlreadyExistsException e) {
+            // Another store created the id first, and may still be writing it.
+            for (int attempt = 1; attempt <= DIRECTORY_ID_READ_ATTEMPTS; attempt++) {
+                String directoryId = new String(Files.readAllBytes(idFile), StandardCharsets.US_ASCII).trim();
+                if (directoryId.length() == DIRECTORY_ID_LENGTH && isValidName(directoryId)) {
+                    return directoryId;
+                }
+                try {
+                    Thread.sleep(DIRECTORY_ID_READ_BACKOFF_MILLIS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            throw new IOException("The directory id in " + idFile + " is invalid.");
+        }
+    }
+
+    private static AmazonClientException readFailed(Path payloadFile, IOException e) {
+        String errorMessage = "Failed to read the payload file " + payloadFile + ".";
+        LOG.error(errorMessage, e);
+        return new AmazonClientException(errorMessage, e);
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOG.warn("Failed to delete the temporary payload file " + file + ".", e);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+
+import software.amazon.payloadoffloading.PayloadS3Pointer;
+
+/**
+ * Payload store that routes each payload to the store of its size band.
+ *
+ * <p>
+ * Payloads are stored through the store of the largest band whose minimum size
+ * they reach, or through the default store if they are smaller than every band
+ * or of unknown size. Payloads are retrieved and deleted through the store of
+ * the bucket named in their pointer, and pointers to buckets without a store
+ * of their own go through the default store.
+ * </p>
+ */
+class SizeBandedPayloadStore implements StreamingPayloadStore, S3KeyedPayloadStore {
+    private final StreamingPayloadStore defaultStore;
+    private final NavigableMap<Long, StreamingPayloadStore> storesByMinSize;
+    private final Map<String, StreamingPayloadStore> storesByBucketName;
+
+    /**
+     * @param defaultStore
+     *            Store of payloads smaller than every band.
+     * @param storesByMinSize
+     *            Stores of the bands by the minimum size of their band.
+     * @param storesByBucketName
+     *            Stores by the name of the dedicated bucket of their band.
+     */
+    SizeBandedPayloadStore(StreamingPayloadStore defaultStore, NavigableMap<Long, StreamingPayloadStore> storesByMinSize,
+            Map<String, StreamingPayloadStore> storesByBucketName) {
+        this.defaultStore = defaultStore;
+        this.storesByMinSize = storesByMinSize;
+        this.storesByBucketName = new HashMap<String, StreamingPayloadStore>(storesByBucketName);
+    }
+
+    @Override
+    public String storeOriginalPayload(String payload, Long payloadContentSize) {
+        long payloadSize = payloadContentSize != null ? payloadContentSize : Utf8.encodedLength(payload);
+        return getStoreForSize(payloadSize).storeOriginalPayload(payload, payloadContentSize);
+    }
+
+    @Override
+    public String storeOriginalPayload(InputStream payload, long payloadContentSize) {
+        return getStoreForSize(payloadContentSize).storeOriginalPayload(payload, payloadContentSize);
+    }
+
+    @Override
+    public String getOriginalPayload(String payloadPointer) {
+        return getStore(payloadPointer).getOriginalPayload(payloadPointer);
+    }
+
+    @Override
+    public InputStream getOriginalPayloadStream(String payloadPointer) {
+        return getStore(payloadPointer).getOriginalPayloadStream(payloadPointer);
+    }
+
+    @Override
+    public byte[] getOriginalPayloadBytes(String payloadPointer, long payloadContentSize) {
+        return getStore(payloadPointer).getOriginalPayloadBytes(payloadPointer, payloadContentSize);
+    }
+
+    @Override
+    public void getOriginalPayload(String payloadPointer, long payloadContentSize, Path target) {
+        getStore(payloadPointer).getOriginalPayload(payloadPointer, payloadContentSize, target);
+    }
+
+    @Override
+    public void deleteOriginalPayload(String payloadPointer) {
+        getStore(payloadPointer).deleteOriginalPayload(payloadPointer);
+    }
+
+    @Override
+    public void deleteOriginalPayloads(Collection<String> payloadPointers) {
+        Map<StreamingPayloadStore, List<String>> pointersByStore = new IdentityHashMap<StreamingPayloadStore, List<String>>();
+        for (String payloadPointer : payloadPointers) {
+            pointersByStore.computeIfAbsent(getStore(payloadPointer), store -> new ArrayList<String>())
+                    .add(payloadPointer);
+        }
+        for (Map.Entry<StreamingPayloadStore, List<String>> storePointers : pointersByStore.entrySet()) {
+            storePointers.getKey().deleteOriginalPayloads(storePointers.getValue());
+        }
+    }
+
+    @Override
+    public void deleteOriginalPayload(String s3BucketName, String s3Key) {
+        S3KeyedPayloadStore.deleteOriginalPayload(getStoreByBucketName(s3BucketName), s3BucketName, s3Key);
+    }
+
+    @Override
+    public void deleteOriginalPayloads(Map<String, List<String>> s3KeysByBucketName) {
+        if (storesByBucketName.isEmpty()) {
+            S3KeyedPayloadStore.deleteOriginalPayloads(defaultStore, s3KeysByBucketName);
+            return;
+        }
+        for (Map.Entry<String, List<String>> bucketKeys : s3KeysByBucketName.entrySet()) {
+            S3KeyedPayloadStore.deleteOriginalPayloads(getStoreByBucketName(bucketKeys.getKey()),
+                    Collections.singletonMap(bucketKeys.getKey(), bucketKeys.getValue()));
+        }
+    }
+
+    private StreamingPayloadStore getStoreForSize(long payloadContentSize) {
+        Map.Entry<Long, StreamingPayloadStore> band = payloadContentSize < 0 ? null
+                : storesByMinSize.floorEntry(payloadContentSize);
+        return band != null ? band.getValue() : defaultStore;
+    }
+
+    private StreamingPayloadStore getStore(String payloadPointer) {
+        if (storesByBucketName.isEmpty()) {
+            return defaultStore;
+        }
+        return getStoreByBucketName(PayloadS3Pointer.fromJson(payloadPointer).getS3BucketName());
+    }
+
+    private StreamingPayloadStore getStoreByBucketName(String s3BucketName) {
+        StreamingPayloadStore store = storesByBucketName.get(s3BucketName);
+        return store != null ? store : defaultStore;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Collection;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import software.amazon.payloadoffloading.PayloadStore;
+
+/**
+ * A {@link PayloadStore} that can also give access to stored payloads as
+ * streams, without loading them into memory.
+ */
+public interface StreamingPayloadStore extends PayloadStore {
+
+    /**
+     * Stores the payload read from the stream, without loading it into
+     * memory. The stream is read to its end but not closed.
+     *
+     * @param payload
+     *            The stream to read the payload from.
+     * @param payloadContentSize
+     *            The number of bytes the stream provides.
+     * @return A pointer that must be used to retrieve the original payload
+     *         later.
+     * @throws AmazonClientException
+     *             If any internal errors are encountered on the client side
+     *             while attempting to make the request or handle the response.
+     *             For example if a network connection is not available.
+     * @throws AmazonServiceException
+     *             If an error response is returned by the underlying storage
+     *             service.
+     */
+    String storeOriginalPayload(InputStream payload, long payloadContentSize);
+
+    /**
+     * Opens a stream over the payload referenced by the pointer. The caller is
+     * responsible for closing the stream.
+     *
+     * @param payloadPointer
+     *            The pointer returned when the payload was stored.
+     * @return A stream over the original payload.
+     * @throws AmazonClientException
+     *             If any internal errors are encountered on the client side
+     *             while attempting to make the request or handle the response.
+     *             For example if a network connection is not available.
+     * @throws AmazonServiceException
+     *             If an error response is returned by the underlying storage
+     *             service.
+     */
+    InputStream getOriginalPayloadStream(String payloadPointer);
+
+    /**
+     * Reads the payload referenced by the pointer into a new array.
+     *
+     * @param payloadPointer
+     *            The pointer returned when the payload was stored.
+     * @param payloadContentSize
+     *            The size of the payload in bytes, or a negative value if it
+     *            is not known.
+     * @return The payload bytes.
+     * @throws AmazonClientException
+     *             If any internal errors are encountered on the client side
+     *             while attempting to make the request or handle the response.
+     *             For example if a network connection is not available.
+     * @throws AmazonServiceException
+     *             If an error response is returned by the underlying storage
+     *             service.
+     */
+    byte[] getOriginalPayloadBytes(String payloadPointer, long payloadContentSize);
+
+    /**
+     * Writes the payload referenced by the pointer to the file, replacing any
+     * existing content.
+     *
+     * @param payloadPointer
+     *            The pointer returned when the payload was stored.
+     * @param payloadContentSize
+     *            The size of the payload in bytes, or a negative value if it
+     *            is not known.
+     * @param target
+     *            The file to write the payload to.
+     * @throws AmazonClientException
+     *             If the file cannot be written, or if any internal errors are
+     *             encountered on the client side while attempting to make the
+     *             request or handle the response.
+     * @throws AmazonServiceException
+     *             If an error response is returned by the underlying storage
+     *             service.
+     */
+    void getOriginalPayload(String payloadPointer, long payloadContentSize, Path target);
+
+    /**
+     * Deletes the payloads referenced by the pointers, with as few requests to
+     * the underlying storage service as possible.
+     *
+     * @param payloadPointers
+     *            The pointers returned when the payloads were stored.
+     * @throws AmazonClientException
+     *             If any internal errors are encountered on the client side
+     *             while attempting to make the request or handle the response.
+     *             For example if a network connection is not available.
+     * @throws AmazonServiceException
+     *             If an error response is returned by the underlying storage
+     *             service, or if some of the payloads could not be deleted.
+     */
+    void deleteOriginalPayloads(Collection<String> payloadPointers);
+}
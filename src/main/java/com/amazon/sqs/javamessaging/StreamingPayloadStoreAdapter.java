@@ -0,0 +1,169 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Collection;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.util.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import software.amazon.payloadoffloading.PayloadStore;
+
+/**
+ * Exposes a {@link PayloadStore} as a {@link StreamingPayloadStore}. Payloads
+ * are read into memory and handed to the store as UTF-8 strings, and are
+ * retrieved as strings before being returned as streams or bytes.
+ *
+ * <p>
+ * Payloads that are not valid UTF-8, such as binary or compressed payloads,
+ * would not survive the round trip through a string. They are handed to the
+ * store as Base64 text instead, and their pointer is marked with
+ * {@link #BASE64_POINTER_PREFIX} so that they are decoded on retrieval.
+ * </p>
+ */
+class StreamingPayloadStoreAdapter implements StreamingPayloadStore {
+    private static final Log LOG = LogFactory.getLog(StreamingPayloadStoreAdapter.class);
+
+    static final String BASE64_POINTER_PREFIX = "-..b64..-";
+
+    private final PayloadStore payloadStore;
+
+    private StreamingPayloadStoreAdapter(PayloadStore payloadStore) {
+        this.payloadStore = payloadStore;
+    }
+
+    /**
+     * Returns the store itself if it already streams payloads, and an adapter
+     * around it otherwise.
+     */
+    static StreamingPayloadStore of(PayloadStore payloadStore) {
+        if (payloadStore instanceof StreamingPayloadStore) {
+            return (StreamingPayloadStore) payloadStore;
+        }
+        return new StreamingPayloadStoreAdapter(payloadStore);
+    }
+
+    @Override
+    public String storeOriginalPayload(String payload, Long payloadContentSize) {
+        return payloadStore.storeOriginalPayload(payload, payloadContentSize);
+    }
+
+    @Override
+    public String storeOriginalPayload(InputStream payload, long payloadContentSize) {
+        byte[] payloadBytes;
+        try {
+            payloadBytes = IOUtils.toByteArray(payload);
+        } catch (IOException e) {
+            String errorMessage = "Failed to read the message payload.";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        }
+        String text = decodeUtf8(payloadBytes);
+        if (text != null) {
+            return payloadStore.storeOriginalPayload(text, (long) payloadBytes.length);
+        }
+        String encodedPayload = Base64.getEncoder().encodeToString(payloadBytes);
+        return BASE64_POINTER_PREFIX + payloadStore.storeOriginalPayload(encodedPayload, (long) encodedPayload.length());
+    }
+
+    /**
+     * Decodes the bytes as UTF-8, or returns null if they are not valid UTF-8
+     * and would not encode back to the same bytes.
+     */
+    private static String decodeUtf8(byte[] payloadBytes) {
+        try {
+            return StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(payloadBytes))
+                    .toString();
+        } catch (CharacterCodingException e) {
+            return null;
+        }
+    }
+
+    private static boolean isBase64Pointer(String payloadPointer) {
+        return payloadPointer.startsWith(BASE64_POINTER_PREFIX);
+    }
+
+    private static String getStorePointer(String payloadPointer) {
+        return isBase64Pointer(payloadPointer) ? payloadPointer.substring(BASE64_POINTER_PREFIX.length()) : payloadPointer;
+    }
+
+    @Override
+    public String getOriginalPayload(String payloadPointer) {
+        if (isBase64Pointer(payloadPointer)) {
+            return new String(getOriginalPayloadBytes(payloadPointer, -1), StandardCharsets.UTF_8);
+        }
+        return payloadStore.getOriginalPayload(payloadPointer);
+    }
+
+    @Override
+    public InputStream getOriginalPayloadStream(String payloadPointer) {
+        return new ByteArrayInputStream(getOriginalPayloadBytes(payloadPointer, -1));
+    }
+
+    @Override
+    public byte[] getOriginalPayloadBytes(String payloadPointer, long payloadContentSize) {
+        String payload = payloadStore.getOriginalPayload(getStorePointer(payloadPointer));
+        if (!isBase64Pointer(payloadPointer)) {
+            return payload.getBytes(StandardCharsets.UTF_8);
+        }
+        try {
+            return Base64.getDecoder().decode(payload);
+        } catch (IllegalArgumentException e) {
+            String errorMessage = "The Base64 payload of " + payloadPointer + " is corrupt.";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        }
+    }
+
+    @Override
+    public void getOriginalPayload(String payloadPointer, long payloadContentSize, Path target) {
+        byte[] payloadBytes = getOriginalPayloadBytes(payloadPointer, payloadContentSize);
+        try {
+            Files.write(target, payloadBytes);
+        } catch (IOException e) {
+            String errorMessage = "Failed to write the message payload to " + target + ".";
+            LOG.error(errorMessage, e);
+            throw new AmazonClientException(errorMessage, e);
+        }
+    }
+
+    @Override
+    public void deleteOriginalPayload(String payloadPointer) {
+        payloadStore.deleteOriginalPayload(getStorePointer(payloadPointer));
+    }
+
+    @Override
+    public void deleteOriginalPayloads(Collection<String> payloadPointers) {
+        for (String payloadPointer : payloadPointers) {
+            payloadStore.deleteOriginalPayload(getStorePointer(payloadPointer));
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import software.amazon.payloadoffloading.PayloadS3Pointer;
+
+/**
+ * Payload store that stripes payloads across several buckets, each accessed
+ * through its own store.
+ *
+ * <p>
+ * Payloads are stored in a bucket picked by the {@link PayloadBucketSelection}.
+ * Payloads are retrieved and deleted through the store of the bucket named in
+ * their pointer, and pointers to any other bucket go through the store of the
+ * first bucket.
+ * </p>
+ */
+class StripedPayloadStore implements StreamingPayloadStore, S3KeyedPayloadStore {
+
+    // Weight of a new latency sample in the moving average of a bucket.
+    private static final double LATENCY_SMOOTHING = 0.2;
+
+    // Latency recorded for an upload that failed, so that failing buckets are picked less often.
+    private static final long FAILURE_LATENCY_NANOS = 10_000_000_000L;
+
+    private final List<Bucket> buckets;
+    private final Map<String, Bucket> bucketsByName;
+    private final PayloadBucketSelection bucketSelection;
+    private final AtomicInteger nextBucket = new AtomicInteger();
+
+    /**
+     * @param stores
+     *            Stores by the name of their bucket, the first of which also
+     *            serves pointers to unknown buckets.
+     * @param bucketSelection
+     *            How the bucket of each stored payload is picked.
+     */
+    StripedPayloadStore(Map<String, ? extends StreamingPayloadStore> stores, PayloadBucketSelection bucketSelection) {
+        this.buckets = new ArrayList<Bucket>(stores.size());
+        this.bucketsByName = new HashMap<String, Bucket>();
+        for (Map.Entry<String, ? extends StreamingPayloadStore> store : stores.entrySet()) {
+            Bucket bucket = new Bucket(store.getValue());
+            buckets.add(bucket);
+            bucketsByName.put(store.getKey(), bucket);
+        }
+        this.bucketSelection = bucketSelection;
+    }
+
+    @Override
+    public String storeOriginalPayload(String payload, Long payloadContentSize) {
+        return store(bucket -> bucket.store.storeOriginalPayload(payload, payloadContentSize));
+    }
+
+    @Override
+    public String storeOriginalPayload(InputStream payload, long payloadContentSize) {
+        return store(bucket -> bucket.store.storeOriginalPayload(payload, payloadContentSize));
+    }
+
+    @Override
+    public String getOriginalPayload(String payloadPointer) {
+        return getBucket(payloadPointer).store.getOriginalPayload(payloadPointer);
+    }
+
+    @Override
+    public InputStream getOriginalPayloadStream(String payloadPointer) {
+        return getBucket(payloadPointer).store.getOriginalPayloadStream(payloadPointer);
+    }
+
+    @Override
+    public byte[] getOriginalPayloadBytes(String payloadPointer, long payloadContentSize) {
+        return getBucket(payloadPointer).store.getOriginalPayloadBytes(payloadPointer, payloadContentSize);
+    }
+
+    @Override
+    public void getOriginalPayload(String payloadPointer, long payloadContentSize, Path target) {
+        getBucket(payloadPointer).store.getOriginalPayload(payloadPointer, payloadContentSize, target);
+    }
+
+    @Override
+    public void deleteOriginalPayload(String payloadPointer) {
+        getBucket(payloadPointer).store.deleteOriginalPayload(payloadPointer);
+    }
+
+    @Override
+    public void deleteOriginalPayloads(Collection<String> payloadPointers) {
+        Map<Bucket, List<String>> pointersByBucket = new IdentityHashMap<Bucket, List<String>>();
+        for (String payloadPointer : payloadPointers) {
+            pointersByBucket.computeIfAbsent(getBucket(payloadPointer), bucket -> new ArrayList<String>())
+                    .add(payloadPointer);
+        }
+        for (Map.Entry<Bucket, List<String>> bucketPointers : pointersByBucket.entrySet()) {
+            bucketPointers.getKey().store.deleteOriginalPayloads(bucketPointers.getValue());
+        }
+    }
+
+    @Override
+    public void deleteOriginalPayload(String s3BucketName, String s3Key) {
+        S3KeyedPayloadStore.deleteOriginalPayload(getBucketByName(s3BucketName).store, s3BucketName, s3Key);
+    }
+
+    @Override
+    public void deleteOriginalPayloads(Map<String, List<String>> s3KeysByBucketName) {
+        for (Map.Entry<String, List<String>> bucketKeys : s3KeysByBucketName.entrySet()) {
+            S3KeyedPayloadStore.deleteOriginalPayloads(getBucketByName(bucketKeys.getKey()).store,
+                    Collections.singletonMap(bucketKeys.getKey(), bucketKeys.getValue()));
+        }
+    }
+
+    private String store(Function<Bucket, String> upload) {
+        Bucket bucket = selectBucket();
+        long start = System.nanoTime();
+        try {
+            String payloadPointer = upload.apply(bucket);
+            bucket.recordLatency(System.nanoTime() - start);
+            return payloadPointer;
+        } catch (RuntimeException e) {
+            bucket.recordLatency(Math.max(System.nanoTime() - start, FAILURE_LATENCY_NANOS));
+            throw e;
+        }
+    }
+
+    private Bucket selectBucket() {
+        if (bucketSelection == PayloadBucketSelection.LATENCY_WEIGHTED) {
+            double totalWeight = 0;
+            double[] weights = new double[buckets.size()];
+            for (int i = 0; i < weights.length; i++) {
+                double latencyNanos = buckets.get(i).latencyNanos;
+                if (latencyNanos == 0) {
+                    // A bucket without uploads yet is tried before its latency is weighed.
+                    return buckets.get(i);
+                }
+                weights[i] = 1 / latencyNanos;
+                totalWeight += weights[i];
+            }
+            double target = ThreadLocalRandom.current().nextDouble(totalWeight);
+            for (int i = 0; i < weights.length - 1; i++) {
+                target -= weights[i];
+                if (target < 0) {
+                    return buckets.get(i);
+                }
+            }
+            return buckets.get(weights.length - 1);
+        }
+        return buckets.get(Math.floorMod(nextBucket.getAndIncrement(), buckets.size()));
+    }
+
+    private Bucket getBucket(String payloadPointer) {
+        return getBucketByName(PayloadS3Pointer.fromJson(payloadPointer).getS3BucketName());
+    }
+
+    private Bucket getBucketByName(String s3BucketName) {
+        Bucket bucket = bucketsByName.get(s3BucketName);
+        return bucket != null ? bucket : buckets.get(0);
+    }
+
+    /**
+     * The store of a bucket and the moving average of its upload latency.
+     */
+    private static final class Bucket {
+        private final StreamingPayloadStore store;
+
+        // Updates from concurrent uploads may overwrite each other, which only drops samples.
+        private volatile double latencyNanos;
+
+        Bucket(StreamingPayloadStore store) {
+            this.store = store;
+        }
+
+        void recordLatency(long sampleNanos) {
+            double average = latencyNanos;
+            sampleNanos = Math.max(sampleNanos, 1);
+            latencyNanos = average == 0 ? sampleNanos : average + LATENCY_SMOOTHING * (sampleNanos - average);
+        }
+    }
+}
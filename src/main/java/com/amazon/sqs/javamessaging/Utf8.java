@@ -0,0 +1,60 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+/**
+ * Counts the size of text encoded as UTF-8 without encoding it.
+ */
+final class Utf8 {
+
+    private Utf8() {
+    }
+
+    /**
+     * Returns the number of bytes the text takes when encoded as UTF-8, the
+     * same as the length of {@code text.getBytes(StandardCharsets.UTF_8)}.
+     * Unpaired surrogates count as one byte, since the encoder replaces them
+     * with a question mark.
+     *
+     * @param text
+     *            The text to measure, or null.
+     * @return The encoded size in bytes, or 0 for null.
+     */
+    static long encodedLength(CharSequence text) {
+        if (text == null) {
+            return 0;
+        }
+        int length = text.length();
+        long encodedLength = length;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                encodedLength += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                // Both chars of the pair together take 4 bytes.
+                encodedLength += 2;
+                i++;
+            } else if (!Character.isSurrogate(c)) {
+                encodedLength += 2;
+            }
+        }
+        return encodedLength;
+    }
+}
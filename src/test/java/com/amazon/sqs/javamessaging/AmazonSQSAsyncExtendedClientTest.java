@@ -0,0 +1,190 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.sqs.AmazonSQSAsync;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+import com.amazonaws.util.StringInputStream;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import software.amazon.payloadoffloading.PayloadS3Pointer;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the AmazonSQSAsyncExtendedClient class.
+ */
+public class AmazonSQSAsyncExtendedClientTest {
+
+    private AmazonSQSAsyncExtendedClient extendedSqsAsync;
+    private AmazonSQSAsync mockSqsAsyncBackend;
+    private AmazonS3 mockS3;
+    private static final String S3_BUCKET_NAME = "test-bucket-name";
+    private static final String SQS_QUEUE_URL = "test-queue-url";
+
+    private static final int LESS_THAN_SQS_SIZE_LIMIT = 3;
+    private static final int SQS_SIZE_LIMIT = 262144;
+    private static final int MORE_THAN_SQS_SIZE_LIMIT = SQS_SIZE_LIMIT + 1;
+
+    @Before
+    public void setupClients() {
+        mockS3 = mock(AmazonS3.class);
+        mockSqsAsyncBackend = mock(AmazonSQSAsync.class);
+        when(mockS3.putObject(isA(PutObjectRequest.class))).thenReturn(null);
+
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME);
+
+        extendedSqsAsync = new AmazonSQSAsyncExtendedClient(mockSqsAsyncBackend, extendedClientConfiguration);
+    }
+
+    @After
+    public void shutdownClients() {
+        extendedSqsAsync.shutdown();
+    }
+
+    @Test
+    public void testWhenSendMessageAsyncWithLargePayloadThenPayloadIsStoredInS3BeforeSending() throws Exception {
+        String messageBody = generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT);
+        SendMessageResult expectedResult = new SendMessageResult().withMessageId("id");
+        doAnswer(invocation -> completeWith(invocation.getArguments(), expectedResult))
+                .when(mockSqsAsyncBackend).sendMessageAsync(isA(SendMessageRequest.class), any(AsyncHandler.class));
+
+        SendMessageResult actualResult = extendedSqsAsync
+                .sendMessageAsync(new SendMessageRequest(SQS_QUEUE_URL, messageBody)).get();
+
+        ArgumentCaptor<SendMessageRequest> sentRequest = ArgumentCaptor.forClass(SendMessageRequest.class);
+        verify(mockS3, times(1)).putObject(isA(PutObjectRequest.class));
+        verify(mockSqsAsyncBackend).sendMessageAsync(sentRequest.capture(), any(AsyncHandler.class));
+        Assert.assertSame(expectedResult, actualResult);
+        Assert.assertEquals(S3_BUCKET_NAME, PayloadS3Pointer.fromJson(sentRequest.getValue().getMessageBody()).getS3BucketName());
+    }
+
+    @Test
+    public void testWhenSendMessageBatchAsyncThenOnlyLargeEntriesAreStoredInS3() throws Exception {
+        SendMessageBatchRequest batchRequest = new SendMessageBatchRequest(SQS_QUEUE_URL, Arrays.asList(
+                new SendMessageBatchRequestEntry("0", generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT)),
+                new SendMessageBatchRequestEntry("1", generateStringWithLength(LESS_THAN_SQS_SIZE_LIMIT)),
+                new SendMessageBatchRequestEntry("2", generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT))));
+        doAnswer(invocation -> completeWith(invocation.getArguments(), new SendMessageBatchResult()))
+                .when(mockSqsAsyncBackend).sendMessageBatchAsync(isA(SendMessageBatchRequest.class), any(AsyncHandler.class));
+
+        extendedSqsAsync.sendMessageBatchAsync(batchRequest).get();
+
+        verify(mockS3, times(2)).putObject(isA(PutObjectRequest.class));
+        Assert.assertEquals(generateStringWithLength(LESS_THAN_SQS_SIZE_LIMIT), batchRequest.getEntries().get(1).getMessageBody());
+    }
+
+    @Test
+    public void testWhenReceiveMessageAsyncWithLargePayloadThenPayloadIsRetrievedFromS3() throws Exception {
+        Message message = new Message()
+                .addMessageAttributesEntry(SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME, mock(MessageAttributeValue.class))
+                .withBody(new PayloadS3Pointer(S3_BUCKET_NAME, "S3Key").toJson());
+        String expectedMessage = "LargeMessage";
+        S3Object s3Object = new S3Object();
+        s3Object.setObjectContent(new StringInputStream(expectedMessage));
+        when(mockS3.getObject(isA(GetObjectRequest.class))).thenReturn(s3Object);
+        doAnswer(invocation -> completeWith(invocation.getArguments(), new ReceiveMessageResult().withMessages(message)))
+                .when(mockSqsAsyncBackend).receiveMessageAsync(isA(ReceiveMessageRequest.class), any(AsyncHandler.class));
+
+        ReceiveMessageResult actualResult = extendedSqsAsync.receiveMessageAsync(new ReceiveMessageRequest(SQS_QUEUE_URL)).get();
+
+        Assert.assertEquals(expectedMessage, actualResult.getMessages().get(0).getBody());
+        verify(mockS3, times(1)).getObject(isA(GetObjectRequest.class));
+    }
+
+    @Test
+    public void testWhenPayloadUploadsExceedTheBatchTimeoutThenTheBatchFails() throws Exception {
+        CountDownLatch uploadReleased = new CountDownLatch(1);
+        when(mockS3.putObject(isA(PutObjectRequest.class))).thenAnswer(invocation -> {
+            uploadReleased.await(10, TimeUnit.SECONDS);
+            return null;
+        });
+        AmazonSQSAsyncExtendedClient timedSqsAsync = new AmazonSQSAsyncExtendedClient(mockSqsAsyncBackend,
+                new ExtendedClientConfiguration()
+                        .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                        .withPayloadBatchTimeoutMillis(100));
+        SendMessageBatchRequest batchRequest = new SendMessageBatchRequest(SQS_QUEUE_URL, Arrays.asList(
+                new SendMessageBatchRequestEntry("0", generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT))));
+
+        try {
+            timedSqsAsync.sendMessageBatchAsync(batchRequest).get(10, TimeUnit.SECONDS);
+            Assert.fail("Expected the batch to time out.");
+        } catch (ExecutionException e) {
+            Assert.assertEquals("Transferring message payloads did not complete within 100 ms.", e.getCause().getMessage());
+        } finally {
+            uploadReleased.countDown();
+            timedSqsAsync.shutdown();
+        }
+        verify(mockSqsAsyncBackend, never()).sendMessageBatchAsync(isA(SendMessageBatchRequest.class), any(AsyncHandler.class));
+    }
+
+    @Test
+    public void testWhenSqsCallFailsThenAsyncHandlerAndFutureReportTheError() throws Exception {
+        AmazonServiceException serviceException = new AmazonServiceException("failure");
+        doAnswer(invocation -> {
+            ((AsyncHandler<?, ?>) invocation.getArguments()[1]).onError(serviceException);
+            return null;
+        }).when(mockSqsAsyncBackend).sendMessageAsync(isA(SendMessageRequest.class), any(AsyncHandler.class));
+        @SuppressWarnings("unchecked")
+        AsyncHandler<SendMessageRequest, SendMessageResult> asyncHandler = mock(AsyncHandler.class);
+
+        try {
+            extendedSqsAsync.sendMessageAsync(new SendMessageRequest(SQS_QUEUE_URL, "body"), asyncHandler).get();
+            Assert.fail("Expected the future to complete exceptionally.");
+        } catch (ExecutionException e) {
+            Assert.assertSame(serviceException, e.getCause());
+        }
+        verify(asyncHandler).onError(serviceException);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <RESULT> Object completeWith(Object[] arguments, RESULT result) {
+        ((AsyncHandler<AmazonWebServiceRequest, RESULT>) arguments[1]).onSuccess((AmazonWebServiceRequest) arguments[0], result);
+        return null;
+    }
+
+    private String generateStringWithLength(int messageLength) {
+        char[] charArray = new char[messageLength];
+        Arrays.fill(charArray, 'x');
+        return new String(charArray);
+    }
+}
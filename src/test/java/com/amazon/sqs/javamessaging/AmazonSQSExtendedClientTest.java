@@ -15,12 +15,26 @@
 
 package com.amazon.sqs.javamessaging;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
 import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.SSEAwsKeyManagementParams;
@@ -28,6 +42,7 @@ import com.amazonaws.services.sqs.AmazonSQS;
 import com.amazonaws.services.sqs.AmazonSQSClient;
 import com.amazonaws.services.sqs.model.*;
 
+import com.amazonaws.util.IOUtils;
 import com.amazonaws.util.StringInputStream;
 import org.junit.Assert;
 import org.junit.Before;
@@ -162,6 +177,70 @@ public class AmazonSQSExtendedClientTest {
         verify(mockS3, times(1)).putObject(isA(PutObjectRequest.class));
     }
 
+    @Test
+    public void testWhenKeyLayoutIsSetThenPayloadIsStoredUnderHashedPrefix() {
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                .withPayloadKeyPrefix("orders/")
+                .withPayloadKeyHashPrefixCount(16);
+        AmazonSQS extendedSqs = new AmazonSQSExtendedClient(mockSqsBackend, extendedClientConfiguration);
+
+        extendedSqs.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT)));
+
+        ArgumentCaptor<PutObjectRequest> putObjectRequestCaptor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        ArgumentCaptor<SendMessageRequest> sendMessageRequestCaptor = ArgumentCaptor.forClass(SendMessageRequest.class);
+        verify(mockS3).putObject(putObjectRequestCaptor.capture());
+        verify(mockSqsBackend).sendMessage(sendMessageRequestCaptor.capture());
+        String s3Key = putObjectRequestCaptor.getValue().getKey();
+        Assert.assertTrue(s3Key.matches("orders/[0-9a-f]/[0-9a-f-]{36}"));
+        Assert.assertEquals(s3Key, PayloadS3Pointer.fromJson(sendMessageRequestCaptor.getValue().getMessageBody()).getS3Key());
+    }
+
+    @Test
+    public void testWhenAdditionalBucketsAreSetThenPayloadsAreStripedAndDeletedFromTheirBucket() {
+        AmazonS3 secondMockS3 = mock(AmazonS3.class);
+        String secondS3BucketName = "second-bucket-name";
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                .withAdditionalPayloadBuckets(Collections.singletonMap(secondS3BucketName, secondMockS3));
+        AmazonSQS extendedSqs = new AmazonSQSExtendedClient(mockSqsBackend, extendedClientConfiguration);
+
+        for (int i = 0; i < 4; i++) {
+            extendedSqs.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT)));
+        }
+        extendedSqs.deleteMessage(new DeleteMessageRequest(SQS_QUEUE_URL,
+                PayloadReceiptHandle.embed("receipt-handle", secondS3BucketName, "S3Key")));
+
+        verify(mockS3, times(2)).putObject(isA(PutObjectRequest.class));
+        verify(secondMockS3, times(2)).putObject(isA(PutObjectRequest.class));
+        verify(secondMockS3).deleteObject(eq(secondS3BucketName), eq("S3Key"));
+        verify(mockS3, never()).deleteObject(anyString(), anyString());
+    }
+
+    @Test
+    public void testWhenPayloadSizeBandsAreSetThenPayloadsAreRoutedByTheirSize() {
+        AmazonS3 hugeMockS3 = mock(AmazonS3.class);
+        String hugeS3BucketName = "huge-bucket-name";
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                .withPayloadSizeBands(Arrays.asList(
+                        new PayloadSizeBand(2 * SQS_SIZE_LIMIT).withS3Bucket(hugeMockS3, hugeS3BucketName),
+                        new PayloadSizeBand(0).withKeyPrefix("hot/").withMultipartUploadThreshold(0)));
+        AmazonSQS extendedSqs = new AmazonSQSExtendedClient(mockSqsBackend, extendedClientConfiguration);
+
+        extendedSqs.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT)));
+        extendedSqs.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, generateStringWithLength(2 * SQS_SIZE_LIMIT)));
+        extendedSqs.deleteMessage(new DeleteMessageRequest(SQS_QUEUE_URL,
+                PayloadReceiptHandle.embed("receipt-handle", hugeS3BucketName, "S3Key")));
+
+        ArgumentCaptor<PutObjectRequest> putObjectRequestCaptor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(mockS3, times(1)).putObject(putObjectRequestCaptor.capture());
+        Assert.assertTrue(putObjectRequestCaptor.getValue().getKey().startsWith("hot/"));
+        verify(hugeMockS3, times(1)).putObject(isA(PutObjectRequest.class));
+        verify(hugeMockS3).deleteObject(eq(hugeS3BucketName), eq("S3Key"));
+        verify(mockS3, never()).deleteObject(anyString(), anyString());
+    }
+
     @Test
     public void testWhenSendLargeMessage_WithoutKMS_ThenPayloadIsStoredInS3AndKMSKeyIdIsNotUsed() {
         String messageBody = generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT);
@@ -291,6 +370,227 @@ public class AmazonSQSExtendedClientTest {
         verify(mockS3, times(1)).putObject(isA(PutObjectRequest.class));
     }
 
+    @Test
+    public void testWhenSendMessageFromPathThenFileIsStreamedToS3AndPointerIsSent() throws Exception {
+        AmazonSQSExtendedClient sqsExtended = new AmazonSQSExtendedClient(mockSqsBackend,
+                new ExtendedClientConfiguration().withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME));
+        Path payloadFile = Files.createTempFile("payload", ".txt");
+        try {
+            Files.write(payloadFile, generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT).getBytes(StandardCharsets.UTF_8));
+
+            sqsExtended.sendMessage(new SendMessageRequest().withQueueUrl(SQS_QUEUE_URL), payloadFile);
+        } finally {
+            Files.delete(payloadFile);
+        }
+
+        ArgumentCaptor<PutObjectRequest> putObjectRequestArgumentCaptor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        ArgumentCaptor<SendMessageRequest> sendMessageRequestArgumentCaptor = ArgumentCaptor.forClass(SendMessageRequest.class);
+        verify(mockS3, times(1)).putObject(putObjectRequestArgumentCaptor.capture());
+        verify(mockSqsBackend, times(1)).sendMessage(sendMessageRequestArgumentCaptor.capture());
+        Assert.assertEquals(MORE_THAN_SQS_SIZE_LIMIT, putObjectRequestArgumentCaptor.getValue().getMetadata().getContentLength());
+        SendMessageRequest sentRequest = sendMessageRequestArgumentCaptor.getValue();
+        Assert.assertEquals(putObjectRequestArgumentCaptor.getValue().getKey(),
+                PayloadS3Pointer.fromJson(sentRequest.getMessageBody()).getS3Key());
+        Assert.assertEquals(Integer.toString(MORE_THAN_SQS_SIZE_LIMIT),
+                sentRequest.getMessageAttributes().get(SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME).getStringValue());
+    }
+
+    @Test(expected = AmazonClientException.class)
+    public void testWhenSendMessageFromStreamWithPayloadSupportDisabledThenItFails() {
+        AmazonSQSExtendedClient sqsExtended = new AmazonSQSExtendedClient(mockSqsBackend,
+                new ExtendedClientConfiguration().withPayloadSupportDisabled());
+
+        sqsExtended.sendMessage(new SendMessageRequest().withQueueUrl(SQS_QUEUE_URL),
+                new ByteArrayInputStream(new byte[] {1, 2, 3}), 3);
+    }
+
+    @Test
+    public void testWhenSendMessageWithDirectByteBufferThenRawBytesAreStoredInS3() throws Exception {
+        AmazonSQSExtendedClient sqsExtended = new AmazonSQSExtendedClient(mockSqsBackend,
+                new ExtendedClientConfiguration().withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME));
+        byte[] payloadBytes = new byte[] {0, (byte) 0xFF, 1, (byte) 0x80};
+        ByteBuffer payload = ByteBuffer.allocateDirect(payloadBytes.length);
+        payload.put(payloadBytes).flip();
+        List<byte[]> storedPayloads = new ArrayList<byte[]>();
+        when(mockS3.putObject(isA(PutObjectRequest.class))).thenAnswer(invocation -> {
+            storedPayloads.add(IOUtils.toByteArray(((PutObjectRequest) invocation.getArguments()[0]).getInputStream()));
+            return null;
+        });
+
+        sqsExtended.sendMessage(new SendMessageRequest().withQueueUrl(SQS_QUEUE_URL), payload.asReadOnlyBuffer());
+
+        Assert.assertEquals(1, storedPayloads.size());
+        Assert.assertArrayEquals(payloadBytes, storedPayloads.get(0));
+        Assert.assertEquals(0, payload.position());
+    }
+
+    @Test
+    public void testWhenPayloadCodecIsSetThenPayloadIsCompressedInS3AndDecodedOnReceive() {
+        AmazonSQSExtendedClient sqsExtended = new AmazonSQSExtendedClient(mockSqsBackend,
+                new ExtendedClientConfiguration().withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                        .withPayloadCodec(PayloadCodecs.GZIP));
+        String messageBody = generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT);
+        List<byte[]> storedPayloads = new ArrayList<byte[]>();
+        when(mockS3.putObject(isA(PutObjectRequest.class))).thenAnswer(invocation -> {
+            storedPayloads.add(IOUtils.toByteArray(((PutObjectRequest) invocation.getArguments()[0]).getInputStream()));
+            return null;
+        });
+
+        sqsExtended.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, messageBody));
+
+        ArgumentCaptor<PutObjectRequest> putObjectRequestArgumentCaptor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        ArgumentCaptor<SendMessageRequest> sendMessageRequestArgumentCaptor = ArgumentCaptor.forClass(SendMessageRequest.class);
+        verify(mockS3, times(1)).putObject(putObjectRequestArgumentCaptor.capture());
+        verify(mockSqsBackend, times(1)).sendMessage(sendMessageRequestArgumentCaptor.capture());
+        ObjectMetadata storedMetadata = putObjectRequestArgumentCaptor.getValue().getMetadata();
+        Assert.assertEquals("gzip", storedMetadata.getContentEncoding());
+        Assert.assertTrue(storedPayloads.get(0).length < MORE_THAN_SQS_SIZE_LIMIT);
+        Assert.assertEquals(storedPayloads.get(0).length, storedMetadata.getContentLength());
+
+        S3Object s3Object = new S3Object();
+        s3Object.setObjectMetadata(storedMetadata);
+        s3Object.setObjectContent(new ByteArrayInputStream(storedPayloads.get(0)));
+        when(mockS3.getObject(isA(GetObjectRequest.class))).thenReturn(s3Object);
+        SendMessageRequest sentRequest = sendMessageRequestArgumentCaptor.getValue();
+        Message message = new Message().withBody(sentRequest.getMessageBody())
+                .withMessageAttributes(sentRequest.getMessageAttributes()).withReceiptHandle("receipt-handle");
+        when(mockSqsBackend.receiveMessage(isA(ReceiveMessageRequest.class)))
+                .thenReturn(new ReceiveMessageResult().withMessages(message));
+
+        ReceiveMessageResult receiveMessageResult = sqsExtended.receiveMessage(new ReceiveMessageRequest(SQS_QUEUE_URL));
+
+        Assert.assertEquals(messageBody, receiveMessageResult.getMessages().get(0).getBody());
+    }
+
+    @Test
+    public void testWhenPayloadIsAlreadyCompressedThenItIsStoredWithoutCompressingItAgain() {
+        AmazonSQSExtendedClient sqsExtended = new AmazonSQSExtendedClient(mockSqsBackend,
+                new ExtendedClientConfiguration().withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                        .withPayloadCodec(PayloadCodecs.GZIP));
+        byte[] payloadBytes = new byte[MORE_THAN_SQS_SIZE_LIMIT];
+        payloadBytes[0] = (byte) 0x28;
+        payloadBytes[1] = (byte) 0xb5;
+        payloadBytes[2] = (byte) 0x2f;
+        payloadBytes[3] = (byte) 0xfd;
+        List<byte[]> storedPayloads = new ArrayList<byte[]>();
+        when(mockS3.putObject(isA(PutObjectRequest.class))).thenAnswer(invocation -> {
+            storedPayloads.add(IOUtils.toByteArray(((PutObjectRequest) invocation.getArguments()[0]).getInputStream()));
+            return null;
+        });
+
+        sqsExtended.sendMessage(new SendMessageRequest().withQueueUrl(SQS_QUEUE_URL), payloadBytes);
+
+        ArgumentCaptor<PutObjectRequest> putObjectRequestArgumentCaptor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(mockS3, times(1)).putObject(putObjectRequestArgumentCaptor.capture());
+        Assert.assertNull(putObjectRequestArgumentCaptor.getValue().getMetadata().getContentEncoding());
+        Assert.assertArrayEquals(payloadBytes, storedPayloads.get(0));
+    }
+
+    @Test
+    public void testWhenInlineCompressionIsEnabledAndCompressedBodyFitsThenItIsSentInlineAndDecodedOnReceive() {
+        AmazonSQSExtendedClient sqsExtended = new AmazonSQSExtendedClient(mockSqsBackend,
+                new ExtendedClientConfiguration().withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                        .withInlineCompressionEnabled(true));
+        String messageBody = generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT * 2);
+
+        sqsExtended.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, messageBody));
+
+        ArgumentCaptor<SendMessageRequest> sendMessageRequestArgumentCaptor = ArgumentCaptor.forClass(SendMessageRequest.class);
+        verify(mockS3, never()).putObject(isA(PutObjectRequest.class));
+        verify(mockSqsBackend, times(1)).sendMessage(sendMessageRequestArgumentCaptor.capture());
+        SendMessageRequest sentRequest = sendMessageRequestArgumentCaptor.getValue();
+        Assert.assertTrue(sentRequest.getMessageBody().length() < SQS_SIZE_LIMIT);
+        Assert.assertEquals("gzip", sentRequest.getMessageAttributes()
+                .get(SQSExtendedClientConstants.INLINE_ENCODING_ATTRIBUTE_NAME).getStringValue());
+
+        Message message = new Message().withBody(sentRequest.getMessageBody())
+                .withMessageAttributes(sentRequest.getMessageAttributes()).withReceiptHandle("receipt-handle");
+        when(mockSqsBackend.receiveMessage(isA(ReceiveMessageRequest.class)))
+                .thenReturn(new ReceiveMessageResult().withMessages(message));
+
+        Message receivedMessage = sqsExtended.receiveMessage(new ReceiveMessageRequest(SQS_QUEUE_URL)).getMessages().get(0);
+
+        Assert.assertEquals(messageBody, receivedMessage.getBody());
+        Assert.assertEquals("receipt-handle", receivedMessage.getReceiptHandle());
+        Assert.assertTrue(receivedMessage.getMessageAttributes().isEmpty());
+        verify(mockS3, never()).getObject(isA(GetObjectRequest.class));
+    }
+
+    @Test
+    public void testWhenInlineCompressionIsEnabledAndCompressedBodyDoesNotFitThenItIsStoredInS3() {
+        AmazonSQSExtendedClient sqsExtended = new AmazonSQSExtendedClient(mockSqsBackend,
+                new ExtendedClientConfiguration().withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                        .withInlineCompressionEnabled(true));
+        Random random = new Random(42);
+        char[] incompressibleBody = new char[MORE_THAN_SQS_SIZE_LIMIT];
+        for (int i = 0; i < incompressibleBody.length; i++) {
+            incompressibleBody[i] = (char) (' ' + random.nextInt(95));
+        }
+
+        sqsExtended.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, new String(incompressibleBody)));
+
+        ArgumentCaptor<SendMessageRequest> sendMessageRequestArgumentCaptor = ArgumentCaptor.forClass(SendMessageRequest.class);
+        verify(mockS3, times(1)).putObject(isA(PutObjectRequest.class));
+        verify(mockSqsBackend, times(1)).sendMessage(sendMessageRequestArgumentCaptor.capture());
+        Map<String, MessageAttributeValue> sentAttributes = sendMessageRequestArgumentCaptor.getValue().getMessageAttributes();
+        Assert.assertFalse(sentAttributes.containsKey(SQSExtendedClientConstants.INLINE_ENCODING_ATTRIBUTE_NAME));
+        Assert.assertTrue(sentAttributes.containsKey(AmazonSQSExtendedClient.LEGACY_RESERVED_ATTRIBUTE_NAME));
+    }
+
+    @Test
+    public void testWhenPayloadDeduplicationIsEnabledThenSamePayloadIsUploadedOnlyOnce() {
+        AmazonSQSExtendedClient sqsExtended = new AmazonSQSExtendedClient(mockSqsBackend,
+                new ExtendedClientConfiguration().withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                        .withPayloadDeduplicationEnabled(true));
+        AmazonS3Exception notFound = new AmazonS3Exception("Not Found");
+        notFound.setStatusCode(404);
+        when(mockS3.getObjectMetadata(anyString(), anyString())).thenThrow(notFound);
+        String messageBody = generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT);
+
+        sqsExtended.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, messageBody));
+        sqsExtended.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, messageBody));
+
+        ArgumentCaptor<PutObjectRequest> putObjectRequestArgumentCaptor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        ArgumentCaptor<SendMessageRequest> sendMessageRequestArgumentCaptor = ArgumentCaptor.forClass(SendMessageRequest.class);
+        verify(mockS3, times(1)).putObject(putObjectRequestArgumentCaptor.capture());
+        verify(mockS3, times(1)).getObjectMetadata(eq(S3_BUCKET_NAME), anyString());
+        verify(mockSqsBackend, times(2)).sendMessage(sendMessageRequestArgumentCaptor.capture());
+        String s3Key = putObjectRequestArgumentCaptor.getValue().getKey();
+        Assert.assertTrue(s3Key.startsWith(PayloadDeduplicator.CONTENT_ADDRESSED_KEY_PREFIX));
+        for (SendMessageRequest sentRequest : sendMessageRequestArgumentCaptor.getAllValues()) {
+            Assert.assertEquals(s3Key, PayloadS3Pointer.fromJson(sentRequest.getMessageBody()).getS3Key());
+        }
+    }
+
+    @Test
+    public void testWhenContentAddressedObjectExistsThenItIsReusedWithoutUpload() {
+        AmazonSQSExtendedClient sqsExtended = new AmazonSQSExtendedClient(mockSqsBackend,
+                new ExtendedClientConfiguration().withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                        .withPayloadDeduplicationEnabled(true));
+        ObjectMetadata existingObjectMetadata = new ObjectMetadata();
+        existingObjectMetadata.setLastModified(new Date());
+        when(mockS3.getObjectMetadata(anyString(), anyString())).thenReturn(existingObjectMetadata);
+
+        sqsExtended.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT)));
+
+        verify(mockS3, never()).putObject(isA(PutObjectRequest.class));
+        verify(mockSqsBackend, times(1)).sendMessage(isA(SendMessageRequest.class));
+    }
+
+    @Test
+    public void testWhenSendMessageWithReadOnlyBinaryAttributeThenItIsSizedWithoutCopying() {
+        ByteBuffer binaryValue = ByteBuffer.allocateDirect(ARBITRARY_SMALLER_THRESHOLD * 2).asReadOnlyBuffer();
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME).withPayloadSizeThreshold(ARBITRARY_SMALLER_THRESHOLD);
+        AmazonSQS sqsExtended = spy(new AmazonSQSExtendedClient(mockSqsBackend, extendedClientConfiguration));
+
+        SendMessageRequest messageRequest = new SendMessageRequest(SQS_QUEUE_URL, "body")
+                .addMessageAttributesEntry("binary", new MessageAttributeValue().withDataType("Binary").withBinaryValue(binaryValue));
+        sqsExtended.sendMessage(messageRequest);
+
+        verify(mockS3, times(1)).putObject(isA(PutObjectRequest.class));
+    }
+
     @Test
     public void testReceiveMessageMultipleTimesDoesNotAdditionallyAlterReceiveMessageRequest() {
         when(mockSqsBackend.receiveMessage(isA(ReceiveMessageRequest.class))).thenReturn(new ReceiveMessageResult());
@@ -335,10 +635,135 @@ public class AmazonSQSExtendedClientTest {
         verifyZeroInteractions(mockS3);
     }
 
+    @Test
+    public void testReceiveMessageWithPayloadExecutorRetrievesPayloadsConcurrentlyInOrder() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                    .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                    .withPayloadExecutor(executor)
+                    .withPayloadBatchTimeoutMillis(10_000);
+            AmazonSQS sqsExtended = spy(new AmazonSQSExtendedClient(mockSqsBackend, extendedClientConfiguration));
+
+            int messageCount = 5;
+            List<Message> messages = new ArrayList<Message>();
+            for (int i = 0; i < messageCount; i++) {
+                Message message = new Message()
+                        .addMessageAttributesEntry(SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME, mock(MessageAttributeValue.class));
+                message.setBody(new PayloadS3Pointer(S3_BUCKET_NAME, "S3Key" + i).toJson());
+                message.setReceiptHandle("receipt-handle-" + i);
+                messages.add(message);
+            }
+            messages.add(new Message().withBody("SmallMessage").withReceiptHandle("receipt-handle-small"));
+
+            when(mockSqsBackend.receiveMessage(isA(ReceiveMessageRequest.class))).thenReturn(new ReceiveMessageResult().withMessages(messages));
+            when(mockS3.getObject(isA(GetObjectRequest.class))).thenAnswer(invocation -> {
+                GetObjectRequest getObjectRequest = (GetObjectRequest) invocation.getArguments()[0];
+                S3Object s3Object = new S3Object();
+                s3Object.setObjectContent(new StringInputStream("LargeMessage-" + getObjectRequest.getKey()));
+                return s3Object;
+            });
+
+            List<Message> actualMessages = sqsExtended.receiveMessage(new ReceiveMessageRequest()).getMessages();
+
+            Assert.assertEquals(messageCount + 1, actualMessages.size());
+            for (int i = 0; i < messageCount; i++) {
+                Assert.assertEquals("LargeMessage-S3Key" + i, actualMessages.get(i).getBody());
+                Assert.assertTrue(actualMessages.get(i).getReceiptHandle().endsWith("receipt-handle-" + i));
+            }
+            Assert.assertEquals("SmallMessage", actualMessages.get(messageCount).getBody());
+            verify(mockS3, times(messageCount)).getObject(isA(GetObjectRequest.class));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSendMessageBatchWithPayloadExecutorBoundsConcurrentUploadsAndPreservesEntryOrder() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            int maxConcurrency = 2;
+            ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                    .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                    .withPayloadExecutor(executor)
+                    .withPayloadUploadConcurrency(maxConcurrency);
+            AmazonSQS sqsExtended = spy(new AmazonSQSExtendedClient(mockSqsBackend, extendedClientConfiguration));
+
+            AtomicInteger runningUploads = new AtomicInteger();
+            AtomicInteger peakUploads = new AtomicInteger();
+            when(mockS3.putObject(isA(PutObjectRequest.class))).thenAnswer(invocation -> {
+                peakUploads.accumulateAndGet(runningUploads.incrementAndGet(), Math::max);
+                Thread.sleep(50);
+                runningUploads.decrementAndGet();
+                return null;
+            });
+
+            List<SendMessageBatchRequestEntry> entries = new ArrayList<SendMessageBatchRequestEntry>();
+            for (int i = 0; i < 6; i++) {
+                entries.add(new SendMessageBatchRequestEntry("entry-" + i, generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT)));
+            }
+            entries.add(new SendMessageBatchRequestEntry("entry-small", "SmallMessage"));
+
+            sqsExtended.sendMessageBatch(new SendMessageBatchRequest(SQS_QUEUE_URL, entries));
+
+            ArgumentCaptor<SendMessageBatchRequest> sentRequest = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+            verify(mockSqsBackend, times(1)).sendMessageBatch(sentRequest.capture());
+            verify(mockS3, times(6)).putObject(isA(PutObjectRequest.class));
+            Assert.assertTrue(peakUploads.get() <= maxConcurrency);
+            List<SendMessageBatchRequestEntry> sentEntries = sentRequest.getValue().getEntries();
+            for (int i = 0; i < 6; i++) {
+                Assert.assertEquals("entry-" + i, sentEntries.get(i).getId());
+                Assert.assertEquals(S3_BUCKET_NAME, PayloadS3Pointer.fromJson(sentEntries.get(i).getMessageBody()).getS3BucketName());
+            }
+            Assert.assertEquals("SmallMessage", sentEntries.get(6).getMessageBody());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testReceivePayloadMessagesDoesNotDownloadPayloadUntilStreamIsOpened() throws Exception {
+        AmazonSQSExtendedClient sqsExtended = new AmazonSQSExtendedClient(mockSqsBackend,
+                new ExtendedClientConfiguration().withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME));
+        String pointer = new PayloadS3Pointer(S3_BUCKET_NAME, "S3Key").toJson();
+        Message largeMessage = new Message()
+                .addMessageAttributesEntry(SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME,
+                        new MessageAttributeValue().withDataType("Number").withStringValue("12"))
+                .withBody(pointer)
+                .withReceiptHandle("receipt-handle");
+        Message smallMessage = new Message().withBody("SmallMessage").withReceiptHandle("receipt-handle-small");
+        S3Object s3Object = new S3Object();
+        s3Object.setObjectContent(new StringInputStream("LargeMessage"));
+        when(mockSqsBackend.receiveMessage(isA(ReceiveMessageRequest.class)))
+                .thenReturn(new ReceiveMessageResult().withMessages(largeMessage, smallMessage));
+        when(mockS3.getObject(isA(GetObjectRequest.class))).thenReturn(s3Object);
+
+        List<PayloadMessage> payloadMessages = sqsExtended.receivePayloadMessages(new ReceiveMessageRequest(SQS_QUEUE_URL));
+
+        verify(mockS3, never()).getObject(isA(GetObjectRequest.class));
+        PayloadMessage largePayloadMessage = payloadMessages.get(0);
+        Assert.assertTrue(largePayloadMessage.isPayloadOffloaded());
+        Assert.assertEquals(12L, largePayloadMessage.getPayloadSize());
+        Assert.assertEquals(pointer, largePayloadMessage.getMessage().getBody());
+        Assert.assertEquals(PayloadReceiptHandle.embed("receipt-handle", S3_BUCKET_NAME, "S3Key"), largePayloadMessage.getMessage().getReceiptHandle());
+        Assert.assertTrue(largePayloadMessage.getMessage().getMessageAttributes().isEmpty());
+        try (InputStream payload = largePayloadMessage.openPayloadStream()) {
+            Assert.assertEquals("LargeMessage", IOUtils.toString(payload));
+        }
+        verify(mockS3, times(1)).getObject(isA(GetObjectRequest.class));
+
+        PayloadMessage smallPayloadMessage = payloadMessages.get(1);
+        Assert.assertFalse(smallPayloadMessage.isPayloadOffloaded());
+        Assert.assertEquals(12L, smallPayloadMessage.getPayloadSize());
+        try (InputStream payload = smallPayloadMessage.openPayloadStream()) {
+            Assert.assertEquals("SmallMessage", IOUtils.toString(payload));
+        }
+    }
+
     @Test
     public void testWhenMessageBatchIsSentThenOnlyMessagesLargerThanThresholdAreStoredInS3() {
-        // This creates 10 messages, out of which only two are below the threshold (100K and 200K),
-        // and the other 8 are above the threshold
+        // This creates 10 messages, out of which only two are below the threshold (100K and 140K),
+        // and the other 8 are above the threshold. Together the two still fit in a batch.
 
         int[] messageLengthForCounter = new int[] {
                 100_000,
@@ -349,7 +774,7 @@ public class AmazonSQSExtendedClientTest {
                 700_000,
                 800_000,
                 900_000,
-                200_000,
+                140_000,
                 1000_000
         };
 
@@ -370,6 +795,31 @@ public class AmazonSQSExtendedClientTest {
         verify(mockS3, times(8)).putObject(isA(PutObjectRequest.class));
     }
 
+    @Test
+    public void testWhenMessageBatchExceedsBatchSizeThenLargestMessagesAreStoredInS3() {
+        int[] messageLengthForCounter = new int[] {
+                100_000,
+                200_000,
+                150_000,
+                50_000
+        };
+
+        List<SendMessageBatchRequestEntry> batchEntries = new ArrayList<SendMessageBatchRequestEntry>();
+        for (int i = 0; i < messageLengthForCounter.length; i++) {
+            batchEntries.add(new SendMessageBatchRequestEntry("entry_" + i, generateStringWithLength(messageLengthForCounter[i])));
+        }
+
+        SendMessageBatchRequest batchRequest = new SendMessageBatchRequest(SQS_QUEUE_URL, batchEntries);
+        extendedSqsWithDefaultConfig.sendMessageBatch(batchRequest);
+
+        // Storing the 200K and 150K messages is enough for the other two to fit
+        verify(mockS3, times(2)).putObject(isA(PutObjectRequest.class));
+        Assert.assertEquals(100_000, batchEntries.get(0).getMessageBody().length());
+        Assert.assertEquals(S3_BUCKET_NAME, PayloadS3Pointer.fromJson(batchEntries.get(1).getMessageBody()).getS3BucketName());
+        Assert.assertEquals(S3_BUCKET_NAME, PayloadS3Pointer.fromJson(batchEntries.get(2).getMessageBody()).getS3BucketName());
+        Assert.assertEquals(50_000, batchEntries.get(3).getMessageBody().length());
+    }
+
     @Test
     public void testWhenSmallMessageIsSentThenNoAttributeIsAdded() {
         int messageLength = LESS_THAN_SQS_SIZE_LIMIT;
@@ -417,6 +867,63 @@ public class AmazonSQSExtendedClientTest {
         verifyZeroInteractions(mockS3);
     }
 
+    @Test
+    public void testWhenPayloadStoreIsSetThenPayloadIsStoredReceivedAndDeletedWithoutS3() {
+        InMemoryPayloadStore payloadStore = new InMemoryPayloadStore();
+        AmazonSQS extendedSqs = new AmazonSQSExtendedClient(mockSqsBackend,
+                new ExtendedClientConfiguration().withPayloadSupportEnabled(payloadStore));
+        String messageBody = generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT);
+
+        extendedSqs.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, messageBody));
+
+        ArgumentCaptor<SendMessageRequest> sendMessageRequestCaptor = ArgumentCaptor.forClass(SendMessageRequest.class);
+        verify(mockSqsBackend).sendMessage(sendMessageRequestCaptor.capture());
+        SendMessageRequest sentRequest = sendMessageRequestCaptor.getValue();
+        Assert.assertEquals(1, payloadStore.getPayloadCount());
+
+        Message message = new Message()
+                .withBody(sentRequest.getMessageBody())
+                .withMessageAttributes(sentRequest.getMessageAttributes())
+                .withReceiptHandle("receipt-handle");
+        when(mockSqsBackend.receiveMessage(isA(ReceiveMessageRequest.class)))
+                .thenReturn(new ReceiveMessageResult().withMessages(message));
+        Message receivedMessage = extendedSqs.receiveMessage(new ReceiveMessageRequest(SQS_QUEUE_URL)).getMessages().get(0);
+        extendedSqs.deleteMessage(new DeleteMessageRequest(SQS_QUEUE_URL, receivedMessage.getReceiptHandle()));
+
+        ArgumentCaptor<DeleteMessageRequest> deleteRequestCaptor = ArgumentCaptor.forClass(DeleteMessageRequest.class);
+        verify(mockSqsBackend).deleteMessage(deleteRequestCaptor.capture());
+        Assert.assertEquals(messageBody, receivedMessage.getBody());
+        Assert.assertEquals("receipt-handle", deleteRequestCaptor.getValue().getReceiptHandle());
+        Assert.assertEquals(0, payloadStore.getPayloadCount());
+        verifyZeroInteractions(mockS3);
+    }
+
+    @Test
+    public void testWhenPayloadCacheIsEnabledThenRedeliveredPayloadIsDownloadedOnceUntilDeleted() {
+        AmazonSQS extendedSqs = new AmazonSQSExtendedClient(mockSqsBackend, new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                .withPayloadCacheMaxSize(1024 * 1024));
+        when(mockSqsBackend.receiveMessage(isA(ReceiveMessageRequest.class))).thenAnswer(invocation ->
+                new ReceiveMessageResult().withMessages(new Message()
+                        .addMessageAttributesEntry(SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME, mock(MessageAttributeValue.class))
+                        .withBody(new PayloadS3Pointer(S3_BUCKET_NAME, "S3Key").toJson())
+                        .withReceiptHandle("receipt-handle")));
+        when(mockS3.getObject(isA(GetObjectRequest.class))).thenAnswer(invocation -> {
+            S3Object s3Object = new S3Object();
+            s3Object.setObjectContent(new StringInputStream("LargeMessage"));
+            return s3Object;
+        });
+
+        extendedSqs.receiveMessage(new ReceiveMessageRequest(SQS_QUEUE_URL));
+        Message redeliveredMessage = extendedSqs.receiveMessage(new ReceiveMessageRequest(SQS_QUEUE_URL)).getMessages().get(0);
+        verify(mockS3, times(1)).getObject(isA(GetObjectRequest.class));
+        Assert.assertEquals("LargeMessage", redeliveredMessage.getBody());
+
+        extendedSqs.deleteMessage(new DeleteMessageRequest(SQS_QUEUE_URL, redeliveredMessage.getReceiptHandle()));
+        extendedSqs.receiveMessage(new ReceiveMessageRequest(SQS_QUEUE_URL));
+        verify(mockS3, times(2)).getObject(isA(GetObjectRequest.class));
+    }
+
     @Test
     public void testDefaultExtendedClientDeletesObjectS3UponMessageDelete() {
         // given
@@ -435,6 +942,82 @@ public class AmazonSQSExtendedClientTest {
         verify(mockS3).deleteObject(eq(S3_BUCKET_NAME), eq(randomS3Key));
     }
 
+    @Test
+    public void testWhenCompactReceiptHandleIsDeletedThenObjectIsDeletedFromS3() {
+        // given
+        String randomS3Key = UUID.randomUUID().toString();
+        String originalReceiptHandle = UUID.randomUUID().toString();
+        String largeMessageReceiptHandle = PayloadReceiptHandle.embed(originalReceiptHandle, S3_BUCKET_NAME, randomS3Key);
+        DeleteMessageRequest deleteRequest = new DeleteMessageRequest(SQS_QUEUE_URL, largeMessageReceiptHandle);
+
+        // when
+        extendedSqsWithDefaultConfig.deleteMessage(deleteRequest);
+
+        // then
+        ArgumentCaptor<DeleteMessageRequest> deleteRequestCaptor = ArgumentCaptor.forClass(DeleteMessageRequest.class);
+        verify(mockSqsBackend).deleteMessage(deleteRequestCaptor.capture());
+        Assert.assertEquals(originalReceiptHandle, deleteRequestCaptor.getValue().getReceiptHandle());
+        verify(mockS3).deleteObject(eq(S3_BUCKET_NAME), eq(randomS3Key));
+    }
+
+    @Test
+    public void testWhenBackgroundPayloadDeletionIsEnabledThenObjectsAreDeletedInBulkByShutdown() {
+        // given
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                .withBackgroundPayloadDeletionEnabled(true);
+        AmazonSQS extendedSqs = new AmazonSQSExtendedClient(mockSqsBackend, extendedClientConfiguration);
+        List<String> s3Keys = new ArrayList<String>();
+        for (int i = 0; i < 3; i++) {
+            s3Keys.add(UUID.randomUUID().toString());
+        }
+
+        // when
+        for (String s3Key : s3Keys) {
+            extendedSqs.deleteMessage(new DeleteMessageRequest(SQS_QUEUE_URL,
+                    getLargeReceiptHandle(s3Key, UUID.randomUUID().toString())));
+        }
+        extendedSqs.shutdown();
+
+        // then
+        ArgumentCaptor<DeleteObjectsRequest> deleteObjectsRequest = ArgumentCaptor.forClass(DeleteObjectsRequest.class);
+        verify(mockSqsBackend, times(3)).deleteMessage(isA(DeleteMessageRequest.class));
+        verify(mockS3, never()).deleteObject(anyString(), anyString());
+        verify(mockS3, atLeastOnce()).deleteObjects(deleteObjectsRequest.capture());
+        List<String> deletedKeys = deleteObjectsRequest.getAllValues().stream()
+                .flatMap(request -> request.getKeys().stream())
+                .map(DeleteObjectsRequest.KeyVersion::getKey)
+                .collect(Collectors.toList());
+        Assert.assertEquals(s3Keys, deletedKeys);
+    }
+
+    @Test
+    public void testWhenMessageDeleteFailsThenS3ObjectIsKept() {
+        // given
+        String largeMessageReceiptHandle = getLargeReceiptHandle(UUID.randomUUID().toString(), UUID.randomUUID().toString());
+        when(mockSqsBackend.deleteMessage(isA(DeleteMessageRequest.class))).thenThrow(new AmazonServiceException("failure"));
+
+        // when
+        try {
+            extendedSqsWithDefaultConfig.deleteMessage(new DeleteMessageRequest(SQS_QUEUE_URL, largeMessageReceiptHandle));
+            Assert.fail("Expected the delete to fail.");
+        } catch (AmazonServiceException e) {
+            // then
+            verifyZeroInteractions(mockS3);
+        }
+    }
+
+    @Test
+    public void testDefaultExtendedClientKeepsContentAddressedObjectUponMessageDelete() {
+        String contentAddressedS3Key = PayloadDeduplicator.CONTENT_ADDRESSED_KEY_PREFIX + "0123456789abcdef";
+        String largeMessageReceiptHandle = getLargeReceiptHandle(contentAddressedS3Key, UUID.randomUUID().toString());
+
+        extendedSqsWithDefaultConfig.deleteMessage(new DeleteMessageRequest(SQS_QUEUE_URL, largeMessageReceiptHandle));
+
+        verify(mockSqsBackend).deleteMessage(isA(DeleteMessageRequest.class));
+        verify(mockS3, never()).deleteObject(anyString(), anyString());
+    }
+
     @Test
     public void testExtendedClientConfiguredDoesNotDeleteObjectFromS3UponDelete() {
         // given
@@ -480,13 +1063,56 @@ public class AmazonSQSExtendedClientTest {
         // given
         int batchSize = 10;
         DeleteMessageBatchRequest deleteBatchRequest = generateLargeDeleteBatchRequest(batchSize);
+        when(mockSqsBackend.deleteMessageBatch(isA(DeleteMessageBatchRequest.class)))
+                .thenAnswer(invocation -> succeedDeleteBatch((DeleteMessageBatchRequest) invocation.getArguments()[0], -1));
 
         // when
         extendedSqsWithDefaultConfig.deleteMessageBatch(deleteBatchRequest);
 
         // then
+        ArgumentCaptor<DeleteObjectsRequest> deleteObjectsRequest = ArgumentCaptor.forClass(DeleteObjectsRequest.class);
         verify(mockSqsBackend, times(1)).deleteMessageBatch(any(DeleteMessageBatchRequest.class));
-        verify(mockS3, times(batchSize)).deleteObject(eq(S3_BUCKET_NAME), anyString());
+        verify(mockS3, times(1)).deleteObjects(deleteObjectsRequest.capture());
+        Assert.assertEquals(S3_BUCKET_NAME, deleteObjectsRequest.getValue().getBucketName());
+        Assert.assertEquals(batchSize, deleteObjectsRequest.getValue().getKeys().size());
+    }
+
+    @Test
+    public void testWhenDeleteBatchEntryFailsThenItsObjectIsKeptInS3() {
+        // given
+        int batchSize = 3;
+        DeleteMessageBatchRequest deleteBatchRequest = generateLargeDeleteBatchRequest(batchSize);
+        String failedS3Key = getS3KeyFromReceiptHandle(deleteBatchRequest.getEntries().get(1).getReceiptHandle());
+        when(mockSqsBackend.deleteMessageBatch(isA(DeleteMessageBatchRequest.class)))
+                .thenAnswer(invocation -> succeedDeleteBatch((DeleteMessageBatchRequest) invocation.getArguments()[0], 1));
+
+        // when
+        extendedSqsWithDefaultConfig.deleteMessageBatch(deleteBatchRequest);
+
+        // then
+        ArgumentCaptor<DeleteObjectsRequest> deleteObjectsRequest = ArgumentCaptor.forClass(DeleteObjectsRequest.class);
+        verify(mockS3, times(1)).deleteObjects(deleteObjectsRequest.capture());
+        List<String> deletedKeys = deleteObjectsRequest.getValue().getKeys().stream()
+                .map(DeleteObjectsRequest.KeyVersion::getKey).collect(Collectors.toList());
+        Assert.assertEquals(batchSize - 1, deletedKeys.size());
+        Assert.assertFalse(deletedKeys.contains(failedS3Key));
+    }
+
+    @Test
+    public void testWhenDeleteBatchFailsThenNoObjectIsDeletedFromS3() {
+        // given
+        DeleteMessageBatchRequest deleteBatchRequest = generateLargeDeleteBatchRequest(10);
+        when(mockSqsBackend.deleteMessageBatch(isA(DeleteMessageBatchRequest.class)))
+                .thenThrow(new AmazonServiceException("failure"));
+
+        // when
+        try {
+            extendedSqsWithDefaultConfig.deleteMessageBatch(deleteBatchRequest);
+            Assert.fail("Expected the delete to fail.");
+        } catch (AmazonServiceException e) {
+            // then
+            verifyZeroInteractions(mockS3);
+        }
     }
 
     private void testReceiveMessage_when_MessageIsLarge(String reservedAttributeName) throws Exception {
@@ -516,6 +1142,23 @@ public class AmazonSQSExtendedClientTest {
         return new DeleteMessageBatchRequest(SQS_QUEUE_URL, deleteEntries);
     }
 
+    private static DeleteMessageBatchResult succeedDeleteBatch(DeleteMessageBatchRequest request, int failedEntry) {
+        DeleteMessageBatchResult result = new DeleteMessageBatchResult();
+        for (int i = 0; i < request.getEntries().size(); i++) {
+            String id = request.getEntries().get(i).getId();
+            if (i == failedEntry) {
+                result.withFailed(new BatchResultErrorEntry().withId(id).withCode("ReceiptHandleIsInvalid"));
+            } else {
+                result.withSuccessful(new DeleteMessageBatchResultEntry().withId(id));
+            }
+        }
+        return result;
+    }
+
+    private String getS3KeyFromReceiptHandle(String receiptHandle) {
+        return PayloadReceiptHandle.parse(receiptHandle).getS3Key();
+    }
+
     private String getLargeReceiptHandle(String s3Key, String originalReceiptHandle) {
         return SQSExtendedClientConstants.S3_BUCKET_NAME_MARKER + S3_BUCKET_NAME
                 + SQSExtendedClientConstants.S3_BUCKET_NAME_MARKER + SQSExtendedClientConstants.S3_KEY_MARKER
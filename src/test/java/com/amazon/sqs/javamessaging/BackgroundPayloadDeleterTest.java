@@ -0,0 +1,72 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.util.Arrays;
+
+import com.amazonaws.AmazonServiceException;
+import org.junit.Test;
+
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the BackgroundPayloadDeleter class.
+ */
+public class BackgroundPayloadDeleterTest {
+
+    @Test
+    public void testWhenBulkDeleteFailsThenItIsRetriedBeforeShutdownReturns() {
+        StreamingPayloadStore payloadStore = mock(StreamingPayloadStore.class);
+        doThrow(new AmazonServiceException("failure")).doNothing()
+                .when(payloadStore).deleteOriginalPayloads(anyCollectionOf(String.class));
+        BackgroundPayloadDeleter payloadDeleter = new BackgroundPayloadDeleter(payloadStore, 10, 3);
+
+        payloadDeleter.delete(Arrays.asList(pointerHandle("pointer-1"), pointerHandle("pointer-2")));
+        payloadDeleter.shutdown();
+
+        verify(payloadStore, times(2)).deleteOriginalPayloads(anyCollectionOf(String.class));
+    }
+
+    @Test
+    public void testWhenAllAttemptsFailThenPayloadsAreGivenUp() {
+        StreamingPayloadStore payloadStore = mock(StreamingPayloadStore.class);
+        doThrow(new AmazonServiceException("failure"))
+                .when(payloadStore).deleteOriginalPayloads(anyCollectionOf(String.class));
+        BackgroundPayloadDeleter payloadDeleter = new BackgroundPayloadDeleter(payloadStore, 10, 2);
+
+        payloadDeleter.delete(pointerHandle("pointer"));
+        payloadDeleter.shutdown();
+
+        verify(payloadStore, times(2)).deleteOriginalPayloads(anyCollectionOf(String.class));
+    }
+
+    @Test
+    public void testWhenDeleterIsShutDownThenPayloadIsDeletedOnCallingThread() {
+        StreamingPayloadStore payloadStore = mock(StreamingPayloadStore.class);
+        BackgroundPayloadDeleter payloadDeleter = new BackgroundPayloadDeleter(payloadStore, 1, 1);
+        payloadDeleter.shutdown();
+
+        payloadDeleter.delete(pointerHandle("pointer"));
+
+        verify(payloadStore).deleteOriginalPayloads(Arrays.asList("pointer"));
+    }
+
+    private static PayloadReceiptHandle pointerHandle(String payloadPointer) {
+        return PayloadReceiptHandle.parse(PayloadReceiptHandle.embedPointer("receipt-handle", payloadPointer));
+    }
+}
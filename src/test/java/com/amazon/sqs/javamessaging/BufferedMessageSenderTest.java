@@ -0,0 +1,289 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import software.amazon.payloadoffloading.PayloadS3Pointer;
+
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the BufferedMessageSender class.
+ */
+public class BufferedMessageSenderTest {
+
+    private BufferedMessageSender bufferedSender;
+    private AmazonSQS mockSqsBackend;
+    private AmazonS3 mockS3;
+    private static final String S3_BUCKET_NAME = "test-bucket-name";
+    private static final String SQS_QUEUE_URL = "test-queue-url";
+
+    private static final int SQS_SIZE_LIMIT = 262144;
+    private static final int MORE_THAN_SQS_SIZE_LIMIT = SQS_SIZE_LIMIT + 1;
+    private static final long LONG_LINGER_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    @Before
+    public void setupClients() {
+        mockS3 = mock(AmazonS3.class);
+        mockSqsBackend = mock(AmazonSQS.class);
+        when(mockS3.putObject(isA(PutObjectRequest.class))).thenReturn(null);
+        when(mockSqsBackend.sendMessageBatch(isA(SendMessageBatchRequest.class)))
+                .thenAnswer(invocation -> succeedAll((SendMessageBatchRequest) invocation.getArguments()[0]));
+
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME);
+
+        bufferedSender = new BufferedMessageSender(
+                new AmazonSQSExtendedClient(mockSqsBackend, extendedClientConfiguration), LONG_LINGER_MILLIS);
+    }
+
+    @After
+    public void shutdownSender() {
+        bufferedSender.shutdown();
+    }
+
+    @Test
+    public void testWhenMessagesAreFlushedThenTheyAreSentInOneBatchWithTheirOwnResults() throws Exception {
+        List<CompletableFuture<SendMessageResult>> results = new ArrayList<CompletableFuture<SendMessageResult>>();
+        for (int i = 0; i < 3; i++) {
+            results.add(bufferedSender.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, "body-" + i)));
+        }
+
+        bufferedSender.flush();
+
+        ArgumentCaptor<SendMessageBatchRequest> sentRequest = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(mockSqsBackend, times(1)).sendMessageBatch(sentRequest.capture());
+        Assert.assertEquals(3, sentRequest.getValue().getEntries().size());
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals("message-body-" + i, results.get(i).get().getMessageId());
+        }
+    }
+
+    @Test
+    public void testWhenBatchIsFullThenItIsSentWithoutWaitingForTheLinger() throws Exception {
+        List<CompletableFuture<SendMessageResult>> results = new ArrayList<CompletableFuture<SendMessageResult>>();
+        for (int i = 0; i < BufferedMessageSender.MAX_BATCH_SIZE; i++) {
+            results.add(bufferedSender.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, "body-" + i)));
+        }
+
+        CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+
+        verify(mockSqsBackend, times(1)).sendMessageBatch(isA(SendMessageBatchRequest.class));
+    }
+
+    @Test
+    public void testWhenLargeMessageIsBufferedThenPayloadIsStoredInS3() throws Exception {
+        CompletableFuture<SendMessageResult> result = bufferedSender.sendMessage(
+                new SendMessageRequest(SQS_QUEUE_URL, generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT)));
+
+        bufferedSender.flush();
+
+        ArgumentCaptor<SendMessageBatchRequest> sentRequest = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(mockS3, times(1)).putObject(isA(PutObjectRequest.class));
+        verify(mockSqsBackend).sendMessageBatch(sentRequest.capture());
+        Assert.assertNotNull(result.get());
+        Assert.assertEquals(S3_BUCKET_NAME, PayloadS3Pointer
+                .fromJson(sentRequest.getValue().getEntries().get(0).getMessageBody()).getS3BucketName());
+    }
+
+    @Test
+    public void testWhenEntryFailsThenOnlyItsFutureFails() throws Exception {
+        when(mockSqsBackend.sendMessageBatch(isA(SendMessageBatchRequest.class))).thenAnswer(invocation -> {
+            SendMessageBatchRequest request = (SendMessageBatchRequest) invocation.getArguments()[0];
+            SendMessageBatchRequestEntry failedEntry = request.getEntries().get(1);
+            return new SendMessageBatchResult()
+                    .withSuccessful(new SendMessageBatchResultEntry()
+                            .withId(request.getEntries().get(0).getId()).withMessageId("id"))
+                    .withFailed(new BatchResultErrorEntry()
+                            .withId(failedEntry.getId()).withCode("InvalidMessageContents").withSenderFault(true));
+        });
+        CompletableFuture<SendMessageResult> succeeded = bufferedSender.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, "ok"));
+        CompletableFuture<SendMessageResult> failed = bufferedSender.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, "bad"));
+
+        bufferedSender.flush();
+
+        Assert.assertEquals("id", succeeded.get().getMessageId());
+        try {
+            failed.get();
+            Assert.fail("Expected the future to complete exceptionally.");
+        } catch (ExecutionException e) {
+            AmazonServiceException serviceException = (AmazonServiceException) e.getCause();
+            Assert.assertEquals("InvalidMessageContents", serviceException.getErrorCode());
+            Assert.assertEquals(AmazonServiceException.ErrorType.Client, serviceException.getErrorType());
+        }
+    }
+
+    @Test
+    public void testWhenFirstOrderedBatchIsStillUploadingThenTheNextBatchWaitsForIt() throws Exception {
+        CountDownLatch uploadReleased = new CountDownLatch(1);
+        CountDownLatch laterBatchSent = new CountDownLatch(1);
+        List<String> sentBatches = Collections.synchronizedList(new ArrayList<String>());
+        when(mockS3.putObject(isA(PutObjectRequest.class))).thenAnswer(invocation -> {
+            uploadReleased.await(10, TimeUnit.SECONDS);
+            return null;
+        });
+        when(mockSqsBackend.sendMessageBatch(isA(SendMessageBatchRequest.class))).thenAnswer(invocation -> {
+            SendMessageBatchRequest request = (SendMessageBatchRequest) invocation.getArguments()[0];
+            String lastBody = request.getEntries().get(request.getEntries().size() - 1).getMessageBody();
+            sentBatches.add(lastBody);
+            if (lastBody.equals("later")) {
+                laterBatchSent.countDown();
+            }
+            return succeedAll(request);
+        });
+        List<CompletableFuture<SendMessageResult>> results = new ArrayList<CompletableFuture<SendMessageResult>>();
+        results.add(bufferedSender.sendMessage(newOrderedRequest(generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT))));
+        for (int i = 1; i < BufferedMessageSender.MAX_BATCH_SIZE; i++) {
+            results.add(bufferedSender.sendMessage(newOrderedRequest("body-" + i)));
+        }
+        results.add(bufferedSender.sendMessage(newOrderedRequest("later")));
+
+        CompletableFuture<Void> flush = CompletableFuture.runAsync(bufferedSender::flush);
+
+        Assert.assertFalse(laterBatchSent.await(500, TimeUnit.MILLISECONDS));
+        uploadReleased.countDown();
+        flush.get(10, TimeUnit.SECONDS);
+        CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(Arrays.asList("body-9", "later"), sentBatches);
+    }
+
+    @Test
+    public void testWhenOrderedMessageFailsThenLaterMessagesOfItsGroupFailWithTheSameCause() throws Exception {
+        AmazonServiceException uploadFailure = new AmazonServiceException("upload failure");
+        when(mockS3.putObject(isA(PutObjectRequest.class))).thenThrow(uploadFailure);
+        CompletableFuture<SendMessageResult> before = bufferedSender.sendMessage(newOrderedRequest("before"));
+        CompletableFuture<SendMessageResult> failed = bufferedSender.sendMessage(
+                newOrderedRequest(generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT)));
+        CompletableFuture<SendMessageResult> after = bufferedSender.sendMessage(newOrderedRequest("after"));
+        CompletableFuture<SendMessageResult> otherGroup = bufferedSender.sendMessage(
+                newOrderedRequest("other").withMessageGroupId("other-group"));
+
+        bufferedSender.flush();
+
+        ArgumentCaptor<SendMessageBatchRequest> sentRequest = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(mockSqsBackend).sendMessageBatch(sentRequest.capture());
+        Assert.assertEquals(Arrays.asList("before", "other"), getMessageBodies(sentRequest.getValue()));
+        Assert.assertEquals("message-before", before.get().getMessageId());
+        Assert.assertEquals("message-other", otherGroup.get().getMessageId());
+        Assert.assertSame(uploadFailure, getFailure(failed).getCause());
+        Assert.assertSame(getFailure(failed), getFailure(after));
+    }
+
+    @Test
+    public void testWhenPreviousOrderedBatchFailsThenItsGroupFailsInTheNextBatch() throws Exception {
+        CountDownLatch uploadReleased = new CountDownLatch(1);
+        AmazonServiceException uploadFailure = new AmazonServiceException("upload failure");
+        when(mockS3.putObject(isA(PutObjectRequest.class))).thenAnswer(invocation -> {
+            uploadReleased.await(10, TimeUnit.SECONDS);
+            throw uploadFailure;
+        });
+        List<CompletableFuture<SendMessageResult>> firstBatch = new ArrayList<CompletableFuture<SendMessageResult>>();
+        for (int i = 0; i < BufferedMessageSender.MAX_BATCH_SIZE - 1; i++) {
+            firstBatch.add(bufferedSender.sendMessage(newOrderedRequest("body-" + i)));
+        }
+        CompletableFuture<SendMessageResult> failed = bufferedSender.sendMessage(
+                newOrderedRequest(generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT)));
+        CompletableFuture<SendMessageResult> later = bufferedSender.sendMessage(newOrderedRequest("later"));
+
+        CompletableFuture<Void> flush = CompletableFuture.runAsync(bufferedSender::flush);
+        uploadReleased.countDown();
+        flush.get(10, TimeUnit.SECONDS);
+
+        CompletableFuture.allOf(firstBatch.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+        Assert.assertSame(uploadFailure, getFailure(failed).getCause());
+        Assert.assertSame(getFailure(failed), getFailure(later));
+        verify(mockSqsBackend, times(1)).sendMessageBatch(isA(SendMessageBatchRequest.class));
+    }
+
+    @Test
+    public void testWhenResultHasUnknownEntryThenTheOtherFuturesStillComplete() throws Exception {
+        when(mockSqsBackend.sendMessageBatch(isA(SendMessageBatchRequest.class))).thenReturn(new SendMessageBatchResult()
+                .withSuccessful(new SendMessageBatchResultEntry().withId("unknown").withMessageId("id")));
+        CompletableFuture<SendMessageResult> result = bufferedSender.sendMessage(new SendMessageRequest(SQS_QUEUE_URL, "body"));
+
+        bufferedSender.flush();
+
+        try {
+            result.get(10, TimeUnit.SECONDS);
+            Assert.fail("Expected the future to complete exceptionally.");
+        } catch (ExecutionException e) {
+            Assert.assertEquals("Amazon SQS reported no result for the message.", e.getCause().getMessage());
+        }
+    }
+
+    private static SendMessageRequest newOrderedRequest(String messageBody) {
+        return new SendMessageRequest(SQS_QUEUE_URL, messageBody)
+                .withMessageGroupId("group").withMessageDeduplicationId(Integer.toString(messageBody.hashCode()));
+    }
+
+    private static List<String> getMessageBodies(SendMessageBatchRequest request) {
+        List<String> messageBodies = new ArrayList<String>();
+        for (SendMessageBatchRequestEntry entry : request.getEntries()) {
+            messageBodies.add(entry.getMessageBody());
+        }
+        return messageBodies;
+    }
+
+    private static Throwable getFailure(CompletableFuture<SendMessageResult> result) throws Exception {
+        try {
+            result.get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+        throw new AssertionError("Expected the future to complete exceptionally.");
+    }
+
+    private static SendMessageBatchResult succeedAll(SendMessageBatchRequest request) {
+        SendMessageBatchResult result = new SendMessageBatchResult();
+        for (SendMessageBatchRequestEntry entry : request.getEntries()) {
+            result.withSuccessful(new SendMessageBatchResultEntry()
+                    .withId(entry.getId()).withMessageId("message-" + entry.getMessageBody()));
+        }
+        return result;
+    }
+
+    private String generateStringWithLength(int messageLength) {
+        char[] charArray = new char[messageLength];
+        Arrays.fill(charArray, 'x');
+        return new String(charArray);
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.util.IOUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import software.amazon.payloadoffloading.PayloadS3Pointer;
+
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the CachingPayloadStore class.
+ */
+public class CachingPayloadStoreTest {
+
+    private static final String FIRST_POINTER = "first-pointer";
+    private static final String SECOND_POINTER = "second-pointer";
+    private static final String THIRD_POINTER = "third-pointer";
+    private static final String S3_POINTER = new PayloadS3Pointer("bucket", "key").toJson();
+    // The same object as S3_POINTER, written by another writer.
+    private static final String REORDERED_S3_POINTER = "{\"s3Key\": \"key\", \"s3BucketName\": \"bucket\"}";
+    private static final String SHARED_MEMORY_POINTER = SharedMemoryPayloadStore.POINTER_PREFIX + "shared-pointer";
+    private static final int PAYLOAD_SIZE = 100;
+
+    private StreamingPayloadStore mockPayloadStore;
+
+    @Before
+    public void setupStore() {
+        mockPayloadStore = mock(StreamingPayloadStore.class);
+        when(mockPayloadStore.getOriginalPayloadBytes(anyString(), anyLong()))
+                .thenAnswer(invocation -> getPayload((String) invocation.getArguments()[0]));
+    }
+
+    @Test
+    public void testCachedPayloadIsRetrievedOnce() throws Exception {
+        for (boolean offHeap : new boolean[] { false, true }) {
+            reset(mockPayloadStore);
+            setupStore();
+            CachingPayloadStore payloadStore = new CachingPayloadStore(mockPayloadStore, 10 * PAYLOAD_SIZE, offHeap, false);
+
+            Assert.assertArrayEquals(getPayload(FIRST_POINTER), payloadStore.getOriginalPayloadBytes(FIRST_POINTER, -1));
+            Assert.assertEquals(new String(getPayload(FIRST_POINTER), StandardCharsets.UTF_8),
+                    payloadStore.getOriginalPayload(FIRST_POINTER));
+            try (InputStream payload = payloadStore.getOriginalPayloadStream(FIRST_POINTER)) {
+                Assert.assertArrayEquals(getPayload(FIRST_POINTER), IOUtils.toByteArray(payload));
+            }
+
+            verify(mockPayloadStore, times(1)).getOriginalPayloadBytes(FIRST_POINTER, -1);
+            verify(mockPayloadStore, never()).getOriginalPayloadStream(anyString());
+            Assert.assertEquals(PAYLOAD_SIZE, payloadStore.getSize());
+        }
+    }
+
+    @Test
+    public void testSharedMemoryPayloadIsNotCached() {
+        CachingPayloadStore payloadStore = new CachingPayloadStore(mockPayloadStore, 10 * PAYLOAD_SIZE, false, false);
+
+        payloadStore.getOriginalPayloadBytes(SHARED_MEMORY_POINTER, -1);
+        payloadStore.getOriginalPayloadBytes(SHARED_MEMORY_POINTER, -1);
+
+        verify(mockPayloadStore, times(2)).getOriginalPayloadBytes(SHARED_MEMORY_POINTER, -1);
+        Assert.assertEquals(0, payloadStore.getSize());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedPayloadIsEvictedBeyondMaxSize() {
+        CachingPayloadStore payloadStore = new CachingPayloadStore(mockPayloadStore, 2 * PAYLOAD_SIZE, false, false);
+
+        payloadStore.getOriginalPayloadBytes(FIRST_POINTER, -1);
+        payloadStore.getOriginalPayloadBytes(SECOND_POINTER, -1);
+        payloadStore.getOriginalPayloadBytes(FIRST_POINTER, -1);
+        payloadStore.getOriginalPayloadBytes(THIRD_POINTER, -1);
+        payloadStore.getOriginalPayloadBytes(FIRST_POINTER, -1);
+        payloadStore.getOriginalPayloadBytes(SECOND_POINTER, -1);
+
+        verify(mockPayloadStore, times(1)).getOriginalPayloadBytes(FIRST_POINTER, -1);
+        verify(mockPayloadStore, times(2)).getOriginalPayloadBytes(SECOND_POINTER, -1);
+        Assert.assertEquals(2 * PAYLOAD_SIZE, payloadStore.getSize());
+    }
+
+    @Test
+    public void testPayloadLargerThanMaxSizeIsNotCached() {
+        CachingPayloadStore payloadStore = new CachingPayloadStore(mockPayloadStore, PAYLOAD_SIZE - 1, false, false);
+
+        payloadStore.getOriginalPayloadBytes(FIRST_POINTER, -1);
+        payloadStore.getOriginalPayloadBytes(FIRST_POINTER, -1);
+
+        verify(mockPayloadStore, times(2)).getOriginalPayloadBytes(FIRST_POINTER, -1);
+        Assert.assertEquals(0, payloadStore.getSize());
+    }
+
+    @Test
+    public void testDeletedPayloadIsEvicted() {
+        CachingPayloadStore payloadStore = new CachingPayloadStore(mockPayloadStore, 10 * PAYLOAD_SIZE, false, false);
+        payloadStore.getOriginalPayloadBytes(FIRST_POINTER, -1);
+        payloadStore.getOriginalPayloadBytes(SECOND_POINTER, -1);
+
+        payloadStore.deleteOriginalPayload(FIRST_POINTER);
+        payloadStore.deleteOriginalPayloads(Arrays.asList(SECOND_POINTER));
+        payloadStore.getOriginalPayloadBytes(FIRST_POINTER, -1);
+
+        verify(mockPayloadStore).deleteOriginalPayload(FIRST_POINTER);
+        verify(mockPayloadStore).deleteOriginalPayloads(Arrays.asList(SECOND_POINTER));
+        verify(mockPayloadStore, times(2)).getOriginalPayloadBytes(FIRST_POINTER, -1);
+        Assert.assertEquals(PAYLOAD_SIZE, payloadStore.getSize());
+    }
+
+    @Test
+    public void testS3PointersAreCachedByBucketAndKey() {
+        CachingPayloadStore payloadStore = new CachingPayloadStore(mockPayloadStore, 10 * PAYLOAD_SIZE, false, true);
+        payloadStore.getOriginalPayloadBytes(REORDERED_S3_POINTER, -1);
+        payloadStore.getOriginalPayloadBytes(S3_POINTER, -1);
+
+        payloadStore.deleteOriginalPayload(S3_POINTER);
+
+        verify(mockPayloadStore, times(1)).getOriginalPayloadBytes(REORDERED_S3_POINTER, -1);
+        verify(mockPayloadStore, never()).getOriginalPayloadBytes(S3_POINTER, -1);
+        Assert.assertEquals(0, payloadStore.getSize());
+    }
+
+    @Test
+    public void testConcurrentRetrievalsAreCollapsed() throws Exception {
+        CountDownLatch retrievalStarted = new CountDownLatch(1);
+        CountDownLatch retrievalReleased = new CountDownLatch(1);
+        reset(mockPayloadStore);
+        when(mockPayloadStore.getOriginalPayloadBytes(anyString(), anyLong())).thenAnswer(invocation -> {
+            retrievalStarted.countDown();
+            retrievalReleased.await();
+            return getPayload(FIRST_POINTER);
+        });
+        CachingPayloadStore payloadStore = new CachingPayloadStore(mockPayloadStore, 10 * PAYLOAD_SIZE, false, false);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<byte[]> firstRetrieval = executor.submit(() -> payloadStore.getOriginalPayloadBytes(FIRST_POINTER, -1));
+            Assert.assertTrue(retrievalStarted.await(10, TimeUnit.SECONDS));
+            Future<byte[]> secondRetrieval = executor.submit(() -> payloadStore.getOriginalPayloadBytes(FIRST_POINTER, -1));
+            Future<byte[]> thirdRetrieval = executor.submit(() -> payloadStore.getOriginalPayloadBytes(FIRST_POINTER, -1));
+            Thread.sleep(100);
+            retrievalReleased.countDown();
+
+            Assert.assertArrayEquals(getPayload(FIRST_POINTER), firstRetrieval.get(10, TimeUnit.SECONDS));
+            Assert.assertArrayEquals(getPayload(FIRST_POINTER), secondRetrieval.get(10, TimeUnit.SECONDS));
+            Assert.assertArrayEquals(getPayload(FIRST_POINTER), thirdRetrieval.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(mockPayloadStore, times(1)).getOriginalPayloadBytes(FIRST_POINTER, -1);
+    }
+
+    private static byte[] getPayload(String payloadPointer) {
+        byte[] payload = new byte[PAYLOAD_SIZE];
+        Arrays.fill(payload, (byte) payloadPointer.charAt(0));
+        return payload;
+    }
+}
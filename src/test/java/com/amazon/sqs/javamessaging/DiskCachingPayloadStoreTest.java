@@ -0,0 +1,192 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.amazonaws.util.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import software.amazon.payloadoffloading.PayloadS3Pointer;
+
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the DiskCachingPayloadStore class.
+ */
+public class DiskCachingPayloadStoreTest {
+
+    private static final String FIRST_POINTER = "first-pointer";
+    private static final String SECOND_POINTER = "second-pointer";
+    private static final String THIRD_POINTER = "third-pointer";
+    private static final String FOURTH_POINTER = "fourth-pointer";
+    private static final String S3_POINTER = new PayloadS3Pointer("bucket", "key").toJson();
+    // The same object as S3_POINTER, written by another writer.
+    private static final String REORDERED_S3_POINTER = "{\"s3Key\": \"key\", \"s3BucketName\": \"bucket\"}";
+    private static final String SHARED_MEMORY_POINTER = SharedMemoryPayloadStore.POINTER_PREFIX + "shared-pointer";
+    private static final int PAYLOAD_SIZE = 100;
+    // Payload and header of a cached file.
+    private static final int CACHED_FILE_SIZE = PAYLOAD_SIZE + 16;
+
+    private Path directory;
+    private StreamingPayloadStore mockPayloadStore;
+
+    @Before
+    public void setupStore() throws Exception {
+        directory = Files.createTempDirectory("payload-cache");
+        mockPayloadStore = mock(StreamingPayloadStore.class);
+        when(mockPayloadStore.getOriginalPayloadBytes(anyString(), anyLong()))
+                .thenAnswer(invocation -> getPayload((String) invocation.getArguments()[0]));
+    }
+
+    @After
+    public void deleteDirectory() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testPayloadCachedByOneStoreIsReadByAnotherStoreOnTheSameDirectory() throws Exception {
+        DiskCachingPayloadStore firstStore = new DiskCachingPayloadStore(mockPayloadStore, directory, 10 * CACHED_FILE_SIZE, false);
+        DiskCachingPayloadStore secondStore = new DiskCachingPayloadStore(mockPayloadStore, directory, 10 * CACHED_FILE_SIZE, false);
+
+        Assert.assertArrayEquals(getPayload(FIRST_POINTER), firstStore.getOriginalPayloadBytes(FIRST_POINTER, -1));
+        Assert.assertArrayEquals(getPayload(FIRST_POINTER), secondStore.getOriginalPayloadBytes(FIRST_POINTER, -1));
+        try (InputStream payload = secondStore.getOriginalPayloadStream(FIRST_POINTER)) {
+            Assert.assertArrayEquals(getPayload(FIRST_POINTER), IOUtils.toByteArray(payload));
+        }
+
+        verify(mockPayloadStore, times(1)).getOriginalPayloadBytes(FIRST_POINTER, -1);
+        verify(mockPayloadStore, never()).getOriginalPayloadStream(anyString());
+    }
+
+    @Test
+    public void testCorruptCachedPayloadIsRetrievedAgain() throws Exception {
+        DiskCachingPayloadStore payloadStore = new DiskCachingPayloadStore(mockPayloadStore, directory, 10 * CACHED_FILE_SIZE, false);
+        payloadStore.getOriginalPayloadBytes(FIRST_POINTER, -1);
+        Path cachedFile = getCachedFiles()[0];
+        byte[] cachedBytes = Files.readAllBytes(cachedFile);
+        cachedBytes[cachedBytes.length - 1] ^= 1;
+        Files.write(cachedFile, cachedBytes);
+
+        Assert.assertArrayEquals(getPayload(FIRST_POINTER), payloadStore.getOriginalPayloadBytes(FIRST_POINTER, -1));
+
+        verify(mockPayloadStore, times(2)).getOriginalPayloadBytes(FIRST_POINTER, -1);
+        Assert.assertArrayEquals(getPayload(FIRST_POINTER), payloadStore.getOriginalPayloadBytes(FIRST_POINTER, -1));
+        verify(mockPayloadStore, times(2)).getOriginalPayloadBytes(FIRST_POINTER, -1);
+    }
+
+    @Test
+    public void testLeastRecentlyReadPayloadsAreEvictedDownToTheLowWaterMarkBeyondMaxSize() throws Exception {
+        DiskCachingPayloadStore payloadStore = new DiskCachingPayloadStore(mockPayloadStore, directory, 3 * CACHED_FILE_SIZE, false);
+        payloadStore.getOriginalPayloadBytes(FIRST_POINTER, -1);
+        Path firstCachedFile = getCachedFiles()[0];
+        Files.setLastModifiedTime(firstCachedFile, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+        payloadStore.getOriginalPayloadBytes(SECOND_POINTER, -1);
+        Path secondCachedFile = Arrays.stream(getCachedFiles()).filter(file -> !file.equals(firstCachedFile))
+                .findFirst().get();
+        Files.setLastModifiedTime(secondCachedFile, FileTime.fromMillis(System.currentTimeMillis() - 30_000));
+        payloadStore.getOriginalPayloadBytes(THIRD_POINTER, -1);
+        Assert.assertEquals(3, getCachedFiles().length);
+
+        payloadStore.getOriginalPayloadBytes(FOURTH_POINTER, -1);
+
+        Assert.assertEquals(2, getCachedFiles().length);
+        Assert.assertFalse(Files.exists(firstCachedFile));
+        Assert.assertFalse(Files.exists(secondCachedFile));
+        payloadStore.getOriginalPayloadBytes(THIRD_POINTER, -1);
+        verify(mockPayloadStore, times(1)).getOriginalPayloadBytes(THIRD_POINTER, -1);
+    }
+
+    @Test
+    public void testSharedMemoryPayloadIsNotCached() throws Exception {
+        DiskCachingPayloadStore payloadStore = new DiskCachingPayloadStore(mockPayloadStore, directory, 10 * CACHED_FILE_SIZE, false);
+
+        payloadStore.getOriginalPayloadBytes(SHARED_MEMORY_POINTER, -1);
+        payloadStore.getOriginalPayloadBytes(SHARED_MEMORY_POINTER, -1);
+
+        verify(mockPayloadStore, times(2)).getOriginalPayloadBytes(SHARED_MEMORY_POINTER, -1);
+        Assert.assertEquals(0, getCachedFiles().length);
+    }
+
+    @Test
+    public void testS3PointersAreCachedByBucketAndKey() throws Exception {
+        DiskCachingPayloadStore payloadStore = new DiskCachingPayloadStore(mockPayloadStore, directory, 10 * CACHED_FILE_SIZE, true);
+        payloadStore.getOriginalPayloadBytes(REORDERED_S3_POINTER, -1);
+        payloadStore.getOriginalPayloadBytes(S3_POINTER, -1);
+
+        payloadStore.deleteOriginalPayload(S3_POINTER);
+
+        verify(mockPayloadStore, times(1)).getOriginalPayloadBytes(REORDERED_S3_POINTER, -1);
+        verify(mockPayloadStore, never()).getOriginalPayloadBytes(S3_POINTER, -1);
+        Assert.assertEquals(0, getCachedFiles().length);
+    }
+
+    @Test
+    public void testDeletedPayloadIsEvicted() throws Exception {
+        DiskCachingPayloadStore payloadStore = new DiskCachingPayloadStore(mockPayloadStore, directory, 10 * CACHED_FILE_SIZE, false);
+        payloadStore.getOriginalPayloadBytes(FIRST_POINTER, -1);
+        payloadStore.getOriginalPayloadBytes(SECOND_POINTER, -1);
+
+        payloadStore.deleteOriginalPayload(FIRST_POINTER);
+        payloadStore.deleteOriginalPayloads(Arrays.asList(SECOND_POINTER));
+
+        verify(mockPayloadStore).deleteOriginalPayload(FIRST_POINTER);
+        verify(mockPayloadStore).deleteOriginalPayloads(Arrays.asList(SECOND_POINTER));
+        Assert.assertEquals(0, getCachedFiles().length);
+    }
+
+    @Test
+    public void testPayloadDeletedWhileItIsRetrievedIsNotCached() throws Exception {
+        DiskCachingPayloadStore payloadStore = new DiskCachingPayloadStore(mockPayloadStore, directory, 10 * CACHED_FILE_SIZE, false);
+        when(mockPayloadStore.getOriginalPayloadBytes(FIRST_POINTER, -1)).thenAnswer(invocation -> {
+            payloadStore.deleteOriginalPayload(FIRST_POINTER);
+            return getPayload(FIRST_POINTER);
+        });
+
+        Assert.assertArrayEquals(getPayload(FIRST_POINTER), payloadStore.getOriginalPayloadBytes(FIRST_POINTER, -1));
+
+        verify(mockPayloadStore).deleteOriginalPayload(FIRST_POINTER);
+        Assert.assertEquals(0, getCachedFiles().length);
+    }
+
+    private Path[] getCachedFiles() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".payload")).collect(Collectors.toList()).toArray(new Path[0]);
+        }
+    }
+
+    private static byte[] getPayload(String payloadPointer) {
+        byte[] payload = new byte[PAYLOAD_SIZE];
+        Arrays.fill(payload, (byte) payloadPointer.charAt(0));
+        return payload;
+    }
+}
@@ -15,6 +15,12 @@
 
 package com.amazon.sqs.javamessaging;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.SSEAwsKeyManagementParams;
@@ -59,6 +65,203 @@ public class ExtendedClientConfigurationTest {
         Assert.assertNotSame(newExtendedClientConfig, extendedClientConfig);
     }
 
+    @Test
+    public void testCopyConstructorCopiesPayloadExecutorSettings() {
+        ExecutorService executor = mock(ExecutorService.class);
+        long payloadBatchTimeoutMillis = 1000;
+        int payloadUploadConcurrency = 4;
+
+        ExtendedClientConfiguration extendedClientConfig = new ExtendedClientConfiguration()
+                .withPayloadExecutor(executor)
+                .withPayloadBatchTimeoutMillis(payloadBatchTimeoutMillis)
+                .withPayloadUploadConcurrency(payloadUploadConcurrency);
+
+        ExtendedClientConfiguration newExtendedClientConfig = new ExtendedClientConfiguration(extendedClientConfig);
+
+        Assert.assertSame(executor, newExtendedClientConfig.getPayloadExecutor());
+        Assert.assertEquals(payloadBatchTimeoutMillis, newExtendedClientConfig.getPayloadBatchTimeoutMillis());
+        Assert.assertEquals(payloadUploadConcurrency, newExtendedClientConfig.getPayloadUploadConcurrency());
+    }
+
+    @Test
+    public void testCopyConstructorCopiesMultipartTransferSettings() {
+        ExtendedClientConfiguration extendedClientConfig = new ExtendedClientConfiguration()
+                .withMultipartUploadThreshold(100L * 1024 * 1024)
+                .withMultipartUploadPartSize(8L * 1024 * 1024)
+                .withMultipartUploadConcurrency(6)
+                .withMultipartUploadPartRetries(5)
+                .withRangedDownloadThreshold(200L * 1024 * 1024)
+                .withRangedDownloadPartSize(32L * 1024 * 1024)
+                .withRangedDownloadConcurrency(8);
+
+        ExtendedClientConfiguration newExtendedClientConfig = new ExtendedClientConfiguration(extendedClientConfig);
+
+        Assert.assertEquals(100L * 1024 * 1024, newExtendedClientConfig.getMultipartUploadThreshold());
+        Assert.assertEquals(8L * 1024 * 1024, newExtendedClientConfig.getMultipartUploadPartSize());
+        Assert.assertEquals(6, newExtendedClientConfig.getMultipartUploadConcurrency());
+        Assert.assertEquals(5, newExtendedClientConfig.getMultipartUploadPartRetries());
+        Assert.assertEquals(200L * 1024 * 1024, newExtendedClientConfig.getRangedDownloadThreshold());
+        Assert.assertEquals(32L * 1024 * 1024, newExtendedClientConfig.getRangedDownloadPartSize());
+        Assert.assertEquals(8, newExtendedClientConfig.getRangedDownloadConcurrency());
+    }
+
+    @Test
+    public void testCopyConstructorCopiesCompressionSettings() {
+        ExtendedClientConfiguration extendedClientConfig = new ExtendedClientConfiguration()
+                .withPayloadCodec(PayloadCodecs.GZIP)
+                .withInlineCompressionEnabled(true);
+
+        ExtendedClientConfiguration newExtendedClientConfig = new ExtendedClientConfiguration(extendedClientConfig);
+
+        Assert.assertSame(PayloadCodecs.GZIP, newExtendedClientConfig.getPayloadCodec());
+        Assert.assertTrue(newExtendedClientConfig.isInlineCompressionEnabled());
+        Assert.assertNull(new ExtendedClientConfiguration().getPayloadCodec());
+        Assert.assertFalse(new ExtendedClientConfiguration().isInlineCompressionEnabled());
+    }
+
+    @Test
+    public void testCopyConstructorCopiesPayloadDeduplicationSettings() {
+        ExtendedClientConfiguration extendedClientConfig = new ExtendedClientConfiguration()
+                .withPayloadDeduplicationEnabled(true)
+                .withPayloadDeduplicationMaxAgeMillis(60000)
+                .withPayloadDeduplicationCacheSize(100);
+
+        ExtendedClientConfiguration newExtendedClientConfig = new ExtendedClientConfiguration(extendedClientConfig);
+
+        Assert.assertTrue(newExtendedClientConfig.isPayloadDeduplicationEnabled());
+        Assert.assertEquals(60000, newExtendedClientConfig.getPayloadDeduplicationMaxAgeMillis());
+        Assert.assertEquals(100, newExtendedClientConfig.getPayloadDeduplicationCacheSize());
+        Assert.assertFalse(new ExtendedClientConfiguration().isPayloadDeduplicationEnabled());
+    }
+
+    @Test
+    public void testCopyConstructorCopiesBackgroundPayloadDeletionSettings() {
+        ExtendedClientConfiguration extendedClientConfig = new ExtendedClientConfiguration()
+                .withBackgroundPayloadDeletionEnabled(true)
+                .withBackgroundPayloadDeletionQueueSize(500)
+                .withBackgroundPayloadDeletionMaxAttempts(2);
+
+        ExtendedClientConfiguration newExtendedClientConfig = new ExtendedClientConfiguration(extendedClientConfig);
+
+        Assert.assertTrue(newExtendedClientConfig.isBackgroundPayloadDeletionEnabled());
+        Assert.assertEquals(500, newExtendedClientConfig.getBackgroundPayloadDeletionQueueSize());
+        Assert.assertEquals(2, newExtendedClientConfig.getBackgroundPayloadDeletionMaxAttempts());
+        Assert.assertFalse(new ExtendedClientConfiguration().isBackgroundPayloadDeletionEnabled());
+    }
+
+    @Test
+    public void testCopyConstructorCopiesPayloadKeyLayout() {
+        ExtendedClientConfiguration extendedClientConfig = new ExtendedClientConfiguration()
+                .withPayloadKeyPrefix("orders/")
+                .withPayloadKeyHashPrefixCount(256);
+
+        ExtendedClientConfiguration newExtendedClientConfig = new ExtendedClientConfiguration(extendedClientConfig);
+
+        Assert.assertEquals("orders/", newExtendedClientConfig.getPayloadKeyPrefix());
+        Assert.assertEquals(256, newExtendedClientConfig.getPayloadKeyHashPrefixCount());
+        Assert.assertEquals("", new ExtendedClientConfiguration().getPayloadKeyPrefix());
+        Assert.assertEquals(0, new ExtendedClientConfiguration().getPayloadKeyHashPrefixCount());
+    }
+
+    @Test
+    public void testCopyConstructorCopiesAdditionalPayloadBuckets() {
+        AmazonS3 s3 = mock(AmazonS3.class);
+        ExtendedClientConfiguration extendedClientConfig = new ExtendedClientConfiguration()
+                .withAdditionalPayloadBuckets(Collections.singletonMap("second-bucket", s3))
+                .withPayloadBucketSelection(PayloadBucketSelection.LATENCY_WEIGHTED);
+
+        ExtendedClientConfiguration newExtendedClientConfig = new ExtendedClientConfiguration(extendedClientConfig);
+
+        Assert.assertEquals(Collections.singletonMap("second-bucket", s3), newExtendedClientConfig.getAdditionalPayloadBuckets());
+        Assert.assertEquals(PayloadBucketSelection.LATENCY_WEIGHTED, newExtendedClientConfig.getPayloadBucketSelection());
+        Assert.assertTrue(new ExtendedClientConfiguration().getAdditionalPayloadBuckets().isEmpty());
+        Assert.assertEquals(PayloadBucketSelection.ROUND_ROBIN, new ExtendedClientConfiguration().getPayloadBucketSelection());
+    }
+
+    @Test
+    public void testCopyConstructorCopiesPayloadSizeBands() {
+        PayloadSizeBand band = new PayloadSizeBand(1024).withKeyPrefix("hot/");
+        ExtendedClientConfiguration extendedClientConfig = new ExtendedClientConfiguration()
+                .withPayloadSizeBands(Collections.singletonList(band));
+
+        ExtendedClientConfiguration newExtendedClientConfig = new ExtendedClientConfiguration(extendedClientConfig);
+
+        Assert.assertEquals(Collections.singletonList(band), newExtendedClientConfig.getPayloadSizeBands());
+        Assert.assertTrue(new ExtendedClientConfiguration().getPayloadSizeBands().isEmpty());
+    }
+
+    @Test
+    public void testCopyConstructorCopiesPayloadCacheSettings() {
+        ExtendedClientConfiguration extendedClientConfig = new ExtendedClientConfiguration()
+                .withPayloadCacheMaxSize(256L * 1024 * 1024)
+                .withPayloadCacheOffHeap(true);
+
+        ExtendedClientConfiguration newExtendedClientConfig = new ExtendedClientConfiguration(extendedClientConfig);
+
+        Assert.assertEquals(256L * 1024 * 1024, newExtendedClientConfig.getPayloadCacheMaxSize());
+        Assert.assertTrue(newExtendedClientConfig.isPayloadCacheOffHeap());
+        Assert.assertEquals(0, new ExtendedClientConfiguration().getPayloadCacheMaxSize());
+        Assert.assertFalse(new ExtendedClientConfiguration().isPayloadCacheOffHeap());
+    }
+
+    @Test
+    public void testCopyConstructorCopiesPayloadCacheDirectorySettings() {
+        Path directory = Paths.get("/var/cache/sqs-payloads");
+        ExtendedClientConfiguration extendedClientConfig = new ExtendedClientConfiguration()
+                .withPayloadCacheDirectory(directory)
+                .withPayloadCacheDirectoryMaxSize(8L * 1024 * 1024 * 1024);
+
+        ExtendedClientConfiguration newExtendedClientConfig = new ExtendedClientConfiguration(extendedClientConfig);
+
+        Assert.assertEquals(directory, newExtendedClientConfig.getPayloadCacheDirectory());
+        Assert.assertEquals(8L * 1024 * 1024 * 1024, newExtendedClientConfig.getPayloadCacheDirectoryMaxSize());
+        Assert.assertNull(new ExtendedClientConfiguration().getPayloadCacheDirectory());
+        Assert.assertEquals(ExtendedClientConfiguration.DEFAULT_PAYLOAD_CACHE_DIRECTORY_MAX_SIZE,
+                new ExtendedClientConfiguration().getPayloadCacheDirectoryMaxSize());
+    }
+
+    @Test
+    public void testPayloadStoreEnablesPayloadSupportUntilDisabled() {
+        InMemoryPayloadStore payloadStore = new InMemoryPayloadStore();
+        ExtendedClientConfiguration extendedClientConfig = new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(payloadStore);
+
+        ExtendedClientConfiguration newExtendedClientConfig = new ExtendedClientConfiguration(extendedClientConfig);
+
+        Assert.assertTrue(newExtendedClientConfig.isPayloadSupportEnabled());
+        Assert.assertSame(payloadStore, newExtendedClientConfig.getPayloadStore());
+        newExtendedClientConfig.setPayloadSupportDisabled();
+        Assert.assertFalse(newExtendedClientConfig.isPayloadSupportEnabled());
+        Assert.assertNull(newExtendedClientConfig.getPayloadStore());
+    }
+
+    @Test
+    public void testCopyConstructorCopiesSharedMemorySettings() {
+        Path directory = Paths.get("/dev/shm/payloads");
+        ExtendedClientConfiguration extendedClientConfig = new ExtendedClientConfiguration()
+                .withSharedMemoryPayloadDirectory(directory)
+                .withSharedMemoryPayloadMaxSize(1024)
+                .withSharedMemoryPayloadMaxAgeMillis(60000);
+
+        ExtendedClientConfiguration newExtendedClientConfig = new ExtendedClientConfiguration(extendedClientConfig);
+
+        Assert.assertEquals(directory, newExtendedClientConfig.getSharedMemoryPayloadDirectory());
+        Assert.assertEquals(1024, newExtendedClientConfig.getSharedMemoryPayloadMaxSize());
+        Assert.assertEquals(60000, newExtendedClientConfig.getSharedMemoryPayloadMaxAgeMillis());
+        Assert.assertEquals(ExtendedClientConfiguration.DEFAULT_SHARED_MEMORY_PAYLOAD_MAX_AGE_MILLIS,
+                new ExtendedClientConfiguration().getSharedMemoryPayloadMaxAgeMillis());
+        Assert.assertNull(new ExtendedClientConfiguration().getSharedMemoryPayloadDirectory());
+    }
+
+    @Test
+    public void testPayloadExecutorIsDisabledByDefault() {
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration();
+
+        Assert.assertNull(extendedClientConfiguration.getPayloadExecutor());
+        Assert.assertEquals(0, extendedClientConfiguration.getPayloadBatchTimeoutMillis());
+        Assert.assertEquals(0, extendedClientConfiguration.getPayloadUploadConcurrency());
+    }
+
     @Test
     public void testLargePayloadSupportEnabledWithDefaultDeleteFromS3Config() {
         AmazonS3 s3 = mock(AmazonS3.class);
@@ -152,6 +355,43 @@ public class ExtendedClientConfigurationTest {
         verify(s3, never()).putObject(isA(PutObjectRequest.class));
     }
 
+    @Test(expected = AmazonClientException.class)
+    public void testMultipartUploadPartSizeBelowTheAmazonS3MinimumIsRejected() {
+        new ExtendedClientConfiguration().withMultipartUploadPartSize(MultipartPayloadUploader.MIN_PART_SIZE - 1);
+    }
+
+    @Test(expected = AmazonClientException.class)
+    public void testZeroMultipartUploadConcurrencyIsRejected() {
+        new ExtendedClientConfiguration().withMultipartUploadConcurrency(0);
+    }
+
+    @Test(expected = AmazonClientException.class)
+    public void testNegativeMultipartUploadPartRetriesAreRejected() {
+        new ExtendedClientConfiguration().withMultipartUploadPartRetries(-1);
+    }
+
+    @Test
+    public void testSmallestValidMultipartUploadSettingsAreAccepted() {
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                .withMultipartUploadPartSize(MultipartPayloadUploader.MIN_PART_SIZE)
+                .withMultipartUploadConcurrency(1)
+                .withMultipartUploadPartRetries(0);
+
+        Assert.assertEquals(MultipartPayloadUploader.MIN_PART_SIZE, extendedClientConfiguration.getMultipartUploadPartSize());
+        Assert.assertEquals(1, extendedClientConfiguration.getMultipartUploadConcurrency());
+        Assert.assertEquals(0, extendedClientConfiguration.getMultipartUploadPartRetries());
+    }
+
+    @Test(expected = AmazonClientException.class)
+    public void testZeroRangedDownloadPartSizeIsRejected() {
+        new ExtendedClientConfiguration().withRangedDownloadPartSize(0);
+    }
+
+    @Test(expected = AmazonClientException.class)
+    public void testZeroRangedDownloadConcurrencyIsRejected() {
+        new ExtendedClientConfiguration().withRangedDownloadConcurrency(0);
+    }
+
     @Test
     public void testMessageSizeThreshold() {
 
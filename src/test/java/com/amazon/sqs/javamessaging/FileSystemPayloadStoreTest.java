@@ -0,0 +1,84 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.util.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the FileSystemPayloadStore class.
+ */
+public class FileSystemPayloadStoreTest {
+
+    private Path directory;
+    private FileSystemPayloadStore payloadStore;
+
+    @Before
+    public void setupStore() throws Exception {
+        directory = Files.createTempDirectory("payloads");
+        payloadStore = new FileSystemPayloadStore(directory);
+    }
+
+    @After
+    public void deleteDirectory() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testStoredPayloadIsReadBackAndDeleted() throws Exception {
+        byte[] payload = new byte[] {0, 1, 2, (byte) 0xff};
+
+        String payloadPointer = payloadStore.storeOriginalPayload(new ByteArrayInputStream(payload), payload.length);
+
+        Assert.assertArrayEquals(payload, payloadStore.getOriginalPayloadBytes(payloadPointer, payload.length));
+        try (InputStream payloadStream = new FileSystemPayloadStore(directory).getOriginalPayloadStream(payloadPointer)) {
+            Assert.assertArrayEquals(payload, IOUtils.toByteArray(payloadStream));
+        }
+        payloadStore.deleteOriginalPayloads(Arrays.asList(payloadPointer));
+        try (Stream<Path> files = Files.list(directory)) {
+            Assert.assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    public void testStringPayloadIsReadBack() {
+        String payloadPointer = payloadStore.storeOriginalPayload("payload", 7L);
+
+        Assert.assertEquals("payload", payloadStore.getOriginalPayload(payloadPointer));
+    }
+
+    @Test(expected = AmazonClientException.class)
+    public void testPointerOutsideOfTheDirectoryIsRejected() {
+        payloadStore.getOriginalPayload("../payload");
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the MultipartPayloadUploader class.
+ */
+public class MultipartPayloadUploaderTest {
+
+    private static final String S3_BUCKET_NAME = "test-bucket-name";
+    private static final String S3_KEY = "test-key";
+    private static final String UPLOAD_ID = "test-upload-id";
+    private static final int PART_SIZE = (int) MultipartPayloadUploader.MIN_PART_SIZE;
+
+    private AmazonS3 mockS3;
+    private ExecutorService executor;
+
+    @Before
+    public void setupS3() {
+        executor = Executors.newFixedThreadPool(4);
+        mockS3 = mock(AmazonS3.class);
+        InitiateMultipartUploadResult initiateResult = new InitiateMultipartUploadResult();
+        initiateResult.setUploadId(UPLOAD_ID);
+        when(mockS3.initiateMultipartUpload(isA(InitiateMultipartUploadRequest.class))).thenReturn(initiateResult);
+    }
+
+    @After
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testFailedPartIsRetriedIndividuallyAndPartsAreCompletedInOrder() {
+        AtomicBoolean failedOnce = new AtomicBoolean();
+        when(mockS3.uploadPart(isA(UploadPartRequest.class))).thenAnswer(invocation -> {
+            UploadPartRequest uploadPartRequest = (UploadPartRequest) invocation.getArguments()[0];
+            if (uploadPartRequest.getPartNumber() == 2 && failedOnce.compareAndSet(false, true)) {
+                throw new AmazonClientException("transient failure");
+            }
+            UploadPartResult uploadPartResult = new UploadPartResult();
+            uploadPartResult.setPartNumber(uploadPartRequest.getPartNumber());
+            uploadPartResult.setETag("etag-" + uploadPartRequest.getPartNumber());
+            return uploadPartResult;
+        });
+        MultipartPayloadUploader uploader = new MultipartPayloadUploader(mockS3, PART_SIZE, 3, 2, executor);
+
+        int payloadSize = PART_SIZE * 2 + 10;
+        uploader.upload(S3_BUCKET_NAME, S3_KEY, new ByteArrayInputStream(new byte[payloadSize]), payloadSize,
+                new ObjectMetadata(), null);
+
+        ArgumentCaptor<CompleteMultipartUploadRequest> completeRequest = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(mockS3, times(4)).uploadPart(isA(UploadPartRequest.class));
+        verify(mockS3).completeMultipartUpload(completeRequest.capture());
+        verify(mockS3, never()).abortMultipartUpload(isA(AbortMultipartUploadRequest.class));
+        List<PartETag> partETags = completeRequest.getValue().getPartETags();
+        Assert.assertEquals(3, partETags.size());
+        for (int i = 0; i < partETags.size(); i++) {
+            Assert.assertEquals(i + 1, partETags.get(i).getPartNumber());
+        }
+    }
+
+    @Test
+    public void testPayloadOfUnknownSizeIsUploadedUntilItEnds() {
+        when(mockS3.uploadPart(isA(UploadPartRequest.class))).thenAnswer(invocation -> {
+            UploadPartRequest uploadPartRequest = (UploadPartRequest) invocation.getArguments()[0];
+            UploadPartResult uploadPartResult = new UploadPartResult();
+            uploadPartResult.setPartNumber(uploadPartRequest.getPartNumber());
+            uploadPartResult.setETag("etag-" + uploadPartRequest.getPartNumber());
+            return uploadPartResult;
+        });
+        MultipartPayloadUploader uploader = new MultipartPayloadUploader(mockS3, PART_SIZE, 2, 0, executor);
+
+        uploader.upload(S3_BUCKET_NAME, S3_KEY, new ByteArrayInputStream(new byte[PART_SIZE * 2]), -1,
+                new ObjectMetadata(), null);
+
+        ArgumentCaptor<UploadPartRequest> uploadPartRequest = ArgumentCaptor.forClass(UploadPartRequest.class);
+        verify(mockS3, times(2)).uploadPart(uploadPartRequest.capture());
+        verify(mockS3).completeMultipartUpload(isA(CompleteMultipartUploadRequest.class));
+        for (UploadPartRequest request : uploadPartRequest.getAllValues()) {
+            Assert.assertEquals(PART_SIZE, request.getPartSize());
+        }
+    }
+
+    @Test
+    public void testWhenPartKeepsFailingThenUploadIsAborted() {
+        when(mockS3.uploadPart(isA(UploadPartRequest.class))).thenThrow(new AmazonClientException("permanent failure"));
+        MultipartPayloadUploader uploader = new MultipartPayloadUploader(mockS3, PART_SIZE, 2, 1, executor);
+
+        int payloadSize = PART_SIZE * 2;
+        try {
+            uploader.upload(S3_BUCKET_NAME, S3_KEY, new ByteArrayInputStream(new byte[payloadSize]), payloadSize,
+                    new ObjectMetadata(), null);
+            Assert.fail("Expected the upload to fail.");
+        } catch (AmazonClientException e) {
+            Assert.assertEquals("permanent failure", e.getMessage());
+        }
+
+        ArgumentCaptor<AbortMultipartUploadRequest> abortRequest = ArgumentCaptor.forClass(AbortMultipartUploadRequest.class);
+        verify(mockS3).abortMultipartUpload(abortRequest.capture());
+        verify(mockS3, never()).completeMultipartUpload(isA(CompleteMultipartUploadRequest.class));
+        Assert.assertEquals(UPLOAD_ID, abortRequest.getValue().getUploadId());
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import com.amazonaws.AmazonClientException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the PayloadKeyLayout class.
+ */
+public class PayloadKeyLayoutTest {
+
+    @Test
+    public void testFlatLayoutKeepsTheName() {
+        Assert.assertEquals("name", PayloadKeyLayout.FLAT.getKey("name"));
+        Assert.assertEquals("orders/name", new PayloadKeyLayout("orders/", 0).getKey("name"));
+    }
+
+    @Test
+    public void testKeysAreSpreadAcrossAllHashedPrefixes() {
+        PayloadKeyLayout keyLayout = new PayloadKeyLayout("orders/", 256);
+        Set<String> prefixes = new HashSet<>();
+
+        for (int i = 0; i < 10000; i++) {
+            String name = UUID.randomUUID().toString();
+            String key = keyLayout.getKey(name);
+            Assert.assertTrue(key.matches("orders/[0-9a-f]{2}/" + name));
+            Assert.assertEquals(key, keyLayout.getKey(name));
+            prefixes.add(key.substring(0, key.lastIndexOf('/')));
+        }
+
+        Assert.assertEquals(256, prefixes.size());
+    }
+
+    @Test
+    public void testContentAddressedKeysAreRecognizedUnderPrefixes() {
+        String key = new PayloadKeyLayout("orders/", 16).getKey(PayloadDeduplicator.CONTENT_ADDRESSED_KEY_PREFIX + "00");
+
+        Assert.assertTrue(PayloadDeduplicator.isContentAddressedKey(key));
+    }
+
+    @Test(expected = AmazonClientException.class)
+    public void testKeyPrefixEndingInAContentAddressedNameIsRejected() {
+        new PayloadKeyLayout("orders/" + PayloadDeduplicator.CONTENT_ADDRESSED_KEY_PREFIX, 0);
+    }
+
+    @Test
+    public void testRandomKeysUnderAContentAddressedDirectoryAreNotContentAddressed() {
+        String key = new PayloadKeyLayout(PayloadDeduplicator.CONTENT_ADDRESSED_KEY_PREFIX + "orders/", 0)
+                .getKey(UUID.randomUUID().toString());
+
+        Assert.assertFalse(PayloadDeduplicator.isContentAddressedKey(key));
+    }
+
+    @Test(expected = AmazonClientException.class)
+    public void testNegativeHashPrefixCountIsRejected() {
+        new PayloadKeyLayout("", -1);
+    }
+}
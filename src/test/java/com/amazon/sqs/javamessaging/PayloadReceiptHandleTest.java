@@ -0,0 +1,87 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import com.amazonaws.AmazonClientException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the PayloadReceiptHandle class.
+ */
+public class PayloadReceiptHandleTest {
+
+    private static final String S3_BUCKET_NAME = "test-bucket-name";
+    private static final String S3_KEY = "prefix/a:b/key";
+    private static final String RECEIPT_HANDLE = "receipt:handle-1";
+
+    @Test
+    public void testEmbeddedHandleIsParsedBack() {
+        String receiptHandle = PayloadReceiptHandle.embed(RECEIPT_HANDLE, S3_BUCKET_NAME, S3_KEY);
+
+        PayloadReceiptHandle payloadReceiptHandle = PayloadReceiptHandle.parse(receiptHandle);
+
+        Assert.assertTrue(receiptHandle.startsWith(PayloadReceiptHandle.PREFIX));
+        Assert.assertTrue(PayloadReceiptHandle.isPayloadReceiptHandle(receiptHandle));
+        Assert.assertEquals(S3_BUCKET_NAME, payloadReceiptHandle.getS3BucketName());
+        Assert.assertEquals(S3_KEY, payloadReceiptHandle.getS3Key());
+        Assert.assertEquals(RECEIPT_HANDLE, payloadReceiptHandle.getReceiptHandle());
+        Assert.assertEquals(RECEIPT_HANDLE, PayloadReceiptHandle.getOriginalReceiptHandle(receiptHandle));
+    }
+
+    @Test
+    public void testEmbeddedPointerIsParsedBack() {
+        String payloadPointer = "{\"pointer\":\"a:b\"}";
+        String receiptHandle = PayloadReceiptHandle.embedPointer(RECEIPT_HANDLE, payloadPointer);
+
+        PayloadReceiptHandle payloadReceiptHandle = PayloadReceiptHandle.parse(receiptHandle);
+
+        Assert.assertTrue(PayloadReceiptHandle.isPayloadReceiptHandle(receiptHandle));
+        Assert.assertEquals(payloadPointer, payloadReceiptHandle.getPayloadPointer());
+        Assert.assertNull(payloadReceiptHandle.getS3BucketName());
+        Assert.assertEquals(RECEIPT_HANDLE, payloadReceiptHandle.getReceiptHandle());
+        Assert.assertEquals(RECEIPT_HANDLE, PayloadReceiptHandle.getOriginalReceiptHandle(receiptHandle));
+    }
+
+    @Test
+    public void testLegacyHandleIsParsed() {
+        String receiptHandle = SQSExtendedClientConstants.S3_BUCKET_NAME_MARKER + S3_BUCKET_NAME
+                + SQSExtendedClientConstants.S3_BUCKET_NAME_MARKER + SQSExtendedClientConstants.S3_KEY_MARKER
+                + S3_KEY + SQSExtendedClientConstants.S3_KEY_MARKER + RECEIPT_HANDLE;
+
+        PayloadReceiptHandle payloadReceiptHandle = PayloadReceiptHandle.parse(receiptHandle);
+
+        Assert.assertEquals(S3_BUCKET_NAME, payloadReceiptHandle.getS3BucketName());
+        Assert.assertEquals(S3_KEY, payloadReceiptHandle.getS3Key());
+        Assert.assertEquals(RECEIPT_HANDLE, payloadReceiptHandle.getReceiptHandle());
+        Assert.assertEquals(RECEIPT_HANDLE, PayloadReceiptHandle.getOriginalReceiptHandle(receiptHandle));
+    }
+
+    @Test
+    public void testPlainHandleIsLeftAsIs() {
+        Assert.assertFalse(PayloadReceiptHandle.isPayloadReceiptHandle(RECEIPT_HANDLE));
+        Assert.assertNull(PayloadReceiptHandle.parse(RECEIPT_HANDLE));
+        Assert.assertEquals(RECEIPT_HANDLE, PayloadReceiptHandle.getOriginalReceiptHandle(RECEIPT_HANDLE));
+    }
+
+    @Test(expected = AmazonClientException.class)
+    public void testTruncatedHandleIsRejected() {
+        String receiptHandle = PayloadReceiptHandle.embed(RECEIPT_HANDLE, S3_BUCKET_NAME, S3_KEY);
+
+        PayloadReceiptHandle.parse(receiptHandle.substring(0, PayloadReceiptHandle.PREFIX.length() + 10));
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.GetQueueAttributesResult;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.amazonaws.util.StringInputStream;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import software.amazon.payloadoffloading.PayloadS3Pointer;
+
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the PrefetchingMessageReceiver class.
+ */
+public class PrefetchingMessageReceiverTest {
+
+    private static final String S3_BUCKET_NAME = "test-bucket-name";
+    private static final String SQS_QUEUE_URL = "test-queue-url";
+    private static final int BUFFER_SIZE = 3;
+
+    private AmazonSQS mockSqsBackend;
+    private AmazonS3 mockS3;
+    private AmazonSQSExtendedClient extendedSqs;
+    private AtomicInteger availableMessages;
+    private PrefetchingMessageReceiver receiver;
+
+    @Before
+    public void setupClients() throws Exception {
+        mockSqsBackend = mock(AmazonSQS.class);
+        mockS3 = mock(AmazonS3.class);
+        availableMessages = new AtomicInteger(100);
+        AtomicInteger receivedMessages = new AtomicInteger();
+        when(mockSqsBackend.receiveMessage(isA(ReceiveMessageRequest.class))).thenAnswer(invocation -> {
+            ReceiveMessageRequest receiveMessageRequest = (ReceiveMessageRequest) invocation.getArguments()[0];
+            List<Message> messages = new ArrayList<Message>();
+            while (messages.size() < receiveMessageRequest.getMaxNumberOfMessages()
+                    && availableMessages.getAndDecrement() > 0) {
+                int i = receivedMessages.getAndIncrement();
+                messages.add(new Message()
+                        .addMessageAttributesEntry(SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME, mock(MessageAttributeValue.class))
+                        .withBody(new PayloadS3Pointer(S3_BUCKET_NAME, "S3Key" + i).toJson())
+                        .withReceiptHandle("receipt-handle-" + i));
+            }
+            if (messages.isEmpty()) {
+                Thread.sleep(10);
+            }
+            return new ReceiveMessageResult().withMessages(messages);
+        });
+        when(mockSqsBackend.changeMessageVisibilityBatch(isA(ChangeMessageVisibilityBatchRequest.class)))
+                .thenReturn(new ChangeMessageVisibilityBatchResult());
+        when(mockS3.getObject(isA(GetObjectRequest.class))).thenAnswer(invocation -> {
+            S3Object s3Object = new S3Object();
+            s3Object.setObjectContent(new StringInputStream(
+                    "LargeMessage-" + ((GetObjectRequest) invocation.getArguments()[0]).getKey()));
+            return s3Object;
+        });
+        extendedSqs = new AmazonSQSExtendedClient(mockSqsBackend,
+                new ExtendedClientConfiguration().withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME));
+    }
+
+    @After
+    public void shutdownReceiver() {
+        if (receiver != null) {
+            receiver.shutdown();
+        }
+    }
+
+    @Test
+    public void testBufferIsFilledUpToItsSizeWithDownloadedPayloads() throws Exception {
+        receiver = new PrefetchingMessageReceiver(extendedSqs,
+                new ReceiveMessageRequest(SQS_QUEUE_URL).withVisibilityTimeout(300), BUFFER_SIZE, 2);
+
+        awaitBufferedMessageCount(BUFFER_SIZE);
+        verify(mockS3, times(BUFFER_SIZE)).getObject(isA(GetObjectRequest.class));
+
+        Message message = receiver.receiveMessage(10, TimeUnit.SECONDS);
+        Assert.assertEquals("LargeMessage-S3Key0", message.getBody());
+        Assert.assertTrue(message.getReceiptHandle().endsWith("receipt-handle-0"));
+        awaitBufferedMessageCount(BUFFER_SIZE);
+        verify(mockS3, times(BUFFER_SIZE + 1)).getObject(isA(GetObjectRequest.class));
+    }
+
+    @Test
+    public void testStaleMessagesAreReleasedBySweep() throws Exception {
+        availableMessages.set(1);
+        AtomicLong nanoClock = new AtomicLong();
+        receiver = new PrefetchingMessageReceiver(extendedSqs,
+                new ReceiveMessageRequest(SQS_QUEUE_URL).withVisibilityTimeout(1), BUFFER_SIZE, 1, nanoClock::get);
+        awaitBufferedMessageCount(1);
+        receiver.releaseStaleMessages();
+        Assert.assertEquals(1, receiver.getBufferedMessageCount());
+
+        nanoClock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        receiver.releaseStaleMessages();
+
+        Assert.assertEquals(0, receiver.getBufferedMessageCount());
+        assertReleased("receipt-handle-0");
+    }
+
+    @Test
+    public void testStaleMessageIsReleasedInsteadOfReturned() throws Exception {
+        availableMessages.set(1);
+        AtomicLong nanoClock = new AtomicLong();
+        receiver = new PrefetchingMessageReceiver(extendedSqs,
+                new ReceiveMessageRequest(SQS_QUEUE_URL).withVisibilityTimeout(1), BUFFER_SIZE, 1, nanoClock::get);
+        awaitBufferedMessageCount(1);
+
+        nanoClock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+
+        Assert.assertNull(receiver.receiveMessage(0, TimeUnit.MILLISECONDS));
+        assertReleased("receipt-handle-0");
+    }
+
+    @Test
+    public void testShutdownReleasesBufferedMessages() throws Exception {
+        availableMessages.set(2);
+        when(mockSqsBackend.getQueueAttributes(isA(GetQueueAttributesRequest.class))).thenReturn(
+                new GetQueueAttributesResult().withAttributes(Collections.singletonMap("VisibilityTimeout", "300")));
+        receiver = new PrefetchingMessageReceiver(extendedSqs, new ReceiveMessageRequest(SQS_QUEUE_URL), BUFFER_SIZE, 1);
+        awaitBufferedMessageCount(2);
+
+        receiver.shutdown();
+
+        verify(mockSqsBackend).getQueueAttributes(isA(GetQueueAttributesRequest.class));
+        assertReleased("receipt-handle-0", "receipt-handle-1");
+    }
+
+    private void awaitBufferedMessageCount(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (receiver.getBufferedMessageCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(count, receiver.getBufferedMessageCount());
+    }
+
+    private void assertReleased(String... receiptHandles) {
+        // The sweeper may be the one releasing the messages, so wait for its call to complete.
+        verify(mockSqsBackend, timeout(10_000).atLeastOnce())
+                .changeMessageVisibilityBatch(isA(ChangeMessageVisibilityBatchRequest.class));
+        ArgumentCaptor<ChangeMessageVisibilityBatchRequest> changeVisibilityRequestCaptor =
+                ArgumentCaptor.forClass(ChangeMessageVisibilityBatchRequest.class);
+        verify(mockSqsBackend, atLeastOnce()).changeMessageVisibilityBatch(changeVisibilityRequestCaptor.capture());
+        List<String> releasedReceiptHandles = new ArrayList<String>();
+        for (ChangeMessageVisibilityBatchRequest request : changeVisibilityRequestCaptor.getAllValues()) {
+            for (ChangeMessageVisibilityBatchRequestEntry entry : request.getEntries()) {
+                Assert.assertEquals(Integer.valueOf(0), entry.getVisibilityTimeout());
+                releasedReceiptHandles.add(entry.getReceiptHandle());
+            }
+        }
+        Assert.assertEquals(Arrays.asList(receiptHandles), releasedReceiptHandles);
+    }
+}
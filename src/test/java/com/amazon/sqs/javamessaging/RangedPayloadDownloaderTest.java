@@ -0,0 +1,139 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.Headers;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the RangedPayloadDownloader class.
+ */
+public class RangedPayloadDownloaderTest {
+
+    private static final String S3_BUCKET_NAME = "test-bucket-name";
+    private static final String S3_KEY = "test-key";
+    private static final int PART_SIZE = 1000;
+    private static final String ETAG = "first-etag";
+
+    private AmazonS3 mockS3;
+    private byte[] payload;
+    private ExecutorService executor;
+
+    @Before
+    public void setupS3() {
+        executor = Executors.newFixedThreadPool(4);
+        payload = new byte[PART_SIZE * 4 + 123];
+        new Random(42).nextBytes(payload);
+        mockS3 = mock(AmazonS3.class);
+        when(mockS3.getObject(isA(GetObjectRequest.class))).thenAnswer(invocation -> {
+            GetObjectRequest getObjectRequest = (GetObjectRequest) invocation.getArguments()[0];
+            List<String> matchingETags = getObjectRequest.getMatchingETagConstraints();
+            if (!matchingETags.isEmpty() && !matchingETags.contains(ETAG)) {
+                return null;
+            }
+            long[] range = getObjectRequest.getRange();
+            int end = (int) Math.min(range[1], payload.length - 1);
+            S3Object s3Object = new S3Object();
+            s3Object.getObjectMetadata().setHeader(Headers.CONTENT_RANGE,
+                    "bytes " + range[0] + "-" + end + "/" + payload.length);
+            s3Object.getObjectMetadata().setHeader(Headers.ETAG, ETAG);
+            s3Object.setObjectContent(new ByteArrayInputStream(Arrays.copyOfRange(payload, (int) range[0], end + 1)));
+            return s3Object;
+        });
+    }
+
+    @After
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testDownloadToArrayReassemblesRangesInOrder() {
+        RangedPayloadDownloader downloader = new RangedPayloadDownloader(mockS3, PART_SIZE, 3, executor);
+
+        byte[] downloaded = downloader.downloadToArray(S3_BUCKET_NAME, S3_KEY).payload;
+
+        Assert.assertArrayEquals(payload, downloaded);
+        verify(mockS3, times(5)).getObject(isA(GetObjectRequest.class));
+    }
+
+    @Test
+    public void testDownloadToFileWritesRangesAtTheirOffsets() throws Exception {
+        RangedPayloadDownloader downloader = new RangedPayloadDownloader(mockS3, PART_SIZE, 3, executor);
+        Path target = Files.createTempFile("payload", ".bin");
+        try {
+            downloader.downloadToFile(S3_BUCKET_NAME, S3_KEY, target);
+
+            Assert.assertArrayEquals(payload, Files.readAllBytes(target));
+        } finally {
+            Files.delete(target);
+        }
+        verify(mockS3, times(5)).getObject(isA(GetObjectRequest.class));
+    }
+
+    @Test
+    public void testLaterRangesAreReadFromTheVersionOfTheFirstRange() {
+        RangedPayloadDownloader downloader = new RangedPayloadDownloader(mockS3, PART_SIZE, 3, executor);
+
+        downloader.downloadToArray(S3_BUCKET_NAME, S3_KEY);
+
+        ArgumentCaptor<GetObjectRequest> getObjectRequests = ArgumentCaptor.forClass(GetObjectRequest.class);
+        verify(mockS3, times(5)).getObject(getObjectRequests.capture());
+        for (GetObjectRequest getObjectRequest : getObjectRequests.getAllValues()) {
+            List<String> expectedETags = getObjectRequest.getRange()[0] == 0
+                    ? Collections.<String>emptyList() : Collections.singletonList(ETAG);
+            Assert.assertEquals(expectedETags, getObjectRequest.getMatchingETagConstraints());
+        }
+    }
+
+    @Test(expected = AmazonClientException.class)
+    public void testObjectReplacedDuringTheDownloadFailsIt() {
+        when(mockS3.getObject(isA(GetObjectRequest.class))).thenAnswer(invocation -> {
+            GetObjectRequest getObjectRequest = (GetObjectRequest) invocation.getArguments()[0];
+            S3Object s3Object = new S3Object();
+            s3Object.getObjectMetadata().setHeader(Headers.CONTENT_RANGE,
+                    "bytes 0-" + (PART_SIZE - 1) + "/" + payload.length);
+            s3Object.getObjectMetadata().setHeader(Headers.ETAG, ETAG);
+            s3Object.setObjectContent(new ByteArrayInputStream(Arrays.copyOf(payload, PART_SIZE)));
+            // The object is overwritten once its first range is read.
+            return getObjectRequest.getMatchingETagConstraints().isEmpty() ? s3Object : null;
+        });
+        RangedPayloadDownloader downloader = new RangedPayloadDownloader(mockS3, PART_SIZE, 3, executor);
+
+        downloader.downloadToArray(S3_BUCKET_NAME, S3_KEY);
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.Stream;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.util.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the SharedMemoryPayloadStore class.
+ */
+public class SharedMemoryPayloadStoreTest {
+
+    private static final String FALLBACK_POINTER = "fallback-pointer";
+    private static final long MAX_AGE_MILLIS = 60L * 60 * 1000;
+
+    private Path directory;
+    private StreamingPayloadStore fallbackStore;
+    private SharedMemoryPayloadStore payloadStore;
+
+    @Before
+    public void setupStore() throws Exception {
+        directory = Files.createTempDirectory("shared-payloads");
+        fallbackStore = mock(StreamingPayloadStore.class);
+        when(fallbackStore.storeOriginalPayload(any(InputStream.class), anyLong())).thenReturn(FALLBACK_POINTER);
+        payloadStore = new SharedMemoryPayloadStore(directory, 16, MAX_AGE_MILLIS, false, fallbackStore);
+    }
+
+    @After
+    public void deleteDirectory() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testPayloadIsMappedByAnotherStoreOnTheSameDirectory() throws Exception {
+        byte[] payload = "shared payload".getBytes("UTF-8");
+
+        String payloadPointer = payloadStore.storeOriginalPayload(new ByteArrayInputStream(payload), payload.length);
+        SharedMemoryPayloadStore consumerStore = new SharedMemoryPayloadStore(directory, 16, MAX_AGE_MILLIS, false, fallbackStore);
+
+        Assert.assertTrue(SharedMemoryPayloadStore.isSharedMemoryPointer(payloadPointer));
+        try (InputStream payloadStream = consumerStore.getOriginalPayloadStream(payloadPointer)) {
+            Assert.assertArrayEquals(payload, IOUtils.toByteArray(payloadStream));
+        }
+        consumerStore.deleteOriginalPayloads(Collections.singletonList(payloadPointer));
+        try (Stream<Path> files = Files.list(directory)) {
+            Assert.assertEquals(1, files.count());
+        }
+        verifyZeroInteractions(fallbackStore);
+    }
+
+    @Test
+    public void testFallbackCopyIsReadWhereTheFileCannotBeMapped() throws Exception {
+        byte[] payload = "shared payload".getBytes("UTF-8");
+        when(fallbackStore.getOriginalPayloadBytes(FALLBACK_POINTER, -1)).thenReturn(payload);
+        SharedMemoryPayloadStore producerStore = new SharedMemoryPayloadStore(directory, 16, MAX_AGE_MILLIS, true, fallbackStore);
+        Path otherDirectory = Files.createTempDirectory("other-shared-payloads");
+
+        String payloadPointer = producerStore.storeOriginalPayload(new ByteArrayInputStream(payload), payload.length);
+        try {
+            SharedMemoryPayloadStore remoteStore = new SharedMemoryPayloadStore(otherDirectory, 16, MAX_AGE_MILLIS, true, fallbackStore);
+            Assert.assertArrayEquals(payload, remoteStore.getOriginalPayloadBytes(payloadPointer, -1));
+            remoteStore.deleteOriginalPayload(payloadPointer);
+        } finally {
+            Files.delete(otherDirectory.resolve("directory-id"));
+            Files.delete(otherDirectory);
+        }
+
+        Assert.assertTrue(payloadPointer.endsWith(SharedMemoryPayloadStore.FALLBACK_POINTER_SEPARATOR + FALLBACK_POINTER));
+        verify(fallbackStore).storeOriginalPayload(any(InputStream.class), eq((long) payload.length));
+        verify(fallbackStore).getOriginalPayloadBytes(FALLBACK_POINTER, -1);
+        verify(fallbackStore).deleteOriginalPayload(FALLBACK_POINTER);
+    }
+
+    @Test
+    public void testExpiredPayloadAndTemporaryFilesAreSweptWhenAStoreOpens() throws Exception {
+        FileTime expired = FileTime.fromMillis(System.currentTimeMillis() - 2 * MAX_AGE_MILLIS);
+        Path expiredPayload = Files.write(directory.resolve("0aa2ab9c-5b3c-4c8e-9d2f-1e1b1f0c0d01"), new byte[8]);
+        Path expiredTemporaryFile = Files.write(directory.resolve("0aa2ab9c-5b3c-4c8e-9d2f-1e1b1f0c0d02.tmp"), new byte[8]);
+        Path livePayload = Files.write(directory.resolve("0aa2ab9c-5b3c-4c8e-9d2f-1e1b1f0c0d03"), new byte[8]);
+        Files.setLastModifiedTime(expiredPayload, expired);
+        Files.setLastModifiedTime(expiredTemporaryFile, expired);
+        Files.setLastModifiedTime(directory.resolve("directory-id"), expired);
+
+        new SharedMemoryPayloadStore(directory, 16, MAX_AGE_MILLIS, false, fallbackStore);
+
+        Assert.assertFalse(Files.exists(expiredPayload));
+        Assert.assertFalse(Files.exists(expiredTemporaryFile));
+        Assert.assertTrue(Files.exists(livePayload));
+        Assert.assertTrue(Files.exists(directory.resolve("directory-id")));
+    }
+
+    @Test
+    public void testMappedPayloadAndFallbackCopyAreDeletedTogether() throws Exception {
+        byte[] payload = "shared payload".getBytes("UTF-8");
+        SharedMemoryPayloadStore producerStore = new SharedMemoryPayloadStore(directory, 16, MAX_AGE_MILLIS, true, fallbackStore);
+
+        String payloadPointer = producerStore.storeOriginalPayload(new ByteArrayInputStream(payload), payload.length);
+        Assert.assertArrayEquals(payload, producerStore.getOriginalPayloadBytes(payloadPointer, -1));
+        producerStore.deleteOriginalPayloads(Collections.singletonList(payloadPointer));
+
+        verify(fallbackStore, never()).getOriginalPayloadBytes(FALLBACK_POINTER, -1);
+        verify(fallbackStore).deleteOriginalPayload(FALLBACK_POINTER);
+        try (Stream<Path> files = Files.list(directory)) {
+            Assert.assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void testLargePayloadIsStoredInFallbackStore() {
+        InputStream payload = new ByteArrayInputStream(new byte[17]);
+
+        String payloadPointer = payloadStore.storeOriginalPayload(payload, 17);
+        payloadStore.getOriginalPayloadBytes(payloadPointer, 17);
+        payloadStore.deleteOriginalPayloads(Arrays.asList(payloadPointer));
+
+        Assert.assertEquals(FALLBACK_POINTER, payloadPointer);
+        verify(fallbackStore).storeOriginalPayload(payload, 17);
+        verify(fallbackStore).getOriginalPayloadBytes(FALLBACK_POINTER, 17);
+        verify(fallbackStore).deleteOriginalPayloads(Arrays.asList(FALLBACK_POINTER));
+    }
+
+    @Test(expected = AmazonClientException.class)
+    public void testPayloadOfAnotherDirectoryIsRejected() {
+        payloadStore.getOriginalPayload(SharedMemoryPayloadStore.POINTER_PREFIX
+                + "00000000-0000-0000-0000-000000000000/00000000-0000-0000-0000-000000000000");
+    }
+
+    @Test(expected = AmazonClientException.class)
+    public void testShortPayloadIsRejected() {
+        payloadStore.storeOriginalPayload(new ByteArrayInputStream(new byte[4]), 8);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Test;
+import software.amazon.payloadoffloading.PayloadS3Pointer;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the SizeBandedPayloadStore class.
+ */
+public class SizeBandedPayloadStoreTest {
+
+    private static final String DEFAULT_BUCKET_NAME = "default-bucket";
+    private static final String HUGE_BUCKET_NAME = "huge-bucket";
+    private static final long SMALL_BAND_MIN_SIZE = 100;
+    private static final long HUGE_BAND_MIN_SIZE = 1000;
+
+    private StreamingPayloadStore defaultStore;
+    private StreamingPayloadStore smallStore;
+    private StreamingPayloadStore hugeStore;
+    private SizeBandedPayloadStore payloadStore;
+
+    @Before
+    public void setupStores() {
+        defaultStore = mock(StreamingPayloadStore.class);
+        smallStore = mock(StreamingPayloadStore.class);
+        hugeStore = mock(StreamingPayloadStore.class);
+        NavigableMap<Long, StreamingPayloadStore> storesByMinSize = new TreeMap<>();
+        storesByMinSize.put(SMALL_BAND_MIN_SIZE, smallStore);
+        storesByMinSize.put(HUGE_BAND_MIN_SIZE, hugeStore);
+        payloadStore = new SizeBandedPayloadStore(defaultStore, storesByMinSize,
+                Collections.singletonMap(HUGE_BUCKET_NAME, hugeStore));
+    }
+
+    @Test
+    public void testPayloadsAreStoredThroughTheStoreOfTheirBand() {
+        payloadStore.storeOriginalPayload(new ByteArrayInputStream(new byte[1]), SMALL_BAND_MIN_SIZE - 1);
+        payloadStore.storeOriginalPayload(new ByteArrayInputStream(new byte[1]), SMALL_BAND_MIN_SIZE);
+        payloadStore.storeOriginalPayload(new ByteArrayInputStream(new byte[1]), HUGE_BAND_MIN_SIZE - 1);
+        payloadStore.storeOriginalPayload(new ByteArrayInputStream(new byte[1]), HUGE_BAND_MIN_SIZE);
+        payloadStore.storeOriginalPayload(new ByteArrayInputStream(new byte[1]), -1);
+
+        verify(defaultStore, times(1)).storeOriginalPayload(any(InputStream.class), eq(SMALL_BAND_MIN_SIZE - 1));
+        verify(defaultStore, times(1)).storeOriginalPayload(any(InputStream.class), eq(-1L));
+        verify(smallStore, times(2)).storeOriginalPayload(any(InputStream.class), anyLong());
+        verify(hugeStore, times(1)).storeOriginalPayload(any(InputStream.class), eq(HUGE_BAND_MIN_SIZE));
+    }
+
+    @Test
+    public void testStringPayloadsAreBandedByTheirEncodedSize() {
+        char[] payload = new char[(int) SMALL_BAND_MIN_SIZE / 2];
+        Arrays.fill(payload, '\u00e9');
+
+        payloadStore.storeOriginalPayload(new String(payload), null);
+
+        verify(smallStore).storeOriginalPayload(new String(payload), null);
+        verifyZeroInteractions(defaultStore);
+    }
+
+    @Test
+    public void testPayloadsAreReadAndDeletedThroughTheBucketOfTheirPointer() {
+        String defaultPointer = getPointer(DEFAULT_BUCKET_NAME);
+        String hugePointer = getPointer(HUGE_BUCKET_NAME);
+
+        payloadStore.getOriginalPayload(hugePointer);
+        payloadStore.getOriginalPayload(defaultPointer);
+        payloadStore.deleteOriginalPayloads(Arrays.asList(defaultPointer, hugePointer, defaultPointer));
+
+        verify(hugeStore).getOriginalPayload(hugePointer);
+        verify(defaultStore).getOriginalPayload(defaultPointer);
+        verify(defaultStore).deleteOriginalPayloads(Arrays.asList(defaultPointer, defaultPointer));
+        verify(hugeStore).deleteOriginalPayloads(Collections.singletonList(hugePointer));
+        verifyZeroInteractions(smallStore);
+    }
+
+    private static String getPointer(String s3BucketName) {
+        return new PayloadS3Pointer(s3BucketName, "key").toJson();
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.amazonaws.util.IOUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import software.amazon.payloadoffloading.PayloadStore;
+
+/**
+ * Tests the StreamingPayloadStoreAdapter class.
+ */
+public class StreamingPayloadStoreAdapterTest {
+
+    private Map<String, String> storedPayloads;
+    private StreamingPayloadStore payloadStore;
+
+    @Before
+    public void setupStore() {
+        storedPayloads = new HashMap<String, String>();
+        payloadStore = StreamingPayloadStoreAdapter.of(new PayloadStore() {
+            @Override
+            public String storeOriginalPayload(String payload, Long payloadContentSize) {
+                String payloadPointer = "pointer-" + storedPayloads.size();
+                storedPayloads.put(payloadPointer, payload);
+                return payloadPointer;
+            }
+
+            @Override
+            public String getOriginalPayload(String payloadPointer) {
+                return storedPayloads.get(payloadPointer);
+            }
+
+            @Override
+            public void deleteOriginalPayload(String payloadPointer) {
+                storedPayloads.remove(payloadPointer);
+            }
+        });
+    }
+
+    @Test
+    public void testNonUtf8PayloadIsReadBackUnchanged() throws Exception {
+        // A lone continuation byte, an overlong encoding and a gzip header are not valid UTF-8.
+        byte[] payload = new byte[] {(byte) 0x80, (byte) 0xc0, (byte) 0xaf, 0x1f, (byte) 0x8b, 0x08, 0, (byte) 0xff};
+
+        String payloadPointer = payloadStore.storeOriginalPayload(new ByteArrayInputStream(payload), payload.length);
+
+        Assert.assertTrue(payloadPointer.startsWith(StreamingPayloadStoreAdapter.BASE64_POINTER_PREFIX));
+        Assert.assertArrayEquals(payload, payloadStore.getOriginalPayloadBytes(payloadPointer, payload.length));
+        try (InputStream payloadStream = payloadStore.getOriginalPayloadStream(payloadPointer)) {
+            Assert.assertArrayEquals(payload, IOUtils.toByteArray(payloadStream));
+        }
+        payloadStore.deleteOriginalPayload(payloadPointer);
+        Assert.assertTrue(storedPayloads.isEmpty());
+    }
+
+    @Test
+    public void testUtf8PayloadIsStoredAsText() {
+        byte[] payload = "caf\u00e9".getBytes(StandardCharsets.UTF_8);
+
+        String payloadPointer = payloadStore.storeOriginalPayload(new ByteArrayInputStream(payload), payload.length);
+
+        Assert.assertEquals("pointer-0", payloadPointer);
+        Assert.assertEquals("caf\u00e9", storedPayloads.get(payloadPointer));
+        Assert.assertArrayEquals(payload, payloadStore.getOriginalPayloadBytes(payloadPointer, payload.length));
+    }
+}
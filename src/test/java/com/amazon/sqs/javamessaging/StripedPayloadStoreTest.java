@@ -0,0 +1,110 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.amazonaws.AmazonServiceException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import software.amazon.payloadoffloading.PayloadS3Pointer;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the StripedPayloadStore class.
+ */
+public class StripedPayloadStoreTest {
+
+    private static final String FIRST_BUCKET_NAME = "first-bucket";
+    private static final String SECOND_BUCKET_NAME = "second-bucket";
+
+    private StreamingPayloadStore firstStore;
+    private StreamingPayloadStore secondStore;
+    private Map<String, StreamingPayloadStore> stores;
+
+    @Before
+    public void setupStores() {
+        firstStore = mock(StreamingPayloadStore.class);
+        secondStore = mock(StreamingPayloadStore.class);
+        when(firstStore.storeOriginalPayload(any(InputStream.class), anyLong())).thenReturn(getPointer(FIRST_BUCKET_NAME));
+        when(secondStore.storeOriginalPayload(any(InputStream.class), anyLong())).thenReturn(getPointer(SECOND_BUCKET_NAME));
+        stores = new LinkedHashMap<>();
+        stores.put(FIRST_BUCKET_NAME, firstStore);
+        stores.put(SECOND_BUCKET_NAME, secondStore);
+    }
+
+    @Test
+    public void testRoundRobinAlternatesBuckets() {
+        StripedPayloadStore payloadStore = new StripedPayloadStore(stores, PayloadBucketSelection.ROUND_ROBIN);
+
+        for (int i = 0; i < 4; i++) {
+            payloadStore.storeOriginalPayload(new ByteArrayInputStream(new byte[1]), 1);
+        }
+
+        verify(firstStore, times(2)).storeOriginalPayload(any(InputStream.class), anyLong());
+        verify(secondStore, times(2)).storeOriginalPayload(any(InputStream.class), anyLong());
+    }
+
+    @Test
+    public void testPayloadsAreReadAndDeletedThroughTheBucketOfTheirPointer() {
+        StripedPayloadStore payloadStore = new StripedPayloadStore(stores, PayloadBucketSelection.ROUND_ROBIN);
+        String firstPointer = getPointer(FIRST_BUCKET_NAME);
+        String secondPointer = getPointer(SECOND_BUCKET_NAME);
+        String unknownPointer = getPointer("unknown-bucket");
+
+        payloadStore.getOriginalPayload(secondPointer);
+        payloadStore.getOriginalPayload(unknownPointer);
+        payloadStore.deleteOriginalPayloads(Arrays.asList(firstPointer, secondPointer, firstPointer));
+
+        verify(secondStore).getOriginalPayload(secondPointer);
+        verify(firstStore).getOriginalPayload(unknownPointer);
+        verify(firstStore).deleteOriginalPayloads(Arrays.asList(firstPointer, firstPointer));
+        verify(secondStore).deleteOriginalPayloads(Collections.singletonList(secondPointer));
+    }
+
+    @Test
+    public void testLatencyWeightedSelectionAvoidsFailingBucket() {
+        when(secondStore.storeOriginalPayload(any(InputStream.class), anyLong()))
+                .thenThrow(new AmazonServiceException("SlowDown"));
+        StripedPayloadStore payloadStore = new StripedPayloadStore(stores, PayloadBucketSelection.LATENCY_WEIGHTED);
+
+        int failures = 0;
+        for (int i = 0; i < 100; i++) {
+            try {
+                payloadStore.storeOriginalPayload(new ByteArrayInputStream(new byte[1]), 1);
+            } catch (AmazonServiceException e) {
+                failures++;
+            }
+        }
+
+        Assert.assertTrue(failures >= 1);
+        Assert.assertTrue(failures < 10);
+    }
+
+    private static String getPointer(String s3BucketName) {
+        return new PayloadS3Pointer(s3BucketName, "key").toJson();
+    }
+}
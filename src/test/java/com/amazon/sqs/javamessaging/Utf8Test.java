@@ -0,0 +1,49 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the Utf8 class.
+ */
+public class Utf8Test {
+
+    @Test
+    public void testEncodedLengthMatchesEncoderForEveryCharacterWidth() {
+        String[] texts = new String[] {
+                "",
+                "plain ascii",
+                "caf\u00e9 \u00fcber",
+                "\u20ac \u4e2d\u6587",
+                "emoji \ud83d\ude00 and \ud834\udd1e",
+                "lone \ud83d high and \ude00 low surrogates\ud83d"
+        };
+
+        for (String text : texts) {
+            Assert.assertEquals(text, text.getBytes(StandardCharsets.UTF_8).length, Utf8.encodedLength(text));
+        }
+    }
+
+    @Test
+    public void testEncodedLengthOfNullIsZero() {
+        Assert.assertEquals(0, Utf8.encodedLength(null));
+    }
+}